@@ -0,0 +1,58 @@
+package bench;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.station.InvalidTimeSpanException;
+import core.station.Station;
+import core.station.StationStats;
+
+/**
+ * Occupation rate of a station with a long history, over the whole history and
+ * over its last day.
+ *
+ * @author animato
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OccupationRateBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	public int numberOfRentals;
+
+	private StationStats stats;
+	private LocalDateTime end;
+
+	@Setup
+	public void setup() {
+		Station station = SyntheticNetworks.stations(SyntheticNetworks.create(1, 1)).get(0);
+		end = SyntheticNetworks.addHistory(station, numberOfRentals, SyntheticNetworks.START, 2);
+		stats = station.getStats();
+	}
+
+	@Benchmark
+	public double wholeHistory() throws InvalidTimeSpanException {
+		return stats.getOccupationRate(SyntheticNetworks.START, end);
+	}
+
+	@Benchmark
+	public double lastDay() throws InvalidTimeSpanException {
+		return stats.getOccupationRate(end.minusDays(1), end);
+	}
+}
@@ -0,0 +1,85 @@
+package bench;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import clui.CLUIThread;
+
+/**
+ * Commands of the CLUI parsed and run by CLUIThread.parseUserInput: an unknown
+ * command (parsing only), a display command, and a rental followed by its
+ * return.
+ *
+ * @author animato
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseInputBenchmark {
+	private CLUIThread clui;
+	private LocalDateTime date = SyntheticNetworks.START;
+	private String user;
+	private String station;
+
+	@Setup
+	public void setup() {
+		clui = new CLUIThread();
+		// the ids are read from the messages, as a user of the CLUI would
+		String setup = clui.parseUserInput("setup benchNet 01/01/2018T00:00:00 100 20 3 1000");
+		station = firstNumberAfter(setup, "(ids: [");
+		user = firstNumberAfter(clui.parseUserInput("addUser benchNet rider VLIBRE_CARD"), "(id: ");
+	}
+
+	@TearDown
+	public void tearDown() {
+		clui.parseUserInput("reset");
+	}
+
+	@Benchmark
+	public String unknownCommand() {
+		return clui.parseUserInput("fly benchNet 1 2");
+	}
+
+	@Benchmark
+	public String displayStation() {
+		return clui.parseUserInput("displayStation benchNet " + station);
+	}
+
+	@Benchmark
+	public String rentAndReturn() {
+		date = date.plusMinutes(1);
+		String rent = clui
+				.parseUserInput("rentBike benchNet " + format(date) + " " + user + " " + station + " MECH");
+		date = date.plusMinutes(30);
+		return rent + clui.parseUserInput("returnBike benchNet " + format(date) + " " + user + " " + station);
+	}
+
+	private static String firstNumberAfter(String message, String prefix) {
+		int start = message.indexOf(prefix) + prefix.length();
+		int end = start;
+		while (end < message.length() && Character.isDigit(message.charAt(end)))
+			end++;
+		return message.substring(start, end);
+	}
+
+	private static String format(LocalDateTime date) {
+		return String.format("%02d/%02d/%04dT%02d:%02d:%02d", date.getDayOfMonth(), date.getMonthValue(),
+				date.getYear(), date.getHour(), date.getMinute(), date.getSecond());
+	}
+}
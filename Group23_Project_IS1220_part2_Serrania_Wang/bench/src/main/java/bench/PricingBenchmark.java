@@ -0,0 +1,72 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.bike.BikeFactory;
+import core.bike.InvalidBikeTypeException;
+import core.card.CardVisitor;
+import core.card.CardVisitorFactory;
+import core.card.InvalidBikeException;
+import core.card.InvalidCardTypeException;
+import core.card.InvalidDatesException;
+import core.rentals.BikeRental;
+
+/**
+ * Price of rentals of random durations (up to 5 hours) computed by each card.
+ * The cards with a time credit hold half an hour of credit; visiting a rental
+ * does not change the card.
+ *
+ * @author animato
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PricingBenchmark {
+	private static final int RENTALS = 1024;
+
+	@Param({ "NO_CARD", "VLIBRE_CARD", "VMAX_CARD" })
+	public String cardType;
+
+	@Param({ "MECH", "ELEC" })
+	public String bikeType;
+
+	private CardVisitor card;
+	private BikeRental[] rentals;
+	private int next = 0;
+
+	@Setup
+	public void setup() throws InvalidCardTypeException, InvalidBikeTypeException {
+		card = new CardVisitorFactory().createCard(cardType);
+		if (!cardType.equals("NO_CARD"))
+			card.addTimeCredit(30);
+		Random random = new Random(1);
+		BikeFactory bikeFactory = new BikeFactory();
+		rentals = new BikeRental[RENTALS];
+		for (int i = 0; i < RENTALS; i++) {
+			rentals[i] = new BikeRental(bikeFactory.createBike(bikeType), SyntheticNetworks.START);
+			rentals[i].setReturnDate(SyntheticNetworks.START.plusMinutes(1 + random.nextInt(300)));
+		}
+	}
+
+	@Benchmark
+	public double visit() throws InvalidBikeException, InvalidDatesException {
+		return card.visit(rentals[next++ & (RENTALS - 1)]);
+	}
+}
@@ -0,0 +1,134 @@
+package bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.Network;
+import core.card.InvalidBikeException;
+import core.card.InvalidDatesException;
+import core.rentals.BikeRental;
+import core.rentals.OngoingBikeRentalException;
+import core.station.BikeNotFoundException;
+import core.station.FullStationException;
+import core.station.OfflineStationException;
+import core.station.Station;
+import core.user.BikeRentalNotFoundException;
+import core.user.User;
+
+/**
+ * A bike rented with Network.rentBike and returned with Network.returnBike, by
+ * one thread or by several threads sharing the network. With few stations, the
+ * threads compete for the same parking slots and statistics. With deferred
+ * billing, the returns only record the rentals, which are billed in batch
+ * between the iterations.
+ *
+ * @author animato
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RentalBenchmark {
+
+	/**
+	 * The network shared by the threads
+	 */
+	@State(Scope.Benchmark)
+	public static class City {
+		@Param({ "1", "16", "1000" })
+		public int numberOfStations;
+		// price the rentals at each return, or in batch after each iteration
+		@Param({ "false", "true" })
+		public boolean deferredBilling;
+
+		Network network;
+		ArrayList<Station> stations;
+		final AtomicInteger riders = new AtomicInteger();
+
+		@Setup
+		public void setup() {
+			// half full: there is always a bike to rent and a slot to return it to
+			network = SyntheticNetworks.create(numberOfStations, 40, SyntheticNetworks.side(numberOfStations), 0.5,
+					0.3, 0.3, 1);
+			stations = SyntheticNetworks.stations(network);
+			network.setDeferredBilling(deferredBilling);
+		}
+
+		@TearDown(Level.Iteration)
+		public void bill() {
+			network.billPendingRentals();
+		}
+	}
+
+	/**
+	 * A user of one thread, with its own clock
+	 */
+	@State(Scope.Thread)
+	public static class Rider {
+		User user;
+		Random random;
+		LocalDateTime date = SyntheticNetworks.START;
+
+		@Setup
+		public void setup(City city) {
+			int n = city.riders.incrementAndGet();
+			user = SyntheticNetworks.addUsers(city.network, 1, n).get(0);
+			random = new Random(n);
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public BikeRental rentAndReturn(City city, Rider rider) {
+		return trip(city, rider);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public BikeRental rentAndReturnContended(City city, Rider rider) {
+		return trip(city, rider);
+	}
+
+	private static BikeRental trip(City city, Rider rider) {
+		int n = city.stations.size();
+		int first = rider.random.nextInt(n);
+		rider.date = rider.date.plusMinutes(1);
+		try {
+			city.network.rentBike(rider.user, city.stations.get(first), "MECH", rider.date);
+		} catch (OngoingBikeRentalException | OfflineStationException | BikeNotFoundException e) {
+			return null;
+		}
+		rider.date = rider.date.plusMinutes(20);
+		int destination = rider.random.nextInt(n);
+		for (int i = 0; i < n; i++) {
+			try {
+				return city.network.returnBike(rider.user, city.stations.get((destination + i) % n), rider.date);
+			} catch (FullStationException | OfflineStationException e) {
+				// try the next station
+			} catch (BikeRentalNotFoundException | InvalidBikeException | InvalidDatesException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		throw new IllegalStateException("No station has room left");
+	}
+}
@@ -0,0 +1,106 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.Network;
+import core.bike.InvalidBikeTypeException;
+import core.card.CardVisitorFactory;
+import core.card.InvalidCardTypeException;
+import core.ridePlan.AvoidPlusPlan;
+import core.ridePlan.FastestPlan;
+import core.ridePlan.NoValidStationFoundException;
+import core.ridePlan.PreferPlusPlan;
+import core.ridePlan.PreserveUniformityPlan;
+import core.ridePlan.RidePlan;
+import core.ridePlan.RidePlanCache;
+import core.ridePlan.RidePlanStrategy;
+import core.ridePlan.ShortestPlan;
+import core.user.User;
+import utils.Point;
+
+/**
+ * Planning a ride with each policy, on networks of growing size. The strategy
+ * is called directly: the user is not added to the observers of the
+ * destination station. With the ride plan cache, the same 512 rides are asked
+ * again and again and the stations do not change: this measures a hit.
+ *
+ * @author animato
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RidePlanBenchmark {
+	private static final int POINTS = 1024;
+
+	@Param({ "100", "1000", "10000" })
+	public int numberOfStations;
+
+	@Param({ "SHORTEST", "FASTEST", "AVOID_PLUS", "PREFER_PLUS", "PRESERVE_UNIFORMITY" })
+	public String policy;
+
+	@Param({ "MECH", "ELEC" })
+	public String bikeType;
+
+	@Param({ "false", "true" })
+	public boolean ridePlanCache;
+
+	private Network network;
+	private RidePlanStrategy strategy;
+	private RidePlanCache cache;
+	private User user;
+	private Point[] points;
+	private int next = 0;
+
+	@Setup
+	public void setup() throws InvalidCardTypeException {
+		network = SyntheticNetworks.create(numberOfStations, 1);
+		points = SyntheticNetworks.randomPoints(POINTS, network.getSide(), 2);
+		user = new User("planner", points[0], new CardVisitorFactory().createCard("VLIBRE_CARD"));
+		switch (policy) {
+		case "SHORTEST":
+			strategy = new ShortestPlan();
+			break;
+		case "FASTEST":
+			strategy = new FastestPlan();
+			break;
+		case "AVOID_PLUS":
+			strategy = new AvoidPlusPlan();
+			break;
+		case "PREFER_PLUS":
+			strategy = new PreferPlusPlan();
+			break;
+		default:
+			strategy = new PreserveUniformityPlan();
+		}
+		cache = ridePlanCache ? new RidePlanCache() : null;
+	}
+
+	@Benchmark
+	public RidePlan planRide() throws InvalidBikeTypeException {
+		Point source = points[next++ & (POINTS - 1)];
+		Point destination = points[next++ & (POINTS - 1)];
+		try {
+			if (cache != null)
+				return cache.planRide(strategy, policy, source, destination, user, bikeType, network);
+			return strategy.planRide(source, destination, user, bikeType, network);
+		} catch (NoValidStationFoundException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.Network;
+import core.station.InvalidTimeSpanException;
+import core.station.Station;
+import core.station.stationSort.LeastOccupiedSort;
+import core.station.stationSort.MostUsedSort;
+import core.station.stationSort.SortingStrategy;
+
+/**
+ * Sorting all the stations of a network, and taking the first ten of them,
+ * with the LEAST_OCCUPIED and MOST_USED policies. Every station has a history
+ * of rentals, so the occupation rates and the number of uses differ.
+ *
+ * @author animato
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StationSortBenchmark {
+	@Param({ "100", "1000", "10000" })
+	public int numberOfStations;
+
+	@Param({ "LEAST_OCCUPIED", "MOST_USED" })
+	public String policy;
+
+	@Param({ "20" })
+	public int rentalsPerStation;
+
+	private ArrayList<Station> stations;
+	private SortingStrategy strategy;
+	private LocalDateTime end;
+
+	@Setup
+	public void setup() {
+		Network network = SyntheticNetworks.create(numberOfStations, 1);
+		stations = SyntheticNetworks.stations(network);
+		end = SyntheticNetworks.START;
+		for (int i = 0; i < stations.size(); i++) {
+			// a different number of rentals for each station
+			LocalDateTime last = SyntheticNetworks.addHistory(stations.get(i), 1 + i % rentalsPerStation,
+					SyntheticNetworks.START, i);
+			if (last.isAfter(end))
+				end = last;
+		}
+		strategy = policy.equals("MOST_USED") ? new MostUsedSort() : new LeastOccupiedSort();
+	}
+
+	@Benchmark
+	public ArrayList<Station> sort() throws InvalidTimeSpanException {
+		return strategy.sort(new ArrayList<Station>(stations), SyntheticNetworks.START, end);
+	}
+
+	@Benchmark
+	public ArrayList<Station> sortTop10() throws InvalidTimeSpanException {
+		return strategy.sortTop(new ArrayList<Station>(stations), 10, SyntheticNetworks.START, end);
+	}
+}
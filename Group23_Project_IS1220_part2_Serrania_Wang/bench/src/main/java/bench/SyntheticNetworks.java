@@ -0,0 +1,192 @@
+package bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import core.Network;
+import core.bike.Bike;
+import core.card.CardVisitorFactory;
+import core.card.InvalidCardTypeException;
+import core.rentals.BikeRental;
+import core.simulation.CityTraffic;
+import core.station.BikeNotFoundException;
+import core.station.FullStationException;
+import core.station.OfflineStationException;
+import core.station.Station;
+import core.user.User;
+import utils.Point;
+
+/**
+ * Generators of synthetic networks for the benchmarks. <br>
+ * Everything is drawn from generators seeded by the caller, so a benchmark
+ * always runs on the same network. By default the side of the network grows
+ * with the number of stations, keeping the same density of stations (as when
+ * a city adds districts), so that the ride plans look at a comparable
+ * neighbourhood whatever the size of the network.
+ *
+ * @author animato
+ *
+ */
+public class SyntheticNetworks {
+	public static final LocalDateTime START = LocalDateTime.of(2018, 1, 1, 0, 0);
+	// Stations per square km, as in a dense city center
+	public static final double DENSITY = 10;
+	public static final int SLOTS_PER_STATION = 20;
+	public static final double PERCENTAGE_OF_BIKES = 0.7;
+	public static final double PERCENTAGE_OF_PLUS_STATIONS = 0.3;
+	public static final double PERCENTAGE_OF_ELEC_BIKES = 0.3;
+
+	private SyntheticNetworks() {
+	}
+
+	// Core methods
+
+	/**
+	 * Gives the side of a network holding the given number of stations at the
+	 * default density
+	 *
+	 * @param numberOfStations
+	 *            the number of stations
+	 * @return the side, in km
+	 */
+	public static double side(int numberOfStations) {
+		return Math.sqrt(numberOfStations / DENSITY);
+	}
+
+	/**
+	 * Creates a network with the default density, slots and bikes
+	 *
+	 * @param numberOfStations
+	 *            the number of stations
+	 * @param seed
+	 *            the seed of the stations coordinates and bikes
+	 * @return the network
+	 */
+	public static Network create(int numberOfStations, long seed) {
+		return create(numberOfStations, SLOTS_PER_STATION, side(numberOfStations), PERCENTAGE_OF_BIKES,
+				PERCENTAGE_OF_PLUS_STATIONS, PERCENTAGE_OF_ELEC_BIKES, seed);
+	}
+
+	/**
+	 * Creates a network
+	 *
+	 * @param numberOfStations
+	 *            the number of stations
+	 * @param numberOfParkingSlotsPerStation
+	 *            the number of parking slots of each station
+	 * @param side
+	 *            side of the network, in km
+	 * @param percentageOfBikes
+	 *            percentage of bikes in the network
+	 * @param percentageOfPlusStations
+	 *            percentage of plus stations in the network
+	 * @param percentageOfElecBikes
+	 *            percentage of elec bikes in the network
+	 * @param seed
+	 *            the seed of the stations coordinates and bikes
+	 * @return the network
+	 */
+	public static Network create(int numberOfStations, int numberOfParkingSlotsPerStation, double side,
+			double percentageOfBikes, double percentageOfPlusStations, double percentageOfElecBikes, long seed) {
+		return CityTraffic.createNetwork("bench" + numberOfStations, numberOfStations, numberOfParkingSlotsPerStation,
+				side, percentageOfBikes, percentageOfPlusStations, percentageOfElecBikes, START, new Random(seed));
+	}
+
+	/**
+	 * Gives the stations of a network sorted by id
+	 *
+	 * @param network
+	 *            the network
+	 * @return the stations
+	 */
+	public static ArrayList<Station> stations(Network network) {
+		ArrayList<Station> stations = new ArrayList<Station>(network.getStations().values());
+		stations.sort(Comparator.comparingInt(Station::getId));
+		return stations;
+	}
+
+	/**
+	 * Draws points uniformly in a network
+	 *
+	 * @param count
+	 *            the number of points
+	 * @param side
+	 *            side of the network, in km
+	 * @param seed
+	 *            the seed of the points
+	 * @return the points
+	 */
+	public static Point[] randomPoints(int count, double side, long seed) {
+		Random random = new Random(seed);
+		Point[] points = new Point[count];
+		for (int i = 0; i < count; i++) {
+			points[i] = new Point(random.nextDouble() * side, random.nextDouble() * side);
+		}
+		return points;
+	}
+
+	/**
+	 * Adds users to a network, with random coordinates and the three types of
+	 * cards in turn
+	 *
+	 * @param network
+	 *            the network
+	 * @param count
+	 *            the number of users
+	 * @param seed
+	 *            the seed of the coordinates
+	 * @return the users
+	 */
+	public static List<User> addUsers(Network network, int count, long seed) {
+		String[] cardTypes = { "NO_CARD", "VLIBRE_CARD", "VMAX_CARD" };
+		CardVisitorFactory cardFactory = new CardVisitorFactory();
+		Point[] coordinates = randomPoints(count, network.getSide(), seed);
+		List<User> users = new ArrayList<User>(count);
+		try {
+			for (int i = 0; i < count; i++) {
+				User user = new User("bench" + i, coordinates[i], cardFactory.createCard(cardTypes[i % 3]));
+				network.addUser(user);
+				users.add(user);
+			}
+		} catch (InvalidCardTypeException e) {
+			throw new IllegalStateException(e);
+		}
+		return users;
+	}
+
+	/**
+	 * Gives a station a long history: a bike is rented then returned, again and
+	 * again, with random gaps between the changes
+	 *
+	 * @param station
+	 *            the station, holding at least one bike
+	 * @param numberOfRentals
+	 *            the number of rentals to add to the history
+	 * @param start
+	 *            the date of the first rental
+	 * @param seed
+	 *            the seed of the gaps
+	 * @return the date of the last return
+	 */
+	public static LocalDateTime addHistory(Station station, int numberOfRentals, LocalDateTime start, long seed) {
+		Random random = new Random(seed);
+		String bikeType = station.getNumberOfBikes("MECH") > 0 ? "MECH" : "ELEC";
+		LocalDateTime date = start;
+		try {
+			for (int i = 0; i < numberOfRentals; i++) {
+				date = date.plusMinutes(1 + random.nextInt(30));
+				Bike bike = station.rentBike(bikeType, date);
+				BikeRental rental = new BikeRental(bike, date);
+				date = date.plusMinutes(1 + random.nextInt(60));
+				rental.setReturnDate(date);
+				station.returnBike(rental, date);
+			}
+		} catch (BikeNotFoundException | OfflineStationException | FullStationException e) {
+			throw new IllegalStateException(e);
+		}
+		return date;
+	}
+}
@@ -0,0 +1,286 @@
+package clui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Server running the commands of the CLUI sent through local TCP connections.
+ * <br>
+ * A request is one line: a request id (any word), then the command as typed in
+ * the CLUI, e.g. "42 rentBike myVelib 01/01/2000T10:00:00 1 2 MECH". Requests
+ * can be pipelined: a client may send many requests without waiting for the
+ * responses. Each request is submitted to the CLUI (commands for different
+ * networks run in parallel), and its response is sent as soon as it is ready,
+ * so responses can come back in another order than the requests. <br>
+ * A response is a line holding the request id and the length in bytes of the
+ * message, followed by the message itself (UTF-8, possibly several lines).
+ * <br>
+ * All connections are served by one thread with a non-blocking selector; no
+ * thread is held by a connection while its commands run.
+ *
+ * @author animato
+ *
+ */
+public class CLUIServer implements Runnable, Closeable {
+	private static final int MAX_REQUEST_LENGTH = 1 << 16;
+
+	private final CLUIThread clui;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	// Connections with responses ready to be sent, filled by the threads running
+	// the commands and emptied by the selector thread
+	private final ConcurrentLinkedQueue<Connection> readyToWrite = new ConcurrentLinkedQueue<Connection>();
+	private volatile boolean running = true;
+
+	/**
+	 * State of a client connection
+	 */
+	private class Connection {
+		final SocketChannel channel;
+		final SelectionKey key;
+		final ByteBuffer input = ByteBuffer.allocate(8192);
+		// the line being read
+		final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		// responses ready to be sent (guarded by the connection)
+		final ArrayDeque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+		// number of requests whose response was not queued yet (selector thread)
+		int pending = 0;
+		boolean inputClosed = false;
+
+		Connection(SocketChannel channel, SelectionKey key) {
+			this.channel = channel;
+			this.key = key;
+		}
+	}
+
+	// Constructor
+
+	/**
+	 * Creates a server bound to the loopback address
+	 *
+	 * @param clui
+	 *            the CLUI running the commands
+	 * @param port
+	 *            the port to listen to (0 for any free port)
+	 * @throws IOException
+	 *             when the server cannot be bound
+	 */
+	public CLUIServer(CLUIThread clui, int port) throws IOException {
+		this(clui, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	/**
+	 * Creates a server bound to the given address
+	 *
+	 * @param clui
+	 *            the CLUI running the commands
+	 * @param address
+	 *            the address to listen to
+	 * @throws IOException
+	 *             when the server cannot be bound
+	 */
+	public CLUIServer(CLUIThread clui, InetSocketAddress address) throws IOException {
+		this.clui = clui;
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		try {
+			serverChannel.bind(address);
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			serverChannel.close();
+			selector.close();
+			throw e;
+		}
+	}
+
+	// Core methods
+
+	/**
+	 * Serves the connections until the server is closed
+	 */
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				selector.select();
+				Connection ready;
+				while ((ready = readyToWrite.poll()) != null) {
+					if (ready.key.isValid())
+						ready.key.interestOps(ready.key.interestOps() | SelectionKey.OP_WRITE);
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							Connection connection = (Connection) key.attachment();
+							if (key.isReadable())
+								read(connection);
+							if (key.isValid() && key.isWritable())
+								write(connection);
+						}
+					} catch (IOException e) {
+						// the client is gone
+						disconnect(key);
+					}
+				}
+			}
+		} catch (IOException | ClosedSelectorException e) {
+			if (running)
+				System.out.println("The server stopped: " + e.getMessage());
+		} finally {
+			closeChannels();
+		}
+	}
+
+	/**
+	 * Stops the server and closes all the connections
+	 */
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * Gives the port the server listens to
+	 *
+	 * @return the port
+	 * @throws IOException
+	 *             when the server is closed
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null)
+			return;
+		channel.configureBlocking(false);
+		SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+		key.attach(new Connection(channel, key));
+	}
+
+	/**
+	 * Reads the available bytes of a connection and submits every complete line
+	 */
+	private void read(Connection connection) throws IOException {
+		int n = connection.channel.read(connection.input);
+		if (n < 0) {
+			// the client sent all its requests: close once they are answered
+			connection.inputClosed = true;
+			connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+			closeIfDone(connection);
+			return;
+		}
+		connection.input.flip();
+		while (connection.input.hasRemaining()) {
+			byte b = connection.input.get();
+			if (b == '\n') {
+				String request = new String(connection.line.toByteArray(), StandardCharsets.UTF_8).trim();
+				connection.line.reset();
+				if (!request.isEmpty())
+					handle(connection, request);
+			} else if (connection.line.size() < MAX_REQUEST_LENGTH) {
+				connection.line.write(b);
+			} else {
+				throw new IOException("Request too long");
+			}
+		}
+		connection.input.clear();
+	}
+
+	/**
+	 * Submits a request to the CLUI. The response is queued once the command is
+	 * done.
+	 */
+	private void handle(Connection connection, String request) {
+		int space = request.indexOf(' ');
+		String requestId = space < 0 ? request : request.substring(0, space);
+		String command = space < 0 ? "" : request.substring(space + 1);
+		connection.pending++;
+		clui.submit(command).whenComplete((message, e) -> {
+			if (e != null)
+				message = "The command failed: " + e;
+			respond(connection, requestId, message);
+		});
+	}
+
+	/**
+	 * Queues a response (called by the thread which ran the command)
+	 */
+	private void respond(Connection connection, String requestId, String message) {
+		byte[] body = message.getBytes(StandardCharsets.UTF_8);
+		byte[] header = (requestId + " " + body.length + "\n").getBytes(StandardCharsets.UTF_8);
+		ByteBuffer response = ByteBuffer.allocate(header.length + body.length);
+		response.put(header).put(body).flip();
+		synchronized (connection) {
+			connection.output.add(response);
+		}
+		readyToWrite.add(connection);
+		selector.wakeup();
+	}
+
+	/**
+	 * Sends the queued responses of a connection, as long as the socket accepts
+	 * them
+	 */
+	private void write(Connection connection) throws IOException {
+		synchronized (connection) {
+			while (!connection.output.isEmpty()) {
+				ByteBuffer response = connection.output.peek();
+				connection.channel.write(response);
+				if (response.hasRemaining())
+					return; // the socket is full: wait for the next OP_WRITE
+				connection.output.poll();
+				connection.pending--;
+			}
+			connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+		}
+		closeIfDone(connection);
+	}
+
+	private void closeIfDone(Connection connection) throws IOException {
+		if (connection.inputClosed && connection.pending == 0) {
+			disconnect(connection.key);
+		}
+	}
+
+	private void disconnect(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+
+	private void closeChannels() {
+		try {
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		} catch (IOException | ClosedSelectorException e) {
+			// closing anyway
+		}
+	}
+}
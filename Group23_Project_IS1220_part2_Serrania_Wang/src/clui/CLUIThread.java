@@ -1,23 +1,54 @@
 package clui;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import core.Network;
+import core.journal.NetworkJournal;
+import core.journal.NetworkSnapshot;
 import utils.DateParser;
 
 /**
- * A thread that runs commands from the command line user interface.
+ * A thread that runs commands from the command line user interface. <br>
+ * Commands can be submitted to run in the background: each network has its own
+ * queue and thread (its single writer), so that commands for different networks
+ * run in parallel while the commands for one network run one after the other.
+ * Commands which concern all networks (reset, runtest, runbatch, listNetworks,
+ * replay, restore) wait for the commands submitted before them, and the commands
+ * submitted after them wait for them.
  * 
  * @author animato
  *
  */
 public class CLUIThread extends Thread implements Observer {
-	private HashMap<String, Network> networks = new HashMap<String, Network>();
+	private final ConcurrentHashMap<String, Network> networks = new ConcurrentHashMap<String, Network>();
+
+	// One single-thread executor per network name, and one for the other commands
+	private final ConcurrentHashMap<String, ExecutorService> networkExecutors =
+			new ConcurrentHashMap<String, ExecutorService>();
+	private final ExecutorService globalExecutor = Executors.newSingleThreadExecutor(r -> daemon(r, "clui-global"));
+	// Last command submitted for each network since the last global command, and
+	// the last global command (guarded by submitLock)
+	private final HashMap<String, CompletableFuture<String>> lastNetworkCommands =
+			new HashMap<String, CompletableFuture<String>>();
+	private CompletableFuture<String> lastGlobalCommand = CompletableFuture.completedFuture("");
+	private final Object submitLock = new Object();
+	// Where the notifications of the networks are written
+	private volatile Consumer<String> notificationOutput = System.out::println;
 
 	public final static String helpMessage = "\n =========== Help =========== \n" 
 			+ "Setup commands:\n"
@@ -27,6 +58,10 @@ public class CLUIThread extends Thread implements Observer {
 			+ "  listNetworks\n" 
 			+ "  deleteNetwork <networkName>\n" 
 			+ "  reset\n" 
+			+ "  journal <networkName> <journalFilePath>\n" 
+			+ "  replay <journalFilePath>\n" 
+			+ "  snapshot <networkName> <snapshotFilePath>\n" 
+			+ "  restore <snapshotFilePath>\n" 
 			+ "\nRent & Return commands:\n"
 			+ "  rentBike <networkName> <timeOfRental> <userId> <stationId> <bikeType> \n"
 			+ "  returnBike <networkName> <timeOfReturn> <userId> <stationId> \n"
@@ -39,9 +74,10 @@ public class CLUIThread extends Thread implements Observer {
 			+ "  displayStation <networkName> <stationId> \n" 
 			+ "  displayUser <networkName> <userId> \n"
 			+ "  display <networkName> \n"
-			+ "  sortStation <networkName> <sortPolicy> \n"
+			+ "  sortStation <networkName> <sortPolicy> [<k>] \n"
 			+ "\nTest command:\n"
 			+ "  runtest <scenarioFilePath>\n" 
+			+ "  runbatch <numberOfThreads> <scenarioFilePath> [<scenarioFilePath> ...]\n" 
 			+ "  help\n" 
 			+ "  help <commandName>\n"
 			+ "  exit\n"
@@ -96,8 +132,9 @@ public class CLUIThread extends Thread implements Observer {
 			+ "displayUser <networkName> <userId> \n\n" + "Displays the statistics of a user \n";
 
 	public final static String sortStationUsage = "\n =========== displayUser usage =========== \n"
-			+ "sortStation <networkName> <sortPolicy> \n\n" + "Example: sortStation myVelib LEAST_OCCUPIED \n"
-			+ "Types of policies: LEAST_OCCUPIED, MOST_USED";
+			+ "sortStation <networkName> <sortPolicy> [<k>] \n\n" + "Example: sortStation myVelib LEAST_OCCUPIED \n"
+			+ "Types of policies: LEAST_OCCUPIED, MOST_USED \n"
+			+ "If k is given, only the first k stations are displayed";
 
 	public final static String displayUsage = "\n =========== display usage =========== \n"
 			+ "display <networkName> \n\n" + "Displays the details of the network \n";
@@ -107,12 +144,36 @@ public class CLUIThread extends Thread implements Observer {
 			+ "Initially available test scenarios are: failRentReturnScenario.txt, planRideScenario.txt,\n"
 			+ "statisticsScenario.txt, triggerNotificationScenario.txt, failingCommandsScenario.txt\n";
 
+	public final static String runbatchUsage = "\n =========== runbatch usage =========== \n"
+			+ "runbatch <numberOfThreads> <scenarioFilePath> [<scenarioFilePath> ...] \n\n"
+			+ "Example: runbatch 4 statisticsScenario.txt planRideScenario.txt \n"
+			+ "Runs the given test scenarios in parallel, each one in a new CLUI, and gives the time taken \n"
+			+ "by each scenario. The results of each scenario are stored in its result file. \n";
+
 	public final static String deleteNetworkUsage = "\n =========== deleteNetwork usage =========== \n"
 			+ "deleteNetwork <networkName> \n\n" + "Delete network from CLUI \n";
 
 	public final static String listNetworksUsage = "\n =========== listNetworks usage =========== \n"
 			+ "listNetworks \n\n" + "List all networks within the CLUI \n";
 
+	public final static String journalUsage = "\n =========== journal usage =========== \n"
+			+ "journal <networkName> <journalFilePath> \n\n" + "Example: journal myVelib myVelib.journal \n"
+			+ "Records the network and all its next changes in the given file (replaced if it exists). \n"
+			+ "The network can then be rebuilt with the replay command. \n";
+
+	public final static String replayUsage = "\n =========== replay usage =========== \n"
+			+ "replay <journalFilePath> \n\n" + "Example: replay myVelib.journal \n"
+			+ "Rebuilds a network from its journal. Its next changes are added to the same journal. \n";
+
+	public final static String snapshotUsage = "\n =========== snapshot usage =========== \n"
+			+ "snapshot <networkName> <snapshotFilePath> \n\n" + "Example: snapshot myVelib myVelib.snapshot \n"
+			+ "Saves the current state of the network in the given file (replaced if it exists). \n"
+			+ "The network can then be restored with the restore command. \n";
+
+	public final static String restoreUsage = "\n =========== restore usage =========== \n"
+			+ "restore <snapshotFilePath> \n\n" + "Example: restore myVelib.snapshot \n"
+			+ "Restores a network from a snapshot, as it was when the snapshot was saved. \n";
+
 	public final static String planRideUsage = "\n =========== planRide usage =========== \n"
 			+ "planRide <networkName> <sourceX> <sourceY> <destinationX> <destinationY> <userId> <policy> <bikeType>\n\n"
 			+ "planRide myVelib 1.0 1.0 3.0 3.0 1 FASTEST MECH \n"
@@ -174,7 +235,9 @@ public class CLUIThread extends Thread implements Observer {
 				Network n = new Network(name, 10, 10, 4, 0.75, 0.5, 0.5, creationDate);
 				// add this clui to the observers of network
 				n.addObserver(this);
-				networks.put(name, n);
+				// another thread may have created a network with the same name meanwhile
+				if (networks.putIfAbsent(name, n) != null)
+					throw new IncorrectArgumentException("Network " + name + " already exists.");
 
 				return "Network " + args[0] + " has been sucessfully created with " + n.getStationIds().size()
 						+ " stations (ids: " + n.getStationIds() + ").";
@@ -200,7 +263,9 @@ public class CLUIThread extends Thread implements Observer {
 			Network n = new Network(name, nstations, nslots, sidearea, percentageOfBikes, 0.5, 0.5, creationDate);
 			// add this clui to the observers of network
 			n.addObserver(this);
-			networks.put(name, n);
+			// another thread may have created a network with the same name meanwhile
+			if (networks.putIfAbsent(name, n) != null)
+				throw new IncorrectArgumentException("Network " + name + " already exists.");
 
 			return "Network " + args[0] + " has been sucessfully created with " + n.getStationIds().size()
 					+ " stations (ids: " + n.getStationIds() + ").";
@@ -369,17 +434,28 @@ public class CLUIThread extends Thread implements Observer {
 	 * Display the list of stations sorted by given policy
 	 * 
 	 * @param args
-	 *            [name] [sortPolicy]
+	 *            [name] [sortPolicy] or [name] [sortPolicy] [k]
 	 * @return A message to be printed in sdtout
 	 * @throws IncorrectArgumentException
 	 * 				if the input arguments cannot be parsed correctly
 	 */
 	public String sortStation(String[] args) throws IncorrectArgumentException {
-		verifyArgumentLength(2, args.length);
+		// Cannot be done with verifyArgumentLength because there are 2 possible lengths
+		if (args.length != 2 && args.length != 3)
+			throw new IncorrectArgumentException("Number of arguments is incorrect.");
 		String name = args[0];
 		if (!hasNetwork(name))
 			throw new IncorrectArgumentException("Network " + name + " does not exist.");
-		return networks.get(name).sortStation(args[1]);
+		if (args.length == 2)
+			return networks.get(name).sortStation(args[1]);
+		try {
+			int k = Integer.parseInt(args[2]);
+			if (k < 0)
+				throw new IncorrectArgumentException("k needs to be a positive integer.");
+			return networks.get(name).sortStation(args[1], k);
+		} catch (NumberFormatException e) {
+			throw new IncorrectArgumentException("k needs to be an integer.");
+		}
 	}
 
 	/**
@@ -413,10 +489,115 @@ public class CLUIThread extends Thread implements Observer {
 		String name = args[0];
 		if (!hasNetwork(name))
 			throw new IncorrectArgumentException("Network " + name + " does not exist.");
-		networks.remove(name);
+		Network n = networks.remove(name);
+		try {
+			n.closeJournal();
+		} catch (IOException e) {
+			return "Removed network " + args[0] + ", but its journal could not be closed: " + e.getMessage();
+		}
 		return "Sucessfully removed network " + args[0] + ".";
 	}
 
+	/**
+	 * record a network and its next changes in a journal file
+	 * 
+	 * @param args
+	 *            [name] [journalFilePath]
+	 * @return A message to be printed in sdtout
+	 * @throws IncorrectArgumentException
+	 * 				if the input arguments cannot be parsed correctly
+	 */
+	public String journal(String[] args) throws IncorrectArgumentException {
+		verifyArgumentLength(2, args.length);
+		String name = args[0];
+		if (!hasNetwork(name))
+			throw new IncorrectArgumentException("Network " + name + " does not exist.");
+		Network n = networks.get(name);
+		try {
+			n.closeJournal();
+			NetworkJournal.create(Paths.get(args[1]), n);
+			return "Network " + name + " is recorded in journal " + args[1] + ".";
+		} catch (IOException e) {
+			return "The journal " + args[1] + " could not be created: " + e.getMessage();
+		}
+	}
+
+	/**
+	 * rebuild a network from its journal file
+	 * 
+	 * @param args
+	 *            [journalFilePath]
+	 * @return A message to be printed in sdtout
+	 * @throws IncorrectArgumentException
+	 * 				if the input arguments cannot be parsed correctly
+	 */
+	public String replay(String[] args) throws IncorrectArgumentException {
+		verifyArgumentLength(1, args.length);
+		Network n;
+		try {
+			n = NetworkJournal.replay(Paths.get(args[0]));
+		} catch (IOException e) {
+			return "The journal " + args[0] + " could not be replayed: " + e.getMessage();
+		}
+		if (networks.putIfAbsent(n.getName(), n) != null) {
+			try {
+				n.closeJournal();
+			} catch (IOException e) {
+				// the network is not kept anyway
+			}
+			throw new IncorrectArgumentException("Network " + n.getName() + " already exists.");
+		}
+		n.addObserver(this);
+		return "Network " + n.getName() + " has been rebuilt from journal " + args[0] + " with "
+				+ n.getStationIds().size() + " stations and " + n.getUserIds().size() + " users.";
+	}
+
+	/**
+	 * save the current state of a network in a snapshot file
+	 * 
+	 * @param args
+	 *            [name] [snapshotFilePath]
+	 * @return A message to be printed in sdtout
+	 * @throws IncorrectArgumentException
+	 * 				if the input arguments cannot be parsed correctly
+	 */
+	public String snapshot(String[] args) throws IncorrectArgumentException {
+		verifyArgumentLength(2, args.length);
+		String name = args[0];
+		if (!hasNetwork(name))
+			throw new IncorrectArgumentException("Network " + name + " does not exist.");
+		try {
+			NetworkSnapshot.write(networks.get(name), Paths.get(args[1]));
+			return "Network " + name + " has been saved in snapshot " + args[1] + ".";
+		} catch (IOException e) {
+			return "The snapshot " + args[1] + " could not be written: " + e.getMessage();
+		}
+	}
+
+	/**
+	 * restore a network from a snapshot file
+	 * 
+	 * @param args
+	 *            [snapshotFilePath]
+	 * @return A message to be printed in sdtout
+	 * @throws IncorrectArgumentException
+	 * 				if the input arguments cannot be parsed correctly
+	 */
+	public String restore(String[] args) throws IncorrectArgumentException {
+		verifyArgumentLength(1, args.length);
+		Network n;
+		try {
+			n = NetworkSnapshot.load(Paths.get(args[0]));
+		} catch (IOException e) {
+			return "The snapshot " + args[0] + " could not be restored: " + e.getMessage();
+		}
+		if (networks.putIfAbsent(n.getName(), n) != null)
+			throw new IncorrectArgumentException("Network " + n.getName() + " already exists.");
+		n.addObserver(this);
+		return "Network " + n.getName() + " has been restored from snapshot " + args[0] + " with "
+				+ n.getStationIds().size() + " stations and " + n.getUserIds().size() + " users.";
+	}
+
 	/**
 	 * plan a ride for a user given source and destination, as well as policy and
 	 * bike type.
@@ -447,6 +628,37 @@ public class CLUIThread extends Thread implements Observer {
 		}
 	}
 
+	/**
+	 * run scenario files in parallel, each one in a new clui
+	 * 
+	 * @param args
+	 *            [numberOfThreads] [scenarioFilePath] ...
+	 * @return the timing report, to be printed in sdtout
+	 * @throws IncorrectArgumentException
+	 * 				if the input arguments cannot be parsed correctly
+	 */
+	public String runbatch(String[] args) throws IncorrectArgumentException {
+		if (args.length < 2)
+			throw new IncorrectArgumentException("Number of arguments is incorrect.");
+		int numberOfThreads;
+		try {
+			numberOfThreads = Integer.parseInt(args[0]);
+		} catch (NumberFormatException e) {
+			throw new IncorrectArgumentException("The number of threads needs to be an integer.");
+		}
+		if (numberOfThreads < 1)
+			throw new IncorrectArgumentException("The number of threads needs to be positive.");
+		ArrayList<Path> scenarios = new ArrayList<Path>();
+		for (int i = 1; i < args.length; i++) {
+			if (!args[i].endsWith(".txt"))
+				throw new IncorrectArgumentException("Scenario files should end with .txt: " + args[i]);
+			scenarios.add(Paths.get("src/eval", args[i]));
+		}
+		long start = System.nanoTime();
+		List<RunCommandsFromFile.ScenarioReport> reports = RunCommandsFromFile.runBatch(scenarios, numberOfThreads);
+		return RunCommandsFromFile.formatReport(reports, System.nanoTime() - start);
+	}
+
 	/**
 	 * Delete all networks, reset ID generator
 	 * @return A message to be printed in sdtout
@@ -454,10 +666,24 @@ public class CLUIThread extends Thread implements Observer {
 	 */
 	public String reset() {
 		Network.reset();
-		this.networks = new HashMap<String, Network>();
+		closeJournals();
+		this.networks.clear();
 		return "All networks deleted, reseted ID generator.";
 	}
 
+	/**
+	 * Close the journals of all networks
+	 */
+	private void closeJournals() {
+		for (Network n : networks.values()) {
+			try {
+				n.closeJournal();
+			} catch (IOException e) {
+				notificationOutput.accept("The journal of network " + n.getName() + " could not be closed: " + e.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * 
 	 * @param arguments
@@ -477,6 +703,8 @@ public class CLUIThread extends Thread implements Observer {
 				return CLUIThread.resetUsage;
 			case runtest:
 				return CLUIThread.runtestUsage;
+			case runbatch:
+				return CLUIThread.runbatchUsage;
 			case setup:
 				return CLUIThread.setupUsage;
 			case addUser:
@@ -501,11 +729,152 @@ public class CLUIThread extends Thread implements Observer {
 				return CLUIThread.deleteNetworkUsage;
 			case planRide:
 				return CLUIThread.planRideUsage;
+			case journal:
+				return CLUIThread.journalUsage;
+			case replay:
+				return CLUIThread.replayUsage;
+			case snapshot:
+				return CLUIThread.snapshotUsage;
+			case restore:
+				return CLUIThread.restoreUsage;
 			}
 		}
 		return CLUIThread.helpMessage;
 	}
 
+	/**
+	 * Submits a command to run in the background. The command runs on the thread
+	 * of the network it concerns, after the commands submitted before it for the
+	 * same network; commands for other networks run in parallel. <br>
+	 * The results complete in any order: callers wanting them in submission order
+	 * wait for the futures in the order they were submitted.
+	 * 
+	 * @param userInput
+	 *            user input in the clui
+	 * @return the message to be printed in stdout, once the command is done
+	 */
+	public CompletableFuture<String> submit(String userInput) {
+		String[] inputs = sanitizeInput(userInput);
+		Commands command;
+		try {
+			command = Commands.valueOf(inputs[0]);
+		} catch (IllegalArgumentException ex) {
+			return CompletableFuture.completedFuture(parseUserInput(userInput));
+		}
+		if (command == Commands.help) {
+			// does not depend on the networks
+			return CompletableFuture.completedFuture(parseUserInput(userInput));
+		}
+
+		synchronized (submitLock) {
+			String networkName = getNetworkName(command, inputs);
+			CompletableFuture<String> result;
+			if (networkName != null) {
+				CompletableFuture<String> previous = lastNetworkCommands.getOrDefault(networkName, lastGlobalCommand);
+				ExecutorService executor = networkExecutors.computeIfAbsent(networkName,
+						name -> Executors.newSingleThreadExecutor(r -> daemon(r, "clui-network-" + name)));
+				result = previous.handle((message, e) -> message).thenApplyAsync(message -> execute(userInput),
+						executor);
+				lastNetworkCommands.put(networkName, result);
+				if (command == Commands.deleteNetwork) {
+					// the next commands for this name get a new thread, after this one
+					retire(networkExecutors.remove(networkName), result);
+				}
+			} else {
+				// wait for every command submitted so far
+				ArrayList<CompletableFuture<String>> previous = new ArrayList<CompletableFuture<String>>(
+						lastNetworkCommands.values());
+				previous.add(lastGlobalCommand);
+				result = CompletableFuture.allOf(previous.toArray(new CompletableFuture<?>[previous.size()]))
+						.handle((v, e) -> v).thenApplyAsync(v -> execute(userInput), globalExecutor);
+				lastNetworkCommands.clear();
+				lastGlobalCommand = result;
+				if (command == Commands.reset) {
+					// all the networks are deleted
+					for (String name : new ArrayList<String>(networkExecutors.keySet())) {
+						retire(networkExecutors.remove(name), result);
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Stops the thread of a network once the given command, the last one it
+	 * runs, is done
+	 * 
+	 * @param executor
+	 *            the executor of the network
+	 * @param lastCommand
+	 *            the last command submitted to it
+	 */
+	private static void retire(ExecutorService executor, CompletableFuture<String> lastCommand) {
+		if (executor != null) {
+			lastCommand.whenComplete((message, e) -> executor.shutdown());
+		}
+	}
+
+	/**
+	 * Stops the threads running the submitted commands, once they are done
+	 */
+	public void shutdown() {
+		for (ExecutorService executor : networkExecutors.values()) {
+			executor.shutdown();
+		}
+		globalExecutor.shutdown();
+	}
+
+	/**
+	 * Runs a submitted command. An unexpected exception is turned into a message,
+	 * so that it does not stop the commands waiting for this one.
+	 */
+	private String execute(String userInput) {
+		try {
+			return parseUserInput(userInput);
+		} catch (RuntimeException e) {
+			return "The command failed: " + e;
+		}
+	}
+
+	/**
+	 * Gives the name of the network a command is about
+	 * 
+	 * @param command
+	 *            the command
+	 * @param inputs
+	 *            the command and its arguments
+	 * @return the name of the network, or null when the command concerns all the
+	 *         networks
+	 */
+	private static String getNetworkName(Commands command, String[] inputs) {
+		switch (command) {
+		case setup:
+		case addUser:
+		case offline:
+		case online:
+		case rentBike:
+		case returnBike:
+		case displayStation:
+		case displayUser:
+		case sortStation:
+		case display:
+		case deleteNetwork:
+		case planRide:
+		case journal:
+		case snapshot:
+			return inputs.length > 1 ? inputs[1] : "";
+		default:
+			return null;
+		}
+	}
+
+	private static Thread daemon(Runnable r, String name) {
+		Thread t = new Thread(r, name);
+		t.setDaemon(true);
+		return t;
+	}
+
 	/**
 	 * Parses the user input and calls the correct method to execute the command
 	 * 
@@ -539,6 +908,13 @@ public class CLUIThread extends Thread implements Observer {
 			}
 			RunCommandsFromFile.run(arguments[0], this);
 			break;
+		case runbatch:
+			try {
+				message = runbatch(arguments);
+			} catch (IncorrectArgumentException e) {
+				message = e.getMessage() + runbatchUsage;
+			}
+			break;
 		case help:
 			message = this.help(arguments);
 			break;
@@ -643,6 +1019,38 @@ public class CLUIThread extends Thread implements Observer {
 			message += String.join("\n", networks.keySet());
 			break;
 
+		case journal:
+			try {
+				message = journal(arguments);
+			} catch (IncorrectArgumentException e) {
+				message = e.getMessage() + journalUsage;
+			}
+			break;
+
+		case replay:
+			try {
+				message = replay(arguments);
+			} catch (IncorrectArgumentException e) {
+				message = e.getMessage() + replayUsage;
+			}
+			break;
+
+		case snapshot:
+			try {
+				message = snapshot(arguments);
+			} catch (IncorrectArgumentException e) {
+				message = e.getMessage() + snapshotUsage;
+			}
+			break;
+
+		case restore:
+			try {
+				message = restore(arguments);
+			} catch (IncorrectArgumentException e) {
+				message = e.getMessage() + restoreUsage;
+			}
+			break;
+
 		}
 		return message;
 
@@ -672,26 +1080,46 @@ public class CLUIThread extends Thread implements Observer {
 		System.out.println("\nWelcome to MyVelib. Please enter your command.");
 		String userInput = "";
 		Scanner reader = new Scanner(System.in); // Reading from System.in
+		// The messages are printed in the order the commands were typed, each one
+		// once its command and the previous ones are done
+		CompletableFuture<Void> output = CompletableFuture.completedFuture(null);
 		while (true) {
 			System.out.print(">>> ");
 			userInput = reader.nextLine(); // Scans for user input
 			if (userInput.equals("exit")) {
+				output.join();
 				System.out.println("Thank you for using Velib! We hope to see you later!");
 				break;
 			}
-			System.out.println(parseUserInput(userInput));
-			System.out.println("\n");
+			output = output.thenCombine(submit(userInput), (v, message) -> {
+				System.out.println(message);
+				System.out.println("\n");
+				return null;
+			});
 		}
+		shutdown();
+		closeJournals();
 		reader.close();
 	}
 
 	/**
-	 * Prints out notification.
+	 * Prints out notification, to the notification output.
 	 */
 	@Override
 	public void update(Observable o, Object arg) {
 		if (o instanceof Network && arg instanceof String) {
-			System.out.println("======Notification========\n" + arg);
+			notificationOutput.accept("======Notification========\n" + arg);
 		}
 	}
+
+	/**
+	 * Sets where the notifications of the networks are written (stdout by
+	 * default), e.g. with the results of the commands of a scenario
+	 * 
+	 * @param notificationOutput
+	 *            the output of the notifications
+	 */
+	public void setNotificationOutput(Consumer<String> notificationOutput) {
+		this.notificationOutput = notificationOutput;
+	}
 }
@@ -17,4 +17,9 @@ public enum Commands {
 	planRide,
 	reset,
 	listNetworks,
+	journal,
+	replay,
+	snapshot,
+	restore,
+	runbatch,
 }
@@ -1,13 +1,57 @@
 package clui;
 
+import java.io.IOException;
+
 /**
  * Create clui thread and run it.
+ * With the arguments "--server [port]", the commands are read from local TCP
+ * connections instead (see CLUIServer).
  * @author animato
  *
  */
 public class Main {
+	public static final int DEFAULT_SERVER_PORT = 4220;
+	public static final String usage = "Usage: clui.Main [--server [port]]\n"
+			+ "  port: a TCP port between 1 and 65535 (default " + DEFAULT_SERVER_PORT + ")";
+
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("--server")) {
+			int port = args.length > 1 ? parsePort(args[1]) : DEFAULT_SERVER_PORT;
+			if (port < 0) {
+				System.out.println("Invalid port: " + args[1]);
+				System.out.println(usage);
+				return;
+			}
+			CLUIThread clui = new CLUIThread();
+			try {
+				CLUIServer server = new CLUIServer(clui, port);
+				System.out.println("MyVelib server listening on port " + server.getPort());
+				server.run();
+			} catch (IOException e) {
+				System.out.println("The server could not be started: " + e.getMessage());
+			} finally {
+				clui.shutdown();
+			}
+			return;
+		}
 		Thread t = new CLUIThread();
 		t.start();
 	}
+
+	/**
+	 * Reads the port the server listens on
+	 * 
+	 * @param port
+	 *            the argument given
+	 * @return the port, or -1 if the argument is not a number between 1 and
+	 *         65535
+	 */
+	public static int parsePort(String port) {
+		try {
+			int p = Integer.parseInt(port);
+			return p >= 1 && p <= 65535 ? p : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
 }
@@ -1,20 +1,94 @@
 package clui;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import utils.IDScope;
 
 /**
  * Run clui commands from a text file. 
  * Write the output from the stdout to a resultFile names appropriately.
+ * Several scenario files can also be run in parallel (batch mode), each one with
+ * its own CLUI and its own ids, with a timing report.
  * @author animato
  *
  */
 public class RunCommandsFromFile {
 
+	/**
+	 * Timing of a scenario run in batch mode
+	 */
+	public static class ScenarioReport {
+		private final String scenario;
+		private int commands = 0;
+		private long totalTime = 0; // in nanoseconds
+		private long slowestTime = 0; // in nanoseconds
+		private String slowestCommand = "";
+		private String error;
+
+		ScenarioReport(String scenario) {
+			this.scenario = scenario;
+		}
+
+		void addCommand(String command, long time) {
+			commands++;
+			if (time > slowestTime) {
+				slowestTime = time;
+				slowestCommand = command;
+			}
+		}
+
+		public String getScenario() {
+			return scenario;
+		}
+
+		public int getCommands() {
+			return commands;
+		}
+
+		public long getTotalTime() {
+			return totalTime;
+		}
+
+		public long getSlowestTime() {
+			return slowestTime;
+		}
+
+		public String getSlowestCommand() {
+			return slowestCommand;
+		}
+
+		/**
+		 * @return the reason why the scenario could not be run, or null
+		 */
+		public String getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			if (error != null)
+				return String.format("%-32s failed: %s", scenario, error);
+			return String.format("%-32s %8d %10.1f %9.3f %10.1f   %s", scenario, commands, totalTime / 1e6,
+					commands == 0 ? 0 : totalTime / 1e6 / commands, slowestTime / 1e6, slowestCommand);
+		}
+	}
+
 		
 	/**
 	 * Reads from file and writes to new file the result. 
@@ -70,4 +144,120 @@ public class RunCommandsFromFile {
 			}
 		}
 	}
+
+	/**
+	 * Runs scenario files in parallel. Each scenario gets its own CLUI (and its
+	 * own ids, see IDScope), so it gives the same results as when run alone. The
+	 * results of a scenario, and the notifications of its networks, are written
+	 * to a file next to it, named like with run() (an existing result file is
+	 * replaced); nothing is printed in stdout.
+	 * 
+	 * @param scenarios
+	 *            the scenario files
+	 * @param numberOfThreads
+	 *            the number of scenarios run at the same time
+	 * @return the timing of each scenario, in the order of the scenarios
+	 */
+	public static List<ScenarioReport> runBatch(List<Path> scenarios, int numberOfThreads) {
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			List<Future<ScenarioReport>> futures = new ArrayList<Future<ScenarioReport>>();
+			for (Path scenario : scenarios) {
+				futures.add(executor.submit(() -> runIsolated(scenario)));
+			}
+			List<ScenarioReport> reports = new ArrayList<ScenarioReport>();
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					reports.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					ScenarioReport report = new ScenarioReport(scenarios.get(i).getFileName().toString());
+					report.error = e.getCause().toString();
+					reports.add(report);
+				}
+			}
+			return reports;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while running the scenarios", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Gives the timing report of a batch of scenarios
+	 * 
+	 * @param reports
+	 *            the reports of the scenarios
+	 * @param elapsedTime
+	 *            the time taken by the whole batch, in nanoseconds
+	 * @return the report, one line per scenario
+	 */
+	public static String formatReport(List<ScenarioReport> reports, long elapsedTime) {
+		StringBuilder report = new StringBuilder();
+		long totalTime = 0;
+		int commands = 0;
+		report.append(String.format("%-32s %8s %10s %9s %10s   %s%n", "Scenario", "Commands", "Total (ms)",
+				"Mean (ms)", "Max (ms)", "Slowest command"));
+		for (ScenarioReport r : reports) {
+			report.append(r).append(System.lineSeparator());
+			totalTime += r.getTotalTime();
+			commands += r.getCommands();
+		}
+		report.append(String.format("%d scenarios, %d commands in %.1f ms (%.1f ms when run one after the other)",
+				reports.size(), commands, elapsedTime / 1e6, totalTime / 1e6));
+		return report.toString();
+	}
+
+	/**
+	 * Runs a scenario with a new CLUI, in its own scope of ids
+	 */
+	private static ScenarioReport runIsolated(Path scenario) {
+		String filename = scenario.getFileName().toString();
+		ScenarioReport report = new ScenarioReport(filename);
+		Path outputFile = scenario.resolveSibling(filename.substring(0, filename.length() - 4) + "Result.txt");
+		IDScope.run(() -> {
+			CLUIThread clui = new CLUIThread();
+			// written before the result of the command they were sent during
+			List<String> notifications = Collections.synchronizedList(new ArrayList<String>());
+			clui.setNotificationOutput(notifications::add);
+			clui.reset();
+			long start = System.nanoTime();
+			try (BufferedReader reader = Files.newBufferedReader(scenario, StandardCharsets.UTF_8);
+					BufferedWriter writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					// ignores empty lines or lines starting with #
+					if (line.length() > 0 && !line.substring(0, 1).equals("#")) {
+						long commandStart = System.nanoTime();
+						String message = clui.parseUserInput(line);
+						report.addCommand(line, System.nanoTime() - commandStart);
+						writeNotifications(notifications, writer);
+						writer.write(message);
+						writer.write('\n');
+					}
+				}
+				// the journals of the networks are closed before the results are
+				clui.reset();
+				writeNotifications(notifications, writer);
+			} catch (IOException e) {
+				report.error = e.toString();
+			} finally {
+				report.totalTime = System.nanoTime() - start;
+				clui.reset();
+				clui.shutdown();
+			}
+		});
+		return report;
+	}
+
+	private static void writeNotifications(List<String> notifications, BufferedWriter writer) throws IOException {
+		synchronized (notifications) {
+			for (String notification : notifications) {
+				writer.write(notification);
+				writer.write('\n');
+			}
+			notifications.clear();
+		}
+	}
 }
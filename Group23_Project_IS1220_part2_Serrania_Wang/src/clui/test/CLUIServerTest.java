@@ -0,0 +1,144 @@
+package clui.test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import clui.CLUIServer;
+import clui.Main;
+import clui.CLUIThread;
+
+/**
+ * Tests the server running CLUI commands sent through TCP connections
+ * 
+ * @author animato
+ *
+ */
+public class CLUIServerTest {
+
+	CLUIThread clui;
+	CLUIServer server;
+
+	@Before
+	public void start() throws IOException {
+		clui = new CLUIThread();
+		server = new CLUIServer(clui, 0);
+		new Thread(server, "clui-server").start();
+	}
+
+	@After
+	public void stop() {
+		server.close();
+		clui.submit("reset").join();
+		clui.shutdown();
+	}
+
+	/**
+	 * Reads one response: "<id> <length>\n" followed by the message
+	 */
+	private static String[] readResponse(InputStream in) throws IOException {
+		StringBuilder header = new StringBuilder();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b < 0)
+				return null;
+			header.append((char) b);
+		}
+		String[] parts = header.toString().split(" ");
+		byte[] body = new byte[Integer.parseInt(parts[1])];
+		int read = 0;
+		while (read < body.length) {
+			int n = in.read(body, read, body.length - read);
+			assertTrue(n > 0);
+			read += n;
+		}
+		return new String[] { parts[0], new String(body, StandardCharsets.UTF_8) };
+	}
+
+	/**
+	 * Pipelined requests should all be answered, each response with the id of
+	 * its request
+	 */
+	@Test
+	public void pipelinedRequestsShouldBeAnsweredWithTheirIds() throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+			StringBuilder requests = new StringBuilder();
+			requests.append("s1 setup ServerA 01/01/2000T00:00:00\n");
+			requests.append("s2 setup ServerB 01/01/2000T00:00:00\n");
+			for (int i = 0; i < 100; i++) {
+				requests.append("a" + i + " addUser ServerA a" + i + " NO_CARD\r\n");
+				requests.append("b" + i + " addUser ServerB b" + i + " NO_CARD\n");
+			}
+			requests.append("h help\n");
+			OutputStream out = socket.getOutputStream();
+			out.write(requests.toString().getBytes(StandardCharsets.UTF_8));
+			socket.shutdownOutput();
+
+			Map<String, String> responses = new HashMap<String, String>();
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			String[] response;
+			while ((response = readResponse(in)) != null) {
+				assertNull(responses.put(response[0], response[1]));
+			}
+			assertEquals(203, responses.size());
+			assertTrue(responses.get("s1").startsWith("Network ServerA has been sucessfully created"));
+			for (int i = 0; i < 100; i++) {
+				assertTrue(responses.get("a" + i).startsWith("User a" + i + " "));
+				assertTrue(responses.get("b" + i).startsWith("User b" + i + " "));
+			}
+			assertEquals(CLUIThread.helpMessage, responses.get("h"));
+		}
+	}
+
+	/**
+	 * Several clients should be served at the same time
+	 */
+	@Test
+	public void severalClientsShouldBeServed() throws Exception {
+		Socket[] sockets = new Socket[5];
+		for (int i = 0; i < sockets.length; i++) {
+			sockets[i] = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		}
+		try {
+			for (int i = 0; i < sockets.length; i++) {
+				sockets[i].getOutputStream().write(
+						("1 setup Client" + i + " 01/01/2000T00:00:00\n").getBytes(StandardCharsets.UTF_8));
+			}
+			for (int i = sockets.length - 1; i >= 0; i--) {
+				String[] response = readResponse(new BufferedInputStream(sockets[i].getInputStream()));
+				assertEquals("1", response[0]);
+				assertTrue(response[1].startsWith("Network Client" + i + " has been sucessfully created"));
+			}
+		} finally {
+			for (Socket socket : sockets)
+				socket.close();
+		}
+	}
+
+	/**
+	 * The port of the server should be a number between 1 and 65535
+	 */
+	@Test
+	public void invalidPortsShouldBeRejected() {
+		assertEquals(4220, Main.parsePort("4220"));
+		assertEquals(1, Main.parsePort("1"));
+		assertEquals(65535, Main.parsePort("65535"));
+		assertEquals(-1, Main.parsePort("0"));
+		assertEquals(-1, Main.parsePort("65536"));
+		assertEquals(-1, Main.parsePort("-80"));
+		assertEquals(-1, Main.parsePort("http"));
+		assertEquals(-1, Main.parsePort("99999999999"));
+	}
+}
@@ -0,0 +1,149 @@
+package clui.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Test;
+
+import clui.CLUIThread;
+
+/**
+ * Tests the commands submitted to the CLUI to run in the background
+ * 
+ * @author animato
+ *
+ */
+public class CLUISubmitTest {
+
+	private static final Pattern USER_ID = Pattern.compile("\\(id: (\\d+)\\)");
+
+	// released by the test to let the setup of SubmitG run
+	final CountDownLatch releaseSlow = new CountDownLatch(1);
+
+	CLUIThread clui = new CLUIThread() {
+		@Override
+		public String parseUserInput(String userInput) {
+			if (userInput.startsWith("setup SubmitG")) {
+				try {
+					assertTrue(releaseSlow.await(30, TimeUnit.SECONDS));
+				} catch (InterruptedException e) {
+					throw new AssertionError(e);
+				}
+			}
+			return super.parseUserInput(userInput);
+		}
+	};
+
+	@After
+	public void shutdown() {
+		// the networks are deleted and the ID generators reset
+		clui.submit("reset").join();
+		clui.shutdown();
+	}
+
+	private static int userId(String message) {
+		Matcher m = USER_ID.matcher(message);
+		assertTrue(message, m.find());
+		return Integer.parseInt(m.group(1));
+	}
+
+	/**
+	 * The commands of one network should run in the order they were submitted,
+	 * even when they are mixed with commands for other networks
+	 */
+	@Test
+	public void commandsOfANetworkShouldRunInSubmissionOrder() {
+		clui.submit("setup SubmitA 01/01/2000T00:00:00");
+		clui.submit("setup SubmitB 01/01/2000T00:00:00");
+		ArrayList<CompletableFuture<String>> a = new ArrayList<CompletableFuture<String>>();
+		ArrayList<CompletableFuture<String>> b = new ArrayList<CompletableFuture<String>>();
+		for (int i = 0; i < 50; i++) {
+			a.add(clui.submit("addUser SubmitA a" + i + " NO_CARD"));
+			b.add(clui.submit("addUser SubmitB b" + i + " VLIBRE_CARD"));
+		}
+		int previousA = 0;
+		int previousB = 0;
+		for (int i = 0; i < 50; i++) {
+			String messageA = a.get(i).join();
+			String messageB = b.get(i).join();
+			assertTrue(messageA, messageA.startsWith("User a" + i + " "));
+			assertTrue(messageB, messageB.startsWith("User b" + i + " "));
+			assertTrue(userId(messageA) > previousA);
+			assertTrue(userId(messageB) > previousB);
+			previousA = userId(messageA);
+			previousB = userId(messageB);
+		}
+	}
+
+	/**
+	 * A command for all networks should see every command submitted before it,
+	 * and none submitted after it
+	 */
+	@Test
+	public void globalCommandShouldWaitForPreviousCommands() {
+		clui.submit("setup SubmitC 01/01/2000T00:00:00");
+		clui.submit("setup SubmitD 01/01/2000T00:00:00");
+		CompletableFuture<String> list = clui.submit("listNetworks");
+		CompletableFuture<String> setup = clui.submit("setup SubmitE 01/01/2000T00:00:00");
+		String networks = list.join();
+		assertTrue(networks.contains("SubmitC"));
+		assertTrue(networks.contains("SubmitD"));
+		assertFalse(networks.contains("SubmitE"));
+		assertTrue(setup.join().startsWith("Network SubmitE has been sucessfully created"));
+	}
+
+	/**
+	 * A slow command on a network should not delay the commands of another
+	 * network
+	 */
+	@Test
+	public void slowNetworkShouldNotBlockOtherNetworks() {
+		clui.submit("setup SubmitF 01/01/2000T00:00:00").join();
+		CompletableFuture<String> slow = clui.submit("setup SubmitG 01/01/2000T00:00:00");
+		CompletableFuture<String> fast = clui.submit("addUser SubmitF fred NO_CARD");
+		assertTrue(fast.join().startsWith("User fred "));
+		assertFalse(slow.isDone());
+		releaseSlow.countDown();
+		assertTrue(slow.join().startsWith("Network SubmitG has been sucessfully created"));
+	}
+
+	/**
+	 * The thread of a deleted network should stop, and a network created again
+	 * with the same name should get a new one
+	 */
+	@Test
+	public void deletedNetworkShouldReleaseItsThread() throws InterruptedException {
+		clui.submit("setup SubmitH 01/01/2000T00:00:00");
+		Thread thread = networkThread("SubmitH");
+		assertNotNull(thread);
+		assertTrue(clui.submit("deleteNetwork SubmitH").join().startsWith("Sucessfully removed network SubmitH"));
+		thread.join(10000);
+		assertFalse(thread.isAlive());
+
+		clui.submit("setup SubmitH 01/01/2000T00:00:00");
+		assertTrue(clui.submit("addUser SubmitH henri NO_CARD").join().startsWith("User henri "));
+		assertNotSame(thread, networkThread("SubmitH"));
+	}
+
+	private static Thread networkThread(String networkName) {
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().equals("clui-network-" + networkName) && t.isAlive())
+				return t;
+		}
+		return null;
+	}
+
+	@Test
+	public void invalidCommandShouldBeAnsweredAtOnce() {
+		CompletableFuture<String> result = clui.submit("notACommand");
+		assertTrue(result.isDone());
+		assertTrue(result.join().startsWith("Invalid Command."));
+	}
+}
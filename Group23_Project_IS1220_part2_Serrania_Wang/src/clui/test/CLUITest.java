@@ -2,10 +2,15 @@ package clui.test;
 
 import static org.junit.Assert.*;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import clui.CLUIThread;
 import clui.IncorrectArgumentException;
+import core.Network;
 
 /**
  * Tests methods in CLUI for sanitizing input
@@ -31,4 +36,21 @@ public class CLUITest {
 		String[] expectedSanitizedInput = {"runtest", "insert", "command", "date", "12/12/53T12:12:12"};
 		assertArrayEquals(sanitizedInput, expectedSanitizedInput);
 	}
+
+	/**
+	 * The notifications of the networks should be written to the output given
+	 * to the CLUI
+	 */
+	@Test
+	public void notificationsShouldGoToTheNotificationOutput() {
+		CLUIThread clui = new CLUIThread();
+		List<String> notifications = new ArrayList<String>();
+		clui.setNotificationOutput(notifications::add);
+		Network network = new Network("notified", 0, 1, 1, 0, 0, 0, LocalDateTime.now());
+		network.addObserver(clui);
+		network.notifyObservers("A rental could not be billed.");
+		assertEquals(1, notifications.size());
+		assertTrue(notifications.get(0).endsWith("A rental could not be billed."));
+		clui.shutdown();
+	}
 }
@@ -0,0 +1,74 @@
+package clui.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import clui.RunCommandsFromFile;
+import clui.RunCommandsFromFile.ScenarioReport;
+
+/**
+ * Tests scenarios run in parallel (batch mode)
+ * 
+ * @author animato
+ *
+ */
+public class RunCommandsFromFileTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final List<String> SCENARIO = Arrays.asList("# users of a new network",
+			"setup batch 01/01/2000T00:00:00", "", "addUser batch Alice NO_CARD", "addUser batch Bob VMAX_CARD",
+			"offline batch 3", "online batch 3", "listNetworks");
+
+	/**
+	 * Scenarios run at the same time should each get their own ids, and give the
+	 * same results as when run alone
+	 */
+	@Test
+	public void parallelScenariosShouldGiveTheSameResults() throws IOException {
+		List<Path> scenarios = new ArrayList<Path>();
+		for (int i = 0; i < 8; i++) {
+			Path scenario = folder.newFile("scenario" + i + ".txt").toPath();
+			Files.write(scenario, SCENARIO, StandardCharsets.UTF_8);
+			scenarios.add(scenario);
+		}
+		List<ScenarioReport> reports = RunCommandsFromFile.runBatch(scenarios, 4);
+		List<ScenarioReport> alone = RunCommandsFromFile.runBatch(scenarios.subList(0, 1), 1);
+
+		assertEquals(8, reports.size());
+		List<String> expected = Files.readAllLines(folder.getRoot().toPath().resolve("scenario0Result.txt"));
+		assertTrue(expected.get(0).contains("(ids: [1, 2, 3, 4, 5, 6, 7, 8, 9, 10])"));
+		assertTrue(expected.get(1).startsWith("User Alice (id: 1)"));
+		assertTrue(expected.get(2).startsWith("User Bob (id: 2)"));
+		for (int i = 0; i < 8; i++) {
+			ScenarioReport report = reports.get(i);
+			assertEquals("scenario" + i + ".txt", report.getScenario());
+			assertNull(report.getError());
+			assertEquals(6, report.getCommands());
+			assertTrue(report.getSlowestTime() <= report.getTotalTime());
+			assertEquals(expected,
+					Files.readAllLines(folder.getRoot().toPath().resolve("scenario" + i + "Result.txt")));
+		}
+		assertEquals(6, alone.get(0).getCommands());
+	}
+
+	@Test
+	public void missingScenarioShouldBeReported() {
+		List<ScenarioReport> reports = RunCommandsFromFile
+				.runBatch(Arrays.asList(folder.getRoot().toPath().resolve("missing.txt")), 2);
+		assertNotNull(reports.get(0).getError());
+		assertTrue(RunCommandsFromFile.formatReport(reports, 0).contains("missing.txt"));
+	}
+}
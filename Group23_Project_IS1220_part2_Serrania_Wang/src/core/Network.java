@@ -1,14 +1,19 @@
 package core;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadLocalRandom;
 
 import core.bike.Bike;
-import core.bike.BikeFactory;
+import core.bike.BikeIDGenerator;
 import core.bike.InvalidBikeTypeException;
 import core.card.InvalidBikeException;
 import core.card.InvalidDatesException;
@@ -16,7 +21,10 @@ import core.card.InvalidDatesException;
 import core.card.CardVisitor;
 import core.card.CardVisitorFactory;
 import core.card.InvalidCardTypeException;
+import core.journal.NetworkJournal;
 import core.rentals.BikeRental;
+import core.rentals.BillingPipeline;
+import core.rentals.BillingReport;
 import core.rentals.OngoingBikeRentalException;
 import core.ridePlan.AvoidPlusPlan;
 import core.ridePlan.FastestPlan;
@@ -25,7 +33,10 @@ import core.ridePlan.NoValidStationFoundException;
 import core.ridePlan.PreferPlusPlan;
 import core.ridePlan.PreserveUniformityPlan;
 import core.ridePlan.RidePlan;
+import core.ridePlan.RidePlanCache;
+import core.ridePlan.RidePlanStrategy;
 import core.ridePlan.ShortestPlan;
+import core.ridePlan.StationGrid;
 import core.station.BikeNotFoundException;
 import core.station.FullStationException;
 import core.station.InvalidStationTypeException;
@@ -35,9 +46,11 @@ import core.station.ParkingSlotIDGenerator;
 import core.station.Station;
 import core.station.StationFactory;
 import core.station.StationIDGenerator;
+import core.station.UsageLeaderboard;
 import core.station.stationSort.InvalidSortingPolicyException;
 import core.station.stationSort.LeastOccupiedSort;
 import core.station.stationSort.MostUsedSort;
+import core.station.stationSort.SortingStrategy;
 import core.user.BikeRentalNotFoundException;
 import core.user.User;
 import core.user.UserIDGenerator;
@@ -58,12 +71,35 @@ public class Network extends Observable {
 
 	// These dates are used to calculate the occupation rate for the entire network
 	private LocalDateTime creationDate;
-	private LocalDateTime currentDate;
+	private volatile LocalDateTime currentDate;
 
-	private HashMap<Integer, Station> stations = new HashMap<Integer, Station>();
-	private HashMap<Integer, User> users = new HashMap<Integer, User>();
+	// The registries are read and changed by several threads (CLUI, scenarios)
+	private ConcurrentHashMap<Integer, Station> stations = new ConcurrentHashMap<Integer, Station>();
+	private ConcurrentHashMap<Integer, User> users = new ConcurrentHashMap<Integer, User>();
 
-	private ArrayList<Observer> observers = new ArrayList<Observer>();
+	// Spatial index of the stations, used when planning rides
+	private StationGrid stationGrid;
+	// Stations ranked by usage, kept sorted as rentals and returns happen
+	private final UsageLeaderboard usageLeaderboard = new UsageLeaderboard();
+
+	private CopyOnWriteArrayList<Observer> observers = new CopyOnWriteArrayList<Observer>();
+
+	// Journal the changes of the network are written to (null if none)
+	private volatile NetworkJournal journal;
+
+	// Returned rentals waiting to be billed, when the billing is deferred
+	private final BillingPipeline billing = new BillingPipeline();
+	private volatile boolean deferredBilling;
+
+	// Cache of the ride plans (null if the plans are always computed)
+	private volatile RidePlanCache ridePlanCache;
+
+	/**
+	 * A change of the network, to write to the journal
+	 */
+	private interface JournalEntry {
+		void writeTo(NetworkJournal journal) throws IOException;
+	}
 
 	/**
 	 * Creates the network (stations, parking slots and bikes)
@@ -93,6 +129,7 @@ public class Network extends Observable {
 		this.side = side;
 		this.creationDate = creationDate;
 		this.currentDate = creationDate;
+		this.stationGrid = new StationGrid(side);
 
 		// Create Stations
 		// some are plus stations others are standard stations
@@ -104,34 +141,15 @@ public class Network extends Observable {
 			}
 		}
 
-		/**
-		 * Create and place bikes into stations notEmptyStations is the list of stations
-		 * that are not full. Iterate over total number of bikes and assign a bike to a
-		 * random station that is not full Each time a station is full, remove it from
-		 * the list
-		 */
+		// Create and place bikes into stations: each bike goes to a random station
+		// that is not full. The number of bikes of each station is drawn first, then
+		// the parking slots are filled in one pass.
 		int totalNumberOfParkingSlots = numberOfParkingSlotsPerStation * numberOfStations;
 		int totalNumberOfBikes = (int) (totalNumberOfParkingSlots * percentageOfBikes);
-		ArrayList<Station> notEmptyStations = new ArrayList<Station>(this.stations.values());
-
-		BikeFactory bikeFactory = new BikeFactory();
-
-		for (int i = 0; i < totalNumberOfBikes; i++) {
-			int randomNum = ThreadLocalRandom.current().nextInt(0, notEmptyStations.size());
-			try {
-				if (i < totalNumberOfBikes * percentageOfElecBikes) {
-					notEmptyStations.get(randomNum).addBike(bikeFactory.createBike("ELEC"), creationDate);
-				} else {
-					notEmptyStations.get(randomNum).addBike(bikeFactory.createBike("MECH"), creationDate);
-				}
-			} catch (InvalidBikeTypeException e) {
-				e.printStackTrace();
-			}
-
-			if (notEmptyStations.get(randomNum).isFull()) {
-				notEmptyStations.remove(randomNum);
-			}
-		}
+		int numberOfElecBikes = Math.min(totalNumberOfBikes,
+				(int) Math.ceil(totalNumberOfBikes * percentageOfElecBikes));
+		new NetworkBuilder().placeBikes(new ArrayList<Station>(this.stations.values()), numberOfElecBikes,
+				totalNumberOfBikes - numberOfElecBikes, creationDate);
 	}
 
 	// Core functions - UI Interface
@@ -222,6 +240,34 @@ public class Network extends Observable {
 		}
 	}
 
+	/**
+	 * Sorts the stations of the network according to a given policy, and then
+	 * returns a String representing the first k stations of the ordered list (or
+	 * an error message).
+	 * 
+	 * @param policy
+	 *            the policy used to sort stations
+	 * @param k
+	 *            the number of stations to display
+	 * @return String listing the first k sorted stations
+	 */
+	public String sortStation(String policy, int k) {
+		if (policy == null) {
+			return "A policy must be given to sort stations";
+		}
+		try {
+			ArrayList<Station> sortedStations = createStationSort(policy, k);
+			return "Here are the first " + sortedStations.size() + " stations, in the order corresponding to the "
+					+ policy.toLowerCase() + " policy:\n" + sortedStations.toString();
+		} catch (InvalidSortingPolicyException e) {
+			return e.getMessage();
+		} catch (InvalidTimeSpanException e) {
+			return e.getMessage();
+		} catch (IllegalArgumentException e) {
+			return e.getMessage();
+		}
+	}
+
 	/**
 	 * Add a new user with a specific card type and random coordinates to the
 	 * network.
@@ -374,6 +420,11 @@ public class Network extends Observable {
 			return "No station found with id " + stationId;
 		try {
 			BikeRental br = returnBike(user, station, returnDate);
+			if (deferredBilling) {
+				return user.getName() + "'s ride lasted " + br.getTimeSpent()
+						+ " minutes. It will be billed with the other rides of the day."
+						+ " Thank you for choosing MyVelib, have a wonderful day!";
+			}
 			String s = "";
 			if (br.getTimeCreditAdded() > 0) {
 				s += br.getTimeCreditAdded() + " minutes of time credit were added to " + user.getName() + "'s card.\n";
@@ -442,7 +493,7 @@ public class Network extends Observable {
 		if (s.getOnline() == false) {
 			return "Station " + stationId + " is already offline.";
 		}
-		s.setOnline(false);
+		commit(changeStation(s, () -> s.setOnline(false), j -> j.setOnline(s, false)));
 		return "Station " + stationId + " is set to offline.";
 	}
 
@@ -460,7 +511,7 @@ public class Network extends Observable {
 		if (s.getOnline() == true) {
 			return "Station " + stationId + " is already online.";
 		}
-		s.setOnline(true);
+		commit(changeStation(s, () -> s.setOnline(true), j -> j.setOnline(s, true)));
 		return "Station " + stationId + " is set to online.";
 	}
 
@@ -473,6 +524,7 @@ public class Network extends Observable {
 		StationIDGenerator.getInstance().reset();
 		UserIDGenerator.getInstance().reset();
 		ParkingSlotIDGenerator.getInstance().reset();
+		BikeIDGenerator.getInstance().reset();
 		return "Sucessfully reset ID generators";
 	}
 
@@ -491,7 +543,23 @@ public class Network extends Observable {
 			throw new IllegalArgumentException("Station given is null in addStation.");
 		}
 		// verify that the coordinates of station is within the network.
-		this.stations.put(station.getId(), station);
+		// The indexes are updated while the entry of the station id is locked, so
+		// they always hold the station registered for this id
+		Runnable register = () -> this.stations.compute(station.getId(), (id, previous) -> {
+			if (previous != null) {
+				this.stationGrid.remove(previous);
+				this.usageLeaderboard.remove(previous);
+			}
+			this.stationGrid.add(station);
+			this.usageLeaderboard.add(station);
+			return station;
+		});
+		// the record is appended before a bike can be rented at the station
+		NetworkJournal journal = changeStation(station, register, j -> j.addStation(station));
+		RidePlanCache cache = ridePlanCache;
+		if (cache != null)
+			cache.stationsChanged();
+		commit(journal);
 	}
 
 	/**
@@ -506,12 +574,20 @@ public class Network extends Observable {
 		if (user == null) {
 			throw new IllegalArgumentException("User given is null in addUser.");
 		}
-		this.users.put(user.getId(), user);
+		NetworkJournal journal;
+		// the record is appended before the user can be found and rent a bike
+		synchronized (user) {
+			this.users.put(user.getId(), user);
+			journal = append(j -> j.addUser(user));
+		}
+		commit(journal);
 	}
 
 	/**
 	 * Creates a ride plan for a user, given the source, destination coordinates as
 	 * well as the type of bike the user wants and the policy they want to follow.
+	 * When the network has a ride plan cache, the stations of the plan are taken
+	 * from it.
 	 * 
 	 * @param source
 	 *            the source point of the ride plan
@@ -537,26 +613,29 @@ public class Network extends Observable {
 		if (source == null || destination == null || user == null || policy == null || bikeType == null)
 			throw new IllegalArgumentException("All input values of createRidePlan must not be null");
 
-		RidePlan rp = null;
+		RidePlanStrategy strategy = null;
 		switch (policy.toUpperCase()) {
 		case "SHORTEST":
-			rp = new ShortestPlan().planRide(source, destination, user, bikeType, this);
+			strategy = new ShortestPlan();
 			break;
 		case "FASTEST":
-			rp = new FastestPlan().planRide(source, destination, user, bikeType, this);
+			strategy = new FastestPlan();
 			break;
 		case "AVOID_PLUS":
-			rp = new AvoidPlusPlan().planRide(source, destination, user, bikeType, this);
+			strategy = new AvoidPlusPlan();
 			break;
 		case "PREFER_PLUS":
-			rp = new PreferPlusPlan().planRide(source, destination, user, bikeType, this);
+			strategy = new PreferPlusPlan();
 			break;
 		case "PRESERVE_UNIFORMITY":
-			rp = new PreserveUniformityPlan().planRide(source, destination, user, bikeType, this);
+			strategy = new PreserveUniformityPlan();
 			break;
 		default:
 			throw new InvalidRidePlanPolicyException(policy);
 		}
+		RidePlanCache cache = ridePlanCache;
+		RidePlan rp = cache == null ? strategy.planRide(source, destination, user, bikeType, this)
+				: cache.planRide(strategy, policy, source, destination, user, bikeType, this);
 		// add user to list of observers in concerned destination stations
 		rp.getDestinationStation().addObserver(user);
 		user.setRidePlan(rp);
@@ -564,7 +643,8 @@ public class Network extends Observable {
 	}
 
 	/**
-	 * Sorts the stations of the network according to a given policy.
+	 * Sorts the stations of the network according to a given policy. The
+	 * MOST_USED ranking is kept sorted by the network, it is not computed again.
 	 * 
 	 * @param policy
 	 *            the policy used to sort stations
@@ -579,20 +659,60 @@ public class Network extends Observable {
 			throws InvalidSortingPolicyException, InvalidTimeSpanException {
 		if (policy == null)
 			throw new IllegalArgumentException("All input values of createStationSort must not be null");
-		ArrayList<Station> sortedStations = null;
+		if (policy.equalsIgnoreCase("MOST_USED")) {
+			return usageLeaderboard.getRanking();
+		}
+		return createSortingStrategy(policy).sort(new ArrayList<Station>(this.getStations().values()), creationDate,
+				currentDate);
+	}
+
+	/**
+	 * Gives the first k stations of the network sorted according to a given
+	 * policy. Only the first k stations are sorted, which is faster than sorting
+	 * all the stations when k is small.
+	 * 
+	 * @param policy
+	 *            the policy used to sort stations
+	 * @param k
+	 *            the number of stations wanted
+	 * @return the first k stations of the sorted list of stations
+	 * @throws InvalidSortingPolicyException
+	 *             when the given policy is not recognized by the system
+	 * @throws InvalidTimeSpanException
+	 *             when the policy uses the dates and the end date is earlier than
+	 *             the start date
+	 * @throws IllegalArgumentException
+	 *             when the policy is null or k is negative
+	 */
+	public ArrayList<Station> createStationSort(String policy, int k)
+			throws InvalidSortingPolicyException, InvalidTimeSpanException, IllegalArgumentException {
+		if (policy == null)
+			throw new IllegalArgumentException("All input values of createStationSort must not be null");
+		if (policy.equalsIgnoreCase("MOST_USED")) {
+			return usageLeaderboard.getTop(k);
+		}
+		return createSortingStrategy(policy).sortTop(new ArrayList<Station>(this.getStations().values()), k,
+				creationDate, currentDate);
+	}
+
+	/**
+	 * Gives the sorting strategy corresponding to a policy
+	 * 
+	 * @param policy
+	 *            the policy used to sort stations
+	 * @return the sorting strategy
+	 * @throws InvalidSortingPolicyException
+	 *             when the given policy is not recognized by the system
+	 */
+	private SortingStrategy createSortingStrategy(String policy) throws InvalidSortingPolicyException {
 		switch (policy.toUpperCase()) {
 		case "MOST_USED":
-			sortedStations = new MostUsedSort().sort(new ArrayList<Station>(this.getStations().values()), creationDate,
-					currentDate);
-			break;
+			return new MostUsedSort();
 		case "LEAST_OCCUPIED":
-			sortedStations = new LeastOccupiedSort().sort(new ArrayList<Station>(this.getStations().values()),
-					creationDate, currentDate);
-			break;
+			return new LeastOccupiedSort();
 		default:
 			throw new InvalidSortingPolicyException(policy);
 		}
-		return sortedStations;
 	}
 
 	/**
@@ -615,25 +735,40 @@ public class Network extends Observable {
 	public Bike rentBike(User user, Station station, String bikeType, LocalDateTime rentalDate)
 			throws OngoingBikeRentalException, OfflineStationException, BikeNotFoundException {
 		Bike b = null;
+		NetworkJournal journal = this.journal;
 		synchronized (user) {
 			// verify if user does not already have a rental
 			if (user.getBikeRental() != null)
 				throw new OngoingBikeRentalException(user);
-			synchronized (station) {
-				// If no bike is found (either station is offline or there are no bikes), an
-				// exception will be thrown here
+			// The station is not locked: it claims one of its parking slots
+			// If no bike is found (either station is offline or there are no bikes), an
+			// exception will be thrown here
+			if (journal == null) {
 				b = station.rentBike(bikeType, rentalDate);
-				user.setBikeRental(new BikeRental(b, rentalDate));
-
-				// Update the current date
-				this.currentDate = rentalDate;
-				return b;
+			} else {
+				// the station is locked so that its changes are journaled in the order
+				// they are applied
+				synchronized (station) {
+					b = station.rentBike(bikeType, rentalDate);
+					final String rentedBikeType = b.getType();
+					journal = append(j -> j.rentBike(user, station, rentedBikeType, rentalDate));
+				}
 			}
+			BikeRental br = new BikeRental(b, rentalDate);
+			br.setRentStationId(station.getId());
+			user.setBikeRental(br);
+
+			// Update the current date
+			this.currentDate = rentalDate;
 		}
+		// the record is made durable once the user is released
+		commit(journal);
+		return b;
 	}
 
 	/**
-	 * Returns the bike of a user to the given station at the given time
+	 * Returns the bike of a user to the given station at the given time. When the
+	 * billing is deferred, the rental is recorded but not priced yet.
 	 * 
 	 * @param user
 	 *            the user returning a bike
@@ -650,12 +785,29 @@ public class Network extends Observable {
 	 *             when the station is offline
 	 * @throws InvalidBikeException
 	 *             when the bike of the rental does not allow price calculation
+	 *             (not checked when the billing is deferred)
 	 * @throws InvalidDatesException
 	 *             when the dates of the rental do not allow for price calculation
 	 */
 	public BikeRental returnBike(User user, Station station, LocalDateTime returnDate)
 			throws BikeRentalNotFoundException, FullStationException, OfflineStationException, InvalidBikeException,
 			InvalidDatesException {
+		// the record of the return is made durable once the user is released
+		NetworkJournal journal = this.journal;
+		try {
+			return returnBike(user, station, returnDate, journal);
+		} finally {
+			commit(journal);
+		}
+	}
+
+	/**
+	 * Returns the bike of a user, appending the record of the return to the
+	 * given journal (if any) once the bike is parked
+	 */
+	private BikeRental returnBike(User user, Station station, LocalDateTime returnDate, NetworkJournal journal)
+			throws BikeRentalNotFoundException, FullStationException, OfflineStationException, InvalidBikeException,
+			InvalidDatesException {
 		// the same user cannot return more than one bike at the same time.
 		synchronized (user) {
 			// make sure user has a rental
@@ -663,45 +815,48 @@ public class Network extends Observable {
 			if (br == null)
 				throw new BikeRentalNotFoundException(user.getId());
 			br.setReturnDate(returnDate);
-			// 2 users cannot return a bike at the same time at a specific station
-			synchronized (station) {
-				// If station is offline, will throw OfflineStationException; if station is
-				// full, will throw FullStationException
-				station.returnBike(br, returnDate);
-
-				// Store how much time credit should be added if the return succeeds
-				// and virtually add it to calculate the right price.
-				// (This amount will be substracted if the operation fails).
-				br.setTimeCreditAdded(user.getCard().addTimeCredit(station.getBonusTimeCreditOnReturn()));
-
-				// Calculate the price of the ride. Throws InvalidBikeException or
-				// InvalidDatesException if the calculation couldn't be performed
-				try {
-					user.getCard().visit(br);
-				} catch (InvalidBikeException | InvalidDatesException e) {
-					// As the operation couldn't be performed, rollback to the previous time credit
-					// status
-					user.getCard().removeTimeCredit(br.getTimeCreditAdded());
-					throw e;
-				}
-
-				// Add the amount of credits added to the total time credits stat of
-				// the user.
-				user.getStats().addTotalTimeCredits(br.getTimeCreditAdded());
-				// Now remove the time credit from the user's card
-				user.getCard().removeTimeCredit(br.getTimeCreditUsed());
-
-				// if user completes ride plan (station that he is returning the bike to is the
-				// same as the destination station in ride plan)
-				// then the user's ride plan is set to null
-				if (user.getRidePlan() != null && station.equals(user.getRidePlan().getDestinationStation())) {
-					user.setRidePlan(null);
-				}
+			if (deferredBilling) {
+				return returnBikeDeferred(user, station, br, returnDate, journal);
+			}
+			// The station is not locked: it claims one of its parking slots
+			// If station is offline, will throw OfflineStationException; if station is
+			// full, will throw FullStationException
+			parkBike(user, station, br, returnDate, journal);
+			br.setReturnStationId(station.getId());
+
+			// Store how much time credit should be added if the return succeeds
+			// and virtually add it to calculate the right price.
+			// (This amount will be substracted if the operation fails).
+			br.setTimeCreditAdded(user.getCard().addTimeCredit(station.getBonusTimeCreditOnReturn()));
+
+			// Calculate the price of the ride. Throws InvalidBikeException or
+			// InvalidDatesException if the calculation couldn't be performed
+			try {
+				user.getCard().visit(br);
+			} catch (InvalidBikeException | InvalidDatesException e) {
+				// As the operation couldn't be performed, rollback to the previous time credit
+				// status
+				user.getCard().removeTimeCredit(br.getTimeCreditAdded());
+				throw e;
+			}
 
-				// increment station statistics
-				station.getStats().incrementTotalReturns();
+			// Add the amount of credits added to the total time credits stat of
+			// the user.
+			user.getStats().addTotalTimeCredits(br.getTimeCreditAdded());
+			// Now remove the time credit from the user's card
+			user.getCard().removeTimeCredit(br.getTimeCreditUsed());
+			user.getHistory().add(br);
+
+			// if user completes ride plan (station that he is returning the bike to is the
+			// same as the destination station in ride plan)
+			// then the user's ride plan is set to null
+			if (user.getRidePlan() != null && station.equals(user.getRidePlan().getDestinationStation())) {
+				user.setRidePlan(null);
 			}
 
+			// increment station statistics
+			station.getStats().incrementTotalReturns();
+
 			// Update the user's stats
 			user.getStats().addTotalCharges(br.getPrice());
 			user.getStats().incrementTotalRides();
@@ -717,20 +872,185 @@ public class Network extends Observable {
 		}
 	}
 
+	/**
+	 * Returns a bike when the billing is deferred: the rental is recorded to be
+	 * billed later, its price and the time credit of the card are not changed.
+	 * The user is locked by the caller.
+	 */
+	private BikeRental returnBikeDeferred(User user, Station station, BikeRental br, LocalDateTime returnDate,
+			NetworkJournal journal) throws FullStationException, OfflineStationException, InvalidDatesException {
+		// The rental is priced later: check its dates before the bike is parked
+		// (without getTimeSpent, which keeps the time spent once computed)
+		if (returnDate == null || br.getRentDate() == null
+				|| br.getRentDate().until(returnDate, ChronoUnit.MINUTES) < 0) {
+			throw new InvalidDatesException(br);
+		}
+		parkBike(user, station, br, returnDate, journal);
+		br.setReturnStationId(station.getId());
+		billing.record(user, br, station.getBonusTimeCreditOnReturn());
+
+		if (user.getRidePlan() != null && station.equals(user.getRidePlan().getDestinationStation())) {
+			user.setRidePlan(null);
+		}
+		station.getStats().incrementTotalReturns();
+		user.getStats().incrementTotalRides();
+		user.getStats().addTotalTimeSpent(br.getTimeSpent());
+
+		user.resetBikeRental();
+		this.currentDate = returnDate;
+		return br;
+	}
+
+	/**
+	 * Parks the bike of a rental at a station. When the network has a journal,
+	 * the station is locked so that the return is journaled in the order of the
+	 * changes of the station.
+	 */
+	private void parkBike(User user, Station station, BikeRental br, LocalDateTime returnDate,
+			NetworkJournal journal) throws FullStationException, OfflineStationException {
+		if (journal == null) {
+			station.returnBike(br, returnDate);
+			return;
+		}
+		synchronized (station) {
+			station.returnBike(br, returnDate);
+			append(journal, j -> j.returnBike(user, station, returnDate));
+		}
+	}
+
+	/**
+	 * Bills the rentals returned since the last billing, when the billing is
+	 * deferred. The rentals are priced in parallel, grouped by user; their
+	 * charges and time credits are then added to the statistics of the users.
+	 * The observers are told about the rentals that cannot be priced.
+	 * 
+	 * @return the report of the billing
+	 */
+	public BillingReport billPendingRentals() {
+		BillingReport report = billing.bill();
+		for (BikeRental br : report.getFailedRentals()) {
+			notifyObservers("The rental " + br + " of network " + name + " could not be billed.");
+		}
+		return report;
+	}
+
+	/**
+	 * Gives the amount paid for the rentals started each day of a period, by
+	 * station of rent. The histories of the users are scanned; the rentals
+	 * waiting to be billed are not counted.
+	 * 
+	 * @param from
+	 *            the first day of the period
+	 * @param to
+	 *            the day after the period
+	 * @return for each station (by id) having rentals in the period, the revenue
+	 *         of each day, in euros
+	 * @throws IllegalArgumentException
+	 *             when the period ends before it starts
+	 */
+	public HashMap<Integer, double[]> getRevenuePerStationPerDay(LocalDate from, LocalDate to)
+			throws IllegalArgumentException {
+		long days = ChronoUnit.DAYS.between(from, to);
+		if (days < 0)
+			throw new IllegalArgumentException("The period ends before it starts: " + from + " to " + to);
+		HashMap<Integer, double[]> revenues = new HashMap<Integer, double[]>();
+		for (User user : users.values()) {
+			// the users who never rode have no history to scan
+			if (user.getStats().getTotalRides() > 0)
+				user.getHistory().addRevenuePerStationPerDay(from, (int) days, revenues);
+		}
+		return revenues;
+	}
+
+	/**
+	 * Appends a change of the network to its journal, if it has one. The caller
+	 * holds the locks ordering the change (station or user), so that the records
+	 * are in the order the changes are applied. If the change cannot be written,
+	 * the observers of the network are told.
+	 * 
+	 * @param entry
+	 *            the change to write
+	 * @return the journal the change was appended to (null if none)
+	 */
+	private NetworkJournal append(JournalEntry entry) {
+		return append(this.journal, entry);
+	}
+
+	private NetworkJournal append(NetworkJournal journal, JournalEntry entry) {
+		if (journal == null)
+			return null;
+		try {
+			entry.writeTo(journal);
+		} catch (IOException e) {
+			notifyObservers("The last change of network " + name + " could not be written to its journal: "
+					+ e.getMessage());
+		}
+		return journal;
+	}
+
+	/**
+	 * Applies a change to a station and appends it to the journal, if the network
+	 * has one. The station is then locked, so that its changes are journaled in
+	 * the order they are applied.
+	 * 
+	 * @return the journal the change was appended to (null if none)
+	 */
+	private NetworkJournal changeStation(Station station, Runnable change, JournalEntry entry) {
+		NetworkJournal journal = this.journal;
+		if (journal == null) {
+			change.run();
+			return null;
+		}
+		synchronized (station) {
+			change.run();
+			return append(journal, entry);
+		}
+	}
+
+	/**
+	 * Makes the records appended to a journal durable. Called once the locks
+	 * ordering the changes are released, so that no lock is held while waiting
+	 * for the disk. If the records cannot be written, the observers of the
+	 * network are told.
+	 * 
+	 * @param journal
+	 *            the journal (nothing is done if null)
+	 */
+	private void commit(NetworkJournal journal) {
+		if (journal == null)
+			return;
+		try {
+			journal.commit();
+		} catch (IOException e) {
+			notifyObservers("The last changes of network " + name + " could not be written to its journal: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Closes the journal of the network, if it has one. The next changes are not
+	 * recorded.
+	 * 
+	 * @throws IOException
+	 *             when the last records cannot be written
+	 */
+	public void closeJournal() throws IOException {
+		NetworkJournal journal = this.journal;
+		this.journal = null;
+		if (journal != null)
+			journal.close();
+	}
+
 	// Observer pattern for the UIs that listen to the network's events
 
 	@Override
 	public void addObserver(Observer o) {
-		if (!this.observers.contains(o)) {
-			this.observers.add(o);
-		}
+		this.observers.addIfAbsent(o);
 	}
 
 	@Override
 	public void deleteObserver(Observer o) {
-		if (!this.observers.contains(o)) {
-			this.observers.remove(o);
-		}
+		this.observers.remove(o);
 	}
 
 	/**
@@ -755,23 +1075,104 @@ public class Network extends Observable {
 		this.name = name;
 	}
 
+	public LocalDateTime getCreationDate() {
+		return creationDate;
+	}
+
+	public LocalDateTime getCurrentDate() {
+		return currentDate;
+	}
+
+	public void setCurrentDate(LocalDateTime currentDate) {
+		this.currentDate = currentDate;
+	}
+
+	public NetworkJournal getJournal() {
+		return journal;
+	}
+
+	public boolean isDeferredBilling() {
+		return deferredBilling;
+	}
+
+	/**
+	 * Chooses when the returned rentals are billed. By default a rental is priced
+	 * when the bike is returned. When the billing is deferred, a return only
+	 * records the rental, and the rentals are billed in batch by
+	 * billPendingRentals: until then, the time credit of the cards and the
+	 * charges of the users are not updated. The pending rentals are billed when
+	 * the billing is no longer deferred.
+	 * 
+	 * @param deferredBilling
+	 *            true to bill the rentals in batch
+	 */
+	public void setDeferredBilling(boolean deferredBilling) {
+		this.deferredBilling = deferredBilling;
+		if (!deferredBilling) {
+			billPendingRentals();
+		}
+	}
+
+	/**
+	 * @return the number of returned rentals waiting to be billed
+	 */
+	public int getPendingRentals() {
+		return billing.getPendingRentals();
+	}
+
+	/**
+	 * Sets the journal the changes of the network are written to. Use
+	 * NetworkJournal.create to start a journal with a checkpoint of the network.
+	 * 
+	 * @param journal
+	 *            the journal (or null to stop recording)
+	 */
+	public void setJournal(NetworkJournal journal) {
+		this.journal = journal;
+	}
+
 	public double getSide() {
 		return side;
 	}
 
 	public void setSide(double side) {
 		this.side = side;
+		this.stationGrid.setSide(side);
 	}
 
-	public HashMap<Integer, Station> getStations() {
+	public ConcurrentHashMap<Integer, Station> getStations() {
 		return stations;
 	}
 
+	public StationGrid getStationGrid() {
+		return stationGrid;
+	}
+
+	public RidePlanCache getRidePlanCache() {
+		return ridePlanCache;
+	}
+
+	/**
+	 * Sets the cache of the ride plans. The plans given by a cache are computed
+	 * for the centers of the cells of the source and destination, so they may
+	 * differ a little from the plans computed for the exact points.
+	 * 
+	 * @param ridePlanCache
+	 *            the cache (or null to always compute the plans)
+	 */
+	public void setRidePlanCache(RidePlanCache ridePlanCache) {
+		this.ridePlanCache = ridePlanCache;
+	}
+
+	public UsageLeaderboard getUsageLeaderboard() {
+		return usageLeaderboard;
+	}
+
 	public ArrayList<Integer> getStationIds() {
 		return new ArrayList<Integer>(stations.keySet());
 	}
 
-	public HashMap<Integer, User> getUsers() {
+	public ConcurrentHashMap<Integer, User> getUsers() {
 		return users;
 	}
 
@@ -0,0 +1,148 @@
+package core;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import core.bike.BikeFactory;
+import core.bike.InvalidBikeTypeException;
+import core.station.OccupiedParkingSlotException;
+import core.station.ParkingSlot;
+import core.station.Station;
+
+/**
+ * Places the initial bikes of a network in its stations, in bulk. <br>
+ * The number of bikes of each type in each station is computed first, on plain
+ * counters: every bike goes to a station drawn uniformly among the stations
+ * which are not full yet, electrical bikes first, exactly as when the bikes are
+ * added to random stations one by one. A full station is removed from the draw
+ * in constant time. <br>
+ * The parking slots are then filled in a single pass over each station, without
+ * looking for a free slot or checking if the station is full after each bike.
+ *
+ * @author animato
+ *
+ */
+public class NetworkBuilder {
+	private final Random random;
+	private final BikeFactory bikeFactory = new BikeFactory();
+
+	// Constructor
+
+	/**
+	 * Creates a builder drawing the stations with the random generator of the
+	 * calling thread
+	 */
+	public NetworkBuilder() {
+		this(null);
+	}
+
+	/**
+	 * Creates a builder drawing the stations with the given random generator
+	 *
+	 * @param random
+	 *            the random generator (null for the one of the calling thread)
+	 */
+	public NetworkBuilder(Random random) {
+		this.random = random;
+	}
+
+	// Core methods
+
+	/**
+	 * Computes how many bikes of each type go to each station. Each bike goes to
+	 * one of the stations with free capacity left, drawn uniformly; the
+	 * electrical bikes are placed first.
+	 *
+	 * @param capacities
+	 *            the number of free parking slots of each station
+	 * @param numberOfElecBikes
+	 *            the number of electrical bikes to place
+	 * @param numberOfMechBikes
+	 *            the number of mechanical bikes to place
+	 * @return for each station, the number of electrical bikes ([i][0]) and of
+	 *         mechanical bikes ([i][1])
+	 * @throws IllegalArgumentException
+	 *             when there are more bikes than free parking slots
+	 */
+	public int[][] allocate(int[] capacities, int numberOfElecBikes, int numberOfMechBikes)
+			throws IllegalArgumentException {
+		int[][] allocation = new int[capacities.length][2];
+		int[] remaining = capacities.clone();
+		// the stations which are not full are open[0..openCount-1]
+		int[] open = new int[capacities.length];
+		int openCount = 0;
+		long totalCapacity = 0;
+		for (int i = 0; i < capacities.length; i++) {
+			if (capacities[i] > 0) {
+				open[openCount++] = i;
+				totalCapacity += capacities[i];
+			}
+		}
+		if (numberOfElecBikes < 0 || numberOfMechBikes < 0
+				|| (long) numberOfElecBikes + numberOfMechBikes > totalCapacity) {
+			throw new IllegalArgumentException("Cannot place " + numberOfElecBikes + " electrical and "
+					+ numberOfMechBikes + " mechanical bikes in " + totalCapacity + " parking slots");
+		}
+
+		Random r = random != null ? random : ThreadLocalRandom.current();
+		int totalNumberOfBikes = numberOfElecBikes + numberOfMechBikes;
+		for (int b = 0; b < totalNumberOfBikes; b++) {
+			int k = r.nextInt(openCount);
+			int station = open[k];
+			allocation[station][b < numberOfElecBikes ? 0 : 1]++;
+			if (--remaining[station] == 0) {
+				open[k] = open[--openCount];
+			}
+		}
+		return allocation;
+	}
+
+	/**
+	 * Places bikes in the free parking slots of the given stations. The
+	 * electrical bikes of a station take its first free slots, followed by the
+	 * mechanical bikes.
+	 *
+	 * @param stations
+	 *            the stations
+	 * @param numberOfElecBikes
+	 *            the number of electrical bikes to place
+	 * @param numberOfMechBikes
+	 *            the number of mechanical bikes to place
+	 * @param date
+	 *            the date at which the bikes are added
+	 * @throws IllegalArgumentException
+	 *             when there are more bikes than free parking slots
+	 */
+	public void placeBikes(List<Station> stations, int numberOfElecBikes, int numberOfMechBikes, LocalDateTime date)
+			throws IllegalArgumentException {
+		int[] capacities = new int[stations.size()];
+		for (int i = 0; i < capacities.length; i++) {
+			capacities[i] = stations.get(i).getNumberOfFreeParkingSlots();
+		}
+		int[][] allocation = allocate(capacities, numberOfElecBikes, numberOfMechBikes);
+
+		for (int i = 0; i < allocation.length; i++) {
+			int elec = allocation[i][0];
+			int mech = allocation[i][1];
+			for (ParkingSlot ps : stations.get(i).getParkingSlots()) {
+				if (elec + mech == 0)
+					break;
+				if (!ps.isWorking() || ps.hasBike())
+					continue;
+				try {
+					if (elec > 0) {
+						ps.setBike(bikeFactory.createBike("ELEC"), date);
+						elec--;
+					} else {
+						ps.setBike(bikeFactory.createBike("MECH"), date);
+						mech--;
+					}
+				} catch (InvalidBikeTypeException | OccupiedParkingSlotException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
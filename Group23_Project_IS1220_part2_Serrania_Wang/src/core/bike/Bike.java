@@ -7,6 +7,12 @@ package core.bike;
  *
  */
 public interface Bike {
+	/**
+	 * Gives the id of the bike
+	 * @return the id of the bike
+	 */
+	public int getId();
+
 	/**
 	 * Gives the type of bike (MECH or ELEC)
 	 * @return the type of the bike
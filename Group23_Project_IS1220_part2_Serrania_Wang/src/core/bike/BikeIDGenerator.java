@@ -1,30 +1,44 @@
 package core.bike;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import utils.IDScope;
+
 /**
  * ID Generator for bike ids <br>
- * Implements the singleton pattern
+ * Implements the singleton pattern. The instance and the ids can be requested
+ * by several threads at the same time. Inside an IDScope, ids are counted
+ * separately.
  * 
  * @author animato
  *
  */
 public class BikeIDGenerator {
-	private static BikeIDGenerator instance = null;
-	private int counter = 0;
+	private static final BikeIDGenerator instance = new BikeIDGenerator();
+	// used outside of an IDScope
+	private final AtomicInteger sharedCounter = new AtomicInteger();
 
 	/**
-	 * Gets the current instance of IDGenerator, or creates it if it does not exist
+	 * Gets the instance of IDGenerator
 	 * 
 	 * @return the IDGenerator
 	 */
 	public static BikeIDGenerator getInstance() {
-		if (instance == null) {
-			instance = new BikeIDGenerator();
-		}
 		return instance;
 	}
 
 	public int getNextIDNumber() {
-		counter++;
-		return counter;
+		return counter().incrementAndGet();
+	}
+
+	/**
+	 * Used when running tests, to make sure the app starts in a clean state
+	 */
+	public void reset() {
+		counter().set(0);
+	}
+
+	private AtomicInteger counter() {
+		return IDScope.counter(this, sharedCounter);
 	}
 }
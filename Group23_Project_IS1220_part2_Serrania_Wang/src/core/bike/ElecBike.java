@@ -19,6 +19,10 @@ public class ElecBike implements Bike {
 	
 	// Getters / Setters
 	
+	public int getId() {
+		return id;
+	}
+
 	public String getType() {
 		return type;
 	}
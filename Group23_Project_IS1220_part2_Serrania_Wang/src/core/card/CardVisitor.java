@@ -56,4 +56,11 @@ public interface CardVisitor {
 	 *             the card is not enough to match the time credit to remove
 	 */
 	public int removeTimeCredit(int timeCredit) throws IllegalArgumentException;
+
+	/**
+	 * Gives the type of the card, as understood by CardVisitorFactory
+	 * 
+	 * @return the type of the card
+	 */
+	public String getCardType();
 }
@@ -2,14 +2,38 @@ package core.card;
 
 /**
  * Factory class used to create different kind of cardVisitors.<br>
- * Currently three types of card exist: NO_CARD (when the user does not have a
- * card), VLIBRE_CARD and VMAX_CARD
+ * The types of card are those of the tariff of the factory. The tariff of
+ * myVelib has three types of card: NO_CARD (when the user does not have a
+ * card), VLIBRE_CARD and VMAX_CARD; any other type of card of the tariff is
+ * priced the same way, by a TariffCardVisitor.
  * 
  * @see CardVisitor
+ * @see Tariff
  * @author matto
  *
  */
 public class CardVisitorFactory {
+	private final Tariff tariff;
+
+	// Constructor
+
+	/**
+	 * Creates a factory of cards priced with the default tariff
+	 */
+	public CardVisitorFactory() {
+		this(Tariff.getDefault());
+	}
+
+	/**
+	 * @param tariff
+	 *            the tariff pricing the cards
+	 */
+	public CardVisitorFactory(Tariff tariff) {
+		this.tariff = tariff;
+	}
+
+	// Core methods
+
 	/**
 	 * Creates and returns a CardVisitor corresponding to the given type
 	 * 
@@ -20,18 +44,24 @@ public class CardVisitorFactory {
 	 *             if the given type is not recognized as a valid card type
 	 */
 	public CardVisitor createCard(String cardType) throws InvalidCardTypeException {
-		if (cardType == null) {
+		if (cardType == null || tariff.cardIndex(cardType) < 0) {
 			throw new InvalidCardTypeException(cardType);
 		}
 		switch (cardType.toUpperCase()) {
 		case "NO_CARD":
-			return new NoCardVisitor();
+			return new NoCardVisitor(tariff);
 		case "VLIBRE_CARD":
-			return new VLibreCardVisitor();
+			return new VLibreCardVisitor(tariff);
 		case "VMAX_CARD":
-			return new VMaxCardVisitor();
+			return new VMaxCardVisitor(tariff);
 		default:
-			throw new InvalidCardTypeException(cardType);
+			return new TariffCardVisitor(tariff, cardType);
 		}
 	}
+
+	// Getters / Setters
+
+	public Tariff getTariff() {
+		return tariff;
+	}
 }
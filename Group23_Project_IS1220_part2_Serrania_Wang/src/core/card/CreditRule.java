@@ -0,0 +1,53 @@
+package core.card;
+
+/**
+ * Rule deciding how much of the time credit of a card pays a rental, as given
+ * in the tariff. The credit used is computed in constant time by
+ * PricingEngine.
+ *
+ * @see Tariff
+ * @see PricingEngine
+ * @author matto
+ */
+public enum CreditRule {
+	/**
+	 * The card holds no time credit
+	 */
+	NONE {
+		@Override
+		public long creditUsed(long minutes, int timeCredit) {
+			return 0;
+		}
+	},
+	/**
+	 * The credit pays the minutes beyond the last full hour, then whole hours,
+	 * while more than one hour is left to pay
+	 */
+	AFTER_FIRST_HOUR {
+		@Override
+		public long creditUsed(long minutes, int timeCredit) {
+			return PricingEngine.hourlyCreditUsed(minutes, timeCredit);
+		}
+	},
+	/**
+	 * The credit pays the minutes beyond the last full hour, then all the whole
+	 * hours once the card holds one hour of credit
+	 */
+	ALL_HOURS {
+		@Override
+		public long creditUsed(long minutes, int timeCredit) {
+			return PricingEngine.vlibreElecCreditUsed(minutes, timeCredit);
+		}
+	};
+
+	/**
+	 * Gives the time credit used to pay a rental
+	 *
+	 * @param minutes
+	 *            the length of the rental, in minutes
+	 * @param timeCredit
+	 *            the time credit of the card, in minutes
+	 * @return the time credit used, in minutes
+	 */
+	public abstract long creditUsed(long minutes, int timeCredit);
+}
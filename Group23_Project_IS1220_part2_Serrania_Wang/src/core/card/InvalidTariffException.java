@@ -0,0 +1,33 @@
+package core.card;
+
+/**
+ * Exception thrown when a tariff cannot be read.
+ * 
+ * @author matto
+ *
+ */
+public class InvalidTariffException extends Exception {
+	private final int line;
+	private final String reason;
+
+	/**
+	 * @param line
+	 *            the line of the tariff where the error is (0 if it concerns
+	 *            the whole tariff)
+	 * @param reason
+	 *            what is wrong
+	 */
+	public InvalidTariffException(int line, String reason) {
+		this.line = line;
+		this.reason = reason;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	@Override
+	public String getMessage() {
+		return line > 0 ? "Invalid tariff at line " + line + ": " + reason + "." : "Invalid tariff: " + reason + ".";
+	}
+}
@@ -0,0 +1,117 @@
+package core.card;
+
+/**
+ * Computes the prices of rentals and the time credit they use, in constant
+ * time, from the number of minutes of the rental and the time credit of the
+ * card. <br>
+ * The cards first use their time credit to pay the minutes beyond the last
+ * full hour, then whole hours; the price is then computed on the minutes left.
+ * Instead of taking the hours of credit one at a time, the number of hours is
+ * computed at once, so the time does not depend on the length of the ride or
+ * on the credit. The price of a rental is always given by the minutes left to
+ * pay: minutes - credit used. <br>
+ * Only primitive values are used: nothing is allocated.
+ *
+ * @see CreditRule
+ * @see Tariff
+ * @see VLibreCardVisitor
+ * @see VMaxCardVisitor
+ * @author matto
+ */
+public final class PricingEngine {
+
+	private PricingEngine() {
+	}
+
+	// Core methods
+
+	/**
+	 * Price of a rental without card: a price per started hour
+	 *
+	 * @param minutes
+	 *            the length of the rental, in minutes
+	 * @param pricePerHour
+	 *            the price of an hour (1€ for a mechanical bike, 2€ for an
+	 *            electrical bike)
+	 * @return the price of the rental
+	 */
+	public static long noCardPrice(long minutes, long pricePerHour) {
+		return pricePerHour * (minutes / 60 + ((minutes % 60 == 0) ? 0 : 1));
+	}
+
+	/**
+	 * Time credit used for a rental priced by the hour after a free first hour
+	 * (VMax card, and VLibre card with a mechanical bike). The credit pays the
+	 * minutes beyond the last full hour if it can pay all of them, then as many
+	 * whole hours as possible while more than one hour is left to pay.
+	 *
+	 * @param minutes
+	 *            the length of the rental, in minutes
+	 * @param timeCredit
+	 *            the time credit of the card, in minutes
+	 * @return the time credit used, in minutes
+	 */
+	public static long hourlyCreditUsed(long minutes, int timeCredit) {
+		long extraMinutes = minutes % 60;
+		long used = (minutes > 60 && extraMinutes <= timeCredit) ? extraMinutes : 0;
+		long left = minutes - used;
+		// whole hours paid while more than one hour is left
+		long hours = Math.min(left > 60 ? (left - 61) / 60 + 1 : 0, (timeCredit - used) / 60);
+		return used + 60 * hours;
+	}
+
+	/**
+	 * Price of a rental with a free first hour, then 1€ per started hour (VMax
+	 * card, and VLibre card with a mechanical bike)
+	 *
+	 * @param minutesToPay
+	 *            the minutes of the rental not paid with time credit
+	 * @return the price of the rental
+	 */
+	public static long hourlyPrice(long minutesToPay) {
+		if (minutesToPay <= 60)
+			return 0;
+		return (minutesToPay - 60) / 60 + ((minutesToPay % 60 == 0) ? 0 : 1);
+	}
+
+	/**
+	 * Time credit used for a rental of an electrical bike with a VLibre card.
+	 * The credit pays the minutes beyond the last full hour if it can pay all of
+	 * them. Then, when the card holds at least one hour of credit, all the whole
+	 * hours are paid with credit, even beyond the credit of the card (the hours
+	 * are paid as long as the initial credit, not the credit left, is at least
+	 * one hour).
+	 *
+	 * @param minutes
+	 *            the length of the rental, in minutes
+	 * @param timeCredit
+	 *            the time credit of the card, in minutes
+	 * @return the time credit used, in minutes
+	 */
+	public static long vlibreElecCreditUsed(long minutes, int timeCredit) {
+		long extraMinutes = minutes % 60;
+		long used = (extraMinutes <= timeCredit) ? extraMinutes : 0;
+		long left = minutes - used;
+		if (timeCredit >= 60 && left > 0) {
+			// every started hour left
+			used += 60 * ((left - 1) / 60 + 1);
+		}
+		return used;
+	}
+
+	/**
+	 * Price of a rental of an electrical bike with a VLibre card: 1€ for the
+	 * first hour, then 2€ per started hour
+	 *
+	 * @param minutesToPay
+	 *            the minutes of the rental not paid with time credit
+	 * @return the price of the rental
+	 */
+	public static long vlibreElecPrice(long minutesToPay) {
+		if (minutesToPay == 0)
+			return 0;
+		if (minutesToPay <= 60)
+			return 1;
+		return 1 + 2 * ((minutesToPay - 60) / 60) + ((minutesToPay % 60 == 0) ? 0 : 2);
+	}
+}
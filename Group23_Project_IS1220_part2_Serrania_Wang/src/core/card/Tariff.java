@@ -0,0 +1,329 @@
+package core.card;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Tariff of the network: for each type of card and type of bike, the hourly
+ * rates of a rental and the rule of use of the time credit. <br>
+ * The tariff is read from a text file, one line per card type and bike type:
+ * <br>
+ * <code>&lt;card type&gt; &lt;bike type&gt; &lt;hourly rates&gt; &lt;time credit rule&gt;</code>
+ * <br>
+ * The hourly rates are separated by commas: the price of the first started
+ * hour, of the second one, and so on; the last rate is the price of every
+ * further hour. Empty lines and lines starting with # are ignored. <br>
+ * The tariff is compiled once when it is read: card types and bike types get
+ * indexes, and the price of the first hours of each pair is cumulated, so that
+ * the price of a rental is a lookup in an array, whatever its length. <br>
+ * The default tariff is the file named by the system property myvelib.tariff,
+ * or else the resource tariffs.txt of this package.
+ *
+ * @see TariffCardVisitor
+ * @see CreditRule
+ * @author matto
+ *
+ */
+public final class Tariff {
+	public static final String TARIFF_PROPERTY = "myvelib.tariff";
+	public static final String DEFAULT_RESOURCE = "tariffs.txt";
+
+	private final List<String> cardTypes;
+	private final List<String> bikeTypes;
+	private final HashMap<String, Integer> cardIndexes;
+	private final HashMap<String, Integer> bikeIndexes;
+	// Indexed by card * number of bike types + bike; null when the card cannot
+	// rent the type of bike
+	private final CreditRule[] creditRules;
+	private final long[][] cumulatedRates;
+	private final long[] lastRates;
+	private final boolean[] holdsTimeCredit;
+
+	/**
+	 * Holder of the default tariff, read on first use
+	 */
+	private static class DefaultTariff {
+		private static final Tariff INSTANCE = readDefault();
+	}
+
+	/**
+	 * A line of the tariff, before compilation
+	 */
+	private static class Entry {
+		final int line;
+		final String cardType;
+		final String bikeType;
+		final long[] rates;
+		final CreditRule creditRule;
+
+		Entry(int line, String cardType, String bikeType, long[] rates, CreditRule creditRule) {
+			this.line = line;
+			this.cardType = cardType;
+			this.bikeType = bikeType;
+			this.rates = rates;
+			this.creditRule = creditRule;
+		}
+	}
+
+	// Constructor
+
+	private Tariff(List<Entry> entries) throws InvalidTariffException {
+		if (entries.isEmpty()) {
+			throw new InvalidTariffException(0, "no rate given");
+		}
+		cardTypes = new ArrayList<String>();
+		bikeTypes = new ArrayList<String>();
+		cardIndexes = new HashMap<String, Integer>();
+		bikeIndexes = new HashMap<String, Integer>();
+		for (Entry e : entries) {
+			if (!cardIndexes.containsKey(e.cardType)) {
+				cardIndexes.put(e.cardType, cardTypes.size());
+				cardTypes.add(e.cardType);
+			}
+			if (!bikeIndexes.containsKey(e.bikeType)) {
+				bikeIndexes.put(e.bikeType, bikeTypes.size());
+				bikeTypes.add(e.bikeType);
+			}
+		}
+
+		int size = cardTypes.size() * bikeTypes.size();
+		creditRules = new CreditRule[size];
+		cumulatedRates = new long[size][];
+		lastRates = new long[size];
+		holdsTimeCredit = new boolean[cardTypes.size()];
+		for (Entry e : entries) {
+			int card = cardIndexes.get(e.cardType);
+			int index = card * bikeTypes.size() + bikeIndexes.get(e.bikeType);
+			if (creditRules[index] != null) {
+				throw new InvalidTariffException(e.line,
+						"the rates of " + e.cardType + " for " + e.bikeType + " are already given");
+			}
+			creditRules[index] = e.creditRule;
+			holdsTimeCredit[card] |= e.creditRule != CreditRule.NONE;
+			// price of the first h started hours, for h = 0 to the number of rates
+			long[] cumulated = new long[e.rates.length + 1];
+			for (int h = 0; h < e.rates.length; h++) {
+				cumulated[h + 1] = cumulated[h] + e.rates[h];
+			}
+			cumulatedRates[index] = cumulated;
+			lastRates[index] = e.rates[e.rates.length - 1];
+		}
+	}
+
+	// Core methods
+
+	/**
+	 * Reads and compiles a tariff
+	 *
+	 * @param reader
+	 *            the text of the tariff
+	 * @return the tariff
+	 * @throws InvalidTariffException
+	 *             if a line of the tariff is not valid
+	 * @throws IOException
+	 *             if the text cannot be read
+	 */
+	public static Tariff read(Reader reader) throws InvalidTariffException, IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		BufferedReader in = new BufferedReader(reader);
+		String text;
+		int line = 0;
+		while ((text = in.readLine()) != null) {
+			line++;
+			text = text.trim();
+			if (text.isEmpty() || text.startsWith("#")) {
+				continue;
+			}
+			entries.add(parseEntry(line, text));
+		}
+		return new Tariff(entries);
+	}
+
+	/**
+	 * Reads and compiles a tariff file
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @return the tariff
+	 * @throws InvalidTariffException
+	 *             if a line of the tariff is not valid
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static Tariff load(Path path) throws InvalidTariffException, IOException {
+		try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			return read(reader);
+		}
+	}
+
+	/**
+	 * Gives the default tariff, read once: the file named by the system property
+	 * myvelib.tariff if it is set, the tariff of myVelib otherwise
+	 *
+	 * @return the default tariff
+	 * @throws IllegalStateException
+	 *             if the default tariff cannot be read
+	 */
+	public static Tariff getDefault() {
+		return DefaultTariff.INSTANCE;
+	}
+
+	private static Tariff readDefault() {
+		String file = System.getProperty(TARIFF_PROPERTY);
+		try {
+			if (file != null) {
+				return load(Paths.get(file));
+			}
+			InputStream resource = Tariff.class.getResourceAsStream(DEFAULT_RESOURCE);
+			if (resource == null) {
+				throw new IllegalStateException("The resource " + DEFAULT_RESOURCE + " of core.card is missing");
+			}
+			try (Reader reader = new InputStreamReader(resource, StandardCharsets.UTF_8)) {
+				return read(reader);
+			}
+		} catch (InvalidTariffException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static Entry parseEntry(int line, String text) throws InvalidTariffException {
+		String[] fields = text.split("\\s+");
+		if (fields.length != 4) {
+			throw new InvalidTariffException(line,
+					"expected <card type> <bike type> <hourly rates> <time credit rule>");
+		}
+		String[] rateFields = fields[2].split(",");
+		long[] rates = new long[rateFields.length];
+		for (int i = 0; i < rates.length; i++) {
+			try {
+				rates[i] = Long.parseLong(rateFields[i]);
+			} catch (NumberFormatException e) {
+				throw new InvalidTariffException(line, "invalid rate " + rateFields[i]);
+			}
+			if (rates[i] < 0) {
+				throw new InvalidTariffException(line, "negative rate " + rates[i]);
+			}
+		}
+		CreditRule creditRule;
+		try {
+			creditRule = CreditRule.valueOf(fields[3].toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new InvalidTariffException(line, "unknown time credit rule " + fields[3]);
+		}
+		return new Entry(line, fields[0].toUpperCase(), fields[1].toUpperCase(), rates, creditRule);
+	}
+
+	/**
+	 * Gives the index of a rate, used to price rentals
+	 *
+	 * @param card
+	 *            the index of the card type
+	 * @param bikeType
+	 *            the type of bike
+	 * @return the index of the rate, or -1 if the card cannot rent this type of
+	 *         bike
+	 */
+	public int rateIndex(int card, String bikeType) {
+		Integer bike = bikeIndexes.get(bikeType);
+		if (bike == null) {
+			return -1;
+		}
+		int index = card * bikeTypes.size() + bike;
+		return creditRules[index] == null ? -1 : index;
+	}
+
+	/**
+	 * Gives the time credit used to pay a rental
+	 *
+	 * @param rateIndex
+	 *            the index of the rate
+	 * @param minutes
+	 *            the length of the rental, in minutes
+	 * @param timeCredit
+	 *            the time credit of the card, in minutes
+	 * @return the time credit used, in minutes
+	 */
+	public long creditUsed(int rateIndex, long minutes, int timeCredit) {
+		return creditRules[rateIndex].creditUsed(minutes, timeCredit);
+	}
+
+	/**
+	 * Gives the price of the minutes of a rental that are not paid with time
+	 * credit: the rate of each started hour
+	 *
+	 * @param rateIndex
+	 *            the index of the rate
+	 * @param minutesToPay
+	 *            the minutes of the rental not paid with time credit
+	 * @return the price
+	 */
+	public long price(int rateIndex, long minutesToPay) {
+		if (minutesToPay <= 0) {
+			return 0;
+		}
+		long[] cumulated = cumulatedRates[rateIndex];
+		long hours = (minutesToPay + 59) / 60;
+		int given = cumulated.length - 1;
+		if (hours <= given) {
+			return cumulated[(int) hours];
+		}
+		return cumulated[given] + (hours - given) * lastRates[rateIndex];
+	}
+
+	// Getters / Setters
+
+	/**
+	 * Gives the index of a card type
+	 *
+	 * @param cardType
+	 *            the type of card
+	 * @return the index of the card type, or -1 if the tariff has no rate for it
+	 */
+	public int cardIndex(String cardType) {
+		Integer card = cardType == null ? null : cardIndexes.get(cardType.toUpperCase());
+		return card == null ? -1 : card;
+	}
+
+	public String getCardType(int card) {
+		return cardTypes.get(card);
+	}
+
+	public List<String> getCardTypes() {
+		return new ArrayList<String>(cardTypes);
+	}
+
+	public List<String> getBikeTypes() {
+		return new ArrayList<String>(bikeTypes);
+	}
+
+	/**
+	 * @param card
+	 *            the index of the card type
+	 * @return true if the card uses time credit for some type of bike
+	 */
+	public boolean holdsTimeCredit(int card) {
+		return holdsTimeCredit[card];
+	}
+
+	/**
+	 * @param rateIndex
+	 *            the index of the rate
+	 * @return the rule of use of the time credit
+	 */
+	public CreditRule getCreditRule(int rateIndex) {
+		return creditRules[rateIndex];
+	}
+}
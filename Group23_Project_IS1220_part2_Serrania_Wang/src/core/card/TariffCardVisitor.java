@@ -0,0 +1,110 @@
+package core.card;
+
+import java.time.temporal.ChronoUnit;
+
+import core.bike.Bike;
+import core.rentals.BikeRental;
+
+/**
+ * Implementation of CardVisitor pricing the rentals with a tariff. <br>
+ * The card is bound to a type of card of the tariff: the price of a rental and
+ * the time credit it uses are given by the rates of this type of card for the
+ * type of the bike. A card whose rates never use time credit cannot accumulate
+ * any. <br>
+ * 
+ * Implements CardVisitor <br>
+ * Extends CardWithTimeCreditVisitor
+ * 
+ * @see Tariff
+ * @see CardVisitorFactory
+ * @author matto
+ */
+public class TariffCardVisitor extends CardWithTimeCreditVisitor implements CardVisitor {
+	private final Tariff tariff;
+	private final int card;
+
+	// Constructor
+
+	/**
+	 * @param tariff
+	 *            the tariff pricing the rentals
+	 * @param cardType
+	 *            the type of card, as given in the tariff
+	 * @throws IllegalArgumentException
+	 *             if the tariff has no rate for this type of card
+	 */
+	protected TariffCardVisitor(Tariff tariff, String cardType) throws IllegalArgumentException {
+		super();
+		this.tariff = tariff;
+		this.card = tariff.cardIndex(cardType);
+		if (card < 0) {
+			throw new IllegalArgumentException("The tariff has no rate for the card type " + cardType);
+		}
+	}
+
+	// Core methods
+
+	/**
+	 * Calculates the price of a bike rental and updates the bike rental with the
+	 * price and time credit used. The time credit is used as much as the tariff
+	 * allows to lower the price.
+	 * 
+	 * @param rental
+	 *            the BikeRental whose price is being calculated
+	 * @return the price of the rental
+	 * @throws InvalidBikeException
+	 *             if the tariff has no rate for the type of bike (or null) with
+	 *             this card
+	 * @throws InvalidDatesException
+	 *             if invalid rent of return dates are given
+	 */
+	@Override
+	public double visit(BikeRental rental) throws InvalidBikeException, InvalidDatesException {
+		Bike bike = rental.getBike();
+		if (rental.getRentDate() == null || rental.getReturnDate() == null || rental.getTimeSpent() < 0) {
+			throw new InvalidDatesException(rental);
+		}
+		int rate = bike == null ? -1 : tariff.rateIndex(card, bike.getType());
+		if (rate < 0) {
+			throw new InvalidBikeException(rental);
+		}
+		long nMinutes = ChronoUnit.MINUTES.between(rental.getRentDate(), rental.getReturnDate());
+
+		long timeCreditUsed = tariff.creditUsed(rate, nMinutes, getTimeCredit());
+		rental.setTimeCreditUsed((int) timeCreditUsed);
+		rental.setPrice(tariff.price(rate, nMinutes - timeCreditUsed));
+		return rental.getPrice();
+	}
+
+	// Getters / Setters
+
+	@Override
+	public String getCardType() {
+		return tariff.getCardType(card);
+	}
+
+	public Tariff getTariff() {
+		return tariff;
+	}
+
+	@Override
+	public int addTimeCredit(int timeCredit) throws IllegalArgumentException {
+		if (!tariff.holdsTimeCredit(card)) {
+			return 0;
+		}
+		return super.addTimeCredit(timeCredit);
+	}
+
+	@Override
+	public int removeTimeCredit(int timeCredit) throws IllegalArgumentException {
+		if (!tariff.holdsTimeCredit(card)) {
+			return 0;
+		}
+		return super.removeTimeCredit(timeCredit);
+	}
+
+	@Override
+	public String toString() {
+		return getCardType() + " card: [time credit: " + getTimeCredit() + "]";
+	}
+}
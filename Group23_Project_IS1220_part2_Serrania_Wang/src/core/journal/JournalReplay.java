@@ -0,0 +1,229 @@
+package core.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32;
+
+import core.Network;
+import core.bike.BikeFactory;
+import core.bike.InvalidBikeTypeException;
+import core.card.CardVisitor;
+import core.card.CardVisitorFactory;
+import core.card.InvalidBikeException;
+import core.card.InvalidCardTypeException;
+import core.card.InvalidDatesException;
+import core.rentals.BikeRental;
+import core.rentals.OngoingBikeRentalException;
+import core.station.BikeNotFoundException;
+import core.station.FullStationException;
+import core.station.InvalidStationTypeException;
+import core.station.OccupiedParkingSlotException;
+import core.station.OfflineStationException;
+import core.station.Station;
+import core.station.StationFactory;
+import core.user.BikeRentalNotFoundException;
+import core.user.User;
+import utils.Point;
+
+/**
+ * Rebuilds a network from its journal file. <br>
+ * The records are decoded from the file and applied directly to the network
+ * objects, without going through the CLUI. Reading stops at the first record
+ * which is incomplete or whose checksum is wrong (the end of a file cut by a
+ * crash): the file is truncated there and the journal continues after the last
+ * complete record.
+ *
+ * @author animato
+ *
+ */
+class JournalReplay {
+	private final Path file;
+	private final BikeFactory bikeFactory = new BikeFactory();
+	private final StationFactory stationFactory = new StationFactory();
+	private final CardVisitorFactory cardFactory = new CardVisitorFactory();
+	private Network network;
+
+	// Constructor
+
+	JournalReplay(Path file) {
+		this.file = file;
+	}
+
+	// Core methods
+
+	/**
+	 * Reads the journal and rebuilds the network
+	 *
+	 * @return the network, with the journal attached
+	 * @throws IOException
+	 *             when the file cannot be read, or does not start with a network
+	 *             record
+	 */
+	Network replay() throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Journal " + file + " is too large to be replayed");
+			}
+			ByteBuffer data = ByteBuffer.allocate((int) size);
+			while (data.hasRemaining() && channel.read(data) >= 0)
+				;
+			data.flip();
+
+			int validEnd = 0;
+			CRC32 crc = new CRC32();
+			while (data.remaining() >= NetworkJournal.HEADER_SIZE + NetworkJournal.TRAILER_SIZE) {
+				int start = data.position();
+				int length = data.getInt(start);
+				if (length < 0 || data.remaining() < NetworkJournal.HEADER_SIZE + length + NetworkJournal.TRAILER_SIZE)
+					break;
+				crc.reset();
+				crc.update(data.array(), start + NetworkJournal.HEADER_SIZE - 1, length + 1);
+				if ((int) crc.getValue() != data.getInt(start + NetworkJournal.HEADER_SIZE + length))
+					break;
+
+				byte type = data.get(start + NetworkJournal.HEADER_SIZE - 1);
+				ByteBuffer payload = (ByteBuffer) data.duplicate().position(start + NetworkJournal.HEADER_SIZE)
+						.limit(start + NetworkJournal.HEADER_SIZE + length);
+				apply(type, payload);
+				validEnd = start + NetworkJournal.HEADER_SIZE + length + NetworkJournal.TRAILER_SIZE;
+				data.position(validEnd);
+			}
+			if (network == null) {
+				throw new IOException("Journal " + file + " does not start with a network record");
+			}
+
+			// Drop the incomplete record at the end (if any), and go on after the last one
+			channel.truncate(validEnd);
+			channel.position(validEnd);
+			network.setJournal(new NetworkJournal(channel, true));
+			return network;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Applies a record to the network
+	 *
+	 * @param type
+	 *            the type of record
+	 * @param payload
+	 *            the content of the record
+	 * @throws IOException
+	 *             when the record cannot be applied to the network
+	 */
+	private void apply(byte type, ByteBuffer payload) throws IOException {
+		if (type != NetworkJournal.NETWORK && network == null) {
+			throw new IOException("Journal " + file + " does not start with a network record");
+		}
+		try {
+			switch (type) {
+			case NetworkJournal.NETWORK: {
+				String name = getString(payload);
+				double side = payload.getDouble();
+				LocalDateTime creationDate = getDate(payload);
+				network = new Network(name, 0, 0, side, 0, 0, 0, creationDate);
+				break;
+			}
+			case NetworkJournal.ADD_STATION: {
+				int id = payload.getInt();
+				String stationType = getString(payload);
+				Point coordinates = new Point(payload.getDouble(), payload.getDouble());
+				int numberOfParkingSlots = payload.getInt();
+				boolean online = payload.get() != 0;
+				Station station = stationFactory.createStation(stationType, id, numberOfParkingSlots, coordinates,
+						online);
+				station.setOnline(online);
+				network.addStation(station);
+				break;
+			}
+			case NetworkJournal.SET_BIKE: {
+				Station station = getStation(payload.getInt());
+				int index = payload.getInt();
+				String bikeType = getString(payload);
+				station.getParkingSlots().get(index).setBike(bikeFactory.createBike(bikeType), getDate(payload));
+				break;
+			}
+			case NetworkJournal.ADD_USER: {
+				int id = payload.getInt();
+				String name = getString(payload);
+				Point coordinates = new Point(payload.getDouble(), payload.getDouble());
+				CardVisitor card = cardFactory.createCard(getString(payload));
+				card.addTimeCredit(payload.getInt());
+				network.addUser(new User(id, name, coordinates, card));
+				break;
+			}
+			case NetworkJournal.START_RENTAL: {
+				User user = getUser(payload.getInt());
+				String bikeType = getString(payload);
+				user.setBikeRental(new BikeRental(bikeFactory.createBike(bikeType), getDate(payload)));
+				break;
+			}
+			case NetworkJournal.RENT_BIKE: {
+				User user = getUser(payload.getInt());
+				Station station = getStation(payload.getInt());
+				String bikeType = getString(payload);
+				network.rentBike(user, station, bikeType, getDate(payload));
+				break;
+			}
+			case NetworkJournal.RETURN_BIKE: {
+				User user = getUser(payload.getInt());
+				Station station = getStation(payload.getInt());
+				try {
+					network.returnBike(user, station, getDate(payload));
+				} catch (InvalidBikeException | InvalidDatesException e) {
+					// the bike was parked but the rental could not be priced, as when
+					// it was recorded: the user keeps the rental
+				}
+				break;
+			}
+			case NetworkJournal.SET_ONLINE: {
+				Station station = getStation(payload.getInt());
+				station.setOnline(payload.get() != 0);
+				break;
+			}
+			default:
+				throw new IOException("Unknown record type " + type + " in journal " + file);
+			}
+		} catch (InvalidStationTypeException | InvalidBikeTypeException | InvalidCardTypeException
+				| OccupiedParkingSlotException | OngoingBikeRentalException | OfflineStationException
+				| BikeNotFoundException | BikeRentalNotFoundException | FullStationException e) {
+			// The recorded change succeeded: the journal does not match the network
+			throw new IOException("Journal " + file + " cannot be replayed: " + e.getMessage(), e);
+		}
+	}
+
+	private Station getStation(int id) throws IOException {
+		Station station = network.getStations().get(id);
+		if (station == null)
+			throw new IOException("Unknown station " + id + " in journal " + file);
+		return station;
+	}
+
+	private User getUser(int id) throws IOException {
+		User user = network.getUsers().get(id);
+		if (user == null)
+			throw new IOException("Unknown user " + id + " in journal " + file);
+		return user;
+	}
+
+	private static String getString(ByteBuffer payload) {
+		byte[] bytes = new byte[payload.getShort() & 0xFFFF];
+		payload.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static LocalDateTime getDate(ByteBuffer payload) {
+		long epochSecond = payload.getLong();
+		return LocalDateTime.ofEpochSecond(epochSecond, payload.getInt(), ZoneOffset.UTC);
+	}
+}
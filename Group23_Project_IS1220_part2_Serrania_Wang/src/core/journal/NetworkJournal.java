@@ -0,0 +1,405 @@
+package core.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32;
+
+import core.Network;
+import core.card.CardVisitor;
+import core.rentals.BikeRental;
+import core.station.ParkingSlot;
+import core.station.PlusStation;
+import core.station.Station;
+import core.user.User;
+
+/**
+ * Append-only binary journal of the changes of a network (write-ahead log).
+ * <br>
+ * The journal starts with a checkpoint of the network (its stations, bikes,
+ * users and ongoing rentals), then one record is appended for every change:
+ * added station or user, rented or returned bike, station set online or
+ * offline. The network can then be rebuilt with replay(), much faster than
+ * running the CLUI commands again. <br>
+ * The records must be appended in the order the changes are applied: the
+ * network appends the record of a change to a station while the station is
+ * locked, and the record of a change of a user while the user is locked. They
+ * are made durable afterwards with commit(), once the locks are released. <br>
+ * Records are written to a buffer and go to the file through a FileChannel.
+ * Commits are grouped: the thread committing forces to disk every record
+ * appended so far, so threads whose records were committed by another thread
+ * do not wait for the disk again. <br>
+ * Each record is framed as: payload length (int), record type (byte), payload,
+ * CRC32 of type and payload (int). A record cut by a crash is detected and
+ * ignored on replay.
+ *
+ * @author animato
+ *
+ */
+public class NetworkJournal implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// Record types
+	static final byte NETWORK = 1;
+	static final byte ADD_STATION = 2;
+	static final byte SET_BIKE = 3;
+	static final byte ADD_USER = 4;
+	static final byte START_RENTAL = 5;
+	static final byte RENT_BIKE = 6;
+	static final byte RETURN_BIKE = 7;
+	static final byte SET_ONLINE = 8;
+
+	// Record framing: length + type before the payload, CRC after it
+	static final int HEADER_SIZE = 5;
+	static final int TRAILER_SIZE = 4;
+
+	private final FileChannel channel;
+	private final boolean forceOnCommit;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private ByteBuffer record = ByteBuffer.allocate(256);
+	private final CRC32 crc = new CRC32();
+
+	// Number of records appended (guarded by this) and known to be committed
+	private long appended = 0;
+	private volatile long committed = 0;
+	private final Object commitLock = new Object();
+
+	// Constructor
+
+	/**
+	 * Creates a journal writing to the given channel, after its current position
+	 *
+	 * @param channel
+	 *            the channel of the journal file
+	 * @param forceOnCommit
+	 *            true to force the records to the disk on commit, false to only
+	 *            write them to the file
+	 */
+	NetworkJournal(FileChannel channel, boolean forceOnCommit) {
+		this.channel = channel;
+		this.forceOnCommit = forceOnCommit;
+	}
+
+	// Core methods
+
+	/**
+	 * Creates a new journal file for a network (an existing file is replaced),
+	 * writes a checkpoint of the network and attaches the journal to the network
+	 * so that its changes are recorded. <br>
+	 * The checkpoint holds the stations, the bikes in the parking slots, the users
+	 * (with the time credit of their card) and the ongoing rentals. The journal
+	 * should be created right after the network, as statistics and status
+	 * histories are only rebuilt from the changes recorded afterwards. The
+	 * rentals waiting to be billed are billed first.
+	 *
+	 * @param file
+	 *            the path of the journal file
+	 * @param network
+	 *            the network to record
+	 * @return the journal
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public static NetworkJournal create(Path file, Network network) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		NetworkJournal journal = new NetworkJournal(channel, true);
+		try {
+			// the time credit of the cards must include every return
+			network.billPendingRentals();
+			journal.writeCheckpoint(network);
+			journal.commit();
+		} catch (IOException e) {
+			journal.close();
+			throw e;
+		}
+		network.setJournal(journal);
+		return journal;
+	}
+
+	/**
+	 * Rebuilds a network from its journal file. The journal is then attached to
+	 * the rebuilt network, new changes are appended to the same file (after the
+	 * last complete record).
+	 *
+	 * @param file
+	 *            the path of the journal file
+	 * @return the rebuilt network
+	 * @throws IOException
+	 *             when the file cannot be read, or does not start with a network
+	 *             record
+	 */
+	public static Network replay(Path file) throws IOException {
+		return new JournalReplay(file).replay();
+	}
+
+	/**
+	 * Writes a checkpoint of the network: the network itself, its stations, the
+	 * bikes in its parking slots, its users and their ongoing rentals
+	 */
+	private void writeCheckpoint(Network network) throws IOException {
+		LocalDateTime date = network.getCurrentDate();
+		synchronized (this) {
+			beginRecord(NETWORK);
+			putString(network.getName());
+			record.putDouble(network.getSide());
+			putDate(network.getCreationDate());
+			endRecord();
+			for (Station station : network.getStations().values()) {
+				appendStation(station);
+				for (ParkingSlot ps : station.getParkingSlots()) {
+					if (ps.hasBike()) {
+						beginRecord(SET_BIKE);
+						record.putInt(station.getId());
+						record.putInt(ps.getIndex());
+						putString(ps.getBike().getType());
+						putDate(date);
+						endRecord();
+					}
+				}
+			}
+			for (User user : network.getUsers().values()) {
+				appendUser(user);
+				BikeRental rental = user.getBikeRental();
+				if (rental != null) {
+					beginRecord(START_RENTAL);
+					record.putInt(user.getId());
+					putString(rental.getBike().getType());
+					putDate(rental.getRentDate());
+					endRecord();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Appends the record of a station added to the network (made durable by the
+	 * next commit)
+	 *
+	 * @param station
+	 *            the station added
+	 * @throws IOException
+	 *             when the record cannot be written
+	 */
+	public synchronized void addStation(Station station) throws IOException {
+		appendStation(station);
+	}
+
+	/**
+	 * Appends the record of a user added to the network (made durable by the
+	 * next commit)
+	 *
+	 * @param user
+	 *            the user added
+	 * @throws IOException
+	 *             when the record cannot be written
+	 */
+	public synchronized void addUser(User user) throws IOException {
+		appendUser(user);
+	}
+
+	/**
+	 * Appends the record of a bike rented by a user (made durable by the next
+	 * commit)
+	 *
+	 * @param user
+	 *            the user renting the bike
+	 * @param station
+	 *            the station where the bike is rented
+	 * @param bikeType
+	 *            the type of the bike
+	 * @param date
+	 *            the date of the rental
+	 * @throws IOException
+	 *             when the record cannot be written
+	 */
+	public synchronized void rentBike(User user, Station station, String bikeType, LocalDateTime date)
+			throws IOException {
+		beginRecord(RENT_BIKE);
+		record.putInt(user.getId());
+		record.putInt(station.getId());
+		putString(bikeType);
+		putDate(date);
+		endRecord();
+	}
+
+	/**
+	 * Appends the record of a bike returned by a user (made durable by the next
+	 * commit)
+	 *
+	 * @param user
+	 *            the user returning the bike
+	 * @param station
+	 *            the station where the bike is returned
+	 * @param date
+	 *            the date of the return
+	 * @throws IOException
+	 *             when the record cannot be written
+	 */
+	public synchronized void returnBike(User user, Station station, LocalDateTime date) throws IOException {
+		beginRecord(RETURN_BIKE);
+		record.putInt(user.getId());
+		record.putInt(station.getId());
+		putDate(date);
+		endRecord();
+	}
+
+	/**
+	 * Appends the record of a station set online or offline (made durable by the
+	 * next commit)
+	 *
+	 * @param station
+	 *            the station
+	 * @param online
+	 *            the new online status of the station
+	 * @throws IOException
+	 *             when the record cannot be written
+	 */
+	public synchronized void setOnline(Station station, boolean online) throws IOException {
+		beginRecord(SET_ONLINE);
+		record.putInt(station.getId());
+		record.put((byte) (online ? 1 : 0));
+		endRecord();
+	}
+
+	/**
+	 * Makes every record appended so far durable. If another thread is already
+	 * committing, this thread waits for it and only writes the records that are
+	 * still not committed (group commit).
+	 *
+	 * @throws IOException
+	 *             when the records cannot be written
+	 */
+	public void commit() throws IOException {
+		long target;
+		synchronized (this) {
+			target = appended;
+		}
+		if (committed >= target)
+			return;
+		synchronized (commitLock) {
+			// committed by another thread in the meantime
+			if (committed >= target)
+				return;
+			long upTo;
+			synchronized (this) {
+				flushBuffer();
+				upTo = appended;
+			}
+			if (forceOnCommit) {
+				channel.force(false);
+			}
+			committed = upTo;
+		}
+	}
+
+	/**
+	 * Commits the records appended so far and closes the file
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			commit();
+		} finally {
+			channel.close();
+		}
+	}
+
+	// Record encoding (the caller holds the monitor of the journal)
+
+	private void appendStation(Station station) throws IOException {
+		beginRecord(ADD_STATION);
+		record.putInt(station.getId());
+		putString(station instanceof PlusStation ? "PLUS" : "STANDARD");
+		record.putDouble(station.getCoordinates().getX());
+		record.putDouble(station.getCoordinates().getY());
+		record.putInt(station.getParkingSlots().size());
+		record.put((byte) (station.getOnline() ? 1 : 0));
+		endRecord();
+	}
+
+	private void appendUser(User user) throws IOException {
+		beginRecord(ADD_USER);
+		record.putInt(user.getId());
+		putString(user.getName());
+		record.putDouble(user.getCoordinates().getX());
+		record.putDouble(user.getCoordinates().getY());
+		putString(cardType(user.getCard()));
+		record.putInt(user.getCard().getTimeCredit());
+		endRecord();
+	}
+
+	private void beginRecord(byte type) {
+		record.clear();
+		record.position(HEADER_SIZE - 1);
+		record.put(type);
+	}
+
+	/**
+	 * Frames the record being encoded and copies it to the write buffer
+	 */
+	private void endRecord() throws IOException {
+		int end = record.position();
+		record.putInt(0, end - HEADER_SIZE);
+		crc.reset();
+		crc.update(record.array(), HEADER_SIZE - 1, end - HEADER_SIZE + 1);
+		ensureRecordCapacity(TRAILER_SIZE);
+		record.putInt((int) crc.getValue());
+		record.flip();
+		if (record.remaining() > buffer.remaining()) {
+			flushBuffer();
+		}
+		if (record.remaining() > buffer.remaining()) {
+			// larger than the buffer: written directly
+			while (record.hasRemaining())
+				channel.write(record);
+		} else {
+			buffer.put(record);
+		}
+		appended++;
+	}
+
+	private void flushBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void putString(String s) {
+		byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+		ensureRecordCapacity(2 + bytes.length);
+		record.putShort((short) bytes.length);
+		record.put(bytes);
+	}
+
+	private void putDate(LocalDateTime date) {
+		ensureRecordCapacity(12);
+		record.putLong(date.toEpochSecond(ZoneOffset.UTC));
+		record.putInt(date.getNano());
+	}
+
+	private void ensureRecordCapacity(int size) {
+		// the fixed-size fields of a record always fit in the minimum headroom
+		if (record.remaining() < size + 64) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * record.capacity(), record.position() + size + 64));
+			record.flip();
+			larger.put(record);
+			record = larger;
+		}
+	}
+
+	/**
+	 * Gives the name of the type of a card, as understood by CardVisitorFactory
+	 */
+	static String cardType(CardVisitor card) {
+		return card.getCardType();
+	}
+}
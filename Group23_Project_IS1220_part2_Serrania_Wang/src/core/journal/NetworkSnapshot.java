@@ -0,0 +1,575 @@
+package core.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import core.Network;
+import core.bike.Bike;
+import core.bike.BikeFactory;
+import core.bike.InvalidBikeTypeException;
+import core.card.CardVisitor;
+import core.card.CardVisitorFactory;
+import core.card.InvalidCardTypeException;
+import core.rentals.BikeRental;
+import core.rentals.OngoingBikeRentalException;
+import core.station.InvalidStationTypeException;
+import core.station.OccupationIndex;
+import core.station.ParkingSlot;
+import core.station.ParkingSlotHistory;
+import core.station.PlusStation;
+import core.station.Station;
+import core.station.StationFactory;
+import core.user.User;
+import core.user.UserStats;
+import utils.Point;
+
+/**
+ * Point-in-time snapshot of a network, in a compact binary file. <br>
+ * The snapshot holds the stations (coordinates, online status, statistics and
+ * occupation timeline), their parking slots (bike, working status and status
+ * history), the users (card type, time credit and statistics) and their ongoing
+ * rentals. <br>
+ * The file is laid out in columns: after a short header, each field of the
+ * stations, parking slots, statuses and users is stored as one array. The file
+ * is loaded through a memory-mapped buffer and every column is read with a
+ * single bulk copy, so the network is rebuilt from plain arrays instead of
+ * going through the network constructor one station and one bike at a time.
+ * <br>
+ * The network should not change while the snapshot is written.
+ *
+ * @author animato
+ *
+ */
+public class NetworkSnapshot {
+	static final int MAGIC = 0x56534e50; // "VSNP"
+	static final int VERSION = 1;
+
+	private static final String[] STATION_TYPES = { "STANDARD", "PLUS" };
+
+	private NetworkSnapshot() {
+	}
+
+	// Core methods
+
+	/**
+	 * Writes a snapshot of the network to the given file (an existing file is
+	 * replaced). The rentals waiting to be billed are billed first.
+	 *
+	 * @param network
+	 *            the network
+	 * @param file
+	 *            the path of the snapshot file
+	 * @throws IOException
+	 *             when the file cannot be written
+	 */
+	public static void write(Network network, Path file) throws IOException {
+		// the time credit and charges of the users must include every return
+		network.billPendingRentals();
+		Columns columns = Columns.of(network);
+		ByteBuffer buffer = ByteBuffer.allocate(columns.size());
+		columns.writeTo(buffer);
+		buffer.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Restores a network from a snapshot file. The stations and users keep their
+	 * ids. The network has no journal.
+	 *
+	 * @param file
+	 *            the path of the snapshot file
+	 * @return the restored network
+	 * @throws IOException
+	 *             when the file cannot be read or is not a snapshot
+	 */
+	public static Network load(Path file) throws IOException {
+		Columns columns;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			try {
+				columns = Columns.readFrom(buffer);
+			} catch (RuntimeException e) {
+				// BufferUnderflowException, NegativeArraySizeException...
+				throw new IOException("Snapshot " + file + " is corrupted", e);
+			}
+		}
+		try {
+			return columns.toNetwork();
+		} catch (InvalidStationTypeException | InvalidBikeTypeException | InvalidCardTypeException
+				| OngoingBikeRentalException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new IOException("Snapshot " + file + " cannot be restored: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * The content of a snapshot, one array per field
+	 */
+	private static class Columns {
+		// Network
+		String name;
+		double side;
+		LocalDateTime creationDate;
+		LocalDateTime currentDate;
+		// Names of the bike types and card types, referenced by index
+		String[] bikeTypes;
+		String[] cardTypes;
+
+		// Stations
+		int stationCount;
+		int[] stationIds;
+		byte[] stationTypes;
+		byte[] stationOnline;
+		double[] stationX;
+		double[] stationY;
+		int[] slotCounts;
+		int[] totalRentals;
+		int[] totalReturns;
+		int[] occupationCounts;
+
+		// Parking slots, station after station
+		int slotCount;
+		byte[] slotWorking;
+		// index of the bike type + 1, 0 for an empty slot
+		byte[] slotBikes;
+		int[] historyCounts;
+
+		// Statuses of the parking slots, slot after slot
+		int historyCount;
+		long[] statusTimes;
+		byte[] statusNames;
+
+		// Occupation timelines of the stations, station after station
+		int occupationCount;
+		long[] occupationTimes;
+		int[] occupationLevels;
+
+		// Users
+		int userCount;
+		int[] userIds;
+		String[] userNames;
+		byte[] userCards;
+		double[] userX;
+		double[] userY;
+		int[] timeCredits;
+		int[] totalRides;
+		int[] totalTimeCredits;
+		double[] totalCharges;
+		long[] totalTimeSpent;
+		// index of the bike type + 1, 0 without ongoing rental
+		byte[] rentalBikes;
+		long[] rentalSeconds;
+		int[] rentalNanos;
+
+		/**
+		 * Reads the columns from a network
+		 */
+		static Columns of(Network network) {
+			Columns c = new Columns();
+			c.name = network.getName();
+			c.side = network.getSide();
+			c.creationDate = network.getCreationDate();
+			c.currentDate = network.getCurrentDate();
+
+			List<String> bikeTypes = new ArrayList<String>();
+			List<String> cardTypes = new ArrayList<String>();
+			Collection<Station> stations = new ArrayList<Station>(network.getStations().values());
+			Collection<User> users = new ArrayList<User>(network.getUsers().values());
+
+			c.stationCount = stations.size();
+			c.stationIds = new int[c.stationCount];
+			c.stationTypes = new byte[c.stationCount];
+			c.stationOnline = new byte[c.stationCount];
+			c.stationX = new double[c.stationCount];
+			c.stationY = new double[c.stationCount];
+			c.slotCounts = new int[c.stationCount];
+			c.totalRentals = new int[c.stationCount];
+			c.totalReturns = new int[c.stationCount];
+			c.occupationCounts = new int[c.stationCount];
+			for (Station station : stations) {
+				c.slotCount += station.getParkingSlots().size();
+				c.occupationCount += station.getOccupationIndex().size();
+			}
+			c.slotWorking = new byte[c.slotCount];
+			c.slotBikes = new byte[c.slotCount];
+			c.historyCounts = new int[c.slotCount];
+			c.occupationTimes = new long[c.occupationCount];
+			c.occupationLevels = new int[c.occupationCount];
+			List<long[]> statusTimes = new ArrayList<long[]>(c.slotCount);
+			List<byte[]> statusNames = new ArrayList<byte[]>(c.slotCount);
+
+			int s = 0;
+			int p = 0;
+			int o = 0;
+			for (Station station : stations) {
+				c.stationIds[s] = station.getId();
+				c.stationTypes[s] = (byte) (station instanceof PlusStation ? 1 : 0);
+				c.stationOnline[s] = (byte) (station.getOnline() ? 1 : 0);
+				c.stationX[s] = station.getCoordinates().getX();
+				c.stationY[s] = station.getCoordinates().getY();
+				c.slotCounts[s] = station.getParkingSlots().size();
+				c.totalRentals[s] = station.getStats().getTotalRentals();
+				c.totalReturns[s] = station.getStats().getTotalReturns();
+				OccupationIndex index = station.getOccupationIndex();
+				synchronized (index) {
+					c.occupationCounts[s] = index.size();
+					for (int i = 0; i < index.size(); i++, o++) {
+						c.occupationTimes[o] = index.getTime(i);
+						c.occupationLevels[o] = index.getLevel(i);
+					}
+				}
+				for (ParkingSlot ps : station.getParkingSlots()) {
+					synchronized (ps) {
+						c.slotWorking[p] = (byte) (ps.isWorking() ? 1 : 0);
+						c.slotBikes[p] = typeIndex(bikeTypes, ps.hasBike() ? ps.getBike().getType() : null);
+						ParkingSlotHistory history = ps.getHistory();
+						long[] times = new long[history.size()];
+						byte[] names = new byte[history.size()];
+						for (int i = 0; i < times.length; i++) {
+							times[i] = history.getStartTime(i);
+							names[i] = (byte) history.getStatusName(i).ordinal();
+						}
+						c.historyCounts[p] = times.length;
+						c.historyCount += times.length;
+						statusTimes.add(times);
+						statusNames.add(names);
+					}
+					p++;
+				}
+				s++;
+			}
+			c.statusTimes = new long[c.historyCount];
+			c.statusNames = new byte[c.historyCount];
+			int h = 0;
+			for (int i = 0; i < statusTimes.size(); i++) {
+				System.arraycopy(statusTimes.get(i), 0, c.statusTimes, h, statusTimes.get(i).length);
+				System.arraycopy(statusNames.get(i), 0, c.statusNames, h, statusNames.get(i).length);
+				h += statusTimes.get(i).length;
+			}
+
+			c.userCount = users.size();
+			c.userIds = new int[c.userCount];
+			c.userNames = new String[c.userCount];
+			c.userCards = new byte[c.userCount];
+			c.userX = new double[c.userCount];
+			c.userY = new double[c.userCount];
+			c.timeCredits = new int[c.userCount];
+			c.totalRides = new int[c.userCount];
+			c.totalTimeCredits = new int[c.userCount];
+			c.totalCharges = new double[c.userCount];
+			c.totalTimeSpent = new long[c.userCount];
+			c.rentalBikes = new byte[c.userCount];
+			c.rentalSeconds = new long[c.userCount];
+			c.rentalNanos = new int[c.userCount];
+			int u = 0;
+			for (User user : users) {
+				c.userIds[u] = user.getId();
+				c.userNames[u] = user.getName() == null ? "" : user.getName();
+				c.userCards[u] = (byte) (typeIndex(cardTypes, NetworkJournal.cardType(user.getCard())) - 1);
+				c.userX[u] = user.getCoordinates().getX();
+				c.userY[u] = user.getCoordinates().getY();
+				c.timeCredits[u] = user.getCard().getTimeCredit();
+				UserStats.Snapshot stats = user.getStats().snapshot();
+				c.totalRides[u] = stats.getTotalRides();
+				c.totalTimeCredits[u] = stats.getTotalTimeCredits();
+				c.totalCharges[u] = stats.getTotalCharges();
+				c.totalTimeSpent[u] = stats.getTotalTimeSpent();
+				BikeRental rental = user.getBikeRental();
+				if (rental != null) {
+					c.rentalBikes[u] = typeIndex(bikeTypes, rental.getBike().getType());
+					c.rentalSeconds[u] = rental.getRentDate().toEpochSecond(ZoneOffset.UTC);
+					c.rentalNanos[u] = rental.getRentDate().getNano();
+				}
+				u++;
+			}
+			c.bikeTypes = bikeTypes.toArray(new String[bikeTypes.size()]);
+			c.cardTypes = cardTypes.toArray(new String[cardTypes.size()]);
+			return c;
+		}
+
+		/**
+		 * Rebuilds the network from the columns
+		 */
+		Network toNetwork() throws InvalidStationTypeException, InvalidBikeTypeException, InvalidCardTypeException,
+				OngoingBikeRentalException {
+			Network network = new Network(name, 0, 0, side, 0, 0, 0, creationDate);
+			BikeFactory bikeFactory = new BikeFactory();
+			StationFactory stationFactory = new StationFactory();
+			CardVisitorFactory cardFactory = new CardVisitorFactory();
+
+			int p = 0;
+			int h = 0;
+			int o = 0;
+			for (int s = 0; s < stationCount; s++) {
+				Station station = stationFactory.createStation(STATION_TYPES[stationTypes[s]], stationIds[s],
+						slotCounts[s], new Point(stationX[s], stationY[s]), stationOnline[s] != 0);
+				for (ParkingSlot ps : station.getParkingSlots()) {
+					Bike bike = slotBikes[p] == 0 ? null : bikeFactory.createBike(bikeTypes[slotBikes[p] - 1]);
+					ps.restore(slotWorking[p] != 0, bike, statusTimes, statusNames, h, historyCounts[p]);
+					h += historyCounts[p];
+					p++;
+				}
+				station.getOccupationIndex().restore(occupationTimes, occupationLevels, o, occupationCounts[s]);
+				o += occupationCounts[s];
+				station.getStats().restore(totalRentals[s], totalReturns[s]);
+				network.addStation(station);
+			}
+
+			for (int u = 0; u < userCount; u++) {
+				CardVisitor card = cardFactory.createCard(cardTypes[userCards[u]]);
+				card.addTimeCredit(timeCredits[u]);
+				User user = new User(userIds[u], userNames[u], new Point(userX[u], userY[u]), card);
+				user.getStats().restore(totalRides[u], totalTimeCredits[u], totalCharges[u], totalTimeSpent[u]);
+				if (rentalBikes[u] != 0) {
+					LocalDateTime rentDate = LocalDateTime.ofEpochSecond(rentalSeconds[u], rentalNanos[u],
+							ZoneOffset.UTC);
+					user.setBikeRental(new BikeRental(bikeFactory.createBike(bikeTypes[rentalBikes[u] - 1]), rentDate));
+				}
+				network.addUser(user);
+			}
+			network.setCurrentDate(currentDate);
+			return network;
+		}
+
+		/**
+		 * Gives the size of the file, in bytes
+		 */
+		int size() {
+			int size = 4 + 4 + stringSize(name) + 8 + 12 + 12;
+			size += 1 + stringsSize(bikeTypes) + 1 + stringsSize(cardTypes);
+			size += 4 + stationCount * (4 + 1 + 1 + 8 + 8 + 4 + 4 + 4 + 4);
+			size += 4 + slotCount * (1 + 1 + 4);
+			size += 4 + historyCount * (8 + 1);
+			size += 4 + occupationCount * (8 + 4);
+			size += 4 + userCount * (4 + 1 + 8 + 8 + 4 + 4 + 4 + 8 + 8 + 1 + 8 + 4) + stringsSize(userNames);
+			return size;
+		}
+
+		void writeTo(ByteBuffer buffer) {
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			putString(buffer, name);
+			buffer.putDouble(side);
+			putDate(buffer, creationDate);
+			putDate(buffer, currentDate);
+			buffer.put((byte) bikeTypes.length);
+			for (String type : bikeTypes)
+				putString(buffer, type);
+			buffer.put((byte) cardTypes.length);
+			for (String type : cardTypes)
+				putString(buffer, type);
+
+			buffer.putInt(stationCount);
+			putInts(buffer, stationIds);
+			buffer.put(stationTypes);
+			buffer.put(stationOnline);
+			putDoubles(buffer, stationX);
+			putDoubles(buffer, stationY);
+			putInts(buffer, slotCounts);
+			putInts(buffer, totalRentals);
+			putInts(buffer, totalReturns);
+			putInts(buffer, occupationCounts);
+
+			buffer.putInt(slotCount);
+			buffer.put(slotWorking);
+			buffer.put(slotBikes);
+			putInts(buffer, historyCounts);
+
+			buffer.putInt(historyCount);
+			putLongs(buffer, statusTimes);
+			buffer.put(statusNames);
+
+			buffer.putInt(occupationCount);
+			putLongs(buffer, occupationTimes);
+			putInts(buffer, occupationLevels);
+
+			buffer.putInt(userCount);
+			putInts(buffer, userIds);
+			buffer.put(userCards);
+			putDoubles(buffer, userX);
+			putDoubles(buffer, userY);
+			putInts(buffer, timeCredits);
+			putInts(buffer, totalRides);
+			putInts(buffer, totalTimeCredits);
+			putDoubles(buffer, totalCharges);
+			putLongs(buffer, totalTimeSpent);
+			buffer.put(rentalBikes);
+			putLongs(buffer, rentalSeconds);
+			putInts(buffer, rentalNanos);
+			for (String userName : userNames)
+				putString(buffer, userName);
+		}
+
+		static Columns readFrom(ByteBuffer buffer) throws IOException {
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+				throw new IOException("Not a network snapshot");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported snapshot version " + version);
+			}
+			Columns c = new Columns();
+			c.name = getString(buffer);
+			c.side = buffer.getDouble();
+			c.creationDate = getDate(buffer);
+			c.currentDate = getDate(buffer);
+			c.bikeTypes = new String[buffer.get() & 0xFF];
+			for (int i = 0; i < c.bikeTypes.length; i++)
+				c.bikeTypes[i] = getString(buffer);
+			c.cardTypes = new String[buffer.get() & 0xFF];
+			for (int i = 0; i < c.cardTypes.length; i++)
+				c.cardTypes[i] = getString(buffer);
+
+			c.stationCount = buffer.getInt();
+			c.stationIds = getInts(buffer, c.stationCount);
+			c.stationTypes = getBytes(buffer, c.stationCount);
+			c.stationOnline = getBytes(buffer, c.stationCount);
+			c.stationX = getDoubles(buffer, c.stationCount);
+			c.stationY = getDoubles(buffer, c.stationCount);
+			c.slotCounts = getInts(buffer, c.stationCount);
+			c.totalRentals = getInts(buffer, c.stationCount);
+			c.totalReturns = getInts(buffer, c.stationCount);
+			c.occupationCounts = getInts(buffer, c.stationCount);
+
+			c.slotCount = buffer.getInt();
+			c.slotWorking = getBytes(buffer, c.slotCount);
+			c.slotBikes = getBytes(buffer, c.slotCount);
+			c.historyCounts = getInts(buffer, c.slotCount);
+
+			c.historyCount = buffer.getInt();
+			c.statusTimes = getLongs(buffer, c.historyCount);
+			c.statusNames = getBytes(buffer, c.historyCount);
+
+			c.occupationCount = buffer.getInt();
+			c.occupationTimes = getLongs(buffer, c.occupationCount);
+			c.occupationLevels = getInts(buffer, c.occupationCount);
+
+			c.userCount = buffer.getInt();
+			c.userIds = getInts(buffer, c.userCount);
+			c.userCards = getBytes(buffer, c.userCount);
+			c.userX = getDoubles(buffer, c.userCount);
+			c.userY = getDoubles(buffer, c.userCount);
+			c.timeCredits = getInts(buffer, c.userCount);
+			c.totalRides = getInts(buffer, c.userCount);
+			c.totalTimeCredits = getInts(buffer, c.userCount);
+			c.totalCharges = getDoubles(buffer, c.userCount);
+			c.totalTimeSpent = getLongs(buffer, c.userCount);
+			c.rentalBikes = getBytes(buffer, c.userCount);
+			c.rentalSeconds = getLongs(buffer, c.userCount);
+			c.rentalNanos = getInts(buffer, c.userCount);
+			c.userNames = new String[c.userCount];
+			for (int i = 0; i < c.userCount; i++)
+				c.userNames[i] = getString(buffer);
+			return c;
+		}
+	}
+
+	// Encoding
+
+	/**
+	 * Gives the index + 1 of a type in the list of types, adding it if needed (0
+	 * for null)
+	 */
+	private static byte typeIndex(List<String> types, String type) {
+		if (type == null)
+			return 0;
+		int i = types.indexOf(type);
+		if (i < 0) {
+			types.add(type);
+			i = types.size() - 1;
+		}
+		return (byte) (i + 1);
+	}
+
+	private static int stringSize(String s) {
+		return 2 + s.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	private static int stringsSize(String[] strings) {
+		int size = 0;
+		for (String s : strings)
+			size += stringSize(s);
+		return size;
+	}
+
+	private static void putString(ByteBuffer buffer, String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void putDate(ByteBuffer buffer, LocalDateTime date) {
+		buffer.putLong(date.toEpochSecond(ZoneOffset.UTC));
+		buffer.putInt(date.getNano());
+	}
+
+	private static LocalDateTime getDate(ByteBuffer buffer) {
+		long epochSecond = buffer.getLong();
+		return LocalDateTime.ofEpochSecond(epochSecond, buffer.getInt(), ZoneOffset.UTC);
+	}
+
+	// Bulk copies of the columns, through views of the buffer
+
+	private static void putInts(ByteBuffer buffer, int[] column) {
+		buffer.asIntBuffer().put(column);
+		buffer.position(buffer.position() + 4 * column.length);
+	}
+
+	private static void putLongs(ByteBuffer buffer, long[] column) {
+		buffer.asLongBuffer().put(column);
+		buffer.position(buffer.position() + 8 * column.length);
+	}
+
+	private static void putDoubles(ByteBuffer buffer, double[] column) {
+		buffer.asDoubleBuffer().put(column);
+		buffer.position(buffer.position() + 8 * column.length);
+	}
+
+	private static byte[] getBytes(ByteBuffer buffer, int length) {
+		byte[] column = new byte[length];
+		buffer.get(column);
+		return column;
+	}
+
+	private static int[] getInts(ByteBuffer buffer, int length) {
+		int[] column = new int[length];
+		buffer.asIntBuffer().get(column);
+		buffer.position(buffer.position() + 4 * length);
+		return column;
+	}
+
+	private static long[] getLongs(ByteBuffer buffer, int length) {
+		long[] column = new long[length];
+		buffer.asLongBuffer().get(column);
+		buffer.position(buffer.position() + 8 * length);
+		return column;
+	}
+
+	private static double[] getDoubles(ByteBuffer buffer, int length) {
+		double[] column = new double[length];
+		buffer.asDoubleBuffer().get(column);
+		buffer.position(buffer.position() + 8 * length);
+		return column;
+	}
+}
@@ -9,9 +9,10 @@ import core.card.InvalidBikeException;
 import core.card.InvalidDatesException;
 
 /**
- * Contains information about a bike rental (Bike and rent date). <br>
- * Other information is added to it when the bike rental ends (date of return,
- * time spent, price of the ride, timeCredit used and timeCredit added) <br>
+ * Contains information about a bike rental (Bike, rent date and station). <br>
+ * Other information is added to it when the bike rental ends (date and station
+ * of return, time spent, price of the ride, timeCredit used and timeCredit
+ * added) <br>
  * Concrete visitor for the visitor pattern used to calculate the price of a rental.
  * 
  * @see Rental
@@ -27,6 +28,8 @@ public class BikeRental implements Rental {
 	private double price; // price of the rental, in euros
 	private int timeCreditAdded; // time credit added when returning to the station
 	private int timeCreditUsed; // time credit used to pay part of the rental, in minutes
+	private int rentStationId = -1; // station where the bike was rented (-1 if unknown)
+	private int returnStationId = -1; // station where the bike was returned (-1 if unknown)
 
 	// Constructor
 
@@ -111,6 +114,22 @@ public class BikeRental implements Rental {
 		this.timeCreditAdded = timeCreditAdded;
 	}
 
+	public int getRentStationId() {
+		return rentStationId;
+	}
+
+	public void setRentStationId(int rentStationId) {
+		this.rentStationId = rentStationId;
+	}
+
+	public int getReturnStationId() {
+		return returnStationId;
+	}
+
+	public void setReturnStationId(int returnStationId) {
+		this.returnStationId = returnStationId;
+	}
+
 	// Equality check methods
 
 	@Override
@@ -0,0 +1,186 @@
+package core.rentals;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import core.card.CardVisitor;
+import core.card.InvalidBikeException;
+import core.card.InvalidDatesException;
+import core.user.User;
+
+/**
+ * Deferred billing of the completed bike rentals of a network. <br>
+ * When the network bills its rentals in batch, a return only records the
+ * completed rental and the time credit given by the station; nothing is priced
+ * while the user and the station are locked. The pending rentals are billed
+ * later, for instance at the end of the day: they are grouped by user, and the
+ * groups are priced in parallel by a fork/join pool. The rentals of a user are
+ * billed one after the other, in the order of their returns, so that the time
+ * credit of the card is added and used as when billing each return. The
+ * rentals are then added to the history of the user, and the charges and time
+ * credits to its statistics.
+ *
+ * @see core.Network#setDeferredBilling(boolean)
+ * @see BillingReport
+ * @author animato
+ *
+ */
+public class BillingPipeline {
+	// Users billed by a task before it is split
+	public static final int USERS_PER_TASK = 64;
+
+	private final ForkJoinPool pool;
+	private final ConcurrentLinkedQueue<CompletedRental> completedRentals = new ConcurrentLinkedQueue<CompletedRental>();
+
+	/**
+	 * A returned rental waiting to be billed
+	 */
+	private static class CompletedRental {
+		final User user;
+		final BikeRental rental;
+		final int bonusTimeCredit;
+
+		CompletedRental(User user, BikeRental rental, int bonusTimeCredit) {
+			this.user = user;
+			this.rental = rental;
+			this.bonusTimeCredit = bonusTimeCredit;
+		}
+	}
+
+	/**
+	 * Bills the users of groups[from, to), splitting the range while it holds
+	 * too many users
+	 */
+	private static class BillingTask extends RecursiveTask<BillingReport> {
+		private static final long serialVersionUID = 1L;
+		private final User[] users;
+		private final List<List<CompletedRental>> groups;
+		private final int from, to;
+
+		BillingTask(User[] users, List<List<CompletedRental>> groups, int from, int to) {
+			this.users = users;
+			this.groups = groups;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected BillingReport compute() {
+			if (to - from <= USERS_PER_TASK) {
+				BillingReport report = new BillingReport();
+				for (int i = from; i < to; i++) {
+					bill(users[i], groups.get(i), report);
+				}
+				return report;
+			}
+			int middle = (from + to) >>> 1;
+			BillingTask left = new BillingTask(users, groups, from, middle);
+			left.fork();
+			BillingReport report = new BillingTask(users, groups, middle, to).compute();
+			return report.merge(left.join());
+		}
+	}
+
+	// Constructor
+
+	/**
+	 * Creates a pipeline billing in the common fork/join pool
+	 */
+	public BillingPipeline() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool
+	 *            the pool pricing the rentals
+	 */
+	public BillingPipeline(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	// Core methods
+
+	/**
+	 * Records a returned rental, to be billed later. The rentals of a user must
+	 * be recorded in the order of their returns.
+	 *
+	 * @param user
+	 *            the user who returned the bike
+	 * @param rental
+	 *            the rental, with its return date
+	 * @param bonusTimeCredit
+	 *            the time credit given by the station of return, in minutes
+	 */
+	public void record(User user, BikeRental rental, int bonusTimeCredit) {
+		completedRentals.add(new CompletedRental(user, rental, bonusTimeCredit));
+	}
+
+	/**
+	 * Bills all the rentals recorded so far. A rental that cannot be priced is
+	 * given back its time credit, is not billed and is listed in the report.
+	 *
+	 * @return the report of the billing
+	 */
+	public synchronized BillingReport bill() {
+		// group the rentals by user, keeping the order of the returns
+		Map<User, List<CompletedRental>> byUser = new LinkedHashMap<User, List<CompletedRental>>();
+		CompletedRental completed;
+		while ((completed = completedRentals.poll()) != null) {
+			List<CompletedRental> group = byUser.get(completed.user);
+			if (group == null) {
+				group = new ArrayList<CompletedRental>();
+				byUser.put(completed.user, group);
+			}
+			group.add(completed);
+		}
+		if (byUser.isEmpty()) {
+			return new BillingReport();
+		}
+		User[] users = byUser.keySet().toArray(new User[byUser.size()]);
+		List<List<CompletedRental>> groups = new ArrayList<List<CompletedRental>>(byUser.values());
+		return pool.invoke(new BillingTask(users, groups, 0, users.length));
+	}
+
+	/**
+	 * Bills the rentals of a user, in the order of their returns
+	 */
+	private static void bill(User user, List<CompletedRental> rentals, BillingReport report) {
+		synchronized (user) {
+			CardVisitor card = user.getCard();
+			for (CompletedRental completed : rentals) {
+				BikeRental br = completed.rental;
+				// add the time credit of the station first, as when the bike was returned
+				br.setTimeCreditAdded(card.addTimeCredit(completed.bonusTimeCredit));
+				try {
+					card.visit(br);
+				} catch (InvalidBikeException | InvalidDatesException e) {
+					card.removeTimeCredit(br.getTimeCreditAdded());
+					br.setTimeCreditAdded(0);
+					report.addFailedRental(br);
+					continue;
+				}
+				card.removeTimeCredit(br.getTimeCreditUsed());
+				user.getHistory().add(br);
+
+				user.getStats().addTotalTimeCredits(br.getTimeCreditAdded());
+				user.getStats().addTotalCharges(br.getPrice());
+				report.addBilledRental(br);
+			}
+			report.addUser();
+		}
+	}
+
+	// Getters / Setters
+
+	/**
+	 * @return the number of rentals waiting to be billed (counted, not stored)
+	 */
+	public int getPendingRentals() {
+		return completedRentals.size();
+	}
+}
@@ -0,0 +1,97 @@
+package core.rentals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a batch billing of rentals: the rentals billed, their charges and
+ * time credits, and the rentals that could not be priced.
+ *
+ * @see BillingPipeline
+ * @author animato
+ *
+ */
+public class BillingReport {
+	private int users;
+	private int billedRentals;
+	private double totalCharges;
+	private long timeCreditAdded;
+	private long timeCreditUsed;
+	private final List<BikeRental> failedRentals = new ArrayList<BikeRental>();
+
+	// Constructor
+
+	BillingReport() {
+	}
+
+	// Core methods
+
+	void addUser() {
+		users++;
+	}
+
+	void addBilledRental(BikeRental rental) {
+		billedRentals++;
+		totalCharges += rental.getPrice();
+		timeCreditAdded += rental.getTimeCreditAdded();
+		timeCreditUsed += rental.getTimeCreditUsed();
+	}
+
+	void addFailedRental(BikeRental rental) {
+		failedRentals.add(rental);
+	}
+
+	/**
+	 * Adds the counts of another report to this one
+	 *
+	 * @param other
+	 *            the other report
+	 * @return this report
+	 */
+	BillingReport merge(BillingReport other) {
+		users += other.users;
+		billedRentals += other.billedRentals;
+		totalCharges += other.totalCharges;
+		timeCreditAdded += other.timeCreditAdded;
+		timeCreditUsed += other.timeCreditUsed;
+		failedRentals.addAll(other.failedRentals);
+		return this;
+	}
+
+	// Getters / Setters
+
+	public int getUsers() {
+		return users;
+	}
+
+	public int getBilledRentals() {
+		return billedRentals;
+	}
+
+	public double getTotalCharges() {
+		return totalCharges;
+	}
+
+	public long getTimeCreditAdded() {
+		return timeCreditAdded;
+	}
+
+	public long getTimeCreditUsed() {
+		return timeCreditUsed;
+	}
+
+	public List<BikeRental> getFailedRentals() {
+		return failedRentals;
+	}
+
+	@Override
+	public String toString() {
+		String s = billedRentals + " rental(s) of " + users + " user(s) billed: " + totalCharges + " euro(s), "
+				+ timeCreditUsed + " minutes of time credit used, " + timeCreditAdded
+				+ " minutes of time credit added.";
+		if (!failedRentals.isEmpty()) {
+			s += " " + failedRentals.size() + " rental(s) could not be billed.";
+		}
+		return s;
+	}
+}
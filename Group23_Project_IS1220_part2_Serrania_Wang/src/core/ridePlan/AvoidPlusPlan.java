@@ -1,8 +1,5 @@
 package core.ridePlan;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import core.Network;
 import core.station.PlusStation;
 import core.station.Station;
@@ -29,28 +26,11 @@ public class AvoidPlusPlan implements RidePlanStrategy {
 			throw new IllegalArgumentException("One of the arguments given to planRide is null");
 		}
 
-		HashMap<Integer, Station> stations = n.getStations();
-		Station sourceStation = null;
-		Station destStation = null;
-
-		double minimumSourceDistance = Double.MAX_VALUE;
-		double minimumDestDistance = Double.MAX_VALUE;
-
-		for (Map.Entry<Integer, Station> entry : stations.entrySet()) {
-			Station s = entry.getValue();
-			if (!s.getOnline())
-				continue;
-			double sourceDistance = s.getCoordinates().distance(source);
-			double destinationDistance = s.getCoordinates().distance(destination);
-			if (sourceDistance < minimumSourceDistance && s.hasCorrectBikeType(bikeType)) {
-				sourceStation = s;
-				minimumSourceDistance = sourceDistance;
-			}
-			if (destinationDistance < minimumDestDistance && !s.isFull() && !(s instanceof PlusStation)) {
-				destStation = s;
-				minimumDestDistance = destinationDistance;
-			}
-		}
+		StationGrid grid = n.getStationGrid();
+
+		Station sourceStation = grid.findNearest(source, s -> s.getOnline() && s.hasCorrectBikeType(bikeType));
+		Station destStation = grid.findNearest(destination,
+				s -> s.getOnline() && !s.isFull() && !(s instanceof PlusStation));
 
 		if (sourceStation == null || destStation == null) {
 			throw new NoValidStationFoundException(n, "AVOID_PLUS");
@@ -1,6 +1,9 @@
 package core.ridePlan;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Predicate;
 
 import core.Network;
 import core.bike.InvalidBikeTypeException;
@@ -12,12 +15,46 @@ import utils.Point;
  * source and destination stations are chosen so that the total time of the
  * trip, including the walking part of the trip is minimal, assuming that the
  * average walking speed is 4 Km/h while the average bicycle-riding speed is 15
- * Km/h, for mechanical bikes, and 20 Km/h for electrical bikes
- * 
+ * Km/h, for mechanical bikes, and 20 Km/h for electrical bikes <br>
+ * By default, the pairs of stations are searched with a pruned search: only the
+ * stations that can be reached by walking faster than a known valid trip are
+ * candidates, and source stations are looked at from the most promising one
+ * (lowest walking time plus straight-line riding time to the destination) so
+ * the search can stop early. The exhaustive search over all pairs can still be
+ * used, it gives the same result.
+ *
  * @author animato
  *
  */
 public class FastestPlan implements RidePlanStrategy {
+	// Margin (in hours) taken on the time bounds to absorb rounding errors
+	private static final double EPSILON = 1e-9;
+
+	private static final double WALKING_SPEED = 4; // km/h
+
+	private final boolean exhaustive;
+
+	// Constructors
+
+	/**
+	 * Creates a fastest plan strategy using the pruned search
+	 */
+	public FastestPlan() {
+		this(false);
+	}
+
+	/**
+	 * Creates a fastest plan strategy
+	 *
+	 * @param exhaustive
+	 *            true to evaluate every pair of stations, false to use the pruned
+	 *            search
+	 */
+	public FastestPlan(boolean exhaustive) {
+		this.exhaustive = exhaustive;
+	}
+
+	// Core methods
 
 	@Override
 	public RidePlan planRide(Point source, Point destination, User user, String bikeType, Network n)
@@ -27,9 +64,8 @@ public class FastestPlan implements RidePlanStrategy {
 			throw new IllegalArgumentException("One of the arguments given to planRide is null");
 		}
 
-		double walkingSpeed = 4; // km/h
 		double bikeSpeed = 0;
-		
+
 		switch (bikeType.toUpperCase()) {
 		case "ELEC":
 			bikeSpeed = 20;
@@ -41,27 +77,50 @@ public class FastestPlan implements RidePlanStrategy {
 			throw new InvalidBikeTypeException(bikeType);
 		}
 
-		HashMap<Integer, Station> stations = n.getStations();
+		Station[] pair;
+		if (exhaustive) {
+			pair = exhaustiveSearch(source, destination, bikeType, bikeSpeed, n.getStationGrid().getStations());
+		} else {
+			pair = prunedSearch(source, destination, bikeType, bikeSpeed, n.getStationGrid());
+		}
+
+		if (pair == null) {
+			throw new NoValidStationFoundException(n, "FASTEST");
+		}
+		return new RidePlan(source, destination, pair[0], pair[1], "FASTEST", bikeType, n);
+	}
 
+	/**
+	 * Evaluates every (source station, destination station) pair.
+	 *
+	 * @param source
+	 *            the source point of the trip
+	 * @param destination
+	 *            the destination point of the trip
+	 * @param bikeType
+	 *            the type of bike used
+	 * @param bikeSpeed
+	 *            the speed of the bike, in km/h
+	 * @param stations
+	 *            the stations of the network, ordered by id
+	 * @return the fastest pair {source station, destination station}, or null if
+	 *         there is no valid pair
+	 */
+	private Station[] exhaustiveSearch(Point source, Point destination, String bikeType, double bikeSpeed,
+			ArrayList<Station> stations) {
 		Station sourceStation = null;
 		Station destStation = null;
-		Double minimumTime = Double.MAX_VALUE; // hours
+		double minimumTime = Double.MAX_VALUE; // hours
 
 		// different possible pairs
-		for (Station s1 : stations.values()) {
+		for (Station s1 : stations) {
 			// source station
-			if (!s1.getOnline() || !s1.hasCorrectBikeType(bikeType))
+			if (!isValidSource(s1, bikeType))
 				continue;
-			for (Station s2 : stations.values()) {
+			for (Station s2 : stations) {
 				// dest Station
-				if (!s2.getOnline())
-					continue;
-				if (!s2.equals(s1) && !s2.isFull()) {
-					double totalTime = 0;
-					totalTime += s1.getCoordinates().distance(source) / walkingSpeed;
-					totalTime += s1.getCoordinates().distance(s2.getCoordinates()) / bikeSpeed;
-					totalTime += s2.getCoordinates().distance(destination) / walkingSpeed;
-
+				if (!s2.equals(s1) && isValidDest(s2)) {
+					double totalTime = totalTime(source, destination, s1, s2, bikeSpeed);
 					if (totalTime < minimumTime) {
 						sourceStation = s1;
 						destStation = s2;
@@ -70,11 +129,186 @@ public class FastestPlan implements RidePlanStrategy {
 				}
 			}
 		}
+		if (sourceStation == null || destStation == null) {
+			return null;
+		}
+		return new Station[] { sourceStation, destStation };
+	}
+
+	/**
+	 * Searches the fastest pair of stations in two phases. <br>
+	 * First, the time of a valid trip gives an upper bound of the best time: only
+	 * the stations that can be walked to (from the source) or from (to the
+	 * destination) within this time are candidates. <br>
+	 * Then, candidate source stations are looked at in increasing order of their
+	 * lower bound (walking time to the station plus riding time in a straight line
+	 * to the destination). The search stops when this lower bound exceeds the best
+	 * time found. Candidate destination stations are looked at in increasing order
+	 * of walking time to the destination.
+	 *
+	 * @param source
+	 *            the source point of the trip
+	 * @param destination
+	 *            the destination point of the trip
+	 * @param bikeType
+	 *            the type of bike used
+	 * @param bikeSpeed
+	 *            the speed of the bike, in km/h
+	 * @param grid
+	 *            the spatial index of the stations of the network
+	 * @return the fastest pair {source station, destination station}, or null if
+	 *         there is no valid pair
+	 */
+	private Station[] prunedSearch(final Point source, final Point destination, String bikeType, double bikeSpeed,
+			StationGrid grid) {
+		double maximumTime = upperBound(source, destination, bikeType, bikeSpeed, grid);
+		if (maximumTime == Double.MAX_VALUE) {
+			return null;
+		}
+
+		// Phase 1: candidates reachable by walking within the upper bound
+		double maximumWalkingDistance = maximumTime * WALKING_SPEED * (1 + EPSILON);
+		ArrayList<Station> sourceCandidates = new ArrayList<Station>();
+		for (Station s : grid.getStationsWithin(source, maximumWalkingDistance)) {
+			if (isValidSource(s, bikeType))
+				sourceCandidates.add(s);
+		}
+		ArrayList<Station> destCandidates = new ArrayList<Station>();
+		for (Station s : grid.getStationsWithin(destination, maximumWalkingDistance)) {
+			if (isValidDest(s))
+				destCandidates.add(s);
+		}
+
+		final int nSources = sourceCandidates.size();
+		final int nDests = destCandidates.size();
+		final double[] sourceLowerBounds = new double[nSources];
+		final double[] destWalkingTimes = new double[nDests];
+		Integer[] sourceOrder = new Integer[nSources];
+		Integer[] destOrder = new Integer[nDests];
+		for (int i = 0; i < nSources; i++) {
+			Point p = sourceCandidates.get(i).getCoordinates();
+			sourceLowerBounds[i] = p.distance(source) / WALKING_SPEED + p.distance(destination) / bikeSpeed;
+			sourceOrder[i] = i;
+		}
+		for (int j = 0; j < nDests; j++) {
+			destWalkingTimes[j] = destCandidates.get(j).getCoordinates().distance(destination) / WALKING_SPEED;
+			destOrder[j] = j;
+		}
+		// Stable sorts: candidates with the same bound stay ordered by id
+		Arrays.sort(sourceOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(sourceLowerBounds[i1], sourceLowerBounds[i2]);
+			}
+		});
+		Arrays.sort(destOrder, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer j1, Integer j2) {
+				return Double.compare(destWalkingTimes[j1], destWalkingTimes[j2]);
+			}
+		});
+
+		// Phase 2: best-first search with early termination
+		Station sourceStation = null;
+		Station destStation = null;
+		double minimumTime = Double.MAX_VALUE;
+
+		for (int i : sourceOrder) {
+			if (sourceLowerBounds[i] - EPSILON > minimumTime)
+				break;
+			Station s1 = sourceCandidates.get(i);
+			double sourceWalkingTime = s1.getCoordinates().distance(source) / WALKING_SPEED;
+			for (int j : destOrder) {
+				if (sourceWalkingTime + destWalkingTimes[j] - EPSILON > minimumTime)
+					break;
+				Station s2 = destCandidates.get(j);
+				if (s2.equals(s1))
+					continue;
+				double totalTime = totalTime(source, destination, s1, s2, bikeSpeed);
+				// On equal times, keep the pair the exhaustive search would have found first
+				if (totalTime < minimumTime
+						|| (totalTime == minimumTime && isBefore(s1, s2, sourceStation, destStation))) {
+					sourceStation = s1;
+					destStation = s2;
+					minimumTime = totalTime;
+				}
+			}
+		}
 
 		if (sourceStation == null || destStation == null) {
-			throw new NoValidStationFoundException(n, "FASTEST");
+			return null;
+		}
+		return new Station[] { sourceStation, destStation };
+	}
+
+	/**
+	 * Gives the time of a valid trip, made of the closest valid stations to the
+	 * source and to the destination.
+	 *
+	 * @return the time of a valid trip (in hours), or Double.MAX_VALUE if no valid
+	 *         pair of stations exists
+	 */
+	private double upperBound(Point source, Point destination, String bikeType, double bikeSpeed,
+			StationGrid grid) {
+		Predicate<Station> isValidSource = s -> isValidSource(s, bikeType);
+		Predicate<Station> isValidDest = s -> isValidDest(s);
+
+		Station closestSource = grid.findNearest(source, isValidSource);
+		Station closestDest = grid.findNearest(destination, isValidDest);
+		if (closestSource == null || closestDest == null) {
+			return Double.MAX_VALUE;
+		}
+		if (!closestSource.equals(closestDest)) {
+			return totalTime(source, destination, closestSource, closestDest, bikeSpeed);
+		}
+		double maximumTime = Double.MAX_VALUE;
+		Station otherSource = grid.findNearest(source, s -> isValidSource.test(s) && !s.equals(closestDest));
+		if (otherSource != null) {
+			maximumTime = totalTime(source, destination, otherSource, closestDest, bikeSpeed);
+		}
+		Station otherDest = grid.findNearest(destination, s -> isValidDest.test(s) && !s.equals(closestSource));
+		if (otherDest != null) {
+			maximumTime = Math.min(maximumTime, totalTime(source, destination, closestSource, otherDest, bikeSpeed));
 		}
-		return new RidePlan(source, destination, sourceStation, destStation, "FASTEST", bikeType, n);
+		return maximumTime;
+	}
+
+	/**
+	 * Calculates the total time of a trip going through the given stations
+	 *
+	 * @return the total time (walking and riding), in hours
+	 */
+	private static double totalTime(Point source, Point destination, Station s1, Station s2, double bikeSpeed) {
+		double totalTime = 0;
+		totalTime += s1.getCoordinates().distance(source) / WALKING_SPEED;
+		totalTime += s1.getCoordinates().distance(s2.getCoordinates()) / bikeSpeed;
+		totalTime += s2.getCoordinates().distance(destination) / WALKING_SPEED;
+		return totalTime;
+	}
+
+	/**
+	 * Tells if the pair (s1, s2) comes before the pair (other1, other2) when pairs
+	 * are ordered by source station id, then destination station id.
+	 */
+	private static boolean isBefore(Station s1, Station s2, Station other1, Station other2) {
+		if (other1 == null)
+			return true;
+		if (s1.getId() != other1.getId())
+			return s1.getId() < other1.getId();
+		return s2.getId() < other2.getId();
+	}
+
+	private static boolean isValidSource(Station s, String bikeType) {
+		return s.getOnline() && s.hasCorrectBikeType(bikeType);
 	}
 
+	private static boolean isValidDest(Station s) {
+		return s.getOnline() && !s.isFull();
+	}
+
+	// Getters / Setters
+
+	public boolean isExhaustive() {
+		return exhaustive;
+	}
 }
@@ -1,8 +1,5 @@
 package core.ridePlan;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import core.Network;
 import core.station.PlusStation;
 import core.station.Station;
@@ -28,48 +25,21 @@ public class PreferPlusPlan implements RidePlanStrategy {
 			throw new IllegalArgumentException("One of the arguments given to planRide is null");
 		}
 
-		HashMap<Integer, Station> stations = n.getStations();
-
-		Station sourceStation = null;
-		Station destStation = null;
+		StationGrid grid = n.getStationGrid();
 
-		double minimumSourceDistance = Double.MAX_VALUE;
-		double minimumDestDistance = Double.MAX_VALUE;
-
-		for (Map.Entry<Integer, Station> entry : stations.entrySet()) {
-			Station s = entry.getValue();
-			if (!s.getOnline())
-				continue;
-			double sourceDistance = s.getCoordinates().distance(source);
-			double destinationDistance = s.getCoordinates().distance(destination);
-			if (sourceDistance < minimumSourceDistance && s.hasCorrectBikeType(bikeType)) {
-				sourceStation = s;
-				minimumSourceDistance = sourceDistance;
-			}
-			if (destinationDistance < minimumDestDistance && !s.isFull()) {
-				destStation = s;
-				minimumDestDistance = destinationDistance;
-			}
-		}
+		Station sourceStation = grid.findNearest(source, s -> s.getOnline() && s.hasCorrectBikeType(bikeType));
+		Station destStation = grid.findNearest(destination, s -> s.getOnline() && !s.isFull());
 
 		if (sourceStation == null || destStation == null) {
 			throw new NoValidStationFoundException(n, "PREFER_PLUS");
 		}
 
 		// find plus station for destination
-		double minimumPlusDestDistance = 0.1 * minimumDestDistance;
+		double minimumDestDistance = destStation.getCoordinates().distance(destination);
 		Station plusDestStation = null;
 		if (!(destStation instanceof PlusStation)) {
-			for (Map.Entry<Integer, Station> entry : stations.entrySet()) {
-				Station s = entry.getValue();
-				if (!(s instanceof PlusStation) || !s.getOnline() || s.isFull())
-					continue;
-				double distance = s.getCoordinates().distance(destStation.getCoordinates());
-				if (distance < minimumPlusDestDistance) {
-					minimumPlusDestDistance = distance;
-					plusDestStation = s;
-				}
-			}
+			plusDestStation = grid.findNearest(destStation.getCoordinates(), 0.1 * minimumDestDistance,
+					s -> s instanceof PlusStation && s.getOnline() && !s.isFull());
 		}
 
 		if (plusDestStation == null) {
@@ -1,7 +1,5 @@
 package core.ridePlan;
 
-import java.util.HashMap;
-
 import core.Network;
 import core.station.Station;
 import core.user.User;
@@ -34,34 +32,19 @@ public class PreserveUniformityPlan implements RidePlanStrategy {
 			throw new IllegalArgumentException("One of the arguments given to planRide is null");
 		}
 
-		HashMap<Integer, Station> stations = n.getStations();
+		StationGrid grid = n.getStationGrid();
 
 		// find the closest stations
-		Station sourceStation = null;
-		Station destStation = null;
-
-		double minimumSourceDistance = Double.MAX_VALUE;
-		double minimumDestDistance = Double.MAX_VALUE;
-
-		for (Station s : stations.values()) {
-			if (!s.getOnline())
-				continue;
-			double sourceDistance = s.getCoordinates().distance(source);
-			double destinationDistance = s.getCoordinates().distance(destination);
-			if (sourceDistance < minimumSourceDistance && s.hasCorrectBikeType(bikeType)) {
-				sourceStation = s;
-				minimumSourceDistance = sourceDistance;
-			}
-			if (destinationDistance < minimumDestDistance && !s.isFull()) {
-				destStation = s;
-				minimumDestDistance = destinationDistance;
-			}
-		}
+		Station sourceStation = grid.findNearest(source, s -> s.getOnline() && s.hasCorrectBikeType(bikeType));
+		Station destStation = grid.findNearest(destination, s -> s.getOnline() && !s.isFull());
 
 		if (sourceStation == null || destStation == null) {
 			throw new NoValidStationFoundException(n, "PRESERVE_UNIFORMITY");
 		}
 
+		double minimumSourceDistance = sourceStation.getCoordinates().distance(source);
+		double minimumDestDistance = destStation.getCoordinates().distance(destination);
+
 		Station fullerSourceStation = null;
 		Station emptierDestStation = null;
 
@@ -69,15 +52,19 @@ public class PreserveUniformityPlan implements RidePlanStrategy {
 		double minDestSize = destStation.getNumberOfBikes(bikeType);
 
 		// find closest fuller source station and closest emptier destination station
-		for (Station s : stations.values()) {
+		// (only the stations close enough to the chosen ones need to be looked at)
+		for (Station s : grid.getStationsWithin(sourceStation.getCoordinates(), 1.05 * minimumSourceDistance)) {
 			double sourceDistance = s.getCoordinates().distance(sourceStation.getCoordinates());
-			double destinationDistance = s.getCoordinates().distance(destStation.getCoordinates());
 			int numberOfBikes = s.getNumberOfBikes(bikeType);
 			if (sourceDistance < 1.05 * minimumSourceDistance && numberOfBikes > maxSourceSize) {
 				fullerSourceStation = s;
-				maxSourceSize = s.getNumberOfBikes(bikeType);
+				maxSourceSize = numberOfBikes;
 			}
+		}
 
+		for (Station s : grid.getStationsWithin(destStation.getCoordinates(), 1.05 * minimumDestDistance)) {
+			double destinationDistance = s.getCoordinates().distance(destStation.getCoordinates());
+			int numberOfBikes = s.getNumberOfBikes(bikeType);
 			if (destinationDistance < 1.05 * minimumDestDistance && numberOfBikes < minDestSize) {
 				emptierDestStation = s;
 				minDestSize = numberOfBikes;
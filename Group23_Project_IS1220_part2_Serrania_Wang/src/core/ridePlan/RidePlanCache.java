@@ -0,0 +1,373 @@
+package core.ridePlan;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import core.Network;
+import core.bike.InvalidBikeTypeException;
+import core.station.Station;
+import core.user.User;
+import utils.Point;
+
+/**
+ * Cache of the ride plans of a network. <br>
+ * The network is cut in square cells of cellSize km. The plans are keyed on the
+ * cells of the source and of the destination, the policy and the type of bike:
+ * a plan is computed once for the centers of the two cells, and its stations
+ * are given to every ride between these cells, until the plan is out of date.
+ * The plans are thus approximate: a ride gets the stations of the centers of
+ * its cells. <br>
+ * Each entry keeps the stations that could change its result, with their
+ * version: <br>
+ * - SHORTEST and FASTEST: the stations whose detour between the centers is
+ * short enough to be part of a better pair (an ellipse around the trip) <br>
+ * - the other policies: the stations around the centers up to about twice the
+ * distance to the chosen stations <br>
+ * The policies looking at the number of bikes (PRESERVE_UNIFORMITY) use the
+ * inventory version of the stations, the others their availability version.
+ * When a station changes, nothing is done: the entries depending on it are
+ * found out of date when they are read, and computed again. The rentals and
+ * returns thus never wait for the cache. A station added to the network puts
+ * all the entries out of date. <br>
+ * A change racing with the computation of an entry may leave it suboptimal
+ * until one of its stations changes again, never invalid: the chosen stations
+ * are checked at each hit. <br>
+ * At most capacity entries are kept; the least recently used ones are evicted.
+ *
+ * @see Network#setRidePlanCache(RidePlanCache)
+ * @author animato
+ *
+ */
+public class RidePlanCache {
+	public static final double DEFAULT_CELL_SIZE = 0.1; // km
+	public static final int DEFAULT_CAPACITY = 10000;
+	// Slack added to the regions of the entries, against rounding errors
+	private static final double EPSILON = 1e-9;
+	// The stations of the nearest station policies are looked for up to this
+	// factor of the distance to the chosen stations (1.05 + 1 for uniformity)
+	private static final double NEAREST_FACTOR = 2.1;
+	// Fastest speed of a bike, in km/h (see RidePlan.approximateTime)
+	private static final double MAXIMUM_BIKE_SPEED = 20;
+
+	private final double cellSize;
+	private final int capacity;
+	private final LinkedHashMap<Key, CachedPlan> entries;
+	// Changes of the set of stations of the network
+	private final AtomicLong stationsVersion = new AtomicLong();
+
+	// Metrics
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Cells of the source and destination, policy and type of bike of a ride
+	 */
+	private static final class Key {
+		final long sourceCell;
+		final long destinationCell;
+		final String policy;
+		final String bikeType;
+
+		Key(long sourceCell, long destinationCell, String policy, String bikeType) {
+			this.sourceCell = sourceCell;
+			this.destinationCell = destinationCell;
+			this.policy = policy;
+			this.bikeType = bikeType;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof Key) {
+				Key k = (Key) o;
+				return sourceCell == k.sourceCell && destinationCell == k.destinationCell && policy.equals(k.policy)
+						&& bikeType.equals(k.bikeType);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			int h = Long.hashCode(sourceCell);
+			h = 31 * h + Long.hashCode(destinationCell);
+			h = 31 * h + policy.hashCode();
+			return 31 * h + bikeType.hashCode();
+		}
+	}
+
+	/**
+	 * A plan computed for the centers of two cells, with the stations it depends
+	 * on and their versions
+	 */
+	private static final class CachedPlan {
+		final RidePlan plan;
+		final Station[] stations;
+		final long[] versions;
+		final boolean inventory;
+		final long stationsVersion;
+
+		CachedPlan(RidePlan plan, Station[] stations, long[] versions, boolean inventory, long stationsVersion) {
+			this.plan = plan;
+			this.stations = stations;
+			this.versions = versions;
+			this.inventory = inventory;
+			this.stationsVersion = stationsVersion;
+		}
+	}
+
+	// Constructor
+
+	/**
+	 * Creates a cache with cells of 100 m and up to 10000 entries
+	 */
+	public RidePlanCache() {
+		this(DEFAULT_CELL_SIZE, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param cellSize
+	 *            the side of the cells, in km
+	 * @param capacity
+	 *            the maximum number of entries
+	 * @throws IllegalArgumentException
+	 *             if the cell size or the capacity is not positive
+	 */
+	public RidePlanCache(double cellSize, int capacity) throws IllegalArgumentException {
+		if (!(cellSize > 0) || capacity <= 0)
+			throw new IllegalArgumentException(
+					"The cell size and capacity of a ride plan cache must be positive: " + cellSize + ", " + capacity);
+		this.cellSize = cellSize;
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<Key, CachedPlan>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedPlan> eldest) {
+				if (size() > RidePlanCache.this.capacity) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	// Core methods
+
+	/**
+	 * Gives a plan for a ride: the cached plan of its cells if it is up to date,
+	 * a plan computed by the strategy for the centers of the cells otherwise
+	 *
+	 * @param strategy
+	 *            the strategy of the policy
+	 * @param policy
+	 *            the name of the policy
+	 * @param source
+	 *            the start of the ride
+	 * @param destination
+	 *            the end of the ride
+	 * @param user
+	 *            the user planning the ride
+	 * @param bikeType
+	 *            the type of bike
+	 * @param network
+	 *            the network
+	 * @return the plan from source to destination
+	 * @throws NoValidStationFoundException
+	 *             if the strategy finds no plan (not cached)
+	 * @throws InvalidBikeTypeException
+	 *             if the type of bike is not recognized
+	 */
+	public RidePlan planRide(RidePlanStrategy strategy, String policy, Point source, Point destination, User user,
+			String bikeType, Network network) throws NoValidStationFoundException, InvalidBikeTypeException {
+		Key key = new Key(cell(source), cell(destination), policy.toUpperCase(), bikeType.toUpperCase());
+		RidePlan plan = null;
+		synchronized (this) {
+			CachedPlan cached = entries.get(key);
+			if (cached != null) {
+				if (isUpToDate(cached, bikeType)) {
+					plan = cached.plan;
+				} else {
+					entries.remove(key);
+					invalidations.increment();
+				}
+			}
+		}
+		if (plan != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+			long version = stationsVersion.get();
+			plan = strategy.planRide(center(source), center(destination), user, bikeType, network);
+			CachedPlan cached = createEntry(plan, key.policy, network, version);
+			synchronized (this) {
+				entries.put(key, cached);
+			}
+		}
+		return new RidePlan(source, destination, plan.getSourceStation(), plan.getDestinationStation(),
+				plan.getPolicy(), bikeType, network);
+	}
+
+	/**
+	 * Puts all the entries out of date, when the set of stations of the network
+	 * changes
+	 */
+	public void stationsChanged() {
+		stationsVersion.incrementAndGet();
+	}
+
+	/**
+	 * Removes all the entries (the metrics are kept)
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	private boolean isUpToDate(CachedPlan cached, String bikeType) {
+		if (cached.stationsVersion != stationsVersion.get())
+			return false;
+		for (int i = 0; i < cached.stations.length; i++) {
+			Station s = cached.stations[i];
+			long version = cached.inventory ? s.getInventoryVersion() : s.getAvailabilityVersion();
+			if (version != cached.versions[i])
+				return false;
+		}
+		// the chosen stations should still be valid, whatever happened while the
+		// entry was computed
+		Station source = cached.plan.getSourceStation();
+		Station destination = cached.plan.getDestinationStation();
+		return source.getOnline() && source.hasCorrectBikeType(bikeType) && destination.getOnline()
+				&& !destination.isFull();
+	}
+
+	/**
+	 * Finds the stations a plan depends on, and reads their versions
+	 */
+	private CachedPlan createEntry(RidePlan plan, String policy, Network network, long stationsVersion)
+			throws InvalidBikeTypeException {
+		StationGrid grid = network.getStationGrid();
+		Point source = plan.getSource();
+		Point destination = plan.getDestination();
+		ArrayList<Station> stations = new ArrayList<Station>();
+		switch (policy) {
+		case "SHORTEST":
+			addStationsInEllipse(grid, source, destination, totalDistance(plan), stations);
+			break;
+		case "FASTEST":
+			// a faster plan is shorter than the fastest bike can ride in the same time
+			addStationsInEllipse(grid, source, destination, MAXIMUM_BIKE_SPEED * plan.approximateTime(), stations);
+			break;
+		default:
+			double sourceRadius = NEAREST_FACTOR * source.distance(plan.getSourceStation().getCoordinates());
+			double destinationRadius = NEAREST_FACTOR
+					* destination.distance(plan.getDestinationStation().getCoordinates());
+			stations.addAll(grid.getStationsWithin(source, sourceRadius + EPSILON));
+			for (Station s : grid.getStationsWithin(destination, destinationRadius + EPSILON)) {
+				if (s.getCoordinates().distance(source) > sourceRadius + EPSILON)
+					stations.add(s);
+			}
+		}
+		boolean inventory = policy.equals("PRESERVE_UNIFORMITY");
+		long[] versions = new long[stations.size()];
+		for (int i = 0; i < versions.length; i++) {
+			Station s = stations.get(i);
+			versions[i] = inventory ? s.getInventoryVersion() : s.getAvailabilityVersion();
+		}
+		return new CachedPlan(plan, stations.toArray(new Station[stations.size()]), versions, inventory,
+				stationsVersion);
+	}
+
+	/**
+	 * Adds the stations s such that d(source, s) + d(s, destination) is at most
+	 * the given length
+	 */
+	private static void addStationsInEllipse(StationGrid grid, Point source, Point destination, double length,
+			ArrayList<Station> stations) {
+		Point middle = new Point((source.getX() + destination.getX()) / 2, (source.getY() + destination.getY()) / 2);
+		for (Station s : grid.getStationsWithin(middle, length / 2 + EPSILON)) {
+			Point p = s.getCoordinates();
+			if (p.distance(source) + p.distance(destination) <= length + EPSILON)
+				stations.add(s);
+		}
+	}
+
+	private static double totalDistance(RidePlan plan) {
+		Point s1 = plan.getSourceStation().getCoordinates();
+		Point s2 = plan.getDestinationStation().getCoordinates();
+		return plan.getSource().distance(s1) + s1.distance(s2) + s2.distance(plan.getDestination());
+	}
+
+	/**
+	 * Gives the cell of a point, both coordinates packed in a long
+	 */
+	private long cell(Point p) {
+		long x = (long) Math.floor(p.getX() / cellSize);
+		long y = (long) Math.floor(p.getY() / cellSize);
+		return (x << 32) ^ (y & 0xFFFFFFFFL);
+	}
+
+	private Point center(Point p) {
+		return new Point((Math.floor(p.getX() / cellSize) + 0.5) * cellSize,
+				(Math.floor(p.getY() / cellSize) + 0.5) * cellSize);
+	}
+
+	// Getters / Setters
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of plans given from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of plans computed (no entry, or an entry out of date)
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of entries found out of date
+	 */
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	/**
+	 * @return the number of entries evicted to keep the capacity
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the share of the plans given from the cache (0 if none was asked)
+	 */
+	public double getHitRate() {
+		long hits = getHits(), requests = hits + getMisses();
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	@Override
+	public String toString() {
+		return "Ride plan cache [entries: " + size() + "/" + capacity + ", hits: " + getHits() + ", misses: "
+				+ getMisses() + ", invalidations: " + getInvalidations() + ", evictions: " + getEvictions() + "]";
+	}
+}
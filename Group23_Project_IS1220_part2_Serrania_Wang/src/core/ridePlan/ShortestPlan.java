@@ -1,6 +1,7 @@
 package core.ridePlan;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.function.Predicate;
 
 import core.Network;
 import core.station.Station;
@@ -26,36 +27,90 @@ public class ShortestPlan implements RidePlanStrategy {
 			throw new IllegalArgumentException("One of the arguments given to planRide is null");
 		}
 
-		HashMap<Integer, Station> stations = n.getStations();
+		StationGrid grid = n.getStationGrid();
+		Predicate<Station> isValidSource = s -> s.hasCorrectBikeType(bikeType) && s.getOnline();
+		Predicate<Station> isValidDest = s -> s.getOnline() && !s.isFull();
+
+		// The total distance of the best pair cannot be higher than the total distance
+		// of any valid pair: start from the pair made of the closest stations.
+		double maximumDistance = Double.MAX_VALUE;
+		Station closestSource = grid.findNearest(source, isValidSource);
+		Station closestDest = grid.findNearest(destination, isValidDest);
+		if (closestSource != null && closestDest != null) {
+			if (!closestSource.equals(closestDest)) {
+				maximumDistance = totalDistance(source, destination, closestSource, closestDest);
+			} else {
+				Station otherSource = grid.findNearest(source, s -> isValidSource.test(s) && !s.equals(closestDest));
+				if (otherSource != null) {
+					maximumDistance = totalDistance(source, destination, otherSource, closestDest);
+				}
+				Station otherDest = grid.findNearest(destination,
+						s -> isValidDest.test(s) && !s.equals(closestSource));
+				if (otherDest != null) {
+					maximumDistance = Math.min(maximumDistance,
+							totalDistance(source, destination, closestSource, otherDest));
+				}
+			}
+		}
 
 		Station sourceStation = null;
 		Station destStation = null;
 
-		double minimumDistance = Double.MAX_VALUE;
-
-		// different possible pairs
-		for (Station s1 : stations.values()) {
-			// source station
-			if (!s1.hasCorrectBikeType(bikeType) || !s1.getOnline())
-				continue;
-			for (Station s2 : stations.values()) {
-				if (!s2.getOnline() || s2.equals(s1) || s2.isFull())
-					continue;
-				double totalDistance = 0;
-				totalDistance += s1.getCoordinates().distance(source);
-				totalDistance += s1.getCoordinates().distance(s2.getCoordinates());
-				totalDistance += s2.getCoordinates().distance(destination);
-
-				if (totalDistance < minimumDistance) {
-					sourceStation = s1;
-					destStation = s2;
-					minimumDistance = totalDistance;
+		if (maximumDistance < Double.MAX_VALUE) {
+			// Each part of the trip is shorter than the total distance, so only stations
+			// within this distance of the source / destination can be part of the best pair
+			ArrayList<Station> sourceCandidates = new ArrayList<Station>();
+			for (Station s : grid.getStationsWithin(source, maximumDistance)) {
+				if (isValidSource.test(s))
+					sourceCandidates.add(s);
+			}
+			ArrayList<Station> destCandidates = new ArrayList<Station>();
+			for (Station s : grid.getStationsWithin(destination, maximumDistance)) {
+				if (isValidDest.test(s))
+					destCandidates.add(s);
+			}
+
+			double minimumDistance = Double.MAX_VALUE;
+
+			// different possible pairs
+			for (Station s1 : sourceCandidates) {
+				for (Station s2 : destCandidates) {
+					if (s2.equals(s1))
+						continue;
+					double totalDistance = totalDistance(source, destination, s1, s2);
+					if (totalDistance < minimumDistance) {
+						sourceStation = s1;
+						destStation = s2;
+						minimumDistance = totalDistance;
+					}
 				}
 			}
 		}
+
 		if (sourceStation == null || destStation == null) {
 			throw new NoValidStationFoundException(n, "SHORTEST");
 		}
 		return new RidePlan(source, destination, sourceStation, destStation, "SHORTEST", bikeType, n);
 	}
+
+	/**
+	 * Calculates the total distance of a trip going through the given stations
+	 * 
+	 * @param source
+	 *            the source point of the trip
+	 * @param destination
+	 *            the destination point of the trip
+	 * @param s1
+	 *            the source station
+	 * @param s2
+	 *            the destination station
+	 * @return the total distance (walking and riding), in km
+	 */
+	private static double totalDistance(Point source, Point destination, Station s1, Station s2) {
+		double totalDistance = 0;
+		totalDistance += s1.getCoordinates().distance(source);
+		totalDistance += s1.getCoordinates().distance(s2.getCoordinates());
+		totalDistance += s2.getCoordinates().distance(destination);
+		return totalDistance;
+	}
 }
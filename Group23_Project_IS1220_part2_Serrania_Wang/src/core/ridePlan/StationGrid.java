@@ -0,0 +1,296 @@
+package core.ridePlan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+import core.station.Station;
+import utils.Point;
+
+/**
+ * Spatial index of the stations of a network, used by the ride plan strategies
+ * to avoid scanning every station of the network. <br>
+ * The square area of the network (of the given side) is cut into a uniform
+ * grid of cells, and each station is stored in the cell containing its
+ * coordinates. Stations located outside of the area are stored in the closest
+ * border cell. <br>
+ * The number of cells grows with the number of stations so that each cell holds
+ * a few stations on average. <br>
+ * When several stations are at the same distance, the one with the smallest id
+ * is chosen, as the previous scans over the stations of the network did.
+ *
+ * @author animato
+ *
+ */
+public class StationGrid {
+	// Average number of stations per cell we aim for
+	private static final int STATIONS_PER_CELL = 4;
+	private static final int MAX_CELLS_PER_SIDE = 1024;
+	// Margin (in km) taken on the distance bounds to absorb rounding errors
+	private static final double EPSILON = 1e-9;
+
+	private static final Comparator<Station> BY_ID = new Comparator<Station>() {
+		@Override
+		public int compare(Station s1, Station s2) {
+			return Integer.compare(s1.getId(), s2.getId());
+		}
+	};
+
+	private double side;
+	private int cellsPerSide = 1;
+	private double cellSize;
+	private ArrayList<ArrayList<Station>> cells;
+	private int size = 0;
+
+	// Constructor
+
+	/**
+	 * Creates an empty grid covering a square area of the given side
+	 *
+	 * @param side
+	 *            side of the area covered by the grid, in km
+	 */
+	public StationGrid(double side) {
+		this.side = side;
+		this.rebuild(1, new ArrayList<Station>());
+	}
+
+	// Core methods
+
+	/**
+	 * Adds a station to the grid
+	 *
+	 * @param station
+	 *            the station to add
+	 * @throws IllegalArgumentException
+	 *             when the station is null
+	 */
+	public synchronized void add(Station station) throws IllegalArgumentException {
+		if (station == null) {
+			throw new IllegalArgumentException("Station given is null in add.");
+		}
+		cells.get(cellIndex(station.getCoordinates())).add(station);
+		size++;
+		if (size > 2 * STATIONS_PER_CELL * cellsPerSide * cellsPerSide && cellsPerSide < MAX_CELLS_PER_SIDE) {
+			rebuild(computeCellsPerSide(size), getStations());
+		}
+	}
+
+	/**
+	 * Removes a station from the grid
+	 *
+	 * @param station
+	 *            the station to remove
+	 * @return true if the station was in the grid, false if not
+	 */
+	public synchronized boolean remove(Station station) {
+		if (station == null) {
+			return false;
+		}
+		if (cells.get(cellIndex(station.getCoordinates())).remove(station)) {
+			size--;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the closest station to a given point which satisfies a given filter,
+	 * by looking at the cells ring by ring around the point until no closer
+	 * station can be found.
+	 *
+	 * @param point
+	 *            the point from which distances are measured
+	 * @param maxDistance
+	 *            the found station must be strictly closer than this distance
+	 * @param filter
+	 *            the condition the station must satisfy
+	 * @return the closest station satisfying the filter, or null if none was found
+	 */
+	public synchronized Station findNearest(Point point, double maxDistance, Predicate<Station> filter) {
+		int cx = cellX(point.getX());
+		int cy = cellY(point.getY());
+		int maxRing = Math.max(Math.max(cx, cellsPerSide - 1 - cx), Math.max(cy, cellsPerSide - 1 - cy));
+
+		Station nearest = null;
+		double minimumDistance = maxDistance;
+
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// Stop once every cell left is further away than the best station found
+			if (ring > 0 && lowerBoundOutsideRing(point, cx, cy, ring - 1) > minimumDistance) {
+				break;
+			}
+			for (int x = cx - ring; x <= cx + ring; x++) {
+				if (x < 0 || x >= cellsPerSide)
+					continue;
+				for (int y = cy - ring; y <= cy + ring; y++) {
+					if (y < 0 || y >= cellsPerSide)
+						continue;
+					// only the border of the ring, inner cells were already visited
+					if (x != cx - ring && x != cx + ring && y != cy - ring && y != cy + ring)
+						continue;
+					for (Station s : cells.get(x * cellsPerSide + y)) {
+						double distance = s.getCoordinates().distance(point);
+						if (distance > minimumDistance || (distance == minimumDistance
+								&& (nearest == null || s.getId() > nearest.getId())))
+							continue;
+						if (!filter.test(s))
+							continue;
+						nearest = s;
+						minimumDistance = distance;
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Finds the closest station to a given point which satisfies a given filter
+	 *
+	 * @param point
+	 *            the point from which distances are measured
+	 * @param filter
+	 *            the condition the station must satisfy
+	 * @return the closest station satisfying the filter, or null if none was found
+	 */
+	public Station findNearest(Point point, Predicate<Station> filter) {
+		return findNearest(point, Double.MAX_VALUE, filter);
+	}
+
+	/**
+	 * Gives all the stations at a distance lower or equal to maxDistance of the
+	 * given point, ordered by id.
+	 *
+	 * @param point
+	 *            the point from which distances are measured
+	 * @param maxDistance
+	 *            the maximum distance of the stations from the point
+	 * @return the list of stations found, ordered by id
+	 */
+	public synchronized ArrayList<Station> getStationsWithin(Point point, double maxDistance) {
+		ArrayList<Station> found = new ArrayList<Station>();
+		int minX = cellX(point.getX() - maxDistance);
+		int maxX = cellX(point.getX() + maxDistance);
+		int minY = cellY(point.getY() - maxDistance);
+		int maxY = cellY(point.getY() + maxDistance);
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				for (Station s : cells.get(x * cellsPerSide + y)) {
+					if (s.getCoordinates().distance(point) <= maxDistance) {
+						found.add(s);
+					}
+				}
+			}
+		}
+		Collections.sort(found, BY_ID);
+		return found;
+	}
+
+	/**
+	 * Gives all the stations of the grid, ordered by id
+	 *
+	 * @return the list of stations of the grid
+	 */
+	public synchronized ArrayList<Station> getStations() {
+		ArrayList<Station> stations = new ArrayList<Station>(size);
+		for (ArrayList<Station> cell : cells) {
+			stations.addAll(cell);
+		}
+		Collections.sort(stations, BY_ID);
+		return stations;
+	}
+
+	/**
+	 * Gives a lower bound of the distance between the point and any station that
+	 * is not in the square of cells of the given radius around the point's cell
+	 *
+	 * @param point
+	 *            the point from which distances are measured
+	 * @param cx
+	 *            the column of the point's cell
+	 * @param cy
+	 *            the row of the point's cell
+	 * @param ring
+	 *            the radius (in cells) of the square which was visited
+	 * @return the lower bound, or infinity if the square covers the whole grid
+	 */
+	private double lowerBoundOutsideRing(Point point, int cx, int cy, int ring) {
+		double bound = Double.POSITIVE_INFINITY;
+		if (cx - ring > 0)
+			bound = Math.min(bound, point.getX() - (cx - ring) * cellSize);
+		if (cx + ring < cellsPerSide - 1)
+			bound = Math.min(bound, (cx + ring + 1) * cellSize - point.getX());
+		if (cy - ring > 0)
+			bound = Math.min(bound, point.getY() - (cy - ring) * cellSize);
+		if (cy + ring < cellsPerSide - 1)
+			bound = Math.min(bound, (cy + ring + 1) * cellSize - point.getY());
+		return bound - EPSILON;
+	}
+
+	/**
+	 * Recreates the cells with the given number of cells per side and places the
+	 * given stations into them
+	 *
+	 * @param newCellsPerSide
+	 *            the number of cells on each side of the grid
+	 * @param stations
+	 *            the stations to place in the grid
+	 */
+	private void rebuild(int newCellsPerSide, ArrayList<Station> stations) {
+		this.cellsPerSide = newCellsPerSide;
+		this.cellSize = side > 0 ? side / cellsPerSide : 1;
+		this.cells = new ArrayList<ArrayList<Station>>(cellsPerSide * cellsPerSide);
+		for (int i = 0; i < cellsPerSide * cellsPerSide; i++) {
+			cells.add(new ArrayList<Station>(STATIONS_PER_CELL));
+		}
+		for (Station s : stations) {
+			cells.get(cellIndex(s.getCoordinates())).add(s);
+		}
+		this.size = stations.size();
+	}
+
+	private static int computeCellsPerSide(int numberOfStations) {
+		int n = (int) Math.ceil(Math.sqrt((double) numberOfStations / STATIONS_PER_CELL));
+		return Math.max(1, Math.min(n, MAX_CELLS_PER_SIDE));
+	}
+
+	private int cellIndex(Point p) {
+		return cellX(p.getX()) * cellsPerSide + cellY(p.getY());
+	}
+
+	private int cellX(double x) {
+		return clamp((int) Math.floor(x / cellSize));
+	}
+
+	private int cellY(double y) {
+		return clamp((int) Math.floor(y / cellSize));
+	}
+
+	private int clamp(int i) {
+		return Math.max(0, Math.min(i, cellsPerSide - 1));
+	}
+
+	// Getters / Setters
+
+	public double getSide() {
+		return side;
+	}
+
+	/**
+	 * Changes the side of the area covered by the grid, and places the stations
+	 * again in the resized cells
+	 *
+	 * @param side
+	 *            the new side, in km
+	 */
+	public synchronized void setSide(double side) {
+		this.side = side;
+		rebuild(cellsPerSide, getStations());
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+}
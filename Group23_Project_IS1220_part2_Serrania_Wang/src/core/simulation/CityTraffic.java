@@ -0,0 +1,338 @@
+package core.simulation;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import core.Network;
+import core.NetworkBuilder;
+import core.bike.InvalidBikeTypeException;
+import core.card.CardVisitorFactory;
+import core.card.InvalidBikeException;
+import core.card.InvalidCardTypeException;
+import core.card.InvalidDatesException;
+import core.rentals.OngoingBikeRentalException;
+import core.ridePlan.InvalidRidePlanPolicyException;
+import core.ridePlan.NoValidStationFoundException;
+import core.ridePlan.RidePlan;
+import core.station.BikeNotFoundException;
+import core.station.FullStationException;
+import core.station.OfflineStationException;
+import core.station.Station;
+import core.user.BikeRentalNotFoundException;
+import core.user.User;
+import utils.Point;
+
+/**
+ * Discrete-event simulation of the traffic of a city on a network. <br>
+ * Each simulated user makes trips all day long: the user plans a ride with
+ * Network.createRidePlan from where they are to a random point of the city,
+ * walks to the source station, rents a bike with Network.rentBike, rides to
+ * the destination station and returns the bike with Network.returnBike. When
+ * the destination station is full or offline, the user rides to the nearest
+ * station with room left. Stations also go offline for a while, at random
+ * times. <br>
+ * Every step is an event of an {@link EventSimulation}, fired at its simulated
+ * time: the clock jumps from one event to the next, so a whole day of traffic
+ * runs as fast as the network calls. All the random draws come from one
+ * generator seeded by the caller, and the stations are always visited in the
+ * order of their ids: the same seed on a network built the same way (with
+ * {@link #createNetwork}, and the same ids) gives the same trips.
+ *
+ * @author animato
+ *
+ */
+public class CityTraffic {
+	// Speeds used by the ride plans, in km/h
+	private static final double WALKING_SPEED = 4;
+	private static final double MECH_SPEED = 15;
+	private static final double ELEC_SPEED = 20;
+	// Delay before trying again when no station has room, in seconds
+	private static final long RETRY_DELAY = 15 * 60;
+	private static final long DAY = 24 * 60 * 60;
+	private static final String[] CARD_TYPES = { "NO_CARD", "VLIBRE_CARD", "VMAX_CARD" };
+
+	private final Network network;
+	private final Random random;
+	private final String policy;
+	private final double elecShare;
+	private final double tripsPerUserPerDay;
+	private final double outagesPerStationPerDay;
+	private final double meanOutageDuration;
+
+	// Stations sorted by id
+	private List<Station> stations;
+	private EventSimulation simulation;
+	private long plannedRides, failedPlans, completedTrips, failedRentals, failedReturns, outages;
+
+	// Constructor
+
+	/**
+	 * Creates the traffic of a city
+	 *
+	 * @param network
+	 *            the network the users ride on
+	 * @param seed
+	 *            the seed of the random generator
+	 * @param policy
+	 *            the ride plan policy of the users (e.g. "SHORTEST")
+	 * @param elecShare
+	 *            the share of rides planned with an electrical bike (between 0 and
+	 *            1)
+	 * @param tripsPerUserPerDay
+	 *            the mean number of trips a user starts per day
+	 * @param outagesPerStationPerDay
+	 *            the mean number of times a station goes offline per day (0 for
+	 *            none)
+	 * @param meanOutageDuration
+	 *            the mean time a station stays offline, in minutes
+	 */
+	public CityTraffic(Network network, long seed, String policy, double elecShare, double tripsPerUserPerDay,
+			double outagesPerStationPerDay, double meanOutageDuration) {
+		this.network = network;
+		this.random = new Random(seed);
+		this.policy = policy;
+		this.elecShare = elecShare;
+		this.tripsPerUserPerDay = tripsPerUserPerDay;
+		this.outagesPerStationPerDay = outagesPerStationPerDay;
+		this.meanOutageDuration = meanOutageDuration;
+	}
+
+	// Core methods
+
+	/**
+	 * Creates a network whose station coordinates and bikes are drawn from the
+	 * given random generator instead of the generator of the thread
+	 *
+	 * @param name
+	 *            the name of the network
+	 * @param numberOfStations
+	 *            the number of stations
+	 * @param numberOfParkingSlotsPerStation
+	 *            the number of parking slots of each station
+	 * @param side
+	 *            side of the network, in km
+	 * @param percentageOfBikes
+	 *            percentage of bikes in the network
+	 * @param percentageOfPlusStations
+	 *            percentage of plus stations in the network
+	 * @param percentageOfElecBikes
+	 *            percentage of elec bikes in the network
+	 * @param creationDate
+	 *            date of creation of the network
+	 * @param random
+	 *            the random generator
+	 * @return the network
+	 */
+	public static Network createNetwork(String name, int numberOfStations, int numberOfParkingSlotsPerStation,
+			double side, double percentageOfBikes, double percentageOfPlusStations, double percentageOfElecBikes,
+			LocalDateTime creationDate, Random random) {
+		Network network = new Network(name, 0, numberOfParkingSlotsPerStation, side, 0, 0, 0, creationDate);
+		for (int i = 0; i < numberOfStations; i++) {
+			String type = i < numberOfStations * percentageOfPlusStations ? "PLUS" : "STANDARD";
+			network.addStation(type, random.nextDouble() * side, random.nextDouble() * side,
+					numberOfParkingSlotsPerStation, true);
+		}
+		int totalNumberOfBikes = (int) (numberOfParkingSlotsPerStation * numberOfStations * percentageOfBikes);
+		int numberOfElecBikes = Math.min(totalNumberOfBikes,
+				(int) Math.ceil(totalNumberOfBikes * percentageOfElecBikes));
+		new NetworkBuilder(random).placeBikes(sortedStations(network), numberOfElecBikes,
+				totalNumberOfBikes - numberOfElecBikes, creationDate);
+		return network;
+	}
+
+	/**
+	 * Adds users to the network and simulates their trips and the outages of the
+	 * stations, from the current date of the network to the given date
+	 *
+	 * @param numberOfUsers
+	 *            the number of users to add
+	 * @param end
+	 *            the date at which the simulation stops; rides still going on are
+	 *            left unfinished
+	 * @return the report of the simulation
+	 * @throws IllegalArgumentException
+	 *             when the network has no station, or the policy is not known
+	 */
+	public TrafficReport run(int numberOfUsers, LocalDateTime end) throws IllegalArgumentException {
+		stations = sortedStations(network);
+		if (stations.isEmpty())
+			throw new IllegalArgumentException("The network has no station to ride between");
+		simulation = new EventSimulation(network.getCurrentDate());
+		plannedRides = failedPlans = completedTrips = failedRentals = failedReturns = outages = 0;
+
+		for (User user : addUsers(numberOfUsers)) {
+			simulation.schedule(nextTripDelay(), s -> planRide(user));
+		}
+		if (outagesPerStationPerDay > 0) {
+			for (Station station : stations) {
+				simulation.schedule(exponential(DAY / outagesPerStationPerDay), s -> outage(station));
+			}
+		}
+
+		long startTime = System.nanoTime();
+		simulation.runUntil(end);
+		long elapsedTime = System.nanoTime() - startTime;
+		return new TrafficReport(numberOfUsers, simulation.getClock(), elapsedTime, simulation.getFiredEvents(),
+				plannedRides, failedPlans, failedRentals, completedTrips, failedReturns, outages);
+	}
+
+	/**
+	 * A user plans a ride from where they are, then walks to the source station
+	 */
+	private void planRide(User user) {
+		Point destination = new Point(random.nextDouble() * network.getSide(), random.nextDouble() * network.getSide());
+		String bikeType = random.nextDouble() < elecShare ? "ELEC" : "MECH";
+		RidePlan plan;
+		try {
+			plan = network.createRidePlan(user.getCoordinates(), destination, user, policy, bikeType);
+		} catch (NoValidStationFoundException e) {
+			failedPlans++;
+			simulation.schedule(nextTripDelay(), s -> planRide(user));
+			return;
+		} catch (InvalidBikeTypeException | InvalidRidePlanPolicyException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+		plannedRides++;
+		Station source = plan.getSourceStation();
+		simulation.schedule(travelTime(user.getCoordinates(), source.getCoordinates(), WALKING_SPEED),
+				s -> rentBike(user, plan, source, bikeType));
+	}
+
+	/**
+	 * A user arrives at the source station of their ride plan
+	 */
+	private void rentBike(User user, RidePlan plan, Station source, String bikeType) {
+		user.setCoordinates(source.getCoordinates());
+		try {
+			network.rentBike(user, source, bikeType, simulation.getDate());
+		} catch (OfflineStationException | BikeNotFoundException e) {
+			// the bikes were taken or the station went offline on the way
+			failedRentals++;
+			user.setRidePlan(null);
+			simulation.schedule(nextTripDelay(), s -> planRide(user));
+			return;
+		} catch (OngoingBikeRentalException e) {
+			throw new IllegalStateException(e);
+		}
+		Station destination = plan.getDestinationStation();
+		simulation.schedule(rideTime(source, destination, bikeType),
+				s -> returnBike(user, plan, destination, bikeType));
+	}
+
+	/**
+	 * A user arrives at a station to return their bike
+	 */
+	private void returnBike(User user, RidePlan plan, Station station, String bikeType) {
+		user.setCoordinates(station.getCoordinates());
+		try {
+			network.returnBike(user, station, simulation.getDate());
+		} catch (FullStationException | OfflineStationException e) {
+			failedReturns++;
+			Station other = nearestStationWithRoom(station);
+			if (other == null)
+				simulation.schedule(RETRY_DELAY, s -> returnBike(user, plan, station, bikeType));
+			else
+				simulation.schedule(rideTime(station, other, bikeType), s -> returnBike(user, plan, other, bikeType));
+			return;
+		} catch (BikeRentalNotFoundException | InvalidBikeException | InvalidDatesException e) {
+			throw new IllegalStateException(e);
+		}
+		completedTrips++;
+		// the plan is over even when the bike was returned elsewhere
+		user.setRidePlan(null);
+		long walk = travelTime(station.getCoordinates(), plan.getDestination(), WALKING_SPEED);
+		user.setCoordinates(plan.getDestination());
+		simulation.schedule(walk + nextTripDelay(), s -> planRide(user));
+	}
+
+	/**
+	 * A station goes offline, until it is repaired
+	 */
+	private void outage(Station station) {
+		outages++;
+		network.setOffline(station.getId());
+		simulation.schedule(Math.max(60, exponential(meanOutageDuration * 60)), s -> {
+			network.setOnline(station.getId());
+			s.schedule(exponential(DAY / outagesPerStationPerDay), t -> outage(station));
+		});
+	}
+
+	/**
+	 * Gives the nearest station other than the given one which is online and not
+	 * full, or null if there is none
+	 */
+	private Station nearestStationWithRoom(Station from) {
+		Station nearest = null;
+		double nearestDistance = Double.MAX_VALUE;
+		for (Station station : stations) {
+			if (station == from || !station.getOnline() || station.isFull())
+				continue;
+			double distance = from.getCoordinates().distance(station.getCoordinates());
+			if (distance < nearestDistance) {
+				nearest = station;
+				nearestDistance = distance;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Adds users with random coordinates and cards to the network
+	 */
+	private List<User> addUsers(int numberOfUsers) {
+		CardVisitorFactory cardFactory = new CardVisitorFactory();
+		List<User> users = new ArrayList<User>(numberOfUsers);
+		try {
+			for (int i = 0; i < numberOfUsers; i++) {
+				Point coordinates = new Point(random.nextDouble() * network.getSide(),
+						random.nextDouble() * network.getSide());
+				User user = new User("citizen" + i, coordinates,
+						cardFactory.createCard(CARD_TYPES[i % CARD_TYPES.length]));
+				network.addUser(user);
+				users.add(user);
+			}
+		} catch (InvalidCardTypeException e) {
+			throw new IllegalStateException(e);
+		}
+		return users;
+	}
+
+	private long nextTripDelay() {
+		return exponential(DAY / tripsPerUserPerDay);
+	}
+
+	/**
+	 * Draws an exponentially distributed delay
+	 *
+	 * @param mean
+	 *            the mean delay, in seconds
+	 * @return the delay, in seconds
+	 */
+	private long exponential(double mean) {
+		return (long) (-mean * Math.log(1 - random.nextDouble()));
+	}
+
+	/**
+	 * Riding time between two stations, at least one minute
+	 */
+	private static long rideTime(Station from, Station to, String bikeType) {
+		double speed = bikeType.equals("ELEC") ? ELEC_SPEED : MECH_SPEED;
+		return Math.max(60, travelTime(from.getCoordinates(), to.getCoordinates(), speed));
+	}
+
+	/**
+	 * Travel time between two points, in seconds
+	 */
+	private static long travelTime(Point from, Point to, double speed) {
+		return Math.round(from.distance(to) / speed * 3600);
+	}
+
+	private static List<Station> sortedStations(Network network) {
+		List<Station> stations = new ArrayList<Station>(network.getStations().values());
+		stations.sort(Comparator.comparingInt(Station::getId));
+		return stations;
+	}
+}
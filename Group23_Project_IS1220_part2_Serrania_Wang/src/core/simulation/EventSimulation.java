@@ -0,0 +1,157 @@
+package core.simulation;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.PriorityQueue;
+
+/**
+ * Discrete-event simulation engine. <br>
+ * Events are kept in a calendar (a priority queue) ordered by their simulated
+ * time; events scheduled at the same time fire in the order they were
+ * scheduled. Running the simulation fires the events one after the other,
+ * moving the simulated clock to the time of each event: nothing waits for real
+ * time, so a whole day of events runs as fast as the events themselves. <br>
+ * Times are counted in seconds from the start of the simulation. The engine is
+ * not thread-safe: events are fired, and usually scheduled, by the thread
+ * running the simulation.
+ *
+ * @author animato
+ *
+ */
+public class EventSimulation {
+	private final LocalDateTime start;
+	private final PriorityQueue<ScheduledEvent> calendar = new PriorityQueue<ScheduledEvent>();
+	// Simulated time, in seconds from the start
+	private long clock = 0;
+	private long nextSequence = 0;
+	private long firedEvents = 0;
+
+	/**
+	 * An action run at a simulated time
+	 */
+	public interface Event {
+		/**
+		 * Runs the action. The clock of the simulation is at the time of the event.
+		 *
+		 * @param simulation
+		 *            the simulation, to schedule the next events
+		 */
+		void fire(EventSimulation simulation);
+	}
+
+	/**
+	 * An event in the calendar
+	 */
+	private static class ScheduledEvent implements Comparable<ScheduledEvent> {
+		final long time;
+		final long sequence;
+		final Event event;
+
+		ScheduledEvent(long time, long sequence, Event event) {
+			this.time = time;
+			this.sequence = sequence;
+			this.event = event;
+		}
+
+		@Override
+		public int compareTo(ScheduledEvent o) {
+			int c = Long.compare(time, o.time);
+			return c != 0 ? c : Long.compare(sequence, o.sequence);
+		}
+	}
+
+	// Constructor
+
+	/**
+	 * Creates a simulation with an empty calendar
+	 *
+	 * @param start
+	 *            the date at which the simulated clock starts
+	 */
+	public EventSimulation(LocalDateTime start) {
+		this.start = start;
+	}
+
+	// Core methods
+
+	/**
+	 * Schedules an event after the current time
+	 *
+	 * @param delay
+	 *            the delay from the current time, in seconds
+	 * @param event
+	 *            the event
+	 * @throws IllegalArgumentException
+	 *             when the delay is negative
+	 */
+	public void schedule(long delay, Event event) throws IllegalArgumentException {
+		if (delay < 0)
+			throw new IllegalArgumentException("An event cannot be scheduled in the past");
+		calendar.add(new ScheduledEvent(clock + delay, nextSequence++, event));
+	}
+
+	/**
+	 * Schedules an event at a given date
+	 *
+	 * @param date
+	 *            the date of the event
+	 * @param event
+	 *            the event
+	 * @throws IllegalArgumentException
+	 *             when the date is before the current time
+	 */
+	public void schedule(LocalDateTime date, Event event) throws IllegalArgumentException {
+		schedule(ChronoUnit.SECONDS.between(start, date) - clock, event);
+	}
+
+	/**
+	 * Fires the events of the calendar in order, until the calendar is empty or the
+	 * next event is after the given date. The clock is then moved to the given
+	 * date.
+	 *
+	 * @param end
+	 *            the date at which the simulation stops
+	 * @return the number of events fired
+	 */
+	public long runUntil(LocalDateTime end) {
+		long endTime = ChronoUnit.SECONDS.between(start, end);
+		long fired = 0;
+		while (!calendar.isEmpty() && calendar.peek().time <= endTime) {
+			ScheduledEvent next = calendar.poll();
+			clock = next.time;
+			next.event.fire(this);
+			fired++;
+		}
+		clock = Math.max(clock, endTime);
+		firedEvents += fired;
+		return fired;
+	}
+
+	// Getters
+
+	/**
+	 * Gives the current simulated date
+	 *
+	 * @return the date of the event being fired, or the date at which the
+	 *         simulation stopped
+	 */
+	public LocalDateTime getDate() {
+		return start.plusSeconds(clock);
+	}
+
+	public LocalDateTime getStart() {
+		return start;
+	}
+
+	public long getClock() {
+		return clock;
+	}
+
+	public long getFiredEvents() {
+		return firedEvents;
+	}
+
+	public int getPendingEvents() {
+		return calendar.size();
+	}
+}
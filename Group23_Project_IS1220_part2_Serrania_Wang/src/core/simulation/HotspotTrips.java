@@ -0,0 +1,69 @@
+package core.simulation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import core.station.Station;
+
+/**
+ * Trips concentrated on a few stations: the stations are ranked by id and the
+ * k-th one is picked with a probability proportional to 1 / k^exponent (Zipf
+ * law), both as source and as destination. The higher the exponent, the more
+ * users compete for the same stations.
+ * 
+ * @author animato
+ *
+ */
+public class HotspotTrips extends UniformTrips {
+	private final double exponent;
+	// cumulative probabilities of the stations, for the last number of stations
+	private volatile double[] cumulative = new double[0];
+
+	// Constructor
+
+	/**
+	 * @param exponent
+	 *            the exponent of the Zipf law (0 for uniform trips)
+	 * @param elecShare
+	 *            the share of trips made with an electrical bike (between 0 and 1)
+	 * @param meanDuration
+	 *            the mean duration of a trip, in minutes
+	 */
+	public HotspotTrips(double exponent, double elecShare, double meanDuration) {
+		super(elecShare, meanDuration);
+		this.exponent = exponent;
+	}
+
+	// Core methods
+
+	@Override
+	public Station pickSource(List<Station> stations, Random random) {
+		return pick(stations, random);
+	}
+
+	@Override
+	public Station pickDestination(List<Station> stations, Station source, Random random) {
+		return pick(stations, random);
+	}
+
+	private Station pick(List<Station> stations, Random random) {
+		double[] cdf = cumulative;
+		if (cdf.length != stations.size()) {
+			cdf = computeCumulative(stations.size());
+			cumulative = cdf;
+		}
+		int i = Arrays.binarySearch(cdf, random.nextDouble() * cdf[cdf.length - 1]);
+		return stations.get(Math.min(i < 0 ? -i - 1 : i, stations.size() - 1));
+	}
+
+	private double[] computeCumulative(int n) {
+		double[] cdf = new double[n];
+		double sum = 0;
+		for (int k = 0; k < n; k++) {
+			sum += 1 / Math.pow(k + 1, exponent);
+			cdf[k] = sum;
+		}
+		return cdf;
+	}
+}
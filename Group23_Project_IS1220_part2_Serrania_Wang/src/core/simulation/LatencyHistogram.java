@@ -0,0 +1,98 @@
+package core.simulation;
+
+/**
+ * Histogram of latencies, in nanoseconds, with a bounded relative error. <br>
+ * Values are counted in buckets: below 16 ns each value has its own bucket,
+ * above that every power of two is split into 16 buckets, so a percentile is
+ * known within 1/16 (about 6%) of its value. A histogram takes a few kilobytes
+ * whatever the number of values. <br>
+ * A histogram is not thread-safe: each thread records in its own histogram, and
+ * they are merged afterwards.
+ *
+ * @author animato
+ *
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+	private long totalCount = 0;
+	private long max = 0;
+
+	// Core methods
+
+	/**
+	 * Records a value
+	 *
+	 * @param nanos
+	 *            the latency, in nanoseconds (negative values count as 0)
+	 */
+	public void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		counts[bucketIndex(value)]++;
+		totalCount++;
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Adds the values of another histogram to this one
+	 *
+	 * @param other
+	 *            the histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Gives the value below which the given fraction of the values are
+	 *
+	 * @param fraction
+	 *            between 0 and 1 (0.99 for the 99th percentile)
+	 * @return the lowest value of the bucket holding the percentile, in
+	 *         nanoseconds (0 without values)
+	 */
+	public long getPercentile(double fraction) {
+		if (totalCount == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(fraction * totalCount));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(bucketValue(i), max);
+		}
+		return max;
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long bucketValue(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = index % SUB_BUCKETS;
+		return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	// Getters
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMax() {
+		return max;
+	}
+}
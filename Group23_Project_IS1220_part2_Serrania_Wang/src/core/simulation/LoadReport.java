@@ -0,0 +1,150 @@
+package core.simulation;
+
+/**
+ * Results of a load simulation: throughput, latencies of the rentals and
+ * returns, and contention. The blocked entries and time are counted by the JVM
+ * for all the monitors; the samples of the blocked threads tell the user
+ * monitors from the station monitors (one sample per blocked thread every
+ * SAMPLE_INTERVAL ms, so a sample stands for about 1 ms blocked).
+ *
+ * @author animato
+ *
+ */
+public class LoadReport {
+	private final int numberOfUsers;
+	private final int numberOfThreads;
+	private final long elapsedTime; // in nanoseconds
+	private final long completedTrips;
+	private final long failedRentals;
+	private final long failedReturns;
+	private final LatencyHistogram rentLatencies;
+	private final LatencyHistogram returnLatencies;
+	private final long blockedCount;
+	private final long blockedTime; // in milliseconds, -1 if unknown
+	private final long userMonitorSamples;
+	private final long stationMonitorSamples;
+	private final long otherMonitorSamples;
+	private final long claimConflicts;
+
+	// Constructor
+
+	LoadReport(int numberOfUsers, int numberOfThreads, long elapsedTime, long completedTrips, long failedRentals,
+			long failedReturns, LatencyHistogram rentLatencies, LatencyHistogram returnLatencies, long blockedCount,
+			long blockedTime, long userMonitorSamples, long stationMonitorSamples, long otherMonitorSamples,
+			long claimConflicts) {
+		this.numberOfUsers = numberOfUsers;
+		this.numberOfThreads = numberOfThreads;
+		this.elapsedTime = elapsedTime;
+		this.completedTrips = completedTrips;
+		this.failedRentals = failedRentals;
+		this.failedReturns = failedReturns;
+		this.rentLatencies = rentLatencies;
+		this.returnLatencies = returnLatencies;
+		this.blockedCount = blockedCount;
+		this.blockedTime = blockedTime;
+		this.userMonitorSamples = userMonitorSamples;
+		this.stationMonitorSamples = stationMonitorSamples;
+		this.otherMonitorSamples = otherMonitorSamples;
+		this.claimConflicts = claimConflicts;
+	}
+
+	// Core methods
+
+	/**
+	 * Gives the number of calls to rentBike and returnBike per second
+	 *
+	 * @return the throughput, in operations per second
+	 */
+	public double getThroughput() {
+		long operations = rentLatencies.getTotalCount() + returnLatencies.getTotalCount();
+		return elapsedTime == 0 ? 0 : operations * 1e9 / elapsedTime;
+	}
+
+	private static String latencies(String name, LatencyHistogram h) {
+		return String.format("%-8s %10d calls   p50 %8.1f us   p90 %8.1f us   p99 %8.1f us   p99.9 %8.1f us   max %8.1f us",
+				name, h.getTotalCount(), h.getPercentile(0.5) / 1e3, h.getPercentile(0.9) / 1e3,
+				h.getPercentile(0.99) / 1e3, h.getPercentile(0.999) / 1e3, h.getMax() / 1e3);
+	}
+
+	@Override
+	public String toString() {
+		String report = String.format("%d users on %d threads: %d trips in %.1f ms (%.0f operations/s)%n",
+				numberOfUsers, numberOfThreads, completedTrips, elapsedTime / 1e6, getThroughput());
+		report += String.format("Failed rentals: %d, failed returns: %d%n", failedRentals, failedReturns);
+		report += latencies("rent", rentLatencies) + System.lineSeparator();
+		report += latencies("return", returnLatencies) + System.lineSeparator();
+		report += String.format("Monitor contention: %d blocked entries (%s), %d parking slot claim conflicts%n",
+				blockedCount, blockedTime < 0 ? "time unknown" : blockedTime + " ms", claimConflicts);
+		report += String.format("Blocked samples (every %d ms): user monitors %d, station monitors %d, other %d",
+				LoadSimulator.SAMPLE_INTERVAL, userMonitorSamples, stationMonitorSamples, otherMonitorSamples);
+		return report;
+	}
+
+	// Getters
+
+	public int getNumberOfUsers() {
+		return numberOfUsers;
+	}
+
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	public long getCompletedTrips() {
+		return completedTrips;
+	}
+
+	public long getFailedRentals() {
+		return failedRentals;
+	}
+
+	public long getFailedReturns() {
+		return failedReturns;
+	}
+
+	public LatencyHistogram getRentLatencies() {
+		return rentLatencies;
+	}
+
+	public LatencyHistogram getReturnLatencies() {
+		return returnLatencies;
+	}
+
+	public long getBlockedCount() {
+		return blockedCount;
+	}
+
+	public long getBlockedTime() {
+		return blockedTime;
+	}
+
+	/**
+	 * @return the number of samples finding a thread blocked on a user
+	 */
+	public long getUserMonitorSamples() {
+		return userMonitorSamples;
+	}
+
+	/**
+	 * @return the number of samples finding a thread blocked on a station, a
+	 *         parking slot or station statistics
+	 */
+	public long getStationMonitorSamples() {
+		return stationMonitorSamples;
+	}
+
+	/**
+	 * @return the number of samples finding a thread blocked on another monitor
+	 */
+	public long getOtherMonitorSamples() {
+		return otherMonitorSamples;
+	}
+
+	public long getClaimConflicts() {
+		return claimConflicts;
+	}
+}
@@ -0,0 +1,333 @@
+package core.simulation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import core.Network;
+import core.card.CardVisitorFactory;
+import core.card.InvalidBikeException;
+import core.card.InvalidCardTypeException;
+import core.card.InvalidDatesException;
+import core.rentals.OngoingBikeRentalException;
+import core.station.BikeNotFoundException;
+import core.station.FullStationException;
+import core.station.OfflineStationException;
+import core.station.Station;
+import core.station.UsageLeaderboard;
+import core.user.BikeRentalNotFoundException;
+import core.user.User;
+import utils.Point;
+
+/**
+ * Load simulation of the rental path of a network. <br>
+ * Many users are added to the network, each one making a number of trips: a
+ * bike is rented with Network.rentBike at a source station and returned with
+ * Network.returnBike at a destination station, as given by a trip
+ * distribution. Every trip is a small task run by a pool of threads, and a user
+ * submits its next trip once the previous one is done, so the trips of all the
+ * users are interleaved and hundreds of thousands of users need no more than
+ * the threads of the pool. <br>
+ * The simulation reports the throughput, the latency percentiles of rentBike
+ * and returnBike, the time the threads were blocked on monitors and the parking
+ * slot claims which collided at the stations. The JVM only counts the blocked
+ * entries of a thread, whatever the monitor: to tell the user monitors from
+ * the station monitors (stations, parking slots, statistics), the workers are
+ * sampled every millisecond and the monitor each blocked worker waits for is
+ * classified by its class. The monitors shared by all the stations (such as the
+ * usage leaderboard) are counted apart.
+ *
+ * @author animato
+ *
+ */
+public class LoadSimulator {
+	// Number of random destinations tried before looking for any station with room
+	private static final int RANDOM_RETURN_ATTEMPTS = 5;
+	private static final String[] CARD_TYPES = { "NO_CARD", "VLIBRE_CARD", "VMAX_CARD" };
+	// Period of the samples of the blocked workers, in milliseconds
+	static final int SAMPLE_INTERVAL = 1;
+
+	private final Network network;
+	private final int numberOfThreads;
+
+	/**
+	 * Counters and latencies recorded by one thread
+	 */
+	private static class Recorder {
+		final LatencyHistogram rentLatencies = new LatencyHistogram();
+		final LatencyHistogram returnLatencies = new LatencyHistogram();
+		long completedTrips = 0;
+		long failedRentals = 0;
+		long failedReturns = 0;
+	}
+
+	/**
+	 * Samples the workers until stopped, counting the workers found blocked on
+	 * each kind of monitor
+	 */
+	private static class MonitorSampler extends Thread {
+		private final ThreadMXBean threadBean;
+		private final List<Thread> workers;
+		private volatile boolean running = true;
+		long userSamples = 0;
+		long stationSamples = 0;
+		long otherSamples = 0;
+
+		MonitorSampler(ThreadMXBean threadBean, List<Thread> workers) {
+			super("load-simulator-sampler");
+			this.threadBean = threadBean;
+			this.workers = workers;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				long[] ids = new long[workers.size()];
+				for (int i = 0; i < ids.length; i++)
+					ids[i] = workers.get(i).getId();
+				for (ThreadInfo info : threadBean.getThreadInfo(ids)) {
+					if (info == null || info.getThreadState() != Thread.State.BLOCKED || info.getLockInfo() == null)
+						continue;
+					String lock = info.getLockInfo().getClassName();
+					if (lock.equals(User.class.getName()))
+						userSamples++;
+					else if (lock.startsWith(Station.class.getPackage().getName() + ".")
+							&& !lock.equals(UsageLeaderboard.class.getName()))
+						stationSamples++;
+					else
+						otherSamples++;
+				}
+				try {
+					Thread.sleep(SAMPLE_INTERVAL);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Stops the sampling, and waits for the last sample
+		 */
+		void finish() throws InterruptedException {
+			running = false;
+			join();
+		}
+	}
+
+	// Constructor
+
+	/**
+	 * Creates a simulator for the given network
+	 *
+	 * @param network
+	 *            the network
+	 * @param numberOfThreads
+	 *            the number of threads running the trips
+	 */
+	public LoadSimulator(Network network, int numberOfThreads) {
+		this.network = network;
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	// Core methods
+
+	/**
+	 * Adds users to the network and runs their trips
+	 *
+	 * @param numberOfUsers
+	 *            the number of users to add
+	 * @param tripsPerUser
+	 *            the number of trips of each user
+	 * @param distribution
+	 *            the distribution of the trips
+	 * @return the report of the simulation
+	 * @throws InterruptedException
+	 *             when the thread is interrupted while waiting for the trips
+	 * @throws IllegalArgumentException
+	 *             when tripsPerUser is lower than 1, or the network has no
+	 *             station
+	 */
+	public LoadReport run(int numberOfUsers, int tripsPerUser, TripDistribution distribution)
+			throws InterruptedException, IllegalArgumentException {
+		if (tripsPerUser < 1 || network.getStations().isEmpty())
+			throw new IllegalArgumentException("Each user needs at least one trip between stations of the network");
+		List<Station> stations = new ArrayList<Station>(network.getStations().values());
+		stations.sort(Comparator.comparingInt(Station::getId));
+		List<User> users = addUsers(numberOfUsers);
+		long claimConflictsBefore = countClaimConflicts(stations);
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		boolean contentionMonitoring = threadBean.isThreadContentionMonitoringSupported();
+		boolean wasMonitoring = contentionMonitoring && threadBean.isThreadContentionMonitoringEnabled();
+		if (contentionMonitoring)
+			threadBean.setThreadContentionMonitoringEnabled(true);
+
+		List<Thread> workers = new CopyOnWriteArrayList<Thread>();
+		List<Recorder> recorders = new CopyOnWriteArrayList<Recorder>();
+		ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(() -> {
+			Recorder r = new Recorder();
+			recorders.add(r);
+			return r;
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads, task -> {
+			Thread t = new Thread(task, "load-simulator-" + workers.size());
+			t.setDaemon(true);
+			workers.add(t);
+			return t;
+		});
+		CountDownLatch done = new CountDownLatch(users.size());
+		AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+		LocalDateTime start = network.getCurrentDate();
+		MonitorSampler sampler = new MonitorSampler(threadBean, workers);
+		long blockedCount = 0;
+		long blockedTime = contentionMonitoring ? 0 : -1;
+
+		long startTime = System.nanoTime();
+		sampler.start();
+		try {
+			for (User user : users) {
+				executor.execute(new Runnable() {
+					int tripsLeft = tripsPerUser;
+					LocalDateTime clock = start;
+
+					@Override
+					public void run() {
+						try {
+							clock = trip(user, clock, stations, distribution, recorder.get());
+						} catch (RuntimeException e) {
+							error.compareAndSet(null, e);
+							tripsLeft = 0;
+						}
+						if (--tripsLeft > 0)
+							executor.execute(this);
+						else
+							done.countDown();
+					}
+				});
+			}
+			done.await();
+			// Read how long the workers were blocked while they are alive: they end
+			// once the pool is shut down
+			for (Thread worker : workers) {
+				ThreadInfo info = threadBean.getThreadInfo(worker.getId());
+				if (info != null) {
+					blockedCount += info.getBlockedCount();
+					if (contentionMonitoring)
+						blockedTime += Math.max(info.getBlockedTime(), 0);
+				}
+			}
+		} finally {
+			executor.shutdown();
+			sampler.finish();
+		}
+		long elapsedTime = System.nanoTime() - startTime;
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+		if (contentionMonitoring && !wasMonitoring)
+			threadBean.setThreadContentionMonitoringEnabled(false);
+		if (error.get() != null)
+			throw new IllegalStateException("A simulated trip failed", error.get());
+
+		Recorder total = new Recorder();
+		for (Recorder r : recorders) {
+			total.rentLatencies.add(r.rentLatencies);
+			total.returnLatencies.add(r.returnLatencies);
+			total.completedTrips += r.completedTrips;
+			total.failedRentals += r.failedRentals;
+			total.failedReturns += r.failedReturns;
+		}
+		return new LoadReport(users.size(), numberOfThreads, elapsedTime, total.completedTrips, total.failedRentals,
+				total.failedReturns, total.rentLatencies, total.returnLatencies, blockedCount, blockedTime,
+				sampler.userSamples, sampler.stationSamples, sampler.otherSamples,
+				countClaimConflicts(stations) - claimConflictsBefore);
+	}
+
+	/**
+	 * Makes one trip of a user: rents a bike, then returns it. When the
+	 * destination has no room, other stations are tried.
+	 *
+	 * @return the date at which the trip ended
+	 */
+	private LocalDateTime trip(User user, LocalDateTime clock, List<Station> stations, TripDistribution distribution,
+			Recorder recorder) {
+		Random random = ThreadLocalRandom.current();
+		LocalDateTime rentDate = clock.plusMinutes(1 + random.nextInt(60));
+		Station source = distribution.pickSource(stations, random);
+		long t = System.nanoTime();
+		try {
+			network.rentBike(user, source, distribution.pickBikeType(random), rentDate);
+			recorder.rentLatencies.record(System.nanoTime() - t);
+		} catch (OngoingBikeRentalException | OfflineStationException | BikeNotFoundException e) {
+			recorder.rentLatencies.record(System.nanoTime() - t);
+			recorder.failedRentals++;
+			return rentDate;
+		}
+
+		LocalDateTime returnDate = rentDate.plusMinutes(distribution.pickDuration(random));
+		Station destination = distribution.pickDestination(stations, source, random);
+		for (int attempt = 0; attempt < RANDOM_RETURN_ATTEMPTS + stations.size(); attempt++) {
+			if (attempt >= RANDOM_RETURN_ATTEMPTS) {
+				// look for any station with room left
+				destination = stations.get(attempt - RANDOM_RETURN_ATTEMPTS);
+			} else if (attempt > 0) {
+				destination = distribution.pickDestination(stations, source, random);
+			}
+			t = System.nanoTime();
+			try {
+				network.returnBike(user, destination, returnDate);
+				recorder.returnLatencies.record(System.nanoTime() - t);
+				recorder.completedTrips++;
+				return returnDate;
+			} catch (FullStationException | OfflineStationException e) {
+				recorder.returnLatencies.record(System.nanoTime() - t);
+				recorder.failedReturns++;
+			} catch (BikeRentalNotFoundException | InvalidBikeException | InvalidDatesException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		// no station has room: the user keeps the bike
+		return returnDate;
+	}
+
+	/**
+	 * Adds users with random coordinates and cards to the network
+	 */
+	private List<User> addUsers(int numberOfUsers) {
+		CardVisitorFactory cardFactory = new CardVisitorFactory();
+		Random random = ThreadLocalRandom.current();
+		List<User> users = new ArrayList<User>(numberOfUsers);
+		try {
+			for (int i = 0; i < numberOfUsers; i++) {
+				Point coordinates = new Point(random.nextDouble() * network.getSide(),
+						random.nextDouble() * network.getSide());
+				User user = new User("load" + i, coordinates,
+						cardFactory.createCard(CARD_TYPES[i % CARD_TYPES.length]));
+				network.addUser(user);
+				users.add(user);
+			}
+		} catch (InvalidCardTypeException e) {
+			throw new IllegalStateException(e);
+		}
+		return users;
+	}
+
+	private static long countClaimConflicts(List<Station> stations) {
+		long conflicts = 0;
+		for (Station station : stations) {
+			conflicts += station.getClaimConflicts();
+		}
+		return conflicts;
+	}
+}
@@ -0,0 +1,115 @@
+package core.simulation;
+
+/**
+ * Results of a discrete-event simulation of the traffic of a city: what the
+ * users did during the simulated time, and how fast it was simulated.
+ *
+ * @author animato
+ *
+ */
+public class TrafficReport {
+	private final int numberOfUsers;
+	private final long simulatedTime; // in seconds
+	private final long elapsedTime; // in nanoseconds
+	private final long events;
+	private final long plannedRides;
+	private final long failedPlans;
+	private final long failedRentals;
+	private final long completedTrips;
+	private final long failedReturns;
+	private final long outages;
+
+	// Constructor
+
+	TrafficReport(int numberOfUsers, long simulatedTime, long elapsedTime, long events, long plannedRides,
+			long failedPlans, long failedRentals, long completedTrips, long failedReturns, long outages) {
+		this.numberOfUsers = numberOfUsers;
+		this.simulatedTime = simulatedTime;
+		this.elapsedTime = elapsedTime;
+		this.events = events;
+		this.plannedRides = plannedRides;
+		this.failedPlans = failedPlans;
+		this.failedRentals = failedRentals;
+		this.completedTrips = completedTrips;
+		this.failedReturns = failedReturns;
+		this.outages = outages;
+	}
+
+	// Core methods
+
+	/**
+	 * Gives the number of events fired per second of real time
+	 *
+	 * @return the event rate, in events per second
+	 */
+	public double getEventRate() {
+		return elapsedTime == 0 ? 0 : events * 1e9 / elapsedTime;
+	}
+
+	@Override
+	public String toString() {
+		String report = String.format("%d users over %.1f simulated hours: %d events in %.1f ms (%.0f events/s)%n",
+				numberOfUsers, simulatedTime / 3600.0, events, elapsedTime / 1e6, getEventRate());
+		report += String.format("Ride plans: %d, no valid station: %d%n", plannedRides, failedPlans);
+		report += String.format("Completed trips: %d, failed rentals: %d, failed returns: %d%n", completedTrips,
+				failedRentals, failedReturns);
+		report += String.format("Station outages: %d", outages);
+		return report;
+	}
+
+	/**
+	 * Checks if two simulations gave the same trips, whatever time they took
+	 *
+	 * @param other
+	 *            the report of the other simulation
+	 * @return true if the simulated time and all the counts are the same
+	 */
+	public boolean sameOutcome(TrafficReport other) {
+		return numberOfUsers == other.numberOfUsers && simulatedTime == other.simulatedTime
+				&& events == other.events && plannedRides == other.plannedRides && failedPlans == other.failedPlans
+				&& failedRentals == other.failedRentals && completedTrips == other.completedTrips
+				&& failedReturns == other.failedReturns && outages == other.outages;
+	}
+
+	// Getters
+
+	public int getNumberOfUsers() {
+		return numberOfUsers;
+	}
+
+	public long getSimulatedTime() {
+		return simulatedTime;
+	}
+
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	public long getEvents() {
+		return events;
+	}
+
+	public long getPlannedRides() {
+		return plannedRides;
+	}
+
+	public long getFailedPlans() {
+		return failedPlans;
+	}
+
+	public long getFailedRentals() {
+		return failedRentals;
+	}
+
+	public long getCompletedTrips() {
+		return completedTrips;
+	}
+
+	public long getFailedReturns() {
+		return failedReturns;
+	}
+
+	public long getOutages() {
+		return outages;
+	}
+}
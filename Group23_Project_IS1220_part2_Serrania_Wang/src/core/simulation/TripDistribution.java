@@ -0,0 +1,57 @@
+package core.simulation;
+
+import java.util.List;
+import java.util.Random;
+
+import core.station.Station;
+
+/**
+ * Distribution of the trips of the simulated users: where they rent a bike,
+ * where they return it, which type of bike they take and how long they ride.
+ * 
+ * @author animato
+ *
+ */
+public interface TripDistribution {
+	/**
+	 * Picks the station where a trip starts
+	 * 
+	 * @param stations
+	 *            the stations of the network, sorted by id
+	 * @param random
+	 *            the random generator to use
+	 * @return the source station
+	 */
+	public Station pickSource(List<Station> stations, Random random);
+
+	/**
+	 * Picks the station where a trip ends
+	 * 
+	 * @param stations
+	 *            the stations of the network, sorted by id
+	 * @param source
+	 *            the station where the trip started
+	 * @param random
+	 *            the random generator to use
+	 * @return the destination station
+	 */
+	public Station pickDestination(List<Station> stations, Station source, Random random);
+
+	/**
+	 * Picks the type of bike of a trip
+	 * 
+	 * @param random
+	 *            the random generator to use
+	 * @return the type of bike ("MECH" or "ELEC")
+	 */
+	public String pickBikeType(Random random);
+
+	/**
+	 * Picks the duration of a trip
+	 * 
+	 * @param random
+	 *            the random generator to use
+	 * @return the duration, in minutes (at least 1)
+	 */
+	public long pickDuration(Random random);
+}
@@ -0,0 +1,53 @@
+package core.simulation;
+
+import java.util.List;
+import java.util.Random;
+
+import core.station.Station;
+
+/**
+ * Trips between stations drawn uniformly, with exponentially distributed
+ * durations.
+ * 
+ * @author animato
+ *
+ */
+public class UniformTrips implements TripDistribution {
+	private final double elecShare;
+	private final double meanDuration;
+
+	// Constructor
+
+	/**
+	 * @param elecShare
+	 *            the share of trips made with an electrical bike (between 0 and 1)
+	 * @param meanDuration
+	 *            the mean duration of a trip, in minutes
+	 */
+	public UniformTrips(double elecShare, double meanDuration) {
+		this.elecShare = elecShare;
+		this.meanDuration = meanDuration;
+	}
+
+	// Core methods
+
+	@Override
+	public Station pickSource(List<Station> stations, Random random) {
+		return stations.get(random.nextInt(stations.size()));
+	}
+
+	@Override
+	public Station pickDestination(List<Station> stations, Station source, Random random) {
+		return stations.get(random.nextInt(stations.size()));
+	}
+
+	@Override
+	public String pickBikeType(Random random) {
+		return random.nextDouble() < elecShare ? "ELEC" : "MECH";
+	}
+
+	@Override
+	public long pickDuration(Random random) {
+		return 1 + (long) (-meanDuration * Math.log(1 - random.nextDouble()));
+	}
+}
@@ -0,0 +1,180 @@
+package core.station;
+
+import java.util.Arrays;
+
+/**
+ * Timeline of the number of occupied parking slots of a station, used to
+ * compute the occupation of the whole station without looking at each parking
+ * slot. <br>
+ * Each change of the number of occupied slots is stored with its time (in epoch
+ * seconds) and the cumulative number of occupied slot-seconds up to that time,
+ * so the occupied time between two dates is found with two binary searches.
+ * <br>
+ * The prefix sums are only valid while the changes are added in chronological
+ * order, which can be checked with isChronological(). The methods lock the
+ * index: a caller checking the order before a query holds the lock of the
+ * index across both calls.
+ *
+ * @author matto
+ *
+ */
+public class OccupationIndex {
+	private static final int INITIAL_CAPACITY = 8;
+
+	private long[] times = new long[INITIAL_CAPACITY];
+	// number of occupied slots from times[i] on
+	private int[] levels = new int[INITIAL_CAPACITY];
+	// occupied slot-seconds before times[i]
+	private long[] prefixSums = new long[INITIAL_CAPACITY];
+	private int size = 0;
+	private boolean chronological = true;
+
+	// Core methods
+
+	/**
+	 * Records a change of the number of occupied slots at the given time
+	 *
+	 * @param time
+	 *            the time of the change, in epoch seconds
+	 * @param delta
+	 *            the number of slots that became occupied (negative when slots
+	 *            became free)
+	 */
+	public synchronized void change(long time, int delta) {
+		if (size == times.length) {
+			int capacity = size + (size >> 1) + 1;
+			times = Arrays.copyOf(times, capacity);
+			levels = Arrays.copyOf(levels, capacity);
+			prefixSums = Arrays.copyOf(prefixSums, capacity);
+		}
+		if (size == 0) {
+			prefixSums[0] = 0;
+			levels[0] = delta;
+		} else {
+			if (time < times[size - 1]) {
+				chronological = false;
+			}
+			prefixSums[size] = prefixSums[size - 1] + levels[size - 1] * (time - times[size - 1]);
+			levels[size] = levels[size - 1] + delta;
+		}
+		times[size] = time;
+		size++;
+	}
+
+	/**
+	 * Replaces the whole timeline with the given changes (used when a network is
+	 * restored from a snapshot). The prefix sums are computed again.
+	 *
+	 * @param changeTimes
+	 *            the times of the changes, in epoch seconds
+	 * @param changeLevels
+	 *            the number of occupied slots after each change
+	 * @param from
+	 *            the index of the first change in the arrays
+	 * @param count
+	 *            the number of changes
+	 */
+	public synchronized void restore(long[] changeTimes, int[] changeLevels, int from, int count) {
+		int capacity = Math.max(count, INITIAL_CAPACITY);
+		times = new long[capacity];
+		levels = new int[capacity];
+		prefixSums = new long[capacity];
+		System.arraycopy(changeTimes, from, times, 0, count);
+		System.arraycopy(changeLevels, from, levels, 0, count);
+		chronological = true;
+		for (int i = 1; i < count; i++) {
+			if (times[i] < times[i - 1]) {
+				chronological = false;
+			}
+			prefixSums[i] = prefixSums[i - 1] + levels[i - 1] * (times[i] - times[i - 1]);
+		}
+		size = count;
+	}
+
+	/**
+	 * Gives the number of occupied slot-seconds between the two given times
+	 *
+	 * @param start
+	 *            the start of the time span, in epoch seconds
+	 * @param end
+	 *            the end of the time span, in epoch seconds
+	 * @return the occupied slot-seconds
+	 * @throws IllegalStateException
+	 *             when the changes were not added in chronological order
+	 */
+	public synchronized long getOccupiedTime(long start, long end) throws IllegalStateException {
+		if (!chronological) {
+			throw new IllegalStateException("The occupation changes were not recorded in chronological order");
+		}
+		return cumulativeOccupiedTime(end) - cumulativeOccupiedTime(start);
+	}
+
+	/**
+	 * Gives the occupied slot-seconds before the given time
+	 *
+	 * @param time
+	 *            in epoch seconds
+	 * @return the occupied slot-seconds
+	 */
+	private long cumulativeOccupiedTime(long time) {
+		int i = lastIndexAtOrBefore(times, size, time);
+		if (i < 0)
+			return 0;
+		return prefixSums[i] + levels[i] * (time - times[i]);
+	}
+
+	/**
+	 * Binary search of the last index whose time is lower or equal to the given
+	 * time, in an array sorted in ascending order
+	 *
+	 * @param times
+	 *            the sorted array
+	 * @param size
+	 *            the number of elements used in the array
+	 * @param time
+	 *            the time searched
+	 * @return the index, or -1 if all times are after the given time
+	 */
+	static int lastIndexAtOrBefore(long[] times, int size, long time) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] <= time)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		return high;
+	}
+
+	// Getters
+
+	public synchronized boolean isChronological() {
+		return chronological;
+	}
+
+	public synchronized int getLevel() {
+		return size == 0 ? 0 : levels[size - 1];
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized long getTime(int i) {
+		checkIndex(i);
+		return times[i];
+	}
+
+	public synchronized int getLevel(int i) {
+		checkIndex(i);
+		return levels[i];
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size);
+		}
+	}
+}
@@ -1,8 +1,8 @@
 package core.station;
 
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import core.bike.Bike;
 
@@ -12,24 +12,47 @@ import core.bike.Bike;
  * status (working or out-of-order). If it's out-of-order, no operations can be
  * done on the parking slot. <br>
  * Moreover, the parking slot stores a list of its statuses over time, to
- * calculate its occupation rate.
+ * calculate its occupation rate. <br>
+ * To rent or return a bike, the station first claims the parking slot with a
+ * compare-and-set, so that only one rental or return uses it at a time while
+ * the other parking slots of the station stay available.
  * 
  * @author matto
  *
  */
 public class ParkingSlot {
 	private final int id;
-	private Boolean working = true;
-	private Bike bike;
-	private ParkingSlotStatus currentStatus;
-	private ArrayList<ParkingSlotStatus> statusHistory;
+	// The station the parking slot belongs to (may be null), kept informed of the
+	// changes of the slot to maintain its inventory counters
+	private final Station station;
+	// The index of the parking slot in its station (-1 without station)
+	private final int index;
+	// true while a rental or a return of the station uses the parking slot
+	private final AtomicBoolean claimed = new AtomicBoolean(false);
+	private volatile Boolean working = true;
+	private volatile Bike bike;
+	private ParkingSlotHistory statusHistory;
 	private boolean hasChanged = false;
 
 	// Constructor
 
 	public ParkingSlot() {
+		this(null, -1);
+	}
+
+	/**
+	 * Creates a parking slot belonging to the given station
+	 * 
+	 * @param station
+	 *            the station of the parking slot
+	 * @param index
+	 *            the index of the parking slot in the station
+	 */
+	protected ParkingSlot(Station station, int index) {
 		this.id = ParkingSlotIDGenerator.getInstance().getNextIDNumber();
-		this.statusHistory = new ArrayList<ParkingSlotStatus>();
+		this.station = station;
+		this.index = index;
+		this.statusHistory = new ParkingSlotHistory();
 		this.setStatus(ParkingSlotStatusName.FREE, LocalDateTime.MIN);
 	}
 
@@ -47,58 +70,55 @@ public class ParkingSlot {
 	 *             when one of the statuses in statusHistory, startDate or endDate
 	 *             is not defined
 	 */
-	public double getOccupationTime(LocalDateTime startDate, LocalDateTime endDate) throws IllegalArgumentException {
-		double totalOccupiedTime = 0;
-		for (ParkingSlotStatus status : statusHistory) {
-			totalOccupiedTime += calculateEffectiveTimeInSpan(status, startDate, endDate)
-					* status.getStatusName().getOccupationRate();
-		}
-
-		return totalOccupiedTime;
+	public synchronized double getOccupationTime(LocalDateTime startDate, LocalDateTime endDate)
+			throws IllegalArgumentException {
+		return statusHistory.getOccupationTime(startDate, endDate);
 	}
 
 	/**
-	 * Calculates the time (in seconds) of the given status is contained between the
-	 * given start time and end time.
+	 * Sets the state of the parking slot and its whole status history at once
+	 * (used when a network is restored from a snapshot). The occupation index of
+	 * the station is not changed: it is restored separately.
 	 * 
-	 * @param status
-	 * @param startDate
-	 * @param endDate
-	 * @return the time (in seconds) for which the status is contained between the
-	 *         given start time and end time
-	 * @throws IllegalArgumentException
-	 *             when the status, startDate or endDate is not defined
+	 * @param working
+	 *            the working status of the parking slot
+	 * @param bike
+	 *            the bike in the parking slot (or null)
+	 * @param times
+	 *            the start times of the statuses, in epoch seconds
+	 * @param statusOrdinals
+	 *            the ordinals of the statuses
+	 * @param from
+	 *            the index of the first status in the arrays
+	 * @param count
+	 *            the number of statuses
 	 */
-	private double calculateEffectiveTimeInSpan(ParkingSlotStatus status, LocalDateTime startDate,
-			LocalDateTime endDate) throws IllegalArgumentException {
-		LocalDateTime effectiveStartDate;
-		LocalDateTime effectiveEndDate;
-
-		if (status == null) {
-			throw new IllegalArgumentException("Invalid status given");
-		}
-
-		if (startDate == null || endDate == null || startDate.until(endDate, ChronoUnit.SECONDS) < 0) {
-			throw new IllegalArgumentException("Invalid date given");
-		}
-
-		if (status.getStartDate().compareTo(startDate) <= 0) {
-			effectiveStartDate = startDate;
-		} else {
-			effectiveStartDate = status.getStartDate();
+	public synchronized void restore(boolean working, Bike bike, long[] times, byte[] statusOrdinals, int from,
+			int count) {
+		if (station != null) {
+			station.updateInventory(index, this.bike, this.working, bike, working);
 		}
+		this.working = working;
+		this.bike = bike;
+		this.statusHistory.restore(times, statusOrdinals, from, count);
+	}
 
-		if (status.getEndDate() == null) {
-			effectiveEndDate = endDate;
-		} else {
-			if (status.getEndDate().compareTo(endDate) <= 0) {
-				effectiveEndDate = status.getEndDate();
-			} else {
-				effectiveEndDate = endDate;
-			}
-		}
+	/**
+	 * Claims the parking slot for a rental or a return. Only one claim can be held
+	 * at a time.
+	 * 
+	 * @return true if the parking slot was claimed, false if it is already
+	 *         claimed
+	 */
+	boolean tryClaim() {
+		return claimed.compareAndSet(false, true);
+	}
 
-		return Math.max(effectiveStartDate.until(effectiveEndDate, ChronoUnit.SECONDS), 0);
+	/**
+	 * Releases the claim on the parking slot
+	 */
+	void release() {
+		claimed.set(false);
 	}
 
 	// Getters / Setters
@@ -107,11 +127,15 @@ public class ParkingSlot {
 		return working;
 	}
 
-	public void setWorking(Boolean working, LocalDateTime date) {
+	public synchronized void setWorking(Boolean working, LocalDateTime date) {
+		boolean wasWorking = this.working;
 		if (working != this.working) {
 			this.hasChanged = true;
 		}
 		this.working = working;
+		if (station != null) {
+			station.updateInventory(index, bike, wasWorking, bike, working);
+		}
 		changeStatus(date);
 	}
 
@@ -133,12 +157,15 @@ public class ParkingSlot {
 	 * @throws OccupiedParkingSlotException
 	 *             when the station is not working or is already occupied
 	 */
-	public void setBike(Bike bike, LocalDateTime date) throws OccupiedParkingSlotException {
+	public synchronized void setBike(Bike bike, LocalDateTime date) throws OccupiedParkingSlotException {
 		if (this.working == false || this.bike != null) {
 			throw new OccupiedParkingSlotException(this);
 		}
 		this.bike = bike;
 		this.hasChanged = true;
+		if (station != null) {
+			station.updateInventory(index, null, true, bike, true);
+		}
 		changeStatus(date);
 	}
 
@@ -150,14 +177,18 @@ public class ParkingSlot {
 	 * @throws OccupiedParkingSlotException
 	 *             when the station is not working
 	 */
-	public void emptyBike(LocalDateTime date) throws OccupiedParkingSlotException {
+	public synchronized void emptyBike(LocalDateTime date) throws OccupiedParkingSlotException {
 		if (this.working == false) {
 			throw new OccupiedParkingSlotException(this);
 		}
+		Bike previousBike = this.bike;
 		if (this.bike != null) {
 			this.hasChanged = true;
 		}
 		this.bike = null;
+		if (station != null) {
+			station.updateInventory(index, previousBike, true, null, true);
+		}
 		changeStatus(date);
 	}
 
@@ -165,11 +196,31 @@ public class ParkingSlot {
 		return id;
 	}
 
-	public ParkingSlotStatus getCurrentStatus() {
-		return currentStatus;
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Gives the current status of the parking slot
+	 * 
+	 * @return the current status (without end date)
+	 */
+	public synchronized ParkingSlotStatus getCurrentStatus() {
+		int last = statusHistory.size() - 1;
+		return new ParkingSlotStatus(statusHistory.getStatusName(last), statusHistory.getStartDate(last));
+	}
+
+	/**
+	 * Gives the list of statuses of the parking slot over time. The list is a
+	 * copy built from the compact history.
+	 * 
+	 * @return the list of statuses, from the oldest to the current one
+	 */
+	public synchronized ArrayList<ParkingSlotStatus> getStatusHistory() {
+		return statusHistory.toStatusList();
 	}
 
-	public ArrayList<ParkingSlotStatus> getStatusHistory() {
+	public ParkingSlotHistory getHistory() {
 		return statusHistory;
 	}
 
@@ -205,20 +256,24 @@ public class ParkingSlot {
 	}
 
 	/**
-	 * Sets a new status. Also ends the current one (adds the endDate to it).
+	 * Sets a new status. Also ends the current one.
 	 * 
 	 * @param newStatusName
 	 *            the new status which will be applied
 	 * @param date
 	 *            the date at which the action is performed
 	 */
-	public void setStatus(ParkingSlotStatusName newStatusName, LocalDateTime date) {
-		if (this.currentStatus != null) {
-			this.currentStatus.setEndDate(date);
+	public synchronized void setStatus(ParkingSlotStatusName newStatusName, LocalDateTime date) {
+		int previousOccupationRate = 0;
+		if (statusHistory.size() > 0) {
+			previousOccupationRate = statusHistory.getStatusName(statusHistory.size() - 1).getOccupationRate();
+		}
+		this.statusHistory.add(newStatusName, date);
+		// keep the occupation index of the station up to date
+		int delta = newStatusName.getOccupationRate() - previousOccupationRate;
+		if (station != null && delta != 0) {
+			station.getOccupationIndex().change(ParkingSlotHistory.toEpochSecond(date), delta);
 		}
-
-		this.currentStatus = new ParkingSlotStatus(newStatusName, date);
-		this.statusHistory.add(this.currentStatus);
 	}
 	
 	@Override
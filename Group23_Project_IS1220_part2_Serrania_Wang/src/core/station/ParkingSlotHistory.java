@@ -0,0 +1,210 @@
+package core.station;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compact history of the statuses of a parking slot. <br>
+ * Instead of one ParkingSlotStatus object per change, the history is stored in
+ * columns: the start time of each status (in epoch seconds, UTC) in a long
+ * array and the status itself in a byte array. Each status ends when the next
+ * one starts, the last one is the current status. <br>
+ * Alongside the start times, the history keeps the cumulative occupied time
+ * before each change, so that the occupied time between two dates is found with
+ * two binary searches instead of a scan of the whole history (as long as the
+ * changes were added in chronological order). <br>
+ * Times are stored with a precision of one second.
+ *
+ * @author matto
+ *
+ */
+public class ParkingSlotHistory {
+	private static final int INITIAL_CAPACITY = 4;
+	private static final ParkingSlotStatusName[] STATUS_NAMES = ParkingSlotStatusName.values();
+
+	private long[] startTimes = new long[INITIAL_CAPACITY];
+	private byte[] statuses = new byte[INITIAL_CAPACITY];
+	// occupied seconds before startTimes[i]
+	private long[] occupiedPrefixSums = new long[INITIAL_CAPACITY];
+	private int size = 0;
+	private boolean chronological = true;
+
+	// Core methods
+
+	/**
+	 * Adds a new status to the history. It ends the current one.
+	 *
+	 * @param statusName
+	 *            the new status
+	 * @param date
+	 *            the date at which the status starts
+	 */
+	public void add(ParkingSlotStatusName statusName, LocalDateTime date) {
+		if (size == startTimes.length) {
+			int capacity = size + (size >> 1) + 1;
+			startTimes = Arrays.copyOf(startTimes, capacity);
+			statuses = Arrays.copyOf(statuses, capacity);
+			occupiedPrefixSums = Arrays.copyOf(occupiedPrefixSums, capacity);
+		}
+		long time = toEpochSecond(date);
+		if (size > 0) {
+			if (time < startTimes[size - 1]) {
+				chronological = false;
+			}
+			occupiedPrefixSums[size] = occupiedPrefixSums[size - 1]
+					+ getOccupationRate(size - 1) * (time - startTimes[size - 1]);
+		}
+		startTimes[size] = time;
+		statuses[size] = (byte) statusName.ordinal();
+		size++;
+	}
+
+	/**
+	 * Replaces the whole history with the given statuses (used when a network is
+	 * restored from a snapshot). The cumulative occupied times are computed again.
+	 *
+	 * @param times
+	 *            the start times of the statuses, in epoch seconds
+	 * @param statusOrdinals
+	 *            the ordinals of the statuses (ParkingSlotStatusName)
+	 * @param from
+	 *            the index of the first status in the arrays
+	 * @param count
+	 *            the number of statuses
+	 */
+	public void restore(long[] times, byte[] statusOrdinals, int from, int count) {
+		int capacity = Math.max(count, INITIAL_CAPACITY);
+		startTimes = new long[capacity];
+		statuses = new byte[capacity];
+		occupiedPrefixSums = new long[capacity];
+		System.arraycopy(times, from, startTimes, 0, count);
+		System.arraycopy(statusOrdinals, from, statuses, 0, count);
+		chronological = true;
+		for (int i = 1; i < count; i++) {
+			if (startTimes[i] < startTimes[i - 1]) {
+				chronological = false;
+			}
+			occupiedPrefixSums[i] = occupiedPrefixSums[i - 1]
+					+ getOccupationRate(i - 1) * (startTimes[i] - startTimes[i - 1]);
+		}
+		size = count;
+	}
+
+	/**
+	 * Calculates the time (in seconds) during which the parking slot was occupied
+	 * between the given start time and end time. Every status is weighted by its
+	 * occupation rate.
+	 *
+	 * @param startDate
+	 *            the start of the time span
+	 * @param endDate
+	 *            the end of the time span
+	 * @return the occupied time, in seconds
+	 * @throws IllegalArgumentException
+	 *             when startDate or endDate is not defined, or when endDate is
+	 *             before startDate
+	 */
+	public double getOccupationTime(LocalDateTime startDate, LocalDateTime endDate) throws IllegalArgumentException {
+		if (startDate == null || endDate == null || startDate.until(endDate, ChronoUnit.SECONDS) < 0) {
+			throw new IllegalArgumentException("Invalid date given");
+		}
+		long start = toEpochSecond(startDate);
+		long end = toEpochSecond(endDate);
+
+		if (chronological) {
+			return cumulativeOccupiedTime(end) - cumulativeOccupiedTime(start);
+		}
+
+		// The history is not sorted: look at every status
+		long totalOccupiedTime = 0;
+		for (int i = 0; i < size; i++) {
+			int occupationRate = getOccupationRate(i);
+			if (occupationRate == 0)
+				continue;
+			long effectiveStart = Math.max(startTimes[i], start);
+			long effectiveEnd = (i + 1 < size) ? Math.min(startTimes[i + 1], end) : end;
+			totalOccupiedTime += Math.max(effectiveEnd - effectiveStart, 0) * occupationRate;
+		}
+		return totalOccupiedTime;
+	}
+
+	/**
+	 * Gives the occupied seconds before the given time
+	 *
+	 * @param time
+	 *            in epoch seconds
+	 * @return the occupied seconds
+	 */
+	private long cumulativeOccupiedTime(long time) {
+		int i = OccupationIndex.lastIndexAtOrBefore(startTimes, size, time);
+		if (i < 0)
+			return 0;
+		return occupiedPrefixSums[i] + getOccupationRate(i) * (time - startTimes[i]);
+	}
+
+	private int getOccupationRate(int i) {
+		return STATUS_NAMES[statuses[i]].getOccupationRate();
+	}
+
+	/**
+	 * Gives the history as a list of ParkingSlotStatus objects. The list is built
+	 * from the history, changing it does not change the history.
+	 *
+	 * @return the list of statuses, from the oldest to the current one
+	 */
+	public ArrayList<ParkingSlotStatus> toStatusList() {
+		ArrayList<ParkingSlotStatus> list = new ArrayList<ParkingSlotStatus>(size);
+		for (int i = 0; i < size; i++) {
+			ParkingSlotStatus status = new ParkingSlotStatus(getStatusName(i), getStartDate(i));
+			if (i + 1 < size) {
+				status.setEndDate(getStartDate(i + 1));
+			}
+			list.add(status);
+		}
+		return list;
+	}
+
+	// Getters
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isChronological() {
+		return chronological;
+	}
+
+	public ParkingSlotStatusName getStatusName(int i) {
+		checkIndex(i);
+		return STATUS_NAMES[statuses[i]];
+	}
+
+	public long getStartTime(int i) {
+		checkIndex(i);
+		return startTimes[i];
+	}
+
+	public LocalDateTime getStartDate(int i) {
+		return LocalDateTime.ofEpochSecond(getStartTime(i), 0, ZoneOffset.UTC);
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size);
+		}
+	}
+
+	/**
+	 * Converts a date to a number of seconds since the epoch (UTC)
+	 *
+	 * @param date
+	 *            the date to convert
+	 * @return the number of seconds
+	 */
+	public static long toEpochSecond(LocalDateTime date) {
+		return date.toEpochSecond(ZoneOffset.UTC);
+	}
+}
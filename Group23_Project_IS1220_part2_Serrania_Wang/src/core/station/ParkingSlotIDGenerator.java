@@ -1,37 +1,44 @@
 package core.station;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import utils.IDScope;
+
 /**
  * ID Generator for parking slot ids <br>
- * Implements the singleton pattern
+ * Implements the singleton pattern. The instance and the ids can be requested
+ * by several threads at the same time. Inside an IDScope, ids are counted
+ * separately.
  * 
  * @author animato
  *
  */
 public class ParkingSlotIDGenerator {
-	private static ParkingSlotIDGenerator instance = null;
-	private int counter = 0;
+	private static final ParkingSlotIDGenerator instance = new ParkingSlotIDGenerator();
+	// used outside of an IDScope
+	private final AtomicInteger sharedCounter = new AtomicInteger();
 
 	/**
-	 * Gets the current instance of IDGenerator, or creates it if it does not exist
+	 * Gets the instance of IDGenerator
 	 * 
 	 * @return the IDGenerator
 	 */
 	public static ParkingSlotIDGenerator getInstance() {
-		if (instance == null) {
-			instance = new ParkingSlotIDGenerator();
-		}
 		return instance;
 	}
 
 	public int getNextIDNumber() {
-		counter++;
-		return counter;
+		return counter().incrementAndGet();
 	}
 	
 	/**
 	 * Used when running tests, to make sure the app starts in a clean state
 	 */
 	public void reset() {
-		counter = 0;
+		counter().set(0);
+	}
+
+	private AtomicInteger counter() {
+		return IDScope.counter(this, sharedCounter);
 	}
 }
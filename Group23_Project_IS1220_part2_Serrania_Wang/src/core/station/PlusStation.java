@@ -40,6 +40,19 @@ public class PlusStation extends Station {
 	protected PlusStation(int numberOfParkingSlots, Point coordinates) {
 		super(numberOfParkingSlots, coordinates, true, 5);
 	}
+
+	/**
+	 * Create a station with the given id, number of parking slots, coordinates
+	 * and online status.
+	 * 
+	 * @param id
+	 * @param numberOfParkingSlots
+	 * @param coordinates
+	 * @param online
+	 */
+	protected PlusStation(int id, int numberOfParkingSlots, Point coordinates, Boolean online) {
+		super(id, numberOfParkingSlots, coordinates, online, 5);
+	}
 	
 	@Override
 	public String toString() {
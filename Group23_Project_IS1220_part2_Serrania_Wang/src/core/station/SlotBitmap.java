@@ -0,0 +1,128 @@
+package core.station;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of parking slot indexes of a station, stored as a bitmap of 64-bit words
+ * updated with compare-and-set. <br>
+ * It is used by the station to find quickly a free parking slot or a parking
+ * slot with a bike of a given type, without any lock. As it can change while it
+ * is read, it only gives candidates: the parking slot found must then be
+ * claimed and checked.
+ *
+ * @author matto
+ *
+ */
+public class SlotBitmap {
+	private final AtomicLongArray words;
+	private final int size;
+
+	// Constructor
+
+	/**
+	 * Creates an empty bitmap
+	 *
+	 * @param size
+	 *            the number of parking slots
+	 */
+	public SlotBitmap(int size) {
+		this.size = size;
+		this.words = new AtomicLongArray((size + 63) >>> 6);
+	}
+
+	// Core methods
+
+	/**
+	 * Adds a parking slot index to the set
+	 *
+	 * @param index
+	 *            the index of the parking slot
+	 */
+	public void set(int index) {
+		checkIndex(index);
+		int w = index >>> 6;
+		long mask = 1L << index;
+		long word;
+		do {
+			word = words.get(w);
+			if ((word & mask) != 0)
+				return;
+		} while (!words.compareAndSet(w, word, word | mask));
+	}
+
+	/**
+	 * Removes a parking slot index from the set
+	 *
+	 * @param index
+	 *            the index of the parking slot
+	 */
+	public void clear(int index) {
+		checkIndex(index);
+		int w = index >>> 6;
+		long mask = 1L << index;
+		long word;
+		do {
+			word = words.get(w);
+			if ((word & mask) == 0)
+				return;
+		} while (!words.compareAndSet(w, word, word & ~mask));
+	}
+
+	/**
+	 * Tells if a parking slot index is in the set
+	 *
+	 * @param index
+	 *            the index of the parking slot
+	 * @return true if the index is in the set
+	 */
+	public boolean get(int index) {
+		checkIndex(index);
+		return (words.get(index >>> 6) & (1L << index)) != 0;
+	}
+
+	/**
+	 * Gives the first index of the set at or after the given index
+	 *
+	 * @param from
+	 *            the index the search starts at
+	 * @return the index found, or -1 if there is none
+	 */
+	public int nextSetBit(int from) {
+		if (from < 0)
+			from = 0;
+		if (from >= size)
+			return -1;
+		int w = from >>> 6;
+		long word = words.get(w) & (-1L << from);
+		while (true) {
+			if (word != 0) {
+				int index = (w << 6) + Long.numberOfTrailingZeros(word);
+				return index < size ? index : -1;
+			}
+			if (++w == words.length())
+				return -1;
+			word = words.get(w);
+		}
+	}
+
+	/**
+	 * @return the number of indexes in the set
+	 */
+	public int cardinality() {
+		int count = 0;
+		for (int w = 0; w < words.length(); w++) {
+			count += Long.bitCount(words.get(w));
+		}
+		return count;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+}
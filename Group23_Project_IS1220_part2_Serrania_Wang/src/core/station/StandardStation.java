@@ -38,6 +38,19 @@ public class StandardStation extends Station {
 	protected StandardStation(int numberOfParkingSlots, Point coordinates, Boolean online) {
 		super(numberOfParkingSlots, coordinates, online, 0);
 	}
+
+	/**
+	 * Create a station with the given id, number of parking slots, coordinates
+	 * and online status.
+	 * 
+	 * @param id
+	 * @param numberOfParkingSlots
+	 * @param coordinates
+	 * @param online
+	 */
+	protected StandardStation(int id, int numberOfParkingSlots, Point coordinates, Boolean online) {
+		super(id, numberOfParkingSlots, coordinates, online, 0);
+	}
 	
 	@Override
 	public String toString() {
@@ -6,6 +6,10 @@ import java.util.HashSet;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import core.bike.Bike;
 import core.rentals.BikeRental;
@@ -14,7 +18,11 @@ import utils.Point;
 /**
  * Represents a station. A station is a place on the map where a user can find
  * parking slots (which may or may not have a bike), and a terminal used to rent
- * and return bikes.
+ * and return bikes. <br>
+ * Rentals and returns do not lock the station: free parking slots and parking
+ * slots holding each type of bike are found with bitmaps, then the parking slot
+ * found is claimed with a compare-and-set. Rentals and returns at different
+ * parking slots of the same station can thus happen at the same time.
  * 
  * @author matto
  *
@@ -29,13 +37,32 @@ public abstract class Station extends Observable {
 	private ArrayList<ParkingSlot> parkingSlots = new ArrayList<ParkingSlot>();
 
 	private Point coordinates;
-	private Boolean online;
+	private volatile Boolean online;
+
+	// Inventory counters, updated by the parking slots whenever they change:
+	// number of working parking slots without a bike, and number of bikes in
+	// working parking slots for each bike type
+	private final AtomicInteger freeParkingSlots = new AtomicInteger();
+	private final ConcurrentHashMap<String, AtomicInteger> bikesByType = new ConcurrentHashMap<String, AtomicInteger>();
+	// The same information by parking slot index, to find candidate parking slots
+	private final SlotBitmap freeSlots;
+	private final ConcurrentHashMap<String, SlotBitmap> bikeSlotsByType = new ConcurrentHashMap<String, SlotBitmap>();
 
 	// Observers
-	private Set<Observer> observers = new HashSet<Observer>();
+	private Set<Observer> observers = ConcurrentHashMap.newKeySet();
 
 	// Statistics
 	private StationStats stats;
+	// Number of occupied parking slots over time
+	private final OccupationIndex occupationIndex = new OccupationIndex();
+	// Number of times a parking slot was found claimed by another rental or return
+	private final LongAdder claimConflicts = new LongAdder();
+	// Numbers of changes of the station, used to tell if a cached ride plan is
+	// still up to date: the availability changes when the station goes online or
+	// offline, becomes full or not, or gets its first or loses its last bike of a
+	// type; the inventory changes with every bike or parking slot change
+	private final AtomicLong availabilityVersion = new AtomicLong();
+	private final AtomicLong inventoryVersion = new AtomicLong();
 
 	/**
 	 * Create a station with the given number of parking slots, coordinates and
@@ -51,11 +78,36 @@ public abstract class Station extends Observable {
 	 *            the amount of time credit the station gives when returning a bike
 	 */
 	public Station(int numberOfParkingSlots, Point coordinates, Boolean online, int bonusTimeCreditOnReturn) {
+		this(StationIDGenerator.getInstance().getNextIDNumber(), numberOfParkingSlots, coordinates, online,
+				bonusTimeCreditOnReturn);
+	}
+
+	/**
+	 * Create a station with a given id (used when a network is rebuilt from its
+	 * journal). The id is reserved so that it is not given to another station.
+	 * 
+	 * @param id
+	 *            the id of the station
+	 * @param numberOfParkingSlots
+	 *            the number of parking slots of the station
+	 * @param coordinates
+	 *            the coordinates of the station
+	 * @param online
+	 *            the initial online status of the station
+	 * @param bonusTimeCreditOnReturn
+	 *            the amount of time credit the station gives when returning a bike
+	 */
+	protected Station(int id, int numberOfParkingSlots, Point coordinates, Boolean online,
+			int bonusTimeCreditOnReturn) {
 		super();
-		this.id = StationIDGenerator.getInstance().getNextIDNumber();
+		StationIDGenerator.getInstance().reserve(id);
+		this.id = id;
+		this.freeSlots = new SlotBitmap(numberOfParkingSlots);
 		for (int i = 0; i < numberOfParkingSlots; i++) {
-			this.parkingSlots.add(new ParkingSlot());
+			this.parkingSlots.add(new ParkingSlot(this, i));
+			this.freeSlots.set(i);
 		}
+		this.freeParkingSlots.set(numberOfParkingSlots);
 		this.coordinates = coordinates;
 		this.online = online;
 		this.bonusTimeCreditOnReturn = bonusTimeCreditOnReturn;
@@ -72,18 +124,25 @@ public abstract class Station extends Observable {
 	 * @return int - the number of bikes in the station of the given bikeType
 	 */
 	public int getNumberOfBikes(String bikeType) {
-		int t = 0;
-		for (int i = 0; i < parkingSlots.size(); i++) {
-			ParkingSlot ps = parkingSlots.get(i);
-			if (ps.hasBike() && ps.getBike().getType() == bikeType && ps.isWorking()) {
-				t += 1;
-			}
-		}
-		return t;
+		if (bikeType == null)
+			return 0;
+		AtomicInteger counter = bikesByType.get(bikeType);
+		return counter == null ? 0 : counter.get();
 	}
 
 	/**
-	 * Rents a bike of the given bike type at a given time
+	 * Gives the number of working parking slots that have no bike
+	 * 
+	 * @return the number of free parking slots
+	 */
+	public int getNumberOfFreeParkingSlots() {
+		return freeParkingSlots.get();
+	}
+
+	/**
+	 * Rents a bike of the given bike type at a given time. The parking slots
+	 * holding a bike of this type are tried in order, each one being claimed
+	 * before its bike is taken.
 	 * 
 	 * @param bikeType
 	 * @return the rented bike, or null if no bike was found
@@ -94,29 +153,43 @@ public abstract class Station extends Observable {
 			throw new OfflineStationException(this.id);
 
 		// find appropriate bike in station;
-		Bike b = null;
-
-		for (ParkingSlot ps : this.getParkingSlots()) {
-			if (ps.isWorking() && ps.hasBike() && ps.getBike().getType().equals(bikeType.toUpperCase())) {
+		if (!hasCorrectBikeType(bikeType))
+			throw new BikeNotFoundException(this.id, bikeType);
+		String type = bikeType.toUpperCase();
+		SlotBitmap bikeSlots = bikeSlots(type);
+
+		boolean contended;
+		do {
+			contended = false;
+			for (int i = bikeSlots.nextSetBit(0); i >= 0; i = bikeSlots.nextSetBit(i + 1)) {
+				ParkingSlot ps = parkingSlots.get(i);
+				if (!ps.tryClaim()) {
+					// another rental or return is using this slot
+					contended = true;
+					claimConflicts.increment();
+					continue;
+				}
 				try {
-					synchronized (ps) {
-						b = ps.getBike();
+					Bike b = ps.getBike();
+					if (ps.isWorking() && b != null && b.getType().equals(type)) {
 						ps.emptyBike(date);
+						// increment station statistics
+						this.getStats().incrementTotalRentals();
+						return b;
 					}
-					// increment station statistics
-					this.getStats().incrementTotalRentals();
-					break;
 				} catch (OccupiedParkingSlotException e) {
-					continue;
+					// the slot went out of order in the meantime
+				} finally {
+					ps.release();
 				}
-
 			}
-		}
+			// Try again if a slot was skipped while bikes of this type are left
+			if (contended)
+				Thread.yield();
+		} while (contended && hasCorrectBikeType(type));
+
 		// If no bike was found, throw BikeNotFoundException
-		if (b == null) {
-			throw new BikeNotFoundException(this.id, bikeType);
-		}
-		return b;
+		throw new BikeNotFoundException(this.id, bikeType);
 	}
 
 	/**
@@ -137,8 +210,9 @@ public abstract class Station extends Observable {
 			throw new OfflineStationException(this.id);
 		if (this.isFull())
 			throw new FullStationException(this);
-		// loop over stations and place bike the first empty slot
-		addBike(bikeRental.getBike(), date);
+		// place bike in the first empty slot (the last ones may have been taken since)
+		if (!addBike(bikeRental.getBike(), date))
+			throw new FullStationException(this);
 
 	};
 
@@ -245,6 +319,8 @@ public abstract class Station extends Observable {
 		if (!online)
 			notifyObservers();
 		this.online = online;
+		inventoryVersion.incrementAndGet();
+		availabilityVersion.incrementAndGet();
 	}
 
 	public Set<Observer> getObservers() {
@@ -259,8 +335,45 @@ public abstract class Station extends Observable {
 		return stats;
 	}
 
+	public OccupationIndex getOccupationIndex() {
+		return occupationIndex;
+	}
+
 	/**
-	 * Adds a bike to the first empty slot that it finds
+	 * Gives the number of changes of the availability of the station: online
+	 * status, full or not, and types of bikes present. Two equal values mean that
+	 * the availability did not change in between.
+	 * 
+	 * @return the availability version
+	 */
+	public long getAvailabilityVersion() {
+		return availabilityVersion.get();
+	}
+
+	/**
+	 * Gives the number of changes of the bikes and parking slots of the station
+	 * (and of its online status). Two equal values mean that the number of bikes
+	 * of each type did not change in between.
+	 * 
+	 * @return the inventory version
+	 */
+	public long getInventoryVersion() {
+		return inventoryVersion.get();
+	}
+
+	/**
+	 * Gives the number of times a rental or a return skipped a parking slot
+	 * because another one had claimed it
+	 * 
+	 * @return the number of claim conflicts
+	 */
+	public long getClaimConflicts() {
+		return claimConflicts.sum();
+	}
+
+	/**
+	 * Adds a bike to the first empty slot that it finds. Each free parking slot
+	 * is claimed before the bike is set.
 	 * 
 	 * @param b
 	 *            the bike to add
@@ -269,26 +382,37 @@ public abstract class Station extends Observable {
 	 * @return true if bike was added, false if not
 	 */
 	public boolean addBike(Bike b, LocalDateTime date) {
-		synchronized (this) {
-			for (int i = 0; i < parkingSlots.size(); i++) {
+		boolean contended;
+		do {
+			contended = false;
+			for (int i = freeSlots.nextSetBit(0); i >= 0; i = freeSlots.nextSetBit(i + 1)) {
+				ParkingSlot ps = parkingSlots.get(i);
+				if (!ps.tryClaim()) {
+					// another rental or return is using this slot
+					contended = true;
+					claimConflicts.increment();
+					continue;
+				}
 				try {
-					ParkingSlot ps = parkingSlots.get(i);
-					synchronized (ps) {
-						// Throws OccupiedParkingSlotException if bike couldn't be set
-						ps.setBike(b, date);
-						// If the station is full after adding the bike, notification should be sent to
-						// users
-						if (isFull()) {
-							notifyObservers();
-						}
-						return true;
-					}
+					// Throws OccupiedParkingSlotException if bike couldn't be set
+					ps.setBike(b, date);
 				} catch (OccupiedParkingSlotException e) {
 					continue;
+				} finally {
+					ps.release();
+				}
+				// If the station is full after adding the bike, notification should be sent to
+				// users
+				if (isFull()) {
+					notifyObservers();
 				}
+				return true;
 			}
-			return false;
-		}
+			// Try again if a slot was skipped while free slots are left
+			if (contended)
+				Thread.yield();
+		} while (contended && !isFull());
+		return false;
 	}
 
 	/**
@@ -297,12 +421,7 @@ public abstract class Station extends Observable {
 	 * @return boolean - true if station is full, false if not
 	 */
 	public Boolean isFull() {
-		for (ParkingSlot ps : parkingSlots) {
-			if (ps.isWorking() && !ps.hasBike()) {
-				return false;
-			}
-		}
-		return true;
+		return freeParkingSlots.get() == 0;
 	}
 
 	/**
@@ -313,12 +432,67 @@ public abstract class Station extends Observable {
 	 * @return true if a bike of type bikeType is present, false if not
 	 */
 	public boolean hasCorrectBikeType(String bikeType) {
-		for (ParkingSlot ps : parkingSlots) {
-			if (ps.hasBike() && ps.getBike().getType().equals(bikeType.toUpperCase()) && ps.isWorking()) {
-				return true;
+		return getNumberOfBikes(bikeType.toUpperCase()) > 0;
+	}
+
+	/**
+	 * Called by a parking slot of the station when its bike or working status
+	 * changes, to update the inventory counters and bitmaps. The previous state
+	 * of the slot is removed from them and the new one is added.
+	 * 
+	 * @param index
+	 *            the index of the parking slot in the station
+	 * @param previousBike
+	 *            the bike in the slot before the change (or null)
+	 * @param wasWorking
+	 *            the working status of the slot before the change
+	 * @param newBike
+	 *            the bike in the slot after the change (or null)
+	 * @param isWorking
+	 *            the working status of the slot after the change
+	 */
+	void updateInventory(int index, Bike previousBike, boolean wasWorking, Bike newBike, boolean isWorking) {
+		// a counter going from or to 0 changes the availability of the station
+		boolean availabilityChanged = false;
+		if (wasWorking) {
+			if (previousBike == null) {
+				freeSlots.clear(index);
+				availabilityChanged |= freeParkingSlots.decrementAndGet() == 0;
+			} else {
+				bikeSlots(previousBike.getType()).clear(index);
+				availabilityChanged |= bikeCounter(previousBike.getType()).decrementAndGet() == 0;
 			}
 		}
-		return false;
+		if (isWorking) {
+			if (newBike == null) {
+				freeSlots.set(index);
+				availabilityChanged |= freeParkingSlots.incrementAndGet() == 1;
+			} else {
+				bikeSlots(newBike.getType()).set(index);
+				availabilityChanged |= bikeCounter(newBike.getType()).incrementAndGet() == 1;
+			}
+		}
+		inventoryVersion.incrementAndGet();
+		if (availabilityChanged)
+			availabilityVersion.incrementAndGet();
+	}
+
+	private AtomicInteger bikeCounter(String bikeType) {
+		AtomicInteger counter = bikesByType.get(bikeType);
+		if (counter == null) {
+			bikesByType.putIfAbsent(bikeType, new AtomicInteger());
+			counter = bikesByType.get(bikeType);
+		}
+		return counter;
+	}
+
+	private SlotBitmap bikeSlots(String bikeType) {
+		SlotBitmap bikeSlots = bikeSlotsByType.get(bikeType);
+		if (bikeSlots == null) {
+			bikeSlotsByType.putIfAbsent(bikeType, new SlotBitmap(parkingSlots.size()));
+			bikeSlots = bikeSlotsByType.get(bikeType);
+		}
+		return bikeSlots;
 	}
 
 	// Equality check methods
@@ -41,4 +41,37 @@ public class StationFactory {
 			throw new InvalidStationTypeException(stationType);
 		}
 	}
+
+	/**
+	 * Creates and returns a Station corresponding to the given type, with a given
+	 * id
+	 * 
+	 * @param stationType
+	 *            - the type of station to create
+	 * @param id
+	 *            - the id of the station
+	 * @param numberOfParkingSlots
+	 *            - the number of parking slots the station should have
+	 * @param coordinates
+	 *            - the coordinates of the station
+	 * @param online
+	 *            - the initial online status of the station
+	 * @return a Station
+	 * @throws InvalidStationTypeException
+	 *             if the given type is not recognized as a valid station type
+	 */
+	public Station createStation(String stationType, int id, int numberOfParkingSlots, Point coordinates,
+			Boolean online) throws InvalidStationTypeException {
+		if (stationType == null) {
+			throw new InvalidStationTypeException(stationType);
+		}
+		switch (stationType.toUpperCase()) {
+		case "STANDARD":
+			return new StandardStation(id, numberOfParkingSlots, coordinates, online);
+		case "PLUS":
+			return new PlusStation(id, numberOfParkingSlots, coordinates, online);
+		default:
+			throw new InvalidStationTypeException(stationType);
+		}
+	}
 }
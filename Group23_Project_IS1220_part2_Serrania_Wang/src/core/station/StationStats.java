@@ -2,20 +2,26 @@ package core.station;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 import utils.DateParser;
 import utils.Point;
 
 /**
  * Collects stats about a given station.<br>
- * Also in charge of computing the station's occupation rate.
+ * Also in charge of computing the station's occupation rate. <br>
+ * The counters are striped accumulators (LongAdder): rentals and returns
+ * counted by many threads at the same time are neither lost nor serialized.
  * 
  * @author matto
  */
 public class StationStats {
 	private Station station;
-	private int totalRentals = 0;
-	private int totalReturns = 0;
+	private final LongAdder totalRentals = new LongAdder();
+	private final LongAdder totalReturns = new LongAdder();
+	// rankings of stations by usage the station is in
+	private final CopyOnWriteArrayList<UsageLeaderboard> leaderboards = new CopyOnWriteArrayList<UsageLeaderboard>();
 
 	// Constructor
 	
@@ -34,6 +40,8 @@ public class StationStats {
 	/**
 	 * Calculates the occupation rate of a station for a given time period. It is
 	 * defined as the mean of occupation rates of all parking slots in the station.
+	 * The occupation index of the station is used when its changes were recorded
+	 * in chronological order; otherwise each parking slot is looked at.
 	 * 
 	 * @param startDate the start date for the calculation
 	 * @param endDate the end date for the calculation
@@ -46,8 +54,22 @@ public class StationStats {
 			throw new InvalidTimeSpanException(startDate, endDate);
 		}
 		double totalTimeOccupied = 0;
-		for (ParkingSlot parkingSlot : station.getParkingSlots()) {
-			totalTimeOccupied += parkingSlot.getOccupationTime(startDate, endDate);
+		OccupationIndex index = station.getOccupationIndex();
+		boolean indexed;
+		// Checked and read under the same lock: a change recorded out of order in
+		// between would make the index throw
+		synchronized (index) {
+			indexed = index.isChronological();
+			if (indexed) {
+				// The occupation of the whole station is known without looking at each slot
+				totalTimeOccupied = index.getOccupiedTime(ParkingSlotHistory.toEpochSecond(startDate),
+						ParkingSlotHistory.toEpochSecond(endDate));
+			}
+		}
+		if (!indexed) {
+			for (ParkingSlot parkingSlot : station.getParkingSlots()) {
+				totalTimeOccupied += parkingSlot.getOccupationTime(startDate, endDate);
+			}
 		}
 
 		return totalTimeOccupied / (station.getParkingSlots().size() * startDate.until(endDate, ChronoUnit.SECONDS));
@@ -56,23 +78,66 @@ public class StationStats {
 	// Getters / Setters
 	
 	public int getTotalRentals() {
-		return this.totalRentals;
+		return this.totalRentals.intValue();
 	}
 
 	public void incrementTotalRentals() {
-		this.totalRentals += 1;
+		this.totalRentals.increment();
+		updateLeaderboards();
 	}
 
 	public int getTotalReturns() {
-		return this.totalReturns;
+		return this.totalReturns.intValue();
 	}
 
 	public void incrementTotalReturns() {
-		this.totalReturns += 1;
+		this.totalReturns.increment();
+		updateLeaderboards();
+	}
+
+	/**
+	 * Gives the number of rentals + returns of the station. It includes at least
+	 * all the rentals and returns counted before the call.
+	 * 
+	 * @return the number of uses of the station
+	 */
+	public int getTotalUses() {
+		return this.totalRentals.intValue() + this.totalReturns.intValue();
+	}
+
+	/**
+	 * Sets the counters to the given values (used when a network is restored from
+	 * a snapshot)
+	 * 
+	 * @param totalRentals
+	 *            the number of rentals
+	 * @param totalReturns
+	 *            the number of returns
+	 */
+	public void restore(int totalRentals, int totalReturns) {
+		this.totalRentals.reset();
+		this.totalRentals.add(totalRentals);
+		this.totalReturns.reset();
+		this.totalReturns.add(totalReturns);
+		updateLeaderboards();
+	}
+
+	void addLeaderboard(UsageLeaderboard leaderboard) {
+		leaderboards.addIfAbsent(leaderboard);
+	}
+
+	void removeLeaderboard(UsageLeaderboard leaderboard) {
+		leaderboards.remove(leaderboard);
+	}
+
+	private void updateLeaderboards() {
+		for (UsageLeaderboard leaderboard : leaderboards) {
+			leaderboard.update(station);
+		}
 	}
 
 	@Override
 	public String toString() {
-		return "Total rentals: " + this.totalRentals + "\nTotal returns: " + this.totalReturns;
+		return "Total rentals: " + getTotalRentals() + "\nTotal returns: " + getTotalReturns();
 	}
 }
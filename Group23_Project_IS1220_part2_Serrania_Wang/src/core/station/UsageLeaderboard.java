@@ -0,0 +1,294 @@
+package core.station;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ranking of stations by usage (number of rentals + returns), in descending
+ * order. Stations with the same usage are ranked by id. <br>
+ * The stats of a station only mark it as changed when a rental or a return is
+ * counted, without taking the lock of the ranking: the rentals and returns of
+ * different stations never wait for each other. The stations marked are moved
+ * to their new rank, in O(log n) each, by the next query. The rank of a station
+ * and the first k stations are then found without sorting. <br>
+ * The ranking is stored in a treap (a binary search tree balanced by random
+ * priorities) where each node knows the size of its subtree.
+ *
+ * @author matto
+ *
+ */
+public class UsageLeaderboard {
+
+	/**
+	 * Node of the tree, for one station and its usage at the time it was ranked
+	 */
+	private static class Node {
+		final Station station;
+		final int uses;
+		final int priority;
+		int size = 1;
+		Node left;
+		Node right;
+
+		Node(Station station, int uses, int priority) {
+			this.station = station;
+			this.uses = uses;
+			this.priority = priority;
+		}
+	}
+
+	private final Random random = new Random();
+	// usage of each station ranked, by station id
+	private final HashMap<Integer, Integer> uses = new HashMap<Integer, Integer>();
+	// ids of the stations whose usage changed since the last query
+	private final Set<Integer> changed = ConcurrentHashMap.newKeySet();
+	private Node root;
+
+	// Core methods
+
+	/**
+	 * Adds a station to the ranking. Its stats then keep its rank up to date. If
+	 * a station with the same id is already ranked, it is replaced.
+	 *
+	 * @param station
+	 *            the station to add
+	 */
+	public synchronized void add(Station station) {
+		remove(station);
+		station.getStats().addLeaderboard(this);
+		int stationUses = station.getStats().getTotalUses();
+		uses.put(station.getId(), stationUses);
+		root = insert(root, new Node(station, stationUses, random.nextInt()));
+	}
+
+	/**
+	 * Removes a station from the ranking
+	 *
+	 * @param station
+	 *            the station to remove
+	 * @return true if the station was ranked
+	 */
+	public synchronized boolean remove(Station station) {
+		Integer stationUses = uses.remove(station.getId());
+		if (stationUses == null) {
+			return false;
+		}
+		station.getStats().removeLeaderboard(this);
+		root = delete(root, stationUses, station.getId());
+		return true;
+	}
+
+	/**
+	 * Marks a station as changed, to be moved to the rank matching its usage by
+	 * the next query. Called by the stats of the station, without locking the
+	 * ranking: once the station is marked, it is only a read.
+	 *
+	 * @param station
+	 *            the station whose usage changed
+	 */
+	void update(Station station) {
+		if (!changed.contains(station.getId())) {
+			changed.add(station.getId());
+		}
+	}
+
+	/**
+	 * Moves the stations marked as changed to the rank matching their current
+	 * usage
+	 */
+	private void rankChangedStations() {
+		for (Integer id : changed) {
+			changed.remove(id);
+			Integer previousUses = uses.get(id);
+			if (previousUses == null) {
+				continue;
+			}
+			// The station ranked with this id, not one it replaced
+			Station station = find(root, previousUses, id).station;
+			// Unmarked before the usage is read: a rental counted after the read marks
+			// the station again
+			int stationUses = station.getStats().getTotalUses();
+			if (stationUses == previousUses) {
+				continue;
+			}
+			root = delete(root, previousUses, id);
+			uses.put(id, stationUses);
+			root = insert(root, new Node(station, stationUses, random.nextInt()));
+		}
+	}
+
+	/**
+	 * Gives the rank of a station, starting at 1 for the most used station
+	 *
+	 * @param station
+	 *            the station
+	 * @return the rank of the station, or -1 if it is not ranked
+	 */
+	public synchronized int getRank(Station station) {
+		rankChangedStations();
+		Integer stationUses = uses.get(station.getId());
+		if (stationUses == null) {
+			return -1;
+		}
+		int rank = 1;
+		Node node = root;
+		while (node != null) {
+			int c = compare(stationUses, station.getId(), node);
+			if (c == 0) {
+				return rank + size(node.left);
+			} else if (c < 0) {
+				node = node.left;
+			} else {
+				rank += size(node.left) + 1;
+				node = node.right;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gives the k most used stations
+	 *
+	 * @param k
+	 *            the number of stations wanted
+	 * @return the k most used stations (or all the stations if there are fewer
+	 *         than k), from the most used one
+	 * @throws IllegalArgumentException
+	 *             when k is negative
+	 */
+	public synchronized ArrayList<Station> getTop(int k) throws IllegalArgumentException {
+		if (k < 0) {
+			throw new IllegalArgumentException("The number of stations wanted must be positive: " + k);
+		}
+		rankChangedStations();
+		ArrayList<Station> top = new ArrayList<Station>(Math.min(k, size(root)));
+		collect(root, k, top);
+		return top;
+	}
+
+	/**
+	 * Gives all the ranked stations, from the most used one
+	 *
+	 * @return the sorted list of stations
+	 */
+	public synchronized ArrayList<Station> getRanking() {
+		return getTop(size(root));
+	}
+
+	public synchronized int size() {
+		return size(root);
+	}
+
+	// Tree operations
+
+	/**
+	 * Compares a (uses, id) key to the key of a node: more uses come first, then
+	 * lower ids
+	 */
+	private static int compare(int uses, int id, Node node) {
+		if (uses != node.uses)
+			return uses > node.uses ? -1 : 1;
+		return Integer.compare(id, node.station.getId());
+	}
+
+	private static int size(Node node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static Node update(Node node) {
+		node.size = 1 + size(node.left) + size(node.right);
+		return node;
+	}
+
+	private static Node insert(Node node, Node newNode) {
+		if (node == null) {
+			return newNode;
+		}
+		if (compare(newNode.uses, newNode.station.getId(), node) < 0) {
+			node.left = insert(node.left, newNode);
+			if (node.left.priority > node.priority) {
+				node = rotateRight(node);
+			}
+		} else {
+			node.right = insert(node.right, newNode);
+			if (node.right.priority > node.priority) {
+				node = rotateLeft(node);
+			}
+		}
+		return update(node);
+	}
+
+	private static Node find(Node node, int uses, int id) {
+		while (node != null) {
+			int c = compare(uses, id, node);
+			if (c == 0) {
+				return node;
+			}
+			node = c < 0 ? node.left : node.right;
+		}
+		return null;
+	}
+
+	private static Node delete(Node node, int uses, int id) {
+		if (node == null) {
+			return null;
+		}
+		int c = compare(uses, id, node);
+		if (c < 0) {
+			node.left = delete(node.left, uses, id);
+		} else if (c > 0) {
+			node.right = delete(node.right, uses, id);
+		} else {
+			return merge(node.left, node.right);
+		}
+		return update(node);
+	}
+
+	/**
+	 * Merges two trees, all the keys of the left one being before the keys of the
+	 * right one
+	 */
+	private static Node merge(Node left, Node right) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			return update(left);
+		}
+		right.left = merge(left, right.left);
+		return update(right);
+	}
+
+	private static Node rotateRight(Node node) {
+		Node left = node.left;
+		node.left = left.right;
+		left.right = update(node);
+		return update(left);
+	}
+
+	private static Node rotateLeft(Node node) {
+		Node right = node.right;
+		node.right = right.left;
+		right.left = update(node);
+		return update(right);
+	}
+
+	/**
+	 * In-order traversal, stopped when k stations are collected
+	 */
+	private static void collect(Node node, int k, ArrayList<Station> stations) {
+		if (node == null || stations.size() >= k) {
+			return;
+		}
+		collect(node.left, k, stations);
+		if (stations.size() < k) {
+			stations.add(node.station);
+			collect(node.right, k, stations);
+		}
+	}
+}
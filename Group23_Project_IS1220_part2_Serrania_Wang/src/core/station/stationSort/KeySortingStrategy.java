@@ -0,0 +1,121 @@
+package core.station.stationSort;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import core.station.InvalidTimeSpanException;
+import core.station.Station;
+
+/**
+ * Sorting strategy of stations based on a key computed for each station, in
+ * ascending order of the key. <br>
+ * The key of each station is computed exactly once, then the stations are
+ * sorted with a stable O(n log n) sort (a parallel one for large lists):
+ * stations with the same key keep the order of the given list. <br>
+ * The first k stations can also be selected with a bounded heap, in O(n log k).
+ * 
+ * @author matto
+ *
+ */
+public abstract class KeySortingStrategy implements SortingStrategy {
+	// Lists at least this large are sorted in parallel
+	private static final int PARALLEL_SORT_THRESHOLD = 10000;
+
+	/**
+	 * Computes the key of a station. Stations are sorted in ascending order of
+	 * their key.
+	 * 
+	 * @param station
+	 *            the station
+	 * @param startDate
+	 *            the start of the time span the calculation is done over
+	 * @param endDate
+	 *            the end of the time span the calculation is done over
+	 * @return the key of the station
+	 * @throws InvalidTimeSpanException
+	 *             when the time span does not allow to compute the key
+	 */
+	protected abstract double computeKey(Station station, LocalDateTime startDate, LocalDateTime endDate)
+			throws InvalidTimeSpanException;
+
+	@Override
+	public ArrayList<Station> sort(ArrayList<Station> stations, LocalDateTime startDate, LocalDateTime endDate)
+			throws InvalidTimeSpanException {
+		Integer[] order = indexes(stations.size());
+		Comparator<Integer> comparator = comparator(computeKeys(stations, startDate, endDate));
+		if (order.length >= PARALLEL_SORT_THRESHOLD) {
+			Arrays.parallelSort(order, comparator);
+		} else {
+			Arrays.sort(order, comparator);
+		}
+		return select(stations, order, order.length);
+	}
+
+	@Override
+	public ArrayList<Station> sortTop(ArrayList<Station> stations, int k, LocalDateTime startDate,
+			LocalDateTime endDate) throws InvalidTimeSpanException, IllegalArgumentException {
+		if (k < 0) {
+			throw new IllegalArgumentException("The number of stations wanted must be positive: " + k);
+		}
+		if (k >= stations.size()) {
+			return sort(stations, startDate, endDate);
+		}
+		Comparator<Integer> comparator = comparator(computeKeys(stations, startDate, endDate));
+
+		// Keep the k first stations in a heap whose head is the last of them
+		PriorityQueue<Integer> heap = new PriorityQueue<Integer>(Math.max(1, k), comparator.reversed());
+		for (int i = 0; i < stations.size() && k > 0; i++) {
+			if (heap.size() < k) {
+				heap.add(i);
+			} else if (comparator.compare(i, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(i);
+			}
+		}
+		Integer[] order = heap.toArray(new Integer[heap.size()]);
+		Arrays.sort(order, comparator);
+		return select(stations, order, order.length);
+	}
+
+	private double[] computeKeys(ArrayList<Station> stations, LocalDateTime startDate, LocalDateTime endDate)
+			throws InvalidTimeSpanException {
+		double[] keys = new double[stations.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = computeKey(stations.get(i), startDate, endDate);
+		}
+		return keys;
+	}
+
+	/**
+	 * Compares indexes of stations by key, then by position in the given list so
+	 * that the order is total (and the sort stable).
+	 */
+	private static Comparator<Integer> comparator(final double[] keys) {
+		return new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				int c = Double.compare(keys[i1], keys[i2]);
+				return c != 0 ? c : Integer.compare(i1, i2);
+			}
+		};
+	}
+
+	private static Integer[] indexes(int n) {
+		Integer[] indexes = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			indexes[i] = i;
+		}
+		return indexes;
+	}
+
+	private static ArrayList<Station> select(ArrayList<Station> stations, Integer[] order, int k) {
+		ArrayList<Station> sortedStations = new ArrayList<Station>(k);
+		for (int i = 0; i < k; i++) {
+			sortedStations.add(stations.get(order[i]));
+		}
+		return sortedStations;
+	}
+}
@@ -1,8 +1,6 @@
 package core.station.stationSort;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Collections;
 
 import core.station.Station;
 
@@ -12,40 +10,21 @@ import core.station.Station;
  * @author matto
  *
  */
-public class MostUsedSort implements SortingStrategy {
+public class MostUsedSort extends KeySortingStrategy {
 	/**
-	 * Sort given stations according to their number of rentals + returns, in
-	 * descending order
+	 * The key of a station is the opposite of its number of rentals + returns,
+	 * so that the most used stations come first
 	 * 
-	 * @param stations
-	 *            a list of stations to sort
+	 * @param station
+	 *            the station
 	 * @param startDate
 	 *            (not used)
 	 * @param endDate
 	 *            (not used)
-	 * @return the sorted list of stations
+	 * @return the opposite of the number of uses of the station
 	 */
-	public ArrayList<Station> sort(ArrayList<Station> stations, LocalDateTime startDate, LocalDateTime endDate) {
-		ArrayList<Station> sortedStations = new ArrayList<Station>(stations);
-
-		// Selection sort of the ArrayList
-		int maxNumOfUses;
-		int curNumOfUses;
-		int maxNumOfUsesIndex;
-		for (int i = 0; i < stations.size(); i++) {
-			maxNumOfUses = stations.get(i).getStats().getTotalRentals() + stations.get(i).getStats().getTotalReturns();
-			maxNumOfUsesIndex = i;
-			for (int j = i; j < stations.size(); j++) {
-				curNumOfUses = stations.get(j).getStats().getTotalRentals()
-						+ stations.get(j).getStats().getTotalReturns();
-				if (curNumOfUses > maxNumOfUses) {
-					maxNumOfUses = curNumOfUses;
-					maxNumOfUsesIndex = j;
-				}
-			}
-
-			Collections.swap(sortedStations, maxNumOfUsesIndex, i);
-		}
-		return sortedStations;
+	@Override
+	protected double computeKey(Station station, LocalDateTime startDate, LocalDateTime endDate) {
+		return -(station.getStats().getTotalRentals() + station.getStats().getTotalReturns());
 	}
 }
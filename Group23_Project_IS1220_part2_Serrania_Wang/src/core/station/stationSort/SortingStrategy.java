@@ -26,4 +26,24 @@ public interface SortingStrategy {
 	 * @return the sorted list of stations
 	 */
 	public ArrayList<Station> sort(ArrayList<Station> stations, LocalDateTime startDate, LocalDateTime endDate) throws InvalidTimeSpanException;
+
+	/**
+	 * Gives the first k stations of the sorted list of stations, without sorting
+	 * the whole list.
+	 * 
+	 * @param stations
+	 *            a list of stations to sort
+	 * @param k
+	 *            the number of stations wanted
+	 * @param startDate
+	 *            the start of the time span the calculation is done over
+	 * @param endDate
+	 *            the start of the time span the calculation is done over
+	 * @return the first k stations (or all the stations if there are fewer than
+	 *         k), in sorted order
+	 * @throws IllegalArgumentException
+	 *             when k is negative
+	 */
+	public ArrayList<Station> sortTop(ArrayList<Station> stations, int k, LocalDateTime startDate,
+			LocalDateTime endDate) throws InvalidTimeSpanException, IllegalArgumentException;
 }
@@ -0,0 +1,151 @@
+package core.test.junit.card;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+import core.bike.Bike;
+import core.bike.BikeFactory;
+import core.bike.InvalidBikeTypeException;
+import core.card.CardVisitor;
+import core.card.CardVisitorFactory;
+import core.card.InvalidBikeException;
+import core.card.InvalidCardTypeException;
+import core.card.InvalidDatesException;
+import core.card.PricingEngine;
+import core.rentals.BikeRental;
+
+/**
+ * Test class for PricingEngine: the prices and time credit used are compared
+ * with the step by step computation of the cards, for every length of rental
+ * and time credit up to a bound
+ *
+ * @author matto
+ *
+ */
+public class PricingEngineTest {
+	private static final int MIN_MINUTES = -120;
+	private static final int MAX_MINUTES = 3000;
+	private static final int MAX_CREDIT = 720;
+
+	/**
+	 * Price and time credit used, computed step by step
+	 */
+	private static class Reference {
+		long price;
+		int timeCreditUsed;
+	}
+
+	// Step by step computations, as done by the cards before PricingEngine
+
+	private static Reference hourly(long nMinutes, int timeCredit) {
+		Reference r = new Reference();
+		int remainingTimeCredit = timeCredit;
+		if ((nMinutes / 60.0 > 1) && (nMinutes % 60) <= remainingTimeCredit) {
+			remainingTimeCredit -= ((int) (nMinutes % 60));
+			r.timeCreditUsed += (int) (nMinutes % 60);
+			nMinutes -= (nMinutes % 60);
+		}
+		while ((nMinutes / 60.0 > 1 && remainingTimeCredit >= 60)) {
+			remainingTimeCredit -= 60;
+			r.timeCreditUsed += 60;
+			nMinutes -= 60;
+		}
+		r.price = nMinutes <= 60 ? 0 : (nMinutes - 60) / 60 + ((nMinutes % 60 == 0) ? 0 : 1);
+		return r;
+	}
+
+	private static Reference vlibreElec(long nMinutes, int timeCredit) {
+		Reference r = new Reference();
+		if ((nMinutes % 60) <= timeCredit) {
+			r.timeCreditUsed += (int) (nMinutes % 60);
+			nMinutes -= (nMinutes % 60);
+		}
+		while ((nMinutes > 0 && timeCredit >= 60)) {
+			r.timeCreditUsed += 60;
+			nMinutes -= 60;
+		}
+		if (nMinutes == 0)
+			r.price = 0;
+		else if (nMinutes <= 60)
+			r.price = 1;
+		else
+			r.price = 1 + 2 * ((nMinutes - 60) / 60) + ((nMinutes % 60 == 0) ? 0 : 2);
+		return r;
+	}
+
+	private static long noCard(long nMinutes, long pricePerHour) {
+		return pricePerHour * (nMinutes / 60 + ((nMinutes % 60 == 0) ? 0 : 1));
+	}
+
+	/**
+	 * The closed forms should give the same results as the step by step
+	 * computations for every length and credit
+	 */
+	@Test
+	public void closedFormsShouldMatchStepByStepPricing() {
+		for (long minutes = MIN_MINUTES; minutes <= MAX_MINUTES; minutes++) {
+			assertEquals(noCard(minutes, 1), PricingEngine.noCardPrice(minutes, 1));
+			assertEquals(noCard(minutes, 2), PricingEngine.noCardPrice(minutes, 2));
+			for (int credit = 0; credit <= MAX_CREDIT; credit++) {
+				Reference expected = hourly(minutes, credit);
+				long used = PricingEngine.hourlyCreditUsed(minutes, credit);
+				if (expected.timeCreditUsed != used || expected.price != PricingEngine.hourlyPrice(minutes - used))
+					fail("Hourly pricing differs for " + minutes + " minutes and " + credit + " minutes of credit");
+
+				expected = vlibreElec(minutes, credit);
+				used = PricingEngine.vlibreElecCreditUsed(minutes, credit);
+				if (expected.timeCreditUsed != used
+						|| expected.price != PricingEngine.vlibreElecPrice(minutes - used))
+					fail("VLibre elec pricing differs for " + minutes + " minutes and " + credit
+							+ " minutes of credit");
+			}
+		}
+	}
+
+	/**
+	 * The cards should give the same results as the step by step computations
+	 * for every card and type of bike
+	 */
+	@Test
+	public void cardsShouldMatchStepByStepPricing() throws InvalidCardTypeException, InvalidBikeTypeException,
+			InvalidBikeException, InvalidDatesException {
+		CardVisitorFactory cardFactory = new CardVisitorFactory();
+		BikeFactory bikeFactory = new BikeFactory();
+		LocalDateTime start = LocalDateTime.of(2018, 4, 1, 8, 0);
+		int[] credits = { 0, 1, 30, 59, 60, 61, 119, 120, 185, 600 };
+
+		for (String cardType : new String[] { "NO_CARD", "VLIBRE_CARD", "VMAX_CARD" }) {
+			for (String bikeType : new String[] { "MECH", "ELEC" }) {
+				Bike bike = bikeFactory.createBike(bikeType);
+				for (int credit : credits) {
+					CardVisitor card = cardFactory.createCard(cardType);
+					card.addTimeCredit(credit);
+					for (int minutes = 0; minutes <= 600; minutes++) {
+						BikeRental rental = new BikeRental(bike, start);
+						rental.setReturnDate(start.plusMinutes(minutes));
+						double price = card.visit(rental);
+
+						Reference expected;
+						if (cardType.equals("NO_CARD")) {
+							expected = new Reference();
+							expected.price = noCard(minutes, bikeType.equals("MECH") ? 1 : 2);
+						} else if (cardType.equals("VLIBRE_CARD") && bikeType.equals("ELEC")) {
+							expected = vlibreElec(minutes, card.getTimeCredit());
+						} else {
+							expected = hourly(minutes, card.getTimeCredit());
+						}
+						String combination = cardType + " " + bikeType + " " + minutes + " min " + credit + " credit";
+						assertEquals(combination, expected.price, price, 0);
+						assertEquals(combination, expected.price, rental.getPrice(), 0);
+						assertEquals(combination, expected.timeCreditUsed, rental.getTimeCreditUsed());
+						// visiting a rental does not change the card
+						assertEquals(combination, cardType.equals("NO_CARD") ? 0 : credit, card.getTimeCredit());
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package core.test.junit.card;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+import core.bike.BikeFactory;
+import core.bike.InvalidBikeTypeException;
+import core.card.CardVisitor;
+import core.card.CardVisitorFactory;
+import core.card.CreditRule;
+import core.card.InvalidBikeException;
+import core.card.InvalidCardTypeException;
+import core.card.InvalidDatesException;
+import core.card.InvalidTariffException;
+import core.card.PricingEngine;
+import core.card.Tariff;
+import core.rentals.BikeRental;
+
+/**
+ * Test class for Tariff: the default tariff should price the rentals as the
+ * pricing of myVelib, and other tariffs should be read without new code
+ *
+ * @author matto
+ *
+ */
+public class TariffTest {
+	private static final LocalDateTime START = LocalDateTime.of(2018, 4, 1, 8, 0);
+
+	private static Tariff read(String text) throws InvalidTariffException, IOException {
+		return Tariff.read(new StringReader(text));
+	}
+
+	private static void assertInvalid(String text, int line) throws IOException {
+		try {
+			read(text);
+			fail("The tariff should be invalid: " + text);
+		} catch (InvalidTariffException e) {
+			assertEquals(line, e.getLine());
+		}
+	}
+
+	/**
+	 * The default tariff should give the prices and time credit used of
+	 * PricingEngine, for every length and credit
+	 */
+	@Test
+	public void defaultTariffShouldMatchPricingEngine() {
+		Tariff tariff = Tariff.getDefault();
+		assertEquals("[NO_CARD, VLIBRE_CARD, VMAX_CARD]", tariff.getCardTypes().toString());
+		assertEquals("[MECH, ELEC]", tariff.getBikeTypes().toString());
+		int noMech = tariff.rateIndex(tariff.cardIndex("NO_CARD"), "MECH");
+		int noElec = tariff.rateIndex(tariff.cardIndex("NO_CARD"), "ELEC");
+		int vlibreMech = tariff.rateIndex(tariff.cardIndex("VLIBRE_CARD"), "MECH");
+		int vlibreElec = tariff.rateIndex(tariff.cardIndex("VLIBRE_CARD"), "ELEC");
+		int vmaxMech = tariff.rateIndex(tariff.cardIndex("VMAX_CARD"), "MECH");
+		int vmaxElec = tariff.rateIndex(tariff.cardIndex("VMAX_CARD"), "ELEC");
+
+		for (long minutes = 0; minutes <= 3000; minutes++) {
+			assertEquals(PricingEngine.noCardPrice(minutes, 1), tariff.price(noMech, minutes));
+			assertEquals(PricingEngine.noCardPrice(minutes, 2), tariff.price(noElec, minutes));
+			assertEquals(0, tariff.creditUsed(noMech, minutes, 600));
+			for (int credit = 0; credit <= 720; credit += 7) {
+				long used = PricingEngine.hourlyCreditUsed(minutes, credit);
+				long price = PricingEngine.hourlyPrice(minutes - used);
+				for (int rate : new int[] { vlibreMech, vmaxMech, vmaxElec }) {
+					assertEquals(used, tariff.creditUsed(rate, minutes, credit));
+					assertEquals(price, tariff.price(rate, minutes - used));
+				}
+				used = PricingEngine.vlibreElecCreditUsed(minutes, credit);
+				assertEquals(used, tariff.creditUsed(vlibreElec, minutes, credit));
+				assertEquals(PricingEngine.vlibreElecPrice(minutes - used), tariff.price(vlibreElec, minutes - used));
+			}
+		}
+	}
+
+	/**
+	 * Piecewise rates: the last rate is the price of every further hour
+	 */
+	@Test
+	public void lastRateShouldPriceFurtherHours() throws InvalidTariffException, IOException {
+		Tariff tariff = read("DAY_PASS MECH 3,2,0,1 NONE");
+		int rate = tariff.rateIndex(0, "MECH");
+		assertEquals(-1, tariff.rateIndex(0, "ELEC"));
+		assertEquals(0, tariff.price(rate, 0));
+		assertEquals(3, tariff.price(rate, 1));
+		assertEquals(3, tariff.price(rate, 60));
+		assertEquals(5, tariff.price(rate, 61));
+		assertEquals(5, tariff.price(rate, 180));
+		assertEquals(6, tariff.price(rate, 181));
+		assertEquals(8, tariff.price(rate, 301));
+		assertEquals(5 + 1000, tariff.price(rate, 1003 * 60));
+	}
+
+	/**
+	 * A type of card added to the tariff should be created by the factory and
+	 * priced by its rates
+	 */
+	@Test
+	public void newCardTypeShouldNeedNoNewCode() throws InvalidTariffException, IOException,
+			InvalidCardTypeException, InvalidBikeTypeException, InvalidBikeException, InvalidDatesException {
+		Tariff tariff = read("# a tariff with a student card\n" + "\n" + "NO_CARD MECH 1 NONE\n"
+				+ "STUDENT_CARD MECH 0,0,1 AFTER_FIRST_HOUR\n" + "student_card elec 1 none\n");
+		CardVisitorFactory factory = new CardVisitorFactory(tariff);
+		CardVisitor student = factory.createCard("student_card");
+		assertEquals("STUDENT_CARD", student.getCardType());
+		assertEquals(30, student.addTimeCredit(30));
+
+		BikeFactory bikes = new BikeFactory();
+		BikeRental rental = new BikeRental(bikes.createBike("MECH"), START);
+		rental.setReturnDate(START.plusMinutes(150));
+		// 30 minutes of credit, then two free hours
+		assertEquals(0, student.visit(rental), 0);
+		assertEquals(30, rental.getTimeCreditUsed());
+
+		rental = new BikeRental(bikes.createBike("ELEC"), START);
+		rental.setReturnDate(START.plusMinutes(150));
+		assertEquals(3, student.visit(rental), 0);
+		assertEquals(0, rental.getTimeCreditUsed());
+
+		// no credit on a card whose rates never use it
+		CardVisitor noCard = factory.createCard("NO_CARD");
+		assertEquals(0, noCard.addTimeCredit(30));
+		assertEquals(0, noCard.getTimeCredit());
+		try {
+			noCard.visit(rental);
+			fail("The tariff has no rate for electrical bikes without card");
+		} catch (InvalidBikeException e) {
+		}
+		try {
+			factory.createCard("VMAX_CARD");
+			fail("The tariff has no VMax card");
+		} catch (InvalidCardTypeException e) {
+		}
+	}
+
+	/**
+	 * Invalid tariffs should be reported with their line
+	 */
+	@Test
+	public void invalidTariffsShouldGiveTheLine() throws IOException {
+		assertInvalid("", 0);
+		assertInvalid("# only a comment", 0);
+		assertInvalid("NO_CARD MECH 1", 1);
+		assertInvalid("NO_CARD MECH 1 NONE\nNO_CARD ELEC 2,x NONE", 2);
+		assertInvalid("NO_CARD MECH -1 NONE", 1);
+		assertInvalid("\nNO_CARD MECH 1 SOMETIMES", 2);
+		assertInvalid("NO_CARD MECH 1 NONE\n\nno_card mech 2 NONE", 3);
+	}
+
+	/**
+	 * The time credit rules should be those of PricingEngine
+	 */
+	@Test
+	public void creditRulesShouldMatchPricingEngine() {
+		assertEquals(0, CreditRule.NONE.creditUsed(150, 600));
+		assertEquals(PricingEngine.hourlyCreditUsed(150, 600), CreditRule.AFTER_FIRST_HOUR.creditUsed(150, 600));
+		assertEquals(PricingEngine.vlibreElecCreditUsed(150, 60), CreditRule.ALL_HOURS.creditUsed(150, 60));
+	}
+}
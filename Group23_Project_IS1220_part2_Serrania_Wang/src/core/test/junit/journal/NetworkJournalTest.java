@@ -0,0 +1,240 @@
+package core.test.junit.journal;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import core.Network;
+import core.bike.BikeFactory;
+import core.journal.NetworkJournal;
+import core.station.InvalidTimeSpanException;
+import core.station.Station;
+import core.user.User;
+import utils.DateParser;
+
+/**
+ * Test the journal of a network: the network rebuilt from the journal should be
+ * the same as the recorded one
+ * 
+ * @author animato
+ *
+ */
+public class NetworkJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final LocalDateTime START = DateParser.parse("01/01/2000T00:00:00");
+
+	/**
+	 * Applies random changes to the network, through its UI methods
+	 */
+	private static LocalDateTime simulate(Network n, Random random, LocalDateTime date, int steps) {
+		for (int i = 0; i < steps; i++) {
+			date = date.plusMinutes(1 + random.nextInt(30));
+			ArrayList<Integer> userIds = n.getUserIds();
+			ArrayList<Integer> stationIds = n.getStationIds();
+			int userId = userIds.get(random.nextInt(userIds.size()));
+			int stationId = stationIds.get(random.nextInt(stationIds.size()));
+			switch (random.nextInt(10)) {
+			case 0:
+				n.setOffline(stationId);
+				break;
+			case 1:
+				n.setOnline(stationId);
+				break;
+			case 2:
+				n.addStation("PLUS", 3);
+				break;
+			default:
+				if (n.getUsers().get(userId).getBikeRental() == null)
+					n.rentBike(userId, stationId, random.nextBoolean() ? "MECH" : "ELEC", date);
+				else
+					n.returnBike(userId, stationId, date);
+			}
+		}
+		return date;
+	}
+
+	private static void assertSameNetwork(Network expected, Network actual, LocalDateTime end)
+			throws InvalidTimeSpanException {
+		assertEquals(expected.getCurrentDate(), actual.getCurrentDate());
+		assertSameState(expected, actual, end);
+	}
+
+	/**
+	 * Compares the stations and users of two networks (not their current date,
+	 * which depends on the thread changing the network last)
+	 */
+	private static void assertSameState(Network expected, Network actual, LocalDateTime end)
+			throws InvalidTimeSpanException {
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getSide(), actual.getSide(), 0);
+		assertEquals(expected.getCreationDate(), actual.getCreationDate());
+		assertEquals(expected.getStations().keySet(), actual.getStations().keySet());
+		assertEquals(expected.getUsers().keySet(), actual.getUsers().keySet());
+
+		for (Station s : expected.getStations().values()) {
+			Station r = actual.getStations().get(s.getId());
+			assertEquals(s.getClass(), r.getClass());
+			assertEquals(s.getCoordinates(), r.getCoordinates());
+			assertEquals(s.getOnline(), r.getOnline());
+			assertEquals(s.getNumberOfBikes("MECH"), r.getNumberOfBikes("MECH"));
+			assertEquals(s.getNumberOfBikes("ELEC"), r.getNumberOfBikes("ELEC"));
+			assertEquals(s.getStats().getTotalRentals(), r.getStats().getTotalRentals());
+			assertEquals(s.getStats().getTotalReturns(), r.getStats().getTotalReturns());
+			assertEquals(s.getStats().getOccupationRate(START, end), r.getStats().getOccupationRate(START, end),
+					1e-12);
+		}
+		for (User u : expected.getUsers().values()) {
+			User r = actual.getUsers().get(u.getId());
+			assertEquals(u.getName(), r.getName());
+			assertEquals(u.getCoordinates(), r.getCoordinates());
+			assertEquals(u.getCard().getClass(), r.getCard().getClass());
+			assertEquals(u.getCard().getTimeCredit(), r.getCard().getTimeCredit());
+			assertEquals(u.getStats().toString(), r.getStats().toString());
+			assertEquals(u.getBikeRental() == null, r.getBikeRental() == null);
+		}
+	}
+
+	/**
+	 * The replayed network should be the same as the recorded one
+	 */
+	@Test
+	public void replayShouldRebuildTheNetwork() throws Exception {
+		Path file = folder.newFile("network.journal").toPath();
+		Random random = new Random(17);
+		Network n = new Network("JournalNetwork", 20, 6, 10, 0.5, 0.3, 0.5, START);
+		NetworkJournal.create(file, n);
+		n.addUser("alice", "VLIBRE_CARD");
+		n.addUser("bob", "VMAX_CARD");
+		n.addUser("carol", "NO_CARD");
+		n.addStation("STANDARD", 2.5, 2.5, 4, false);
+		LocalDateTime end = simulate(n, random, START, 500);
+		n.closeJournal();
+
+		Network replayed = NetworkJournal.replay(file);
+		assertSameNetwork(n, replayed, end);
+
+		// The replayed network goes on recording in the same journal
+		end = simulate(replayed, new Random(3), end, 100);
+		replayed.closeJournal();
+		assertSameNetwork(replayed, NetworkJournal.replay(file), end);
+	}
+
+	/**
+	 * Users renting and returning bikes at the same stations from several threads
+	 * should be journaled in the order the stations changed: replaying the
+	 * journal should never find a full or empty station, and should rebuild the
+	 * network
+	 */
+	@Test
+	public void concurrentChangesShouldBeReplayedInOrder() throws Exception {
+		Path file = folder.newFile("concurrent.journal").toPath();
+		Network n = new Network("ConcurrentNetwork", 0, 0, 10, 0, 0, 0, START);
+		n.addStation("STANDARD", 1, 1, 3, true);
+		n.addStation("PLUS", 2, 2, 3, true);
+		Station first = null;
+		for (Station s : n.getStations().values()) {
+			if (first == null || s.getId() < first.getId())
+				first = s;
+		}
+		first.addBike(new BikeFactory().createBike("MECH"), START);
+		first.addBike(new BikeFactory().createBike("ELEC"), START);
+		int threads = 8;
+		for (int i = 0; i < threads; i++)
+			n.addUser("user" + i, i % 2 == 0 ? "VLIBRE_CARD" : "NO_CARD");
+		NetworkJournal.create(file, n);
+
+		// every thread plays one user; the dates of a user increase
+		ArrayList<Integer> userIds = n.getUserIds();
+		ArrayList<Integer> stationIds = n.getStationIds();
+		AtomicLong minutes = new AtomicLong();
+		CyclicBarrier start = new CyclicBarrier(threads);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < threads; i++) {
+			int userId = userIds.get(i);
+			Random random = new Random(i);
+			futures.add(executor.submit(() -> {
+				start.await();
+				for (int step = 0; step < 300; step++) {
+					LocalDateTime date = START.plusMinutes(minutes.incrementAndGet());
+					int stationId = stationIds.get(random.nextInt(stationIds.size()));
+					if (step % 50 == 49) {
+						if (random.nextBoolean())
+							n.setOffline(stationId);
+						else
+							n.setOnline(stationId);
+					} else if (n.getUsers().get(userId).getBikeRental() == null) {
+						n.rentBike(userId, stationId, random.nextBoolean() ? "MECH" : "ELEC", date);
+					} else {
+						n.returnBike(userId, stationId, date);
+					}
+				}
+				return null;
+			}));
+		}
+		for (Future<?> f : futures)
+			f.get();
+		executor.shutdown();
+		n.closeJournal();
+
+		LocalDateTime end = START.plusMinutes(minutes.get() + 1);
+		Network replayed = NetworkJournal.replay(file);
+		replayed.closeJournal();
+		assertSameState(n, replayed, end);
+		int rentals = 0;
+		for (Station s : n.getStations().values())
+			rentals += s.getStats().getTotalRentals();
+		assertTrue(rentals > 0);
+	}
+
+	/**
+	 * A record cut at the end of the journal (crash while writing) should be
+	 * ignored, and the next records written after the last complete one
+	 */
+	@Test
+	public void incompleteRecordShouldBeIgnored() throws Exception {
+		Path file = folder.newFile("cut.journal").toPath();
+		Network n = new Network("CutNetwork", 5, 4, 10, 0.5, 0.5, 0.5, START);
+		NetworkJournal.create(file, n);
+		n.addUser("alice", "NO_CARD");
+		long sizeWithAlice = Files.size(file);
+		n.addUser("bob", "NO_CARD");
+		n.closeJournal();
+
+		try (RandomAccessFile f = new RandomAccessFile(file.toFile(), "rw")) {
+			f.setLength(Files.size(file) - 3);
+		}
+		Network replayed = NetworkJournal.replay(file);
+		assertEquals(1, replayed.getUsers().size());
+		assertEquals(sizeWithAlice, Files.size(file));
+
+		replayed.addUser("carol", "NO_CARD");
+		replayed.closeJournal();
+		assertEquals(2, NetworkJournal.replay(file).getUsers().size());
+	}
+
+	@Test(expected = IOException.class)
+	public void whenFileIsNotAJournalThenThrowException() throws IOException {
+		File file = folder.newFile("empty.journal");
+		NetworkJournal.replay(file.toPath());
+	}
+}
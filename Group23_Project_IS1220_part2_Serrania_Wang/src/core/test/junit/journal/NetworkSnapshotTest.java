@@ -0,0 +1,190 @@
+package core.test.junit.journal;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import core.Network;
+import core.journal.NetworkSnapshot;
+import core.station.InvalidTimeSpanException;
+import core.station.ParkingSlot;
+import core.station.Station;
+import core.user.User;
+import utils.DateParser;
+
+/**
+ * Test the snapshots of a network: the restored network should be the same as
+ * the saved one, and behave the same afterwards
+ *
+ * @author animato
+ *
+ */
+public class NetworkSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final LocalDateTime START = DateParser.parse("01/01/2000T00:00:00");
+
+	/**
+	 * Applies random rentals, returns and status changes to the network, through
+	 * its UI methods
+	 */
+	private static LocalDateTime simulate(Network n, Random random, LocalDateTime date, int steps) {
+		// sorted, so that two identical networks get the same changes
+		ArrayList<Integer> userIds = n.getUserIds();
+		ArrayList<Integer> stationIds = n.getStationIds();
+		Collections.sort(userIds);
+		Collections.sort(stationIds);
+		for (int i = 0; i < steps; i++) {
+			date = date.plusMinutes(1 + random.nextInt(30));
+			int userId = userIds.get(random.nextInt(userIds.size()));
+			int stationId = stationIds.get(random.nextInt(stationIds.size()));
+			switch (random.nextInt(10)) {
+			case 0:
+				n.setOffline(stationId);
+				break;
+			case 1:
+				n.setOnline(stationId);
+				break;
+			default:
+				if (n.getUsers().get(userId).getBikeRental() == null)
+					n.rentBike(userId, stationId, random.nextBoolean() ? "MECH" : "ELEC", date);
+				else
+					n.returnBike(userId, stationId, date);
+			}
+		}
+		return date;
+	}
+
+	private static void assertSameNetwork(Network expected, Network actual, LocalDateTime end)
+			throws InvalidTimeSpanException {
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getSide(), actual.getSide(), 0);
+		assertEquals(expected.getCreationDate(), actual.getCreationDate());
+		assertEquals(expected.getCurrentDate(), actual.getCurrentDate());
+		assertEquals(expected.getStations().keySet(), actual.getStations().keySet());
+		assertEquals(expected.getUsers().keySet(), actual.getUsers().keySet());
+
+		for (Station s : expected.getStations().values()) {
+			Station r = actual.getStations().get(s.getId());
+			assertEquals(s.getClass(), r.getClass());
+			assertEquals(s.getCoordinates(), r.getCoordinates());
+			assertEquals(s.getOnline(), r.getOnline());
+			assertEquals(s.getNumberOfBikes("MECH"), r.getNumberOfBikes("MECH"));
+			assertEquals(s.getNumberOfBikes("ELEC"), r.getNumberOfBikes("ELEC"));
+			assertEquals(s.getNumberOfFreeParkingSlots(), r.getNumberOfFreeParkingSlots());
+			assertEquals(s.getStats().getTotalRentals(), r.getStats().getTotalRentals());
+			assertEquals(s.getStats().getTotalReturns(), r.getStats().getTotalReturns());
+			assertEquals(s.getStats().getOccupationRate(START, end), r.getStats().getOccupationRate(START, end),
+					1e-12);
+			assertEquals(s.getParkingSlots().size(), r.getParkingSlots().size());
+			for (int i = 0; i < s.getParkingSlots().size(); i++) {
+				ParkingSlot ps = s.getParkingSlots().get(i);
+				ParkingSlot rps = r.getParkingSlots().get(i);
+				assertEquals(ps.isWorking(), rps.isWorking());
+				assertEquals(ps.hasBike() ? ps.getBike().getType() : null,
+						rps.hasBike() ? rps.getBike().getType() : null);
+				assertEquals(ps.getStatusHistory().toString(), rps.getStatusHistory().toString());
+			}
+		}
+		assertEquals(expected.getUsageLeaderboard().getRanking(), actual.getUsageLeaderboard().getRanking());
+
+		for (User u : expected.getUsers().values()) {
+			User r = actual.getUsers().get(u.getId());
+			assertEquals(u.getName(), r.getName());
+			assertEquals(u.getCoordinates(), r.getCoordinates());
+			assertEquals(u.getCard().getClass(), r.getCard().getClass());
+			assertEquals(u.getCard().getTimeCredit(), r.getCard().getTimeCredit());
+			assertEquals(u.getStats().toString(), r.getStats().toString());
+			if (u.getBikeRental() == null) {
+				assertNull(r.getBikeRental());
+			} else {
+				assertEquals(u.getBikeRental().getBike().getType(), r.getBikeRental().getBike().getType());
+				assertEquals(u.getBikeRental().getRentDate(), r.getBikeRental().getRentDate());
+			}
+		}
+	}
+
+	private static Network createNetwork(String name) {
+		Network n = new Network(name, 20, 6, 10, 0.5, 0.3, 0.5, START);
+		n.addUser("alice", "VLIBRE_CARD");
+		n.addUser("bob", "VMAX_CARD");
+		n.addUser("carol", "NO_CARD");
+		n.addUser("dave", "NO_CARD");
+		n.addStation("STANDARD", 2.5, 2.5, 4, false);
+		return n;
+	}
+
+	/**
+	 * The restored network should be the same as the saved one
+	 */
+	@Test
+	public void loadShouldRestoreTheNetwork() throws Exception {
+		Path file = folder.newFile("network.snapshot").toPath();
+		Network n = createNetwork("SnapshotNetwork");
+		LocalDateTime end = simulate(n, new Random(17), START, 500);
+		// an out-of-order parking slot
+		n.getStations().values().iterator().next().getParkingSlots().get(0).setWorking(false, end);
+		NetworkSnapshot.write(n, file);
+
+		assertSameNetwork(n, NetworkSnapshot.load(file), end);
+	}
+
+	/**
+	 * The restored network should go on exactly like the saved one
+	 */
+	@Test
+	public void restoredNetworkShouldBehaveLikeTheSavedOne() throws Exception {
+		Path file = folder.newFile("next.snapshot").toPath();
+		Network n = createNetwork("NextNetwork");
+		LocalDateTime date = simulate(n, new Random(5), START, 300);
+		NetworkSnapshot.write(n, file);
+		Network restored = NetworkSnapshot.load(file);
+
+		LocalDateTime end = simulate(n, new Random(11), date, 300);
+		assertEquals(end, simulate(restored, new Random(11), date, 300));
+		assertSameNetwork(n, restored, end);
+	}
+
+	/**
+	 * Saving the restored network should give the same file
+	 */
+	@Test
+	public void snapshotOfRestoredNetworkShouldBeIdentical() throws Exception {
+		Path file = folder.newFile("first.snapshot").toPath();
+		Path copy = folder.newFile("second.snapshot").toPath();
+		Network n = createNetwork("CopyNetwork");
+		simulate(n, new Random(23), START, 200);
+		NetworkSnapshot.write(n, file);
+		NetworkSnapshot.write(NetworkSnapshot.load(file), copy);
+		assertEquals(Files.size(file), Files.size(copy));
+		assertSameNetwork(NetworkSnapshot.load(file), NetworkSnapshot.load(copy), START.plusDays(1));
+	}
+
+	@Test(expected = IOException.class)
+	public void whenFileIsNotASnapshotThenThrowException() throws IOException {
+		NetworkSnapshot.load(folder.newFile("empty.snapshot").toPath());
+	}
+
+	@Test(expected = IOException.class)
+	public void whenFileIsCutThenThrowException() throws IOException {
+		Path file = folder.newFile("cut.snapshot").toPath();
+		NetworkSnapshot.write(createNetwork("CutNetwork"), file);
+		try (RandomAccessFile f = new RandomAccessFile(file.toFile(), "rw")) {
+			f.setLength(Files.size(file) - 10);
+		}
+		NetworkSnapshot.load(file);
+	}
+}
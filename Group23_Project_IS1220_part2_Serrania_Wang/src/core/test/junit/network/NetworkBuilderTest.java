@@ -0,0 +1,131 @@
+package core.test.junit.network;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import core.Network;
+import core.NetworkBuilder;
+import core.station.ParkingSlot;
+import core.station.Station;
+
+/**
+ * Test the bulk placement of the bikes of a network: it should follow the same
+ * distribution as adding each bike to a random station which is not full
+ * 
+ * @author animato
+ *
+ */
+public class NetworkBuilderTest {
+
+	/**
+	 * Reference placement: bikes added one by one to a random station which is
+	 * not full, as the network constructor used to do
+	 */
+	private static int[] placeOneByOne(int[] capacities, int numberOfBikes, Random random) {
+		int[] counts = new int[capacities.length];
+		ArrayList<Integer> notFull = new ArrayList<Integer>();
+		for (int i = 0; i < capacities.length; i++)
+			notFull.add(i);
+		for (int b = 0; b < numberOfBikes; b++) {
+			int k = random.nextInt(notFull.size());
+			int station = notFull.get(k);
+			counts[station]++;
+			if (counts[station] == capacities[station])
+				notFull.remove(k);
+		}
+		return counts;
+	}
+
+	@Test
+	public void allocationShouldFillStationsWithinTheirCapacity() {
+		int[] capacities = { 3, 0, 5, 1, 8 };
+		int[][] allocation = new NetworkBuilder(new Random(1)).allocate(capacities, 7, 8);
+		int elec = 0;
+		int mech = 0;
+		for (int i = 0; i < capacities.length; i++) {
+			assertTrue(allocation[i][0] + allocation[i][1] <= capacities[i]);
+			elec += allocation[i][0];
+			mech += allocation[i][1];
+		}
+		assertEquals(7, elec);
+		assertEquals(8, mech);
+		assertEquals(0, allocation[1][0] + allocation[1][1]);
+	}
+
+	@Test
+	public void whenAllSlotsAreTakenThenEveryStationIsFull() {
+		int[] capacities = { 2, 4, 6 };
+		int[][] allocation = new NetworkBuilder(new Random(2)).allocate(capacities, 5, 7);
+		for (int i = 0; i < capacities.length; i++) {
+			assertEquals(capacities[i], allocation[i][0] + allocation[i][1]);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void whenTooManyBikesThenThrowException() {
+		new NetworkBuilder().allocate(new int[] { 2, 2 }, 3, 2);
+	}
+
+	/**
+	 * The number of bikes per station should have the same distribution as with
+	 * the one-by-one placement
+	 */
+	@Test
+	public void allocationShouldMatchOneByOnePlacement() {
+		int[] capacities = { 4, 4, 4, 4, 4, 4 };
+		int numberOfBikes = 17;
+		int trials = 20000;
+		double[] expected = new double[5];
+		double[] actual = new double[5];
+		Random reference = new Random(3);
+		NetworkBuilder builder = new NetworkBuilder(new Random(4));
+		for (int t = 0; t < trials; t++) {
+			int[] counts = placeOneByOne(capacities, numberOfBikes, reference);
+			int[][] allocation = builder.allocate(capacities, 6, numberOfBikes - 6);
+			for (int i = 0; i < capacities.length; i++) {
+				expected[counts[i]] += 1.0 / (trials * capacities.length);
+				actual[allocation[i][0] + allocation[i][1]] += 1.0 / (trials * capacities.length);
+			}
+		}
+		for (int c = 0; c < expected.length; c++) {
+			assertEquals(expected[c], actual[c], 0.01);
+		}
+	}
+
+	/**
+	 * The network should hold the requested bikes, electrical ones in the first
+	 * slots of each station
+	 */
+	@Test
+	public void networkShouldHoldTheRequestedBikes() {
+		Network n = new Network("BuiltNetwork", 50, 10, 10, 0.7, 0.3, 0.4, LocalDateTime.now());
+		int elec = 0;
+		int mech = 0;
+		for (Station s : n.getStations().values()) {
+			elec += s.getNumberOfBikes("ELEC");
+			mech += s.getNumberOfBikes("MECH");
+			boolean mechSeen = false;
+			boolean freeSeen = false;
+			for (ParkingSlot ps : s.getParkingSlots()) {
+				if (!ps.hasBike()) {
+					freeSeen = true;
+				} else {
+					assertFalse(freeSeen);
+					if (ps.getBike().getType().equals("MECH"))
+						mechSeen = true;
+					else
+						assertFalse(mechSeen);
+				}
+			}
+			assertEquals(10 - s.getNumberOfBikes("ELEC") - s.getNumberOfBikes("MECH"),
+					s.getNumberOfFreeParkingSlots());
+		}
+		assertEquals(140, elec);
+		assertEquals(210, mech);
+	}
+}
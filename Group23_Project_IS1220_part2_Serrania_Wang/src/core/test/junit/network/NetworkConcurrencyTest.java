@@ -0,0 +1,103 @@
+package core.test.junit.network;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import core.Network;
+import core.bike.BikeIDGenerator;
+import core.station.ParkingSlot;
+import core.station.Station;
+import core.user.User;
+
+/**
+ * Stress test of the registries of the network: stations, users and observers
+ * added by many threads at the same time should all be registered, with unique
+ * ids
+ * 
+ * @author animato
+ *
+ */
+public class NetworkConcurrencyTest {
+
+	private static final int THREADS = 8;
+	private static final int ADDS_PER_THREAD = 250;
+
+	@Test
+	public void concurrentAddsShouldKeepAllEntriesWithUniqueIds() throws Exception {
+		final Network n = new Network("ConcurrentNetwork", 0, 2, 10, 0, 0, 0, LocalDateTime.now());
+		final HashSet<Observer> observers = new HashSet<Observer>();
+		final AtomicInteger notifications = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		ArrayList<Future<ArrayList<Integer>>> bikeIds = new ArrayList<Future<ArrayList<Integer>>>();
+		for (int t = 0; t < THREADS; t++) {
+			final Observer observer = new Observer() {
+				@Override
+				public void update(Observable o, Object arg) {
+					notifications.incrementAndGet();
+				}
+			};
+			observers.add(observer);
+			bikeIds.add(executor.submit(new Callable<ArrayList<Integer>>() {
+				@Override
+				public ArrayList<Integer> call() {
+					ArrayList<Integer> ids = new ArrayList<Integer>();
+					for (int i = 0; i < ADDS_PER_THREAD; i++) {
+						n.addStation("STANDARD", 2);
+						n.addUser("user", "NO_CARD");
+						n.addObserver(observer);
+						n.notifyObservers("stress");
+						ids.add(BikeIDGenerator.getInstance().getNextIDNumber());
+					}
+					return ids;
+				}
+			}));
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+		int expected = THREADS * ADDS_PER_THREAD;
+		assertEquals(expected, n.getStations().size());
+		assertEquals(expected, n.getUsers().size());
+		assertEquals(expected, n.getStationGrid().size());
+		assertEquals(expected, n.getUsageLeaderboard().size());
+
+		HashSet<Integer> slotIds = new HashSet<Integer>();
+		for (Station s : n.getStations().values()) {
+			for (ParkingSlot ps : s.getParkingSlots()) {
+				assertTrue(slotIds.add(ps.getId()));
+			}
+		}
+		assertEquals(2 * expected, slotIds.size());
+		for (User u : n.getUsers().values()) {
+			assertNotNull(u);
+		}
+		HashSet<Integer> allBikeIds = new HashSet<Integer>();
+		for (Future<ArrayList<Integer>> ids : bikeIds) {
+			allBikeIds.addAll(ids.get());
+		}
+		assertEquals(expected, allBikeIds.size());
+
+		// each observer was registered once
+		notifications.set(0);
+		n.notifyObservers("once per observer");
+		assertEquals(THREADS, notifications.get());
+		for (Observer o : observers) {
+			n.deleteObserver(o);
+		}
+		n.notifyObservers("nobody listens");
+		assertEquals(THREADS, notifications.get());
+	}
+}
@@ -0,0 +1,120 @@
+package core.test.junit.rental;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import core.Network;
+import core.bike.BikeFactory;
+import core.rentals.BikeRental;
+import core.rentals.BillingReport;
+import core.simulation.CityTraffic;
+import core.station.Station;
+import core.user.User;
+import utils.IDScope;
+
+/**
+ * Test the deferred billing of the rentals: billing a day of rentals in batch
+ * should give the same prices, time credits and charges as billing each return
+ *
+ * @author animato
+ *
+ */
+public class BillingPipelineTest {
+	private static final LocalDateTime START = LocalDateTime.of(2018, 4, 1, 0, 0);
+
+	/**
+	 * The cards and statistics of the users at the end of a simulated day
+	 */
+	private static List<String> simulateDay(long seed, boolean deferredBilling) {
+		List<String> users = new ArrayList<String>();
+		IDScope.run(() -> {
+			Network n = CityTraffic.createNetwork("BillingCity", 30, 10, 4, 0.6, 0.5, 0.4, START, new Random(seed));
+			n.setDeferredBilling(deferredBilling);
+			new CityTraffic(n, seed, "SHORTEST", 0.4, 6, 0, 30).run(400, START.plusDays(1));
+			if (deferredBilling) {
+				int pending = n.getPendingRentals();
+				assertTrue(pending > 0);
+				BillingReport report = n.billPendingRentals();
+				assertEquals(pending, report.getBilledRentals());
+				assertTrue(report.getFailedRentals().isEmpty());
+				assertEquals(0, n.getPendingRentals());
+			}
+			for (int id : new TreeSet<Integer>(n.getUsers().keySet())) {
+				User u = n.getUsers().get(id);
+				users.add(id + " " + u.getCard().getTimeCredit() + " " + u.getStats().snapshot());
+			}
+		});
+		return users;
+	}
+
+	/**
+	 * A day billed in batch should end with the same cards and statistics as a
+	 * day billed at each return
+	 */
+	@Test
+	public void batchBillingShouldMatchBillingAtReturn() {
+		List<String> atReturn = simulateDay(11, false);
+		List<String> batch = simulateDay(11, true);
+		assertEquals(400, batch.size());
+		assertEquals(atReturn, batch);
+	}
+
+	/**
+	 * A pending rental should not change the card or the charges of the user
+	 * until it is billed, and the time credit should be used in the order of
+	 * the returns
+	 */
+	@Test
+	public void rentalsShouldBeBilledInOrderOfReturn() throws Exception {
+		IDScope.run(() -> {
+			try {
+				Network n = new Network("Billing", 0, 10, 10, 0, 0, 0, START);
+				n.addStation("PLUS", 1, 1, 10, true);
+				n.addStation("STANDARD", 2, 2, 10, true);
+				Station plus = null, standard = null;
+				for (Station s : n.getStations().values()) {
+					if (s.getBonusTimeCreditOnReturn() > 0)
+						plus = s;
+					else
+						standard = s;
+				}
+				standard.addBike(new BikeFactory().createBike("MECH"), START);
+				n.addUser("alice", "VMAX_CARD");
+				User alice = n.getUsers().values().iterator().next();
+				n.setDeferredBilling(true);
+
+				// 5 minutes of credit are earned at the first return, then used at the second
+				n.rentBike(alice, standard, "MECH", START);
+				BikeRental first = n.returnBike(alice, plus, START.plusMinutes(30));
+				n.rentBike(alice, plus, "MECH", START.plusHours(1));
+				BikeRental second = n.returnBike(alice, standard, START.plusHours(1).plusMinutes(65));
+
+				assertEquals(2, n.getPendingRentals());
+				assertEquals(0, alice.getCard().getTimeCredit());
+				assertEquals(0, alice.getStats().getTotalCharges(), 0);
+				assertEquals(2, alice.getStats().getTotalRides());
+
+				BillingReport report = n.billPendingRentals();
+				assertEquals(1, report.getUsers());
+				assertEquals(2, report.getBilledRentals());
+				assertEquals(5, first.getTimeCreditAdded());
+				assertEquals(0, first.getPrice(), 0);
+				// without the credit of the first return, the second would cost 1 euro
+				assertEquals(5, second.getTimeCreditUsed());
+				assertEquals(0, second.getPrice(), 0);
+				assertEquals(0, alice.getCard().getTimeCredit());
+				assertEquals(5, alice.getStats().getTotalTimeCredits());
+				assertEquals(0, n.billPendingRentals().getBilledRentals());
+			} catch (Exception e) {
+				throw new AssertionError(e);
+			}
+		});
+	}
+}
@@ -0,0 +1,92 @@
+package core.test.junit.ridePlan;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import core.Network;
+import core.bike.InvalidBikeTypeException;
+import core.card.CardVisitorFactory;
+import core.card.InvalidCardTypeException;
+import core.ridePlan.FastestPlan;
+import core.ridePlan.NoValidStationFoundException;
+import core.ridePlan.RidePlan;
+import core.user.User;
+import utils.Point;
+
+/**
+ * Compare the pruned search of the fastest plan with the exhaustive search over
+ * all pairs of stations: both should always give the same ride plan.
+ *
+ * @author animato
+ *
+ */
+public class FastestPlanComparisonTest {
+
+	static Network n;
+	static User bob;
+	static Random random = new Random(7);
+
+	@BeforeClass
+	public static void initialize() throws InvalidCardTypeException {
+		n = new Network("RandomNetwork", 400, 4, 10, 0.4, 0.3, 0.5, LocalDateTime.now());
+		// a few stations are offline
+		for (int id : n.getStationIds()) {
+			if (random.nextInt(10) == 0) {
+				n.setOffline(id);
+			}
+		}
+		bob = new User("bob", new Point(0, 0), new CardVisitorFactory().createCard("NO_CARD"));
+		n.addUser(bob);
+	}
+
+	/**
+	 * The pruned search should find the same stations as the exhaustive one, for
+	 * random trips and both types of bikes
+	 */
+	@Test
+	public void prunedSearchShouldMatchExhaustiveSearch()
+			throws InvalidBikeTypeException, NoValidStationFoundException {
+		FastestPlan pruned = new FastestPlan();
+		FastestPlan exhaustive = new FastestPlan(true);
+		String[] bikeTypes = { "MECH", "ELEC" };
+
+		for (int i = 0; i < 100; i++) {
+			Point source = new Point(random.nextDouble() * 10, random.nextDouble() * 10);
+			Point destination = new Point(random.nextDouble() * 10, random.nextDouble() * 10);
+			for (String bikeType : bikeTypes) {
+				RidePlan expected = exhaustive.planRide(source, destination, bob, bikeType, n);
+				RidePlan actual = pruned.planRide(source, destination, bob, bikeType, n);
+				assertEquals(expected.getSourceStation(), actual.getSourceStation());
+				assertEquals(expected.getDestinationStation(), actual.getDestinationStation());
+				assertTrue(expected.equals(actual));
+			}
+		}
+	}
+
+	/**
+	 * Both searches should fail when no valid pair of stations exists
+	 */
+	@Test
+	public void whenNoStationIsValidThenBothSearchesThrowException() throws InvalidBikeTypeException {
+		Network empty = new Network("EmptyNetwork", 5, 2, 4, 0, 0, 0, LocalDateTime.now());
+		Point source = new Point(1, 1);
+		Point destination = new Point(3, 3);
+		try {
+			new FastestPlan(true).planRide(source, destination, bob, "MECH", empty);
+			fail("NoValidStationFoundException should have been thrown");
+		} catch (NoValidStationFoundException e) {
+			assertTrue(true);
+		}
+		try {
+			new FastestPlan().planRide(source, destination, bob, "MECH", empty);
+			fail("NoValidStationFoundException should have been thrown");
+		} catch (NoValidStationFoundException e) {
+			assertTrue(true);
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package core.test.junit.ridePlan;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import core.Network;
+import core.bike.Bike;
+import core.bike.BikeFactory;
+import core.ridePlan.AvoidPlusPlan;
+import core.ridePlan.FastestPlan;
+import core.ridePlan.NoValidStationFoundException;
+import core.ridePlan.PreferPlusPlan;
+import core.ridePlan.PreserveUniformityPlan;
+import core.ridePlan.RidePlan;
+import core.ridePlan.RidePlanCache;
+import core.ridePlan.RidePlanStrategy;
+import core.ridePlan.ShortestPlan;
+import core.simulation.CityTraffic;
+import core.station.Station;
+import core.user.User;
+import utils.IDScope;
+import utils.Point;
+
+/**
+ * Test the cache of the ride plans: hits within the same cells, invalidation
+ * when a station the plan depends on changes, and eviction of the least
+ * recently used plans
+ *
+ * @author animato
+ *
+ */
+public class RidePlanCacheTest {
+	private static final LocalDateTime START = LocalDateTime.of(2018, 5, 1, 0, 0);
+	private static final double CELL_SIZE = 0.1;
+
+	/**
+	 * A network of 10 km with a station near each end of a trip from (1, 1) to
+	 * (1, 9), another station a bit further from each end, and one far from the
+	 * trip
+	 */
+	private static Network createNetwork() throws Exception {
+		Network n = new Network("CacheCity", 0, 10, 10, 0, 0, 0, START);
+		n.addStation("STANDARD", 1.2, 1.2, 2, true);
+		n.addStation("STANDARD", 0.5, 0.5, 2, true);
+		n.addStation("STANDARD", 1.2, 8.8, 2, true);
+		n.addStation("STANDARD", 0.5, 9.5, 2, true);
+		n.addStation("STANDARD", 9, 5, 2, true);
+		BikeFactory bikeFactory = new BikeFactory();
+		for (Station s : n.getStations().values()) {
+			if (s.getCoordinates().getY() < 2)
+				s.addBike(bikeFactory.createBike("MECH"), START);
+		}
+		n.addUser("bob", "NO_CARD");
+		n.setRidePlanCache(new RidePlanCache(CELL_SIZE, 100));
+		return n;
+	}
+
+	private static Station stationAt(Network n, double x, double y) {
+		for (Station s : n.getStations().values()) {
+			if (s.getCoordinates().equals(new Point(x, y)))
+				return s;
+		}
+		throw new AssertionError("No station at " + x + ", " + y);
+	}
+
+	private static User user(Network n) {
+		return n.getUsers().values().iterator().next();
+	}
+
+	private static RidePlan plan(Network n, double x, double y) throws Exception {
+		return n.createRidePlan(new Point(x, y), new Point(x, 10 - y), user(n), "SHORTEST", "MECH");
+	}
+
+	/**
+	 * Rides between the same cells should get the same stations from the cache,
+	 * with their own source and destination
+	 */
+	@Test
+	public void ridesBetweenTheSameCellsShouldHitTheCache() {
+		IDScope.run(() -> {
+			try {
+				Network n = createNetwork();
+				RidePlanCache cache = n.getRidePlanCache();
+				RidePlan first = plan(n, 1.01, 1.02);
+				RidePlan second = plan(n, 1.08, 1.03);
+				assertEquals(1, cache.getMisses());
+				assertEquals(1, cache.getHits());
+				assertEquals(0.5, cache.getHitRate(), 0);
+				assertEquals(new Point(1.08, 1.03), second.getSource());
+				assertEquals(new Point(1.08, 10 - 1.03), second.getDestination());
+				assertEquals(stationAt(n, 1.2, 1.2), second.getSourceStation());
+				assertEquals(stationAt(n, 1.2, 8.8), second.getDestinationStation());
+				assertEquals(first.getSourceStation(), second.getSourceStation());
+
+				// another cell, another policy or another type of bike is another entry
+				plan(n, 1.18, 1.02);
+				n.createRidePlan(new Point(1.01, 1.02), new Point(1.01, 8.98), user(n), "AVOID_PLUS", "MECH");
+				assertEquals(3, cache.getMisses());
+				assertEquals(3, cache.size());
+			} catch (Exception e) {
+				throw new AssertionError(e);
+			}
+		});
+	}
+
+	/**
+	 * A plan should be computed again when one of its stations goes offline,
+	 * loses its last bike or becomes full, but not when a station far from the
+	 * trip changes
+	 */
+	@Test
+	public void plansShouldBeInvalidatedByTheStationsTheyDependOn() {
+		IDScope.run(() -> {
+			try {
+				Network n = createNetwork();
+				RidePlanCache cache = n.getRidePlanCache();
+				Station source = stationAt(n, 1.2, 1.2), otherSource = stationAt(n, 0.5, 0.5);
+				Station destination = stationAt(n, 1.2, 8.8), otherDestination = stationAt(n, 0.5, 9.5);
+				plan(n, 1.01, 1.02);
+
+				// a station far from the trip
+				stationAt(n, 9, 5).setOnline(false);
+				plan(n, 1.01, 1.02);
+				assertEquals(1, cache.getHits());
+				assertEquals(0, cache.getInvalidations());
+
+				source.setOnline(false);
+				assertEquals(otherSource, plan(n, 1.01, 1.02).getSourceStation());
+				assertEquals(1, cache.getInvalidations());
+				source.setOnline(true);
+				assertEquals(source, plan(n, 1.01, 1.02).getSourceStation());
+				assertEquals(2, cache.getInvalidations());
+
+				// the source loses its last bike
+				Bike bike = source.rentBike("MECH", START);
+				assertEquals(otherSource, plan(n, 1.01, 1.02).getSourceStation());
+				assertEquals(3, cache.getInvalidations());
+
+				// the destination becomes full
+				destination.addBike(bike, START);
+				destination.addBike(new BikeFactory().createBike("MECH"), START);
+				assertEquals(otherDestination, plan(n, 1.01, 1.02).getDestinationStation());
+				assertEquals(4, cache.getInvalidations());
+				assertEquals(1, cache.getHits());
+			} catch (Exception e) {
+				throw new AssertionError(e);
+			}
+		});
+	}
+
+	/**
+	 * The cache should keep at most its capacity, evicting the least recently
+	 * used plans, and a new station should put all the plans out of date
+	 */
+	@Test
+	public void leastRecentlyUsedPlansShouldBeEvicted() {
+		IDScope.run(() -> {
+			try {
+				Network n = createNetwork();
+				RidePlanCache cache = new RidePlanCache(CELL_SIZE, 2);
+				n.setRidePlanCache(cache);
+				plan(n, 1.01, 1.02);
+				plan(n, 1.11, 1.02);
+				plan(n, 1.01, 1.02);
+				plan(n, 1.21, 1.02);
+				assertEquals(2, cache.size());
+				assertEquals(1, cache.getEvictions());
+				// the plan used recently is kept, the other one was evicted
+				plan(n, 1.01, 1.02);
+				assertEquals(2, cache.getHits());
+				plan(n, 1.11, 1.02);
+				assertEquals(4, cache.getMisses());
+				assertEquals(2, cache.getEvictions());
+
+				n.addStation("STANDARD", 1.05, 1.05, 2, true);
+				plan(n, 1.01, 1.02);
+				assertEquals(1, cache.getInvalidations());
+			} catch (Exception e) {
+				throw new AssertionError(e);
+			}
+		});
+	}
+
+	/**
+	 * While the stations of a city change, the plans given by the cache should
+	 * always be the plans computed for the centers of the cells
+	 */
+	@Test
+	public void cachedPlansShouldMatchComputedPlans() {
+		IDScope.run(() -> {
+			try {
+				Random random = new Random(7);
+				Network n = CityTraffic.createNetwork("CacheCity", 40, 6, 4, 0.5, 0.3, 0.4, START, random);
+				n.addUser("carol", "VLIBRE_CARD");
+				RidePlanCache cache = new RidePlanCache(CELL_SIZE, 50);
+				n.setRidePlanCache(cache);
+				String[] policies = { "SHORTEST", "FASTEST", "AVOID_PLUS", "PREFER_PLUS", "PRESERVE_UNIFORMITY" };
+				RidePlanStrategy[] strategies = { new ShortestPlan(), new FastestPlan(), new AvoidPlusPlan(),
+						new PreferPlusPlan(), new PreserveUniformityPlan() };
+				// a few cells, so that the plans are asked again
+				Point[] places = new Point[8];
+				for (int i = 0; i < places.length; i++)
+					places[i] = new Point(random.nextDouble() * 4, random.nextDouble() * 4);
+				ArrayList<Station> stations = new ArrayList<Station>(n.getStations().values());
+				ArrayList<Bike> rentedBikes = new ArrayList<Bike>();
+
+				for (int step = 0; step < 3000; step++) {
+					// change a station
+					Station s = stations.get(random.nextInt(stations.size()));
+					int change = random.nextInt(10);
+					if (change == 0) {
+						s.setOnline(!s.getOnline());
+					} else if (change < 5 && s.getOnline() && s.getNumberOfBikes("MECH") + s.getNumberOfBikes("ELEC") > 0) {
+						rentedBikes.add(s.rentBike(s.getNumberOfBikes("MECH") > 0 ? "MECH" : "ELEC", START));
+					} else if (!rentedBikes.isEmpty() && s.getOnline() && !s.isFull()) {
+						s.addBike(rentedBikes.remove(rentedBikes.size() - 1), START);
+					}
+
+					// ask a plan, with a little noise within the cells
+					int policy = random.nextInt(policies.length);
+					String bikeType = random.nextBoolean() ? "MECH" : "ELEC";
+					Point source = jitter(places[random.nextInt(places.length)], random);
+					Point destination = jitter(places[random.nextInt(places.length)], random);
+					RidePlan expected;
+					try {
+						expected = strategies[policy].planRide(center(source), center(destination), user(n), bikeType,
+								n);
+					} catch (NoValidStationFoundException e) {
+						continue;
+					}
+					RidePlan cached = n.createRidePlan(source, destination, user(n), policies[policy], bikeType);
+					assertEquals(expected.getSourceStation(), cached.getSourceStation());
+					assertEquals(expected.getDestinationStation(), cached.getDestinationStation());
+				}
+				assertTrue(cache.getHits() > 0);
+				assertTrue(cache.getInvalidations() > 0);
+				assertTrue(cache.size() <= 50);
+			} catch (Exception e) {
+				throw new AssertionError(e);
+			}
+		});
+	}
+
+	private static Point jitter(Point p, Random random) {
+		Point cell = center(p);
+		return new Point(cell.getX() + (random.nextDouble() - 0.5) * CELL_SIZE * 0.9,
+				cell.getY() + (random.nextDouble() - 0.5) * CELL_SIZE * 0.9);
+	}
+
+	private static Point center(Point p) {
+		return new Point((Math.floor(p.getX() / CELL_SIZE) + 0.5) * CELL_SIZE,
+				(Math.floor(p.getY() / CELL_SIZE) + 0.5) * CELL_SIZE);
+	}
+}
@@ -0,0 +1,113 @@
+package core.test.junit.ridePlan;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import core.ridePlan.StationGrid;
+import core.station.InvalidStationTypeException;
+import core.station.Station;
+import core.station.StationFactory;
+import utils.Point;
+
+/**
+ * Test the spatial index of stations used by the ride plan strategies. The
+ * results are compared to a scan over all stations.
+ *
+ * @author animato
+ *
+ */
+public class StationGridTest {
+
+	static StationGrid grid = new StationGrid(10);
+	static ArrayList<Station> stations = new ArrayList<Station>();
+	static Random random = new Random(42);
+
+	@BeforeClass
+	public static void initialize() throws InvalidStationTypeException {
+		StationFactory stationFactory = new StationFactory();
+		// some stations are outside of the area covered by the grid
+		for (int i = 0; i < 500; i++) {
+			Point p = new Point(random.nextDouble() * 12 - 1, random.nextDouble() * 12 - 1);
+			Station s = stationFactory.createStation(i % 3 == 0 ? "PLUS" : "STANDARD", 1, p, true);
+			stations.add(s);
+			grid.add(s);
+		}
+	}
+
+	@Test
+	public void testSize() {
+		assertEquals(500, grid.size());
+		assertEquals(500, grid.getStations().size());
+	}
+
+	/**
+	 * The nearest station found should be the one found by scanning all stations
+	 */
+	@Test
+	public void findNearestShouldMatchFullScan() {
+		for (int i = 0; i < 200; i++) {
+			Point p = new Point(random.nextDouble() * 14 - 2, random.nextDouble() * 14 - 2);
+			Station expected = null;
+			double minimumDistance = Double.MAX_VALUE;
+			for (Station s : stations) {
+				if (s.getId() % 3 != 0)
+					continue;
+				if (s.getCoordinates().distance(p) < minimumDistance) {
+					minimumDistance = s.getCoordinates().distance(p);
+					expected = s;
+				}
+			}
+			assertEquals(expected, grid.findNearest(p, s -> s.getId() % 3 == 0));
+		}
+	}
+
+	/**
+	 * No station should be found when none is closer than the maximum distance
+	 */
+	@Test
+	public void whenNoStationIsCloseEnoughThenReturnNull() {
+		Point p = new Point(5, 5);
+		Station nearest = grid.findNearest(p, s -> true);
+		double distance = nearest.getCoordinates().distance(p);
+		assertNull(grid.findNearest(p, distance, s -> true));
+		assertEquals(nearest, grid.findNearest(p, distance * 1.01, s -> true));
+		assertNull(grid.findNearest(p, s -> false));
+	}
+
+	/**
+	 * The stations within a distance should be the ones found by scanning all
+	 * stations, ordered by id
+	 */
+	@Test
+	public void getStationsWithinShouldMatchFullScan() {
+		for (int i = 0; i < 50; i++) {
+			Point p = new Point(random.nextDouble() * 10, random.nextDouble() * 10);
+			double radius = random.nextDouble() * 3;
+			ArrayList<Station> expected = new ArrayList<Station>();
+			for (Station s : stations) {
+				if (s.getCoordinates().distance(p) <= radius)
+					expected.add(s);
+			}
+			assertEquals(expected, grid.getStationsWithin(p, radius));
+		}
+	}
+
+	/**
+	 * Removed stations should not be found anymore
+	 */
+	@Test
+	public void testRemove() throws InvalidStationTypeException {
+		StationGrid smallGrid = new StationGrid(4);
+		Station s = new StationFactory().createStation("STANDARD", 1, new Point(1, 1), true);
+		smallGrid.add(s);
+		assertEquals(s, smallGrid.findNearest(new Point(0, 0), station -> true));
+		assertTrue(smallGrid.remove(s));
+		assertFalse(smallGrid.remove(s));
+		assertNull(smallGrid.findNearest(new Point(0, 0), station -> true));
+	}
+}
@@ -0,0 +1,139 @@
+package core.test.junit.simulation;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import core.Network;
+import core.simulation.CityTraffic;
+import core.simulation.EventSimulation;
+import core.simulation.TrafficReport;
+import core.station.Station;
+import core.user.User;
+import utils.IDScope;
+
+/**
+ * Test the discrete-event simulation engine and the simulated city traffic
+ *
+ * @author animato
+ *
+ */
+public class EventSimulationTest {
+	private static final LocalDateTime START = LocalDateTime.of(2018, 4, 1, 0, 0);
+
+	/**
+	 * Result of a simulated day: the report, then the rentals and returns of each
+	 * station
+	 */
+	private static class Day {
+		TrafficReport report;
+		List<Integer> stationUses = new ArrayList<Integer>();
+		int bikesBefore, bikesAfter, rides;
+	}
+
+	private static int countBikes(Network n) {
+		int bikes = 0;
+		for (Station s : n.getStations().values()) {
+			bikes += s.getNumberOfBikes("MECH") + s.getNumberOfBikes("ELEC");
+		}
+		for (User u : n.getUsers().values()) {
+			if (u.getBikeRental() != null)
+				bikes++;
+		}
+		return bikes;
+	}
+
+	private static Day simulateDay(long seed) {
+		Day day = new Day();
+		// fresh ids, so that both runs give the same ids to the stations and users
+		IDScope.run(() -> {
+			Random random = new Random(seed);
+			Network n = CityTraffic.createNetwork("SimCity", 40, 10, 5, 0.6, 0.3, 0.4, START, random);
+			day.bikesBefore = countBikes(n);
+			day.report = new CityTraffic(n, seed, "SHORTEST", 0.4, 4, 1, 30).run(300, START.plusDays(1));
+			day.bikesAfter = countBikes(n);
+			for (int id : n.getStationIds()) {
+				Station s = n.getStations().get(id);
+				day.stationUses.add(s.getStats().getTotalRentals());
+				day.stationUses.add(s.getStats().getTotalReturns());
+			}
+			for (User u : n.getUsers().values()) {
+				day.rides += u.getStats().getTotalRides();
+			}
+		});
+		return day;
+	}
+
+	/**
+	 * Events should fire in time order, and in scheduling order at the same time
+	 */
+	@Test
+	public void eventsShouldFireInTimeOrder() {
+		EventSimulation simulation = new EventSimulation(START);
+		List<String> fired = new ArrayList<String>();
+		simulation.schedule(120, s -> fired.add("c"));
+		simulation.schedule(60, s -> {
+			fired.add("a");
+			s.schedule(0, t -> fired.add("b"));
+		});
+		simulation.schedule(START.plusMinutes(1), s -> fired.add("a2"));
+		simulation.schedule(3600, s -> fired.add("late"));
+
+		assertEquals(4, simulation.runUntil(START.plusMinutes(30)));
+		assertEquals("[a, a2, b, c]", fired.toString());
+		assertEquals(START.plusMinutes(30), simulation.getDate());
+		assertEquals(1, simulation.getPendingEvents());
+
+		assertEquals(1, simulation.runUntil(START.plusDays(1)));
+		assertEquals(5, simulation.getFiredEvents());
+	}
+
+	/**
+	 * An event cannot be scheduled before the current time
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void eventsShouldNotBeScheduledInThePast() {
+		EventSimulation simulation = new EventSimulation(START);
+		simulation.runUntil(START.plusHours(1));
+		simulation.schedule(START, s -> fail());
+	}
+
+	/**
+	 * A simulated day should keep the bikes, and its counts should match the
+	 * statistics of the network
+	 */
+	@Test
+	public void simulatedDayShouldMatchTheNetwork() {
+		Day day = simulateDay(42);
+		TrafficReport report = day.report;
+
+		assertEquals(24 * 3600, report.getSimulatedTime());
+		assertEquals(day.bikesBefore, day.bikesAfter);
+		assertTrue(report.getCompletedTrips() > 0);
+		assertTrue(report.getOutages() > 0);
+		assertEquals(report.getCompletedTrips(), day.rides);
+		assertTrue(report.getCompletedTrips() + report.getFailedRentals() <= report.getPlannedRides());
+		int returns = 0;
+		for (int i = 1; i < day.stationUses.size(); i += 2) {
+			returns += day.stationUses.get(i);
+		}
+		assertEquals(report.getCompletedTrips(), returns);
+	}
+
+	/**
+	 * The same seed should give the same day
+	 */
+	@Test
+	public void sameSeedShouldGiveTheSameDay() {
+		Day first = simulateDay(7);
+		Day second = simulateDay(7);
+
+		assertTrue(first.report.sameOutcome(second.report));
+		assertEquals(first.stationUses, second.stationUses);
+	}
+}
@@ -0,0 +1,130 @@
+package core.test.junit.simulation;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import core.Network;
+import core.journal.NetworkJournal;
+import core.simulation.HotspotTrips;
+import core.simulation.LatencyHistogram;
+import core.simulation.LoadReport;
+import core.simulation.LoadSimulator;
+import core.simulation.UniformTrips;
+import core.station.Station;
+import core.user.User;
+
+/**
+ * Test the load simulation of the rental path
+ * 
+ * @author animato
+ *
+ */
+public class LoadSimulatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static int countBikes(Network n) {
+		int bikes = 0;
+		for (Station s : n.getStations().values()) {
+			bikes += s.getNumberOfBikes("MECH") + s.getNumberOfBikes("ELEC");
+		}
+		for (User u : n.getUsers().values()) {
+			if (u.getBikeRental() != null)
+				bikes++;
+		}
+		return bikes;
+	}
+
+	/**
+	 * Every call should be measured, and no bike should be lost or created
+	 */
+	@Test
+	public void simulationShouldKeepTheBikesAndCountEveryCall() throws InterruptedException {
+		Network n = new Network("LoadNetwork", 30, 10, 10, 0.5, 0.3, 0.5, LocalDateTime.now());
+		int bikes = countBikes(n);
+		LoadReport report = new LoadSimulator(n, 4).run(2000, 3, new HotspotTrips(1.2, 0.5, 20));
+
+		assertEquals(bikes, countBikes(n));
+		assertEquals(2000, report.getNumberOfUsers());
+		assertEquals(2000 * 3, report.getRentLatencies().getTotalCount());
+		assertEquals(2000 * 3 - report.getFailedRentals(), report.getCompletedTrips());
+		assertEquals(report.getCompletedTrips() + report.getFailedReturns(),
+				report.getReturnLatencies().getTotalCount());
+		assertTrue(report.getThroughput() > 0);
+		int rides = 0;
+		for (User u : n.getUsers().values()) {
+			rides += u.getStats().getTotalRides();
+		}
+		assertEquals(report.getCompletedTrips(), rides);
+	}
+
+	/**
+	 * Workers blocked on a station should be counted, and sampled as blocked on
+	 * a station monitor. The station is held by the test while the trips start
+	 * (a network with a journal locks the station of a rental).
+	 */
+	@Test
+	public void workersBlockedOnAStationShouldBeReported() throws Exception {
+		Network n = new Network("BlockedNetwork", 0, 0, 10, 0, 0, 0, LocalDateTime.now());
+		n.addStation("STANDARD", 5, 5, 50, true);
+		Station station = n.getStations().values().iterator().next();
+		NetworkJournal.create(folder.newFile("blocked.journal").toPath(), n);
+		AtomicReference<LoadReport> report = new AtomicReference<LoadReport>();
+		Thread simulation = new Thread(() -> {
+			try {
+				report.set(new LoadSimulator(n, 4).run(20, 2, new UniformTrips(0.5, 10)));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		synchronized (station) {
+			simulation.start();
+			// long enough for the 4 workers to block, and to be sampled
+			Thread.sleep(300);
+		}
+		simulation.join();
+		n.closeJournal();
+
+		assertEquals(40, report.get().getRentLatencies().getTotalCount());
+		assertTrue(report.get().getBlockedCount() >= 4);
+		assertTrue(report.get().getStationMonitorSamples() > 0);
+		assertTrue(report.get().toString().contains("station monitors"));
+	}
+
+	@Test
+	public void uniformTripsShouldSucceedWhenBikesAreAvailable() throws InterruptedException {
+		Network n = new Network("UniformLoadNetwork", 20, 10, 10, 0.5, 0.3, 0.5, LocalDateTime.now());
+		LoadReport report = new LoadSimulator(n, 2).run(10, 4, new UniformTrips(0.5, 10));
+		// there is always room for 10 bikes: every rented bike is returned
+		assertEquals(40, report.getCompletedTrips() + report.getFailedRentals());
+		assertTrue(report.getCompletedTrips() > 0);
+	}
+
+	@Test
+	public void percentilesShouldBeWithinTheBucketPrecision() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (int i = 1; i <= 100000; i++) {
+			h.record(i);
+		}
+		assertEquals(100000, h.getTotalCount());
+		assertEquals(100000, h.getMax());
+		assertEquals(50000, h.getPercentile(0.5), 50000 / 16.0);
+		assertEquals(99000, h.getPercentile(0.99), 99000 / 16.0);
+		assertTrue(h.getPercentile(0.5) <= 50000);
+		assertEquals(1, h.getPercentile(0));
+
+		LatencyHistogram other = new LatencyHistogram();
+		other.record(200000);
+		other.add(h);
+		assertEquals(100001, other.getTotalCount());
+		assertEquals(200000, other.getMax());
+		assertEquals(h.getPercentile(0.5), other.getPercentile(0.5));
+	}
+}
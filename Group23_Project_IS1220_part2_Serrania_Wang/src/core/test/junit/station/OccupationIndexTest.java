@@ -0,0 +1,133 @@
+package core.test.junit.station;
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import core.bike.BikeFactory;
+import core.bike.InvalidBikeTypeException;
+import core.station.InvalidStationTypeException;
+import core.station.InvalidTimeSpanException;
+import core.station.OccupationIndex;
+import core.station.OccupiedParkingSlotException;
+import core.station.ParkingSlot;
+import core.station.Station;
+import core.station.StationFactory;
+import utils.DateParser;
+import utils.Point;
+
+/**
+ * Test the occupation index of stations, which answers occupation queries with
+ * prefix sums
+ * 
+ * @author matto
+ *
+ */
+public class OccupationIndexTest {
+
+	@Test
+	public void testGetOccupiedTime() {
+		OccupationIndex index = new OccupationIndex();
+		index.change(100, 1);
+		index.change(200, 2);
+		index.change(300, -3);
+
+		assertEquals(0, index.getOccupiedTime(0, 100));
+		assertEquals(100 + 300, index.getOccupiedTime(0, 300));
+		assertEquals(50 + 150, index.getOccupiedTime(150, 250));
+		assertEquals(0, index.getOccupiedTime(300, 1000));
+		assertEquals(0, index.getLevel());
+	}
+
+	/**
+	 * When changes are not recorded in chronological order, the index cannot be
+	 * used
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void whenChangesAreNotChronologicalThenThrowException() {
+		OccupationIndex index = new OccupationIndex();
+		index.change(200, 1);
+		index.change(100, -1);
+		assertFalse(index.isChronological());
+		index.getOccupiedTime(0, 300);
+	}
+
+	/**
+	 * The occupation rate of a station given by its index should be the mean of
+	 * the occupation times of its slots
+	 */
+	@Test
+	public void stationIndexShouldMatchParkingSlots() throws InvalidStationTypeException, InvalidBikeTypeException,
+			OccupiedParkingSlotException, InvalidTimeSpanException {
+		Random random = new Random(3);
+		BikeFactory bikeFactory = new BikeFactory();
+		Station station = new StationFactory().createStation("STANDARD", 5, new Point(0, 0), true);
+		LocalDateTime date = DateParser.parse("01/01/2000T08:00:00");
+
+		for (int i = 0; i < 500; i++) {
+			date = date.plusSeconds(random.nextInt(600));
+			ParkingSlot ps = station.getParkingSlots().get(random.nextInt(5));
+			switch (random.nextInt(3)) {
+			case 0:
+				if (ps.isWorking() && !ps.hasBike())
+					ps.setBike(bikeFactory.createBike("MECH"), date);
+				break;
+			case 1:
+				if (ps.isWorking())
+					ps.emptyBike(date);
+				break;
+			default:
+				ps.setWorking(!ps.isWorking(), date);
+			}
+		}
+		assertTrue(station.getOccupationIndex().isChronological());
+
+		for (int i = 0; i < 50; i++) {
+			LocalDateTime start = DateParser.parse("01/01/2000T07:00:00").plusSeconds(random.nextInt(100000));
+			LocalDateTime end = start.plusSeconds(1 + random.nextInt(100000));
+			double totalTimeOccupied = 0;
+			for (ParkingSlot ps : station.getParkingSlots()) {
+				totalTimeOccupied += ps.getOccupationTime(start, end);
+			}
+			double expected = totalTimeOccupied / (5 * (double) Duration.between(start, end).getSeconds());
+			assertEquals(expected, station.getStats().getOccupationRate(start, end), 1e-12);
+		}
+	}
+
+	/**
+	 * The occupation rate should be given while changes are recorded out of
+	 * order at the same time, by the index or by the parking slots
+	 */
+	@Test
+	public void occupationRateShouldBeGivenWhileChangesAreNotChronological() throws Exception {
+		final Station station = new StationFactory().createStation("STANDARD", 2, new Point(0, 0), true);
+		final OccupationIndex index = station.getOccupationIndex();
+		final AtomicBoolean running = new AtomicBoolean(true);
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				while (running.get()) {
+					// chronological, then recorded out of order
+					index.restore(new long[] { 100, 200 }, new int[] { 1, 0 }, 0, 2);
+					index.change(150, 1);
+				}
+			}
+		};
+		writer.start();
+		try {
+			LocalDateTime start = DateParser.parse("01/01/2000T07:00:00");
+			for (int i = 0; i < 200000; i++) {
+				double rate = station.getStats().getOccupationRate(start, start.plusHours(1));
+				assertTrue(rate >= 0);
+			}
+		} finally {
+			running.set(false);
+			writer.join();
+		}
+	}
+}
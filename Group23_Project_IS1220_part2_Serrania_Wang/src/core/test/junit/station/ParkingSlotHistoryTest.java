@@ -0,0 +1,84 @@
+package core.test.junit.station;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import core.station.ParkingSlotHistory;
+import core.station.ParkingSlotStatus;
+import core.station.ParkingSlotStatusName;
+import utils.DateParser;
+
+/**
+ * Test the compact history of the statuses of a parking slot
+ * 
+ * @author matto
+ *
+ */
+public class ParkingSlotHistoryTest {
+
+	/**
+	 * Occupied and out-of-order statuses count as occupied time, free statuses do
+	 * not
+	 */
+	@Test
+	public void testGetOccupationTime() {
+		ParkingSlotHistory history = new ParkingSlotHistory();
+		history.add(ParkingSlotStatusName.FREE, DateParser.parse("01/01/2000T08:00:00"));
+		history.add(ParkingSlotStatusName.OCCUPIED, DateParser.parse("01/01/2000T08:30:00"));
+		history.add(ParkingSlotStatusName.FREE, DateParser.parse("01/01/2000T09:00:00"));
+		history.add(ParkingSlotStatusName.OUT_OF_ORDER, DateParser.parse("01/01/2000T09:15:00"));
+
+		assertEquals(1800 + 2700, history.getOccupationTime(DateParser.parse("01/01/2000T08:00:00"),
+				DateParser.parse("01/01/2000T10:00:00")), 0);
+		assertEquals(600, history.getOccupationTime(DateParser.parse("01/01/2000T08:50:00"),
+				DateParser.parse("01/01/2000T09:05:00")), 0);
+		assertEquals(0, history.getOccupationTime(DateParser.parse("01/01/2000T08:00:00"),
+				DateParser.parse("01/01/2000T08:30:00")), 0);
+	}
+
+	/**
+	 * The history should grow past its initial capacity and keep all statuses
+	 */
+	@Test
+	public void testGrowth() {
+		ParkingSlotHistory history = new ParkingSlotHistory();
+		for (int i = 0; i < 100; i++) {
+			history.add(i % 2 == 0 ? ParkingSlotStatusName.OCCUPIED : ParkingSlotStatusName.FREE,
+					DateParser.parse("01/01/2000T08:00:00").plusMinutes(i));
+		}
+		assertEquals(100, history.size());
+		// 50 occupied minutes
+		assertEquals(3000, history.getOccupationTime(DateParser.parse("01/01/2000T08:00:00"),
+				DateParser.parse("01/01/2000T09:40:00")), 0);
+	}
+
+	/**
+	 * The list of statuses built from the history should chain the statuses
+	 */
+	@Test
+	public void testToStatusList() {
+		ParkingSlotHistory history = new ParkingSlotHistory();
+		history.add(ParkingSlotStatusName.FREE, DateParser.parse("01/01/2000T08:00:00"));
+		history.add(ParkingSlotStatusName.OCCUPIED, DateParser.parse("01/01/2000T08:30:00"));
+
+		ArrayList<ParkingSlotStatus> statuses = history.toStatusList();
+		assertEquals(2, statuses.size());
+		assertEquals(ParkingSlotStatusName.FREE, statuses.get(0).getStatusName());
+		assertEquals(DateParser.parse("01/01/2000T08:30:00"), statuses.get(0).getEndDate());
+		assertEquals(ParkingSlotStatusName.OCCUPIED, statuses.get(1).getStatusName());
+		assertNull(statuses.get(1).getEndDate());
+	}
+
+	/**
+	 * When the given dates are wrong, throw IllegalArgumentException
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void whenGivenTimesAreWrongThrowException() {
+		ParkingSlotHistory history = new ParkingSlotHistory();
+		history.add(ParkingSlotStatusName.FREE, DateParser.parse("01/01/2000T08:00:00"));
+		history.getOccupationTime(DateParser.parse("01/01/2000T09:00:00"), DateParser.parse("01/01/2000T08:00:00"));
+	}
+}
@@ -0,0 +1,57 @@
+package core.test.junit.station;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import core.station.SlotBitmap;
+
+/**
+ * Test the bitmap of parking slot indexes, compared to a BitSet
+ * 
+ * @author matto
+ *
+ */
+public class SlotBitmapTest {
+
+	@Test
+	public void bitmapShouldMatchBitSet() {
+		Random random = new Random(5);
+		SlotBitmap bitmap = new SlotBitmap(150);
+		BitSet expected = new BitSet(150);
+		for (int i = 0; i < 2000; i++) {
+			int index = random.nextInt(150);
+			if (random.nextBoolean()) {
+				bitmap.set(index);
+				expected.set(index);
+			} else {
+				bitmap.clear(index);
+				expected.clear(index);
+			}
+		}
+		assertEquals(expected.cardinality(), bitmap.cardinality());
+		for (int i = 0; i < 150; i++) {
+			assertEquals(expected.get(i), bitmap.get(i));
+			assertEquals(expected.nextSetBit(i), bitmap.nextSetBit(i));
+		}
+		assertEquals(-1, bitmap.nextSetBit(150));
+	}
+
+	@Test
+	public void testEmptyBitmap() {
+		assertEquals(-1, new SlotBitmap(0).nextSetBit(0));
+		SlotBitmap bitmap = new SlotBitmap(64);
+		assertEquals(-1, bitmap.nextSetBit(0));
+		bitmap.set(63);
+		assertEquals(63, bitmap.nextSetBit(0));
+		assertEquals(1, bitmap.cardinality());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void whenIndexIsOutOfBoundsThenThrowException() {
+		new SlotBitmap(10).set(10);
+	}
+}
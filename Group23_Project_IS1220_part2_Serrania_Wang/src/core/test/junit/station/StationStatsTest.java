@@ -2,6 +2,10 @@ package core.test.junit.station;
 
 import static org.junit.Assert.*;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -152,4 +156,29 @@ public class StationStatsTest {
 		assertTrue(stats.getTotalReturns() == 3);
 	}
 
+	/**
+	 * No rental or return should be lost when many threads count them
+	 */
+	@Test
+	public void concurrentIncrementsShouldNotBeLost() throws InvalidStationTypeException, InterruptedException {
+		final StationStats stats = stationFactory.createStation("STANDARD", 1, new Point(0, 0), true).getStats();
+		ExecutorService executor = Executors.newFixedThreadPool(32);
+		for (int t = 0; t < 32; t++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						stats.incrementTotalRentals();
+						stats.incrementTotalReturns();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		assertEquals(32000, stats.getTotalRentals());
+		assertEquals(32000, stats.getTotalReturns());
+		assertEquals(64000, stats.getTotalUses());
+	}
 }
@@ -2,9 +2,21 @@ package core.test.junit.station;
 
 import static org.junit.Assert.*;
 
+import java.time.LocalDateTime;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
+import core.bike.Bike;
+import core.bike.BikeFactory;
+import core.bike.InvalidBikeTypeException;
+import core.station.BikeNotFoundException;
 import core.station.InvalidStationTypeException;
+import core.station.OccupiedParkingSlotException;
+import core.station.OfflineStationException;
 import core.station.StandardStation;
 import core.station.Station;
 import core.station.StationFactory;
@@ -26,4 +38,92 @@ public class StationTest {
 		assertTrue(s3.equals(s3));
 	}
 
+	/**
+	 * The inventory counters of the station should follow the changes of its
+	 * parking slots
+	 */
+	@Test
+	public void testInventoryCounters() throws InvalidStationTypeException, InvalidBikeTypeException,
+			OccupiedParkingSlotException, BikeNotFoundException, OfflineStationException {
+		StationFactory stationFactory = new StationFactory();
+		BikeFactory bikeFactory = new BikeFactory();
+		LocalDateTime date = LocalDateTime.now();
+
+		Station s = stationFactory.createStation("STANDARD", 3, new Point(0, 0), true);
+		assertEquals(3, s.getNumberOfFreeParkingSlots());
+		assertEquals(0, s.getNumberOfBikes("MECH"));
+		assertFalse(s.hasCorrectBikeType("MECH"));
+
+		s.addBike(bikeFactory.createBike("MECH"), date);
+		s.addBike(bikeFactory.createBike("ELEC"), date);
+		assertEquals(1, s.getNumberOfFreeParkingSlots());
+		assertEquals(1, s.getNumberOfBikes("MECH"));
+		assertEquals(1, s.getNumberOfBikes("ELEC"));
+		assertTrue(s.hasCorrectBikeType("mech"));
+		assertFalse(s.isFull());
+
+		// A broken slot is neither free nor counted in the bikes
+		s.getParkingSlots().get(2).setWorking(false, date);
+		assertTrue(s.isFull());
+		s.getParkingSlots().get(0).setWorking(false, date);
+		assertEquals(0, s.getNumberOfBikes("MECH"));
+		assertFalse(s.hasCorrectBikeType("MECH"));
+		s.getParkingSlots().get(0).setWorking(true, date);
+		assertEquals(1, s.getNumberOfBikes("MECH"));
+
+		s.rentBike("ELEC", date);
+		assertEquals(0, s.getNumberOfBikes("ELEC"));
+		assertEquals(1, s.getNumberOfFreeParkingSlots());
+
+		s.getParkingSlots().get(0).emptyBike(date);
+		assertEquals(0, s.getNumberOfBikes("MECH"));
+		assertEquals(2, s.getNumberOfFreeParkingSlots());
+	}
+
+	/**
+	 * Concurrent rentals and returns at the same station should never lose or
+	 * duplicate a bike
+	 */
+	@Test
+	public void concurrentRentalsAndReturnsShouldKeepInventory() throws Exception {
+		StationFactory stationFactory = new StationFactory();
+		BikeFactory bikeFactory = new BikeFactory();
+		final LocalDateTime date = LocalDateTime.now();
+		final Station s = stationFactory.createStation("STANDARD", 100, new Point(0, 0), true);
+		for (int i = 0; i < 50; i++) {
+			s.addBike(bikeFactory.createBike("MECH"), date);
+		}
+
+		final AtomicInteger rentals = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 500; i++) {
+						try {
+							Bike b = s.rentBike("MECH", date);
+							rentals.incrementAndGet();
+							assertTrue(s.addBike(b, date));
+						} catch (BikeNotFoundException | OfflineStationException e) {
+							continue;
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		assertEquals(4000, rentals.get());
+		assertEquals(rentals.get(), s.getStats().getTotalRentals());
+		assertEquals(50, s.getNumberOfBikes("MECH"));
+		assertEquals(50, s.getNumberOfFreeParkingSlots());
+		int bikes = 0;
+		for (int i = 0; i < 100; i++) {
+			if (s.getParkingSlots().get(i).hasBike())
+				bikes++;
+		}
+		assertEquals(50, bikes);
+	}
 }
@@ -0,0 +1,139 @@
+package core.test.junit.station;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import core.station.InvalidStationTypeException;
+import core.station.Station;
+import core.station.StationFactory;
+import core.station.UsageLeaderboard;
+import core.station.stationSort.MostUsedSort;
+import utils.Point;
+
+/**
+ * Test the ranking of stations by usage, compared to a full sort
+ * 
+ * @author matto
+ *
+ */
+public class UsageLeaderboardTest {
+
+	private static ArrayList<Station> createStations(UsageLeaderboard leaderboard, int n)
+			throws InvalidStationTypeException {
+		StationFactory stationFactory = new StationFactory();
+		ArrayList<Station> stations = new ArrayList<Station>();
+		for (int i = 0; i < n; i++) {
+			Station s = stationFactory.createStation("STANDARD", 1, new Point(0, 0), true);
+			stations.add(s);
+			leaderboard.add(s);
+		}
+		return stations;
+	}
+
+	/**
+	 * The ranking should stay sorted when rentals and returns are counted
+	 */
+	@Test
+	public void rankingShouldMatchFullSort() throws Exception {
+		UsageLeaderboard leaderboard = new UsageLeaderboard();
+		ArrayList<Station> stations = createStations(leaderboard, 200);
+		Random random = new Random(11);
+		for (int i = 0; i < 3000; i++) {
+			Station s = stations.get(random.nextInt(stations.size()));
+			if (random.nextBoolean())
+				s.getStats().incrementTotalRentals();
+			else
+				s.getStats().incrementTotalReturns();
+		}
+
+		// stations are created by increasing id: the stable sort ranks equal usages by id
+		ArrayList<Station> expected = new MostUsedSort().sort(stations, null, null);
+		assertEquals(expected, leaderboard.getRanking());
+		assertEquals(new ArrayList<Station>(expected.subList(0, 10)), leaderboard.getTop(10));
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(i + 1, leaderboard.getRank(expected.get(i)));
+		}
+	}
+
+	/**
+	 * Removed stations should not be ranked anymore, nor updated
+	 */
+	@Test
+	public void testRemove() throws InvalidStationTypeException {
+		UsageLeaderboard leaderboard = new UsageLeaderboard();
+		ArrayList<Station> stations = createStations(leaderboard, 3);
+		stations.get(2).getStats().incrementTotalRentals();
+		assertEquals(1, leaderboard.getRank(stations.get(2)));
+
+		assertTrue(leaderboard.remove(stations.get(2)));
+		assertFalse(leaderboard.remove(stations.get(2)));
+		stations.get(2).getStats().incrementTotalRentals();
+		assertEquals(-1, leaderboard.getRank(stations.get(2)));
+		assertEquals(2, leaderboard.size());
+		assertEquals(0, leaderboard.getTop(0).size());
+	}
+
+	/**
+	 * The ranking should be right after rentals counted concurrently
+	 */
+	@Test
+	public void rankingShouldBeRightAfterConcurrentUpdates() throws Exception {
+		final UsageLeaderboard leaderboard = new UsageLeaderboard();
+		final ArrayList<Station> stations = createStations(leaderboard, 50);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			final int seed = t;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					for (int i = 0; i < 2000; i++) {
+						stations.get(random.nextInt(stations.size())).getStats().incrementTotalRentals();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		assertEquals(new MostUsedSort().sort(stations, null, null), leaderboard.getRanking());
+	}
+
+	/**
+	 * Rentals and returns should be counted while the ranking is locked, and be
+	 * ranked by the next query
+	 */
+	@Test
+	public void rentalsShouldNotWaitForTheRanking() throws Exception {
+		final UsageLeaderboard leaderboard = new UsageLeaderboard();
+		final ArrayList<Station> stations = createStations(leaderboard, 3);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> rentals;
+			synchronized (leaderboard) {
+				rentals = executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						stations.get(2).getStats().incrementTotalRentals();
+						stations.get(2).getStats().incrementTotalReturns();
+						stations.get(1).getStats().incrementTotalRentals();
+					}
+				});
+				rentals.get(10, TimeUnit.SECONDS);
+			}
+			assertEquals(1, leaderboard.getRank(stations.get(2)));
+			assertEquals(2, leaderboard.getRank(stations.get(1)));
+			assertEquals(new MostUsedSort().sort(stations, null, null), leaderboard.getRanking());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package core.test.junit.stationSort;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import core.station.InvalidStationTypeException;
+import core.station.InvalidTimeSpanException;
+import core.station.Station;
+import core.station.StationFactory;
+import core.station.stationSort.MostUsedSort;
+import core.station.stationSort.SortingStrategy;
+import utils.DateParser;
+import utils.Point;
+
+/**
+ * Test the sorting of stations by key: the full sort (sequential and parallel)
+ * and the selection of the first k stations
+ * 
+ * @author matto
+ *
+ */
+public class KeySortingStrategyTest {
+
+	static ArrayList<Station> stations = new ArrayList<Station>();
+	static SortingStrategy mostUsedSort = new MostUsedSort();
+	static LocalDateTime startDate = DateParser.parse("01/01/2000T00:00:00");
+	static LocalDateTime endDate = DateParser.parse("01/01/2000T01:00:00");
+
+	@BeforeClass
+	public static void initialize() throws InvalidStationTypeException {
+		Random random = new Random(3);
+		StationFactory stationFactory = new StationFactory();
+		// large enough to be sorted in parallel, with many equal keys
+		for (int i = 0; i < 12000; i++) {
+			Station s = stationFactory.createStation("STANDARD", 1, new Point(0, 0), true);
+			int uses = random.nextInt(50);
+			for (int j = 0; j < uses; j++) {
+				s.getStats().incrementTotalRentals();
+			}
+			stations.add(s);
+		}
+	}
+
+	/**
+	 * Sorts by selection, keeping the first of the stations with the same usage
+	 */
+	private static ArrayList<Station> selectionSort(ArrayList<Station> stations, int k) {
+		ArrayList<Station> remaining = new ArrayList<Station>(stations);
+		ArrayList<Station> sortedStations = new ArrayList<Station>();
+		while (sortedStations.size() < k && !remaining.isEmpty()) {
+			int best = 0;
+			for (int i = 1; i < remaining.size(); i++) {
+				if (remaining.get(i).getStats().getTotalRentals() > remaining.get(best).getStats().getTotalRentals())
+					best = i;
+			}
+			sortedStations.add(remaining.remove(best));
+		}
+		return sortedStations;
+	}
+
+	/**
+	 * The sort should be stable, for small lists and for large (parallel sorted)
+	 * lists
+	 */
+	@Test
+	public void sortShouldBeStable() throws InvalidTimeSpanException {
+		ArrayList<Station> small = new ArrayList<Station>(stations.subList(0, 300));
+		assertEquals(selectionSort(small, small.size()), mostUsedSort.sort(small, startDate, endDate));
+
+		ArrayList<Station> sortedStations = mostUsedSort.sort(stations, startDate, endDate);
+		assertEquals(stations.size(), sortedStations.size());
+		for (int i = 1; i < sortedStations.size(); i++) {
+			Station previous = sortedStations.get(i - 1);
+			Station current = sortedStations.get(i);
+			int previousUses = previous.getStats().getTotalRentals();
+			int currentUses = current.getStats().getTotalRentals();
+			assertTrue(previousUses >= currentUses);
+			if (previousUses == currentUses)
+				assertTrue(stations.indexOf(previous) < stations.indexOf(current));
+		}
+	}
+
+	/**
+	 * The first k stations should be the first k stations of the full sort
+	 */
+	@Test
+	public void sortTopShouldMatchFullSort() throws InvalidTimeSpanException {
+		ArrayList<Station> sortedStations = mostUsedSort.sort(stations, startDate, endDate);
+		int[] ks = { 0, 1, 5, 100, 11999, 12000, 20000 };
+		for (int k : ks) {
+			ArrayList<Station> expected = new ArrayList<Station>(
+					sortedStations.subList(0, Math.min(k, sortedStations.size())));
+			assertEquals(expected, mostUsedSort.sortTop(stations, k, startDate, endDate));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void whenKIsNegativeThenThrowException() throws InvalidTimeSpanException {
+		mostUsedSort.sortTop(stations, -1, startDate, endDate);
+	}
+}
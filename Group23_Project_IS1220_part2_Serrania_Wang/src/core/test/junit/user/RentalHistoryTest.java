@@ -0,0 +1,218 @@
+package core.test.junit.user;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import core.Network;
+import core.bike.Bike;
+import core.bike.BikeFactory;
+import core.bike.InvalidBikeTypeException;
+import core.card.CardVisitor;
+import core.card.CardVisitorFactory;
+import core.card.InvalidCardTypeException;
+import core.rentals.BikeRental;
+import core.simulation.CityTraffic;
+import core.user.RentalHistory;
+import core.user.User;
+import utils.IDScope;
+import utils.Point;
+
+/**
+ * Test the columnar history of the rentals of a user, and the queries on the
+ * histories of a network
+ *
+ * @author animato
+ *
+ */
+public class RentalHistoryTest {
+	private static final LocalDateTime START = LocalDateTime.of(2018, 1, 1, 0, 0);
+
+	private static Bike bike(String type) {
+		try {
+			return new BikeFactory().createBike(type);
+		} catch (InvalidBikeTypeException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static CardVisitor card(String type) {
+		try {
+			return new CardVisitorFactory().createCard(type);
+		} catch (InvalidCardTypeException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static BikeRental rental(Bike bike, LocalDateTime rentDate, int minutes, int station, double price) {
+		BikeRental rental = new BikeRental(bike, rentDate);
+		rental.setReturnDate(rentDate.plusMinutes(minutes));
+		rental.setRentStationId(station);
+		rental.setReturnStationId(station + 1);
+		rental.setPrice(price);
+		rental.setTimeCreditUsed(minutes % 7);
+		rental.setTimeCreditAdded(minutes % 2 == 0 ? 5 : 0);
+		return rental;
+	}
+
+	/**
+	 * Rentals spread over several chunks should be read back, and a period
+	 * should select exactly the rentals started in it
+	 */
+	@Test
+	public void selectShouldGiveTheRentalsOfAPeriod() {
+		IDScope.run(() -> {
+			Bike bike = bike("MECH");
+			RentalHistory history = new RentalHistory();
+			int rentals = 5 * RentalHistory.CHUNK_SIZE + 17;
+			int inMarch = 0;
+			double revenueOfMarch = 0;
+			LocalDateTime march = LocalDateTime.of(2018, 3, 1, 0, 0), april = march.plusMonths(1);
+			for (int i = 0; i < rentals; i++) {
+				// a rental every 8 hours, from January to June
+				LocalDateTime date = START.plusHours(8 * i);
+				history.add(rental(bike, date, i % 90, i % 10, i % 4));
+				if (!date.isBefore(march) && date.isBefore(april)) {
+					inMarch++;
+					revenueOfMarch += i % 4;
+				}
+			}
+			assertEquals(rentals, history.size());
+			int row = RentalHistory.CHUNK_SIZE + 3;
+			assertEquals(START.plusHours(8 * row), history.getRentDate(row));
+			assertEquals(START.plusHours(8 * row).plusMinutes(row % 90), history.getReturnDate(row));
+			assertEquals(row % 10, history.getRentStationId(row));
+			assertEquals(row % 10 + 1, history.getReturnStationId(row));
+			assertEquals(row % 4, history.getPrice(row), 0);
+			assertEquals(row % 90 % 7, history.getTimeCreditUsed(row));
+			assertEquals(bike.getId(), history.getBikeId(row));
+
+			RentalHistory trips = history.select(march, april);
+			assertEquals(inMarch, trips.size());
+			assertEquals(march, trips.getRentDate(0));
+			assertTrue(trips.getRentDate(inMarch - 1).isBefore(april));
+			assertEquals(revenueOfMarch, history.getRevenue(march, april), 1e-9);
+			assertEquals(0, history.select(april.plusYears(1), april.plusYears(2)).size());
+		});
+	}
+
+	/**
+	 * A history of a few rentals, and a user without rentals, should not hold
+	 * the arrays of a full chunk
+	 */
+	@Test
+	public void smallHistoriesShouldStaySmall() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+		Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported()
+				&& allocations.isThreadAllocatedMemoryEnabled());
+		long thread = Thread.currentThread().getId();
+		IDScope.run(() -> {
+			Bike bike = bike("MECH");
+			BikeRental[] rentals = new BikeRental[3];
+			for (int i = 0; i < rentals.length; i++)
+				rentals[i] = rental(bike, START.plusDays(i), 20, i, 1);
+			int n = 1000;
+			// the histories and users are kept, so that they are allocated
+			RentalHistory[] histories = new RentalHistory[n];
+			User[] users = new User[n];
+			CardVisitor card = card("VLIBRE_CARD");
+
+			long before = allocations.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < n; i++) {
+				histories[i] = new RentalHistory();
+				for (BikeRental rental : rentals)
+					histories[i].add(rental);
+			}
+			long perHistory = (allocations.getThreadAllocatedBytes(thread) - before) / n;
+
+			before = allocations.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < n; i++)
+				users[i] = new User(i, "user" + i, new Point(0, 0), card);
+			long perUser = (allocations.getThreadAllocatedBytes(thread) - before) / n;
+
+			// a full chunk holds CHUNK_SIZE rows of 44 bytes
+			assertTrue("A history of 3 rentals takes " + perHistory + " bytes", perHistory < 1024);
+			assertTrue("A user without rentals takes " + perUser + " bytes", perUser < 1024);
+			assertEquals(3, histories[n - 1].size());
+			assertEquals(START.plusDays(2), histories[n - 1].getRentDate(2));
+			assertEquals(n, users.length);
+		});
+	}
+
+	/**
+	 * The revenue of a station should be counted on the day of the rent
+	 */
+	@Test
+	public void revenueShouldBeCountedPerStationAndDay() {
+		IDScope.run(() -> {
+			Bike bike = bike("ELEC");
+			RentalHistory history = new RentalHistory();
+			history.add(rental(bike, START.plusHours(23), 120, 1, 4));
+			history.add(rental(bike, START.plusDays(1).plusHours(1), 10, 1, 2));
+			history.add(rental(bike, START.plusDays(1).plusHours(2), 10, 2, 1));
+			history.add(rental(bike, START.plusDays(5), 10, 2, 8));
+
+			HashMap<Integer, double[]> revenues = new HashMap<Integer, double[]>();
+			history.addRevenuePerStationPerDay(START.toLocalDate(), 3, revenues);
+			assertEquals(2, revenues.size());
+			assertArrayEquals(new double[] { 4, 2, 0 }, revenues.get(1), 0);
+			assertArrayEquals(new double[] { 0, 1, 0 }, revenues.get(2), 0);
+		});
+	}
+
+	/**
+	 * The returns of a simulated day should all be in the histories, with the
+	 * charges of the users, whether they are billed at return or in batch
+	 */
+	@Test
+	public void networkHistoriesShouldHoldTheBilledRentals() {
+		for (boolean deferred : new boolean[] { false, true }) {
+			IDScope.run(() -> {
+				Network n = CityTraffic.createNetwork("HistoryCity", 30, 10, 4, 0.6, 0.5, 0.4, START, new Random(3));
+				n.setDeferredBilling(deferred);
+				new CityTraffic(n, 3, "SHORTEST", 0.4, 6, 0, 30).run(200, START.plusDays(2));
+				if (deferred) {
+					for (User u : n.getUsers().values())
+						assertEquals(0, u.getHistory().size());
+					n.billPendingRentals();
+				}
+
+				double charges = 0;
+				int rides = 0;
+				for (User u : n.getUsers().values()) {
+					RentalHistory history = u.getHistory();
+					assertEquals(u.getStats().getTotalRides(), history.size());
+					assertEquals(u.getStats().getTotalCharges(), history.getRevenue(START, START.plusYears(1)), 1e-9);
+					for (int row = 0; row < history.size(); row++) {
+						assertNotNull(n.getStations().get(history.getRentStationId(row)));
+						assertNotNull(n.getStations().get(history.getReturnStationId(row)));
+					}
+					charges += u.getStats().getTotalCharges();
+					rides += history.size();
+				}
+				assertTrue(rides > 0);
+
+				HashMap<Integer, double[]> revenues = n.getRevenuePerStationPerDay(START.toLocalDate(),
+						LocalDate.of(2018, 1, 4));
+				double total = 0;
+				for (double[] days : revenues.values()) {
+					assertEquals(3, days.length);
+					assertEquals(0, days[2], 0);
+					for (double revenue : days)
+						total += revenue;
+				}
+				assertEquals(charges, total, 1e-9);
+			});
+		}
+	}
+}
@@ -1,7 +1,12 @@
 package core.test.junit.user;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 import core.user.UserStats;
 
@@ -55,4 +60,49 @@ public class UserStatsTest {
 		stats.addTotalTimeSpent(50);
 		assertTrue(stats.getTotalTimeSpent() == 50);
 	}
+
+	@Test
+	public void testSnapshot() {
+		stats.incrementTotalRides();
+		stats.addTotalCharges(2.5);
+		stats.addTotalTimeCredits(5);
+		stats.addTotalTimeSpent(30);
+		UserStats.Snapshot snapshot = stats.snapshot();
+		stats.incrementTotalRides();
+		assertTrue(snapshot.getTotalRides() == 1);
+		assertTrue(snapshot.getTotalCharges() == 2.5);
+		assertTrue(snapshot.getTotalTimeCredits() == 5);
+		assertTrue(snapshot.getTotalTimeSpent() == 30);
+		assertTrue(snapshot.toString().startsWith("Total number of rides: 1\n"));
+		assertTrue(stats.toString().startsWith("Total number of rides: 2\n"));
+	}
+
+	/**
+	 * No update should be lost when many threads update the statistics
+	 */
+	@Test
+	public void concurrentUpdatesShouldNotBeLost() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(32);
+		for (int t = 0; t < 32; t++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						stats.incrementTotalRides();
+						stats.addTotalCharges(0.5);
+						stats.addTotalTimeCredits(2);
+						stats.addTotalTimeSpent(3);
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+		UserStats.Snapshot snapshot = stats.snapshot();
+		assertEquals(32000, snapshot.getTotalRides());
+		assertEquals(16000, snapshot.getTotalCharges(), 0);
+		assertEquals(64000, snapshot.getTotalTimeCredits());
+		assertEquals(96000, snapshot.getTotalTimeSpent());
+	}
 }
@@ -0,0 +1,36 @@
+package core.test.scenarios;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import core.Network;
+import core.simulation.CityTraffic;
+import core.simulation.TrafficReport;
+import utils.DateParser;
+
+/**
+ * Discrete-event simulation of whole days of city traffic, with station
+ * outages. The same seed always gives the same days. <br>
+ * Arguments (all optional): number of users, number of days, seed, ride plan
+ * policy.
+ * 
+ * @author animato
+ *
+ */
+public class CityScenario {
+
+	public static void main(String[] args) {
+		int numberOfUsers = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int days = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 2018;
+		String policy = args.length > 3 ? args[3] : "FASTEST";
+
+		LocalDateTime start = DateParser.parse("01/01/2000T00:00:00");
+		Network n = CityTraffic.createNetwork("simVelib", 1000, 40, 20, 0.6, 0.3, 0.3, start, new Random(seed));
+		System.out.println("Simulating " + days + " day(s) of " + numberOfUsers + " users planning " + policy
+				+ " rides (seed " + seed + ")...");
+		TrafficReport report = new CityTraffic(n, seed, policy, 0.3, 4, 0.5, 45).run(numberOfUsers,
+				start.plusDays(days));
+		System.out.println(report);
+	}
+}
@@ -0,0 +1,34 @@
+package core.test.scenarios;
+
+import core.Network;
+import core.simulation.HotspotTrips;
+import core.simulation.LoadReport;
+import core.simulation.LoadSimulator;
+import utils.DateParser;
+
+/**
+ * Load simulation of the rental path: many users renting and returning bikes
+ * at the same time. <br>
+ * Arguments (all optional): number of users, number of threads, trips per
+ * user, Zipf exponent of the stations (0 for uniform trips).
+ * 
+ * @author animato
+ *
+ */
+public class LoadScenario {
+
+	public static void main(String[] args) throws InterruptedException {
+		int numberOfUsers = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int numberOfThreads = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		int tripsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		double exponent = args.length > 3 ? Double.parseDouble(args[3]) : 1;
+
+		Network n = new Network("loadVelib", 1000, 40, 20, 0.6, 0.3, 0.3, DateParser.parse("01/01/2000T00:00:00"));
+		System.out.println("Simulating " + numberOfUsers + " users making " + tripsPerUser + " trips each, on "
+				+ numberOfThreads + " threads (Zipf exponent " + exponent + ")...");
+		LoadReport report = new LoadSimulator(n, numberOfThreads).run(numberOfUsers, tripsPerUser,
+				new HotspotTrips(exponent, 0.3, 20));
+		System.out.println(report);
+	}
+}
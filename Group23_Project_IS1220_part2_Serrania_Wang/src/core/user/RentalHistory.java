@@ -0,0 +1,283 @@
+package core.user;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import core.rentals.BikeRental;
+
+/**
+ * History of the completed rentals of a user, stored by columns. <br>
+ * Each billed rental is a row: the bike, the stations of rent and return, the
+ * dates of rent and return (in seconds since the epoch, UTC), the price and the
+ * time credit used and added. The rows are kept in chunks of CHUNK_SIZE rows
+ * holding one primitive array per column: no object is kept per rental, and a
+ * query scans arrays. The arrays of a chunk start with INITIAL_CAPACITY rows
+ * and double until CHUNK_SIZE, so that the many users with a few rentals keep
+ * small histories. Each chunk knows the earliest and latest rent dates of its
+ * rows, so a query skips the chunks out of its range. <br>
+ * The rows are added in the order of the returns. The history is locked while
+ * a row is added or a query runs. A network rebuilt from its journal rebuilds
+ * the histories; snapshots only keep the statistics of the users.
+ *
+ * @see User
+ * @author animato
+ *
+ */
+public class RentalHistory {
+	public static final int CHUNK_SIZE = 256;
+	public static final int INITIAL_CAPACITY = 4;
+	private static final long SECONDS_PER_DAY = 24 * 3600;
+
+	private final ArrayList<Chunk> chunks = new ArrayList<Chunk>(1);
+	private int size;
+
+	/**
+	 * Up to CHUNK_SIZE rows of the history, one array per column. The arrays
+	 * grow with the rows, until they hold CHUNK_SIZE rows.
+	 */
+	private static final class Chunk {
+		int[] bikeIds = new int[INITIAL_CAPACITY];
+		int[] rentStationIds = new int[INITIAL_CAPACITY];
+		int[] returnStationIds = new int[INITIAL_CAPACITY];
+		long[] rentDates = new long[INITIAL_CAPACITY];
+		long[] returnDates = new long[INITIAL_CAPACITY];
+		double[] prices = new double[INITIAL_CAPACITY];
+		int[] timeCreditsUsed = new int[INITIAL_CAPACITY];
+		int[] timeCreditsAdded = new int[INITIAL_CAPACITY];
+		int size;
+		long firstRentDate = Long.MAX_VALUE;
+		long lastRentDate = Long.MIN_VALUE;
+
+		boolean overlaps(long from, long to) {
+			return size > 0 && firstRentDate < to && lastRentDate >= from;
+		}
+
+		int capacity() {
+			return bikeIds.length;
+		}
+
+		/**
+		 * Doubles the number of rows the arrays can hold (at most CHUNK_SIZE)
+		 */
+		void grow() {
+			int capacity = Math.min(2 * capacity(), CHUNK_SIZE);
+			bikeIds = Arrays.copyOf(bikeIds, capacity);
+			rentStationIds = Arrays.copyOf(rentStationIds, capacity);
+			returnStationIds = Arrays.copyOf(returnStationIds, capacity);
+			rentDates = Arrays.copyOf(rentDates, capacity);
+			returnDates = Arrays.copyOf(returnDates, capacity);
+			prices = Arrays.copyOf(prices, capacity);
+			timeCreditsUsed = Arrays.copyOf(timeCreditsUsed, capacity);
+			timeCreditsAdded = Arrays.copyOf(timeCreditsAdded, capacity);
+		}
+	}
+
+	// Constructor
+
+	public RentalHistory() {
+	}
+
+	// Core methods
+
+	/**
+	 * Adds a billed rental to the history
+	 *
+	 * @param rental
+	 *            the rental, with its return date and price
+	 * @throws IllegalArgumentException
+	 *             if the rental has no rent or return date
+	 */
+	public synchronized void add(BikeRental rental) throws IllegalArgumentException {
+		if (rental.getRentDate() == null || rental.getReturnDate() == null) {
+			throw new IllegalArgumentException("Only a returned rental can be added to the history: " + rental);
+		}
+		Chunk chunk = lastChunk();
+		int i = chunk.size;
+		long rentDate = epochSecond(rental.getRentDate());
+		chunk.bikeIds[i] = rental.getBike().getId();
+		chunk.rentStationIds[i] = rental.getRentStationId();
+		chunk.returnStationIds[i] = rental.getReturnStationId();
+		chunk.rentDates[i] = rentDate;
+		chunk.returnDates[i] = epochSecond(rental.getReturnDate());
+		chunk.prices[i] = rental.getPrice();
+		chunk.timeCreditsUsed[i] = rental.getTimeCreditUsed();
+		chunk.timeCreditsAdded[i] = rental.getTimeCreditAdded();
+		chunk.firstRentDate = Math.min(chunk.firstRentDate, rentDate);
+		chunk.lastRentDate = Math.max(chunk.lastRentDate, rentDate);
+		chunk.size++;
+		size++;
+	}
+
+	/**
+	 * Gives the rentals started in a period, as a new history
+	 *
+	 * @param from
+	 *            the start of the period (included)
+	 * @param to
+	 *            the end of the period (excluded)
+	 * @return the history of the rentals whose rent date is in the period
+	 */
+	public synchronized RentalHistory select(LocalDateTime from, LocalDateTime to) {
+		long start = epochSecond(from), end = epochSecond(to);
+		RentalHistory selection = new RentalHistory();
+		for (Chunk c : chunks) {
+			if (!c.overlaps(start, end))
+				continue;
+			for (int i = 0; i < c.size; i++) {
+				if (c.rentDates[i] >= start && c.rentDates[i] < end)
+					selection.copy(c, i);
+			}
+		}
+		return selection;
+	}
+
+	/**
+	 * Gives the amount paid for the rentals started in a period
+	 *
+	 * @param from
+	 *            the start of the period (included)
+	 * @param to
+	 *            the end of the period (excluded)
+	 * @return the amount paid, in euros
+	 */
+	public synchronized double getRevenue(LocalDateTime from, LocalDateTime to) {
+		long start = epochSecond(from), end = epochSecond(to);
+		double revenue = 0;
+		for (Chunk c : chunks) {
+			if (!c.overlaps(start, end))
+				continue;
+			for (int i = 0; i < c.size; i++) {
+				if (c.rentDates[i] >= start && c.rentDates[i] < end)
+					revenue += c.prices[i];
+			}
+		}
+		return revenue;
+	}
+
+	/**
+	 * Adds the amount paid for the rentals started in a period to the revenue of
+	 * their station of rent, day by day
+	 *
+	 * @param from
+	 *            the first day of the period
+	 * @param days
+	 *            the number of days of the period
+	 * @param revenues
+	 *            the revenue of each station (by id), one value per day; a
+	 *            station is added when it has its first rental
+	 */
+	public synchronized void addRevenuePerStationPerDay(LocalDate from, int days, Map<Integer, double[]> revenues) {
+		long start = from.toEpochDay() * SECONDS_PER_DAY;
+		long end = start + days * SECONDS_PER_DAY;
+		for (Chunk c : chunks) {
+			if (!c.overlaps(start, end))
+				continue;
+			for (int i = 0; i < c.size; i++) {
+				long date = c.rentDates[i];
+				if (date < start || date >= end)
+					continue;
+				double[] revenue = revenues.get(c.rentStationIds[i]);
+				if (revenue == null) {
+					revenue = new double[days];
+					revenues.put(c.rentStationIds[i], revenue);
+				}
+				revenue[(int) ((date - start) / SECONDS_PER_DAY)] += c.prices[i];
+			}
+		}
+	}
+
+	/**
+	 * Copies a row of another history at the end of this one
+	 */
+	private void copy(Chunk from, int row) {
+		Chunk chunk = lastChunk();
+		int i = chunk.size;
+		chunk.bikeIds[i] = from.bikeIds[row];
+		chunk.rentStationIds[i] = from.rentStationIds[row];
+		chunk.returnStationIds[i] = from.returnStationIds[row];
+		chunk.rentDates[i] = from.rentDates[row];
+		chunk.returnDates[i] = from.returnDates[row];
+		chunk.prices[i] = from.prices[row];
+		chunk.timeCreditsUsed[i] = from.timeCreditsUsed[row];
+		chunk.timeCreditsAdded[i] = from.timeCreditsAdded[row];
+		chunk.firstRentDate = Math.min(chunk.firstRentDate, from.rentDates[row]);
+		chunk.lastRentDate = Math.max(chunk.lastRentDate, from.rentDates[row]);
+		chunk.size++;
+		size++;
+	}
+
+	/**
+	 * Gives the chunk the next row is added to, with room for it. Only the last
+	 * chunk grows: the others hold CHUNK_SIZE rows.
+	 */
+	private Chunk lastChunk() {
+		Chunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if (chunk == null || chunk.size == CHUNK_SIZE) {
+			chunk = new Chunk();
+			chunks.add(chunk);
+		} else if (chunk.size == chunk.capacity()) {
+			chunk.grow();
+		}
+		return chunk;
+	}
+
+	private static long epochSecond(LocalDateTime date) {
+		return date.toEpochSecond(ZoneOffset.UTC);
+	}
+
+	private Chunk chunk(int row) {
+		if (row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("Row " + row + " of a history of " + size + " rentals");
+		return chunks.get(row / CHUNK_SIZE);
+	}
+
+	// Getters / Setters
+
+	/**
+	 * @return the number of rentals in the history
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized int getBikeId(int row) {
+		return chunk(row).bikeIds[row % CHUNK_SIZE];
+	}
+
+	public synchronized int getRentStationId(int row) {
+		return chunk(row).rentStationIds[row % CHUNK_SIZE];
+	}
+
+	public synchronized int getReturnStationId(int row) {
+		return chunk(row).returnStationIds[row % CHUNK_SIZE];
+	}
+
+	public synchronized LocalDateTime getRentDate(int row) {
+		return LocalDateTime.ofEpochSecond(chunk(row).rentDates[row % CHUNK_SIZE], 0, ZoneOffset.UTC);
+	}
+
+	public synchronized LocalDateTime getReturnDate(int row) {
+		return LocalDateTime.ofEpochSecond(chunk(row).returnDates[row % CHUNK_SIZE], 0, ZoneOffset.UTC);
+	}
+
+	public synchronized double getPrice(int row) {
+		return chunk(row).prices[row % CHUNK_SIZE];
+	}
+
+	public synchronized int getTimeCreditUsed(int row) {
+		return chunk(row).timeCreditsUsed[row % CHUNK_SIZE];
+	}
+
+	public synchronized int getTimeCreditAdded(int row) {
+		return chunk(row).timeCreditsAdded[row % CHUNK_SIZE];
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Rental history [rentals: " + size + "]";
+	}
+}
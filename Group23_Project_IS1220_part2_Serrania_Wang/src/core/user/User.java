@@ -28,6 +28,8 @@ public class User implements Observer {
 	private BikeRental bikeRental;
 	private RidePlan ridePlan;
 	private UserStats stats;
+	// Created with the first billed rental
+	private volatile RentalHistory history;
 
 	// Constructor
 
@@ -43,7 +45,25 @@ public class User implements Observer {
 	 */
 
 	public User(String name, Point coordinates, CardVisitor card) {
-		id = UserIDGenerator.getInstance().getNextIDNumber();
+		this(UserIDGenerator.getInstance().getNextIDNumber(), name, coordinates, card);
+	}
+
+	/**
+	 * Create a User with a given id (used when a network is rebuilt from its
+	 * journal). The id is reserved so that it is not given to another user.
+	 * 
+	 * @param id
+	 *            the id of the user
+	 * @param name
+	 *            the name of the user
+	 * @param coordinates
+	 *            the user's coordinates
+	 * @param card
+	 *            the card of the user
+	 */
+	public User(int id, String name, Point coordinates, CardVisitor card) {
+		UserIDGenerator.getInstance().reserve(id);
+		this.id = id;
 		this.coordinates = coordinates;
 		this.card = card;
 		this.name = name;
@@ -135,6 +155,26 @@ public class User implements Observer {
 		return stats;
 	}
 
+	/**
+	 * Gives the history of the billed rentals of the user. The history is
+	 * created on first use, so the users who never ride do not keep one.
+	 * 
+	 * @return the history of the billed rentals of the user
+	 */
+	public RentalHistory getHistory() {
+		RentalHistory history = this.history;
+		if (history == null) {
+			synchronized (this) {
+				history = this.history;
+				if (history == null) {
+					history = new RentalHistory();
+					this.history = history;
+				}
+			}
+		}
+		return history;
+	}
+
 	// Equality check methods
 
 	@Override
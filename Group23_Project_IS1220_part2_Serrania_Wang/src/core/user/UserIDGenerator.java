@@ -1,37 +1,55 @@
 package core.user;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import utils.IDScope;
+
 /**
  * ID Generator for user ids <br>
- * Implements the singleton pattern
+ * Implements the singleton pattern. The instance and the ids can be requested
+ * by several threads at the same time. Inside an IDScope, ids are counted
+ * separately.
  * 
  * @author matto
  *
  */
 public class UserIDGenerator {
-	private static UserIDGenerator instance = null;
-	private int counter = 0;
+	private static final UserIDGenerator instance = new UserIDGenerator();
+	// used outside of an IDScope
+	private final AtomicInteger sharedCounter = new AtomicInteger();
 
 	/**
-	 * Gets the current instance of IDGenerator, or creates it if it does not exist
+	 * Gets the instance of IDGenerator
 	 * 
 	 * @return the IDGenerator
 	 */
 	public static UserIDGenerator getInstance() {
-		if (instance == null) {
-			instance = new UserIDGenerator();
-		}
 		return instance;
 	}
 
 	public int getNextIDNumber() {
-		counter++;
-		return counter;
+		return counter().incrementAndGet();
+	}
+
+	/**
+	 * Makes sure the given id, used by an object created with an explicit id, is
+	 * never given by getNextIDNumber
+	 * 
+	 * @param id
+	 *            the id used
+	 */
+	public void reserve(int id) {
+		counter().accumulateAndGet(id, Math::max);
 	}
 	
 	/**
 	 * Used when running tests, to make sure the app starts in a clean state
 	 */
 	public void reset() {
-		counter = 0;
+		counter().set(0);
+	}
+
+	private AtomicInteger counter() {
+		return IDScope.counter(this, sharedCounter);
 	}
 }
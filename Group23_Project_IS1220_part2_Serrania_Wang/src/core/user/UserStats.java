@@ -1,67 +1,145 @@
 package core.user;
 
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
- * Contains statistics of the user
+ * Contains statistics of the user <br>
+ * The counters are striped accumulators (LongAdder, DoubleAdder), so that many
+ * threads can update them at the same time without losing updates nor waiting
+ * for each other. snapshot() gives all the statistics read at once.
+ * 
  * @author animato
  *
  */
 public class UserStats {
 	// Statistics of user
-	private int totalRides;
-	private int totalTimeCredits; // in minutes
-	private double totalCharges; // in euros
-	private long totalTimeSpent; // in minutes
+	private final LongAdder totalRides = new LongAdder();
+	private final LongAdder totalTimeCredits = new LongAdder(); // in minutes
+	private final DoubleAdder totalCharges = new DoubleAdder(); // in euros
+	private final LongAdder totalTimeSpent = new LongAdder(); // in minutes
+
+	/**
+	 * Statistics of a user read at a given time. A snapshot taken while no update
+	 * is in progress is exact; otherwise each value includes at least all the
+	 * updates completed before the snapshot was taken.
+	 */
+	public static final class Snapshot {
+		private final int totalRides;
+		private final int totalTimeCredits;
+		private final double totalCharges;
+		private final long totalTimeSpent;
+
+		private Snapshot(int totalRides, int totalTimeCredits, double totalCharges, long totalTimeSpent) {
+			this.totalRides = totalRides;
+			this.totalTimeCredits = totalTimeCredits;
+			this.totalCharges = totalCharges;
+			this.totalTimeSpent = totalTimeSpent;
+		}
+
+		public int getTotalRides() {
+			return totalRides;
+		}
+
+		public int getTotalTimeCredits() {
+			return totalTimeCredits;
+		}
+
+		public double getTotalCharges() {
+			return totalCharges;
+		}
+
+		public long getTotalTimeSpent() {
+			return totalTimeSpent;
+		}
+
+		@Override
+		public String toString() {
+			String stats = "Total number of rides: " + totalRides + "\n";
+			stats += "Total credits accumulated: " + totalTimeCredits + " minutes\n";
+			stats += "Total amount spent: " + totalCharges + " euro(s)\n";
+			stats += "Total time spent of rides: " + totalTimeSpent + " minutes\n";
+			return stats;
+		}
+	}
 
 	// Constructor 
 	
 	public UserStats() {
-		totalRides = 0;
-		totalTimeCredits = 0;
-		totalCharges = 0;
-		totalTimeSpent = 0;
+	}
+
+	// Core methods
+
+	/**
+	 * Reads all the statistics of the user
+	 * 
+	 * @return the statistics
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(getTotalRides(), getTotalTimeCredits(), getTotalCharges(), getTotalTimeSpent());
+	}
+
+	/**
+	 * Sets all the statistics of the user (used when a network is restored from a
+	 * snapshot)
+	 * 
+	 * @param totalRides
+	 *            the number of rides
+	 * @param totalTimeCredits
+	 *            the time credits accumulated, in minutes
+	 * @param totalCharges
+	 *            the amount spent, in euros
+	 * @param totalTimeSpent
+	 *            the time spent on rides, in minutes
+	 */
+	public void restore(int totalRides, int totalTimeCredits, double totalCharges, long totalTimeSpent) {
+		this.totalRides.reset();
+		this.totalRides.add(totalRides);
+		this.totalTimeCredits.reset();
+		this.totalTimeCredits.add(totalTimeCredits);
+		this.totalCharges.reset();
+		this.totalCharges.add(totalCharges);
+		this.totalTimeSpent.reset();
+		this.totalTimeSpent.add(totalTimeSpent);
 	}
 
 	// Getters / Setters
 	
 	public int getTotalRides() {
-		return totalRides;
+		return totalRides.intValue();
 	}
 
 	public void incrementTotalRides() {
-		this.totalRides += 1;
+		this.totalRides.increment();
 	}
 
 	public int getTotalTimeCredits() {
-		return totalTimeCredits;
+		return totalTimeCredits.intValue();
 	}
 
 	public void addTotalTimeCredits(int timeCredits) {
-		this.totalTimeCredits += timeCredits;
+		this.totalTimeCredits.add(timeCredits);
 	}
 
 	public double getTotalCharges() {
-		return totalCharges;
+		return totalCharges.sum();
 	}
 
 	public void addTotalCharges(double charges) {
-		this.totalCharges += charges;
+		this.totalCharges.add(charges);
 	}
 
 	public long getTotalTimeSpent() {
-		return totalTimeSpent;
+		return totalTimeSpent.sum();
 	}
 
 	public void addTotalTimeSpent(long l) {
-		this.totalTimeSpent += l;
+		this.totalTimeSpent.add(l);
 	}
 	
 	@Override 
 	public String toString() {
-		String stats = "Total number of rides: " + totalRides + "\n";
-		stats += "Total credits accumulated: " + totalTimeCredits + " minutes\n";
-		stats += "Total amount spent: " + totalCharges + " euro(s)\n";
-		stats += "Total time spent of rides: " + totalTimeSpent + " minutes\n";
-		return stats;
+		return snapshot().toString();
 	}
 
 }
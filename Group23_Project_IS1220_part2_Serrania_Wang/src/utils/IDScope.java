@@ -0,0 +1,62 @@
+package utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Separate id counters for the code run by a thread. <br>
+ * The id generators are shared by the whole application. Code run inside a
+ * scope gets its own counters instead, starting from 0, so that scenarios run
+ * at the same time on different threads give the same ids as when they are run
+ * alone.
+ *
+ * @author animato
+ *
+ */
+public class IDScope {
+	private static final ThreadLocal<IDScope> current = new ThreadLocal<IDScope>();
+
+	// One counter per generator
+	private final ConcurrentHashMap<Object, AtomicInteger> counters = new ConcurrentHashMap<Object, AtomicInteger>();
+
+	private IDScope() {
+	}
+
+	// Core methods
+
+	/**
+	 * Runs a task in a new scope, on the current thread
+	 *
+	 * @param task
+	 *            the task to run
+	 */
+	public static void run(Runnable task) {
+		IDScope previous = current.get();
+		current.set(new IDScope());
+		try {
+			task.run();
+		} finally {
+			if (previous == null)
+				current.remove();
+			else
+				current.set(previous);
+		}
+	}
+
+	/**
+	 * Gives the counter a generator should use on the current thread
+	 *
+	 * @param generator
+	 *            the generator
+	 * @param shared
+	 *            the counter of the generator used outside of any scope
+	 * @return the counter of the scope of the current thread, or the shared
+	 *         counter if the thread is not in a scope
+	 */
+	public static AtomicInteger counter(Object generator, AtomicInteger shared) {
+		IDScope scope = current.get();
+		if (scope == null)
+			return shared;
+		return scope.counters.computeIfAbsent(generator, g -> new AtomicInteger());
+	}
+}